@@ -0,0 +1,100 @@
+package com.rayvision.POS.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files, e.g. target/jmh-result.json from two commits.
+ * <p>
+ * Usage: {@code BenchmarkDiff <current.json> [<baseline.json>] [thresholdPercent]}.
+ * Prints one row per benchmark and parameter combination and marks changes larger than the
+ * threshold (default 10%) whose error bars do not overlap. Without a baseline it does nothing,
+ * so the benchmark profile can always run it.
+ */
+public final class BenchmarkDiff {
+
+    private BenchmarkDiff() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args[1].isBlank()) {
+            System.out.println("No baseline given (-Djmh.baseline=<file>), skipping comparison");
+            return;
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, JsonNode> current = read(new File(args[0]));
+        Map<String, JsonNode> baseline = read(new File(args[1]));
+
+        System.out.printf("%-80s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode now = entry.getValue();
+            JsonNode before = baseline.get(entry.getKey());
+            String unit = now.path("primaryMetric").path("scoreUnit").asText();
+            double score = now.path("primaryMetric").path("score").asDouble();
+            if (before == null) {
+                System.out.printf("%-80s %14s %14.3f %9s  %s%n", entry.getKey(), "-", score, "new", unit);
+                continue;
+            }
+
+            double previous = before.path("primaryMetric").path("score").asDouble();
+            double change = previous == 0 ? 0 : (score - previous) / previous * 100;
+            // Average/sample/single-shot time: lower is better; throughput: higher is better
+            boolean higherIsBetter = "thrpt".equals(now.path("mode").asText());
+            boolean worse = higherIsBetter ? change < -threshold : change > threshold;
+            boolean better = higherIsBetter ? change > threshold : change < -threshold;
+            boolean significant = !overlaps(now, before);
+
+            String mark = "";
+            if (significant && worse) {
+                mark = "  REGRESSION";
+                regressions++;
+            } else if (significant && better) {
+                mark = "  improvement";
+            }
+            System.out.printf("%-80s %14.3f %14.3f %+8.1f%%  %s%s%n", entry.getKey(), previous, score, change, unit, mark);
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-80s %14s%n", key, "removed");
+            }
+        }
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+    }
+
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            results.put(key(result), result);
+        }
+        return results;
+    }
+
+    private static String key(JsonNode result) {
+        String benchmark = result.path("benchmark").asText();
+        benchmark = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+        Map<String, String> params = new TreeMap<>();
+        result.path("params").fields().forEachRemaining(p -> params.put(p.getKey(), p.getValue().asText()));
+        return params.isEmpty() ? benchmark : benchmark + " " + params;
+    }
+
+    private static boolean overlaps(JsonNode a, JsonNode b) {
+        double scoreA = a.path("primaryMetric").path("score").asDouble();
+        double errorA = finite(a.path("primaryMetric").path("scoreError").asDouble());
+        double scoreB = b.path("primaryMetric").path("score").asDouble();
+        double errorB = finite(b.path("primaryMetric").path("scoreError").asDouble());
+        return scoreA - errorA <= scoreB + errorB && scoreB - errorB <= scoreA + errorA;
+    }
+
+    private static double finite(double error) {
+        // JMH reports NaN when there are too few iterations to estimate the error
+        return Double.isFinite(error) ? error : 0;
+    }
+}
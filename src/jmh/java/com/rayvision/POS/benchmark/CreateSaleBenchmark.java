@@ -0,0 +1,54 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.service.PosService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of {@link PosService#createSale}: validation, invoice numbering,
+ * the insert of the sale and its lines, and the after-commit listeners.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateSaleBenchmark {
+
+    private static final int LOCATIONS = 50;
+
+    @Param({"1", "10", "50"})
+    public int lines;
+
+    @Param({"0", "1000000"})
+    public int existingSales;
+
+    private ConfigurableApplicationContext context;
+    private PosService posService;
+    private final Random random = new Random(42);
+    private long invocation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        SaleFixtures.seed(context.getBean(JdbcTemplate.class), existingSales, LOCATIONS);
+        posService = context.getBean(PosService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Sale createSale() {
+        long locationId = 1 + invocation++ % LOCATIONS;
+        return posService.createSale(SaleFixtures.sale(random, locationId, lines));
+    }
+}
@@ -0,0 +1,54 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.repository.SaleRepository;
+import com.rayvision.POS.service.InvoiceNumberService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invoice number issuance with millions of existing sales for the location.
+ * {@code nextInvoiceNumber} should stay flat across {@code existingSales};
+ * {@code legacyPrefixLookup} is the per-sale query it replaced and grows with the table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvoiceNumberBenchmark {
+
+    @Param({"0", "1000000", "3000000"})
+    public int existingSales;
+
+    private ConfigurableApplicationContext context;
+    private InvoiceNumberService invoiceNumberService;
+    private SaleRepository saleRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        SaleFixtures.seed(context.getBean(JdbcTemplate.class), existingSales, 1);
+
+        invoiceNumberService = context.getBean(InvoiceNumberService.class);
+        saleRepository = context.getBean(SaleRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String nextInvoiceNumber() {
+        return invoiceNumberService.generateNextInvoiceNumber(1L);
+    }
+
+    @Benchmark
+    public Object legacyPrefixLookup() {
+        return saleRepository.findTopByPosReferenceStartingWithAndLocationIdOrderByIdDesc("LOC001-", 1L);
+    }
+}
@@ -0,0 +1,82 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.journal.FsyncPolicy;
+import com.rayvision.POS.journal.SaleJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * {@link SaleJournal} append throughput under each fsync policy, from four threads so
+ * group commit has concurrent sales to share an fsync between. Each operation is one sale
+ * appended, made durable as the policy requires and marked committed, as PosService does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class JournalAppendBenchmark {
+
+    @Param({"PER_RECORD", "GROUP_COMMIT", "INTERVAL"})
+    public FsyncPolicy fsync;
+
+    @Param({"5"})
+    public int lines;
+
+    private Path directory;
+    private SaleJournal journal;
+    private final AtomicLong ids = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        directory = Files.createTempDirectory("journal-bench");
+        journal = SaleJournal.open(directory, 64 * 1024 * 1024, fsync);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadSale {
+        Sale sale;
+
+        @Setup
+        public void setUp(JournalAppendBenchmark benchmark) {
+            sale = SaleFixtures.sale(new Random(42), 1L, benchmark.lines);
+            sale.setPosReference("LOC001-000001");
+            sale.calculateTotal();
+        }
+    }
+
+    @Benchmark
+    public long append(ThreadSale state) {
+        Sale sale = state.sale;
+        sale.setId(ids.incrementAndGet());
+        for (SaleLine line : sale.getLines()) {
+            line.setId(ids.incrementAndGet());
+        }
+        long position = journal.append(sale);
+        journal.awaitDurable(position);
+        journal.committed(position);
+        return position;
+    }
+}
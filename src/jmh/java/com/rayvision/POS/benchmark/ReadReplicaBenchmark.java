@@ -0,0 +1,85 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.service.PosService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PosService#createSale} latency while eight threads run report queries, with the
+ * read-only report transactions on their own replica pool and with everything sharing the
+ * primary pool. Both pools are kept small so the reports can take every connection; on one
+ * pool the writes then queue behind them, while with the replica their latency should stay
+ * close to {@link #createSaleAlone}. Compare the p99 of mixed:write across the two
+ * settings of replica.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadReplicaBenchmark {
+
+    private static final int LOCATIONS = 50;
+    private static final int EXISTING_SALES = 200_000;
+    private static final int POOL_SIZE = 4;
+
+    @Param({"false", "true"})
+    public boolean replica;
+
+    private ConfigurableApplicationContext context;
+    private PosService posService;
+    private LocalDateTime reportEnd;
+    private final Random random = new Random(42);
+    private final AtomicLong invocation = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(
+                "spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                "pos.datasource.replica.maximum-pool-size=" + POOL_SIZE,
+                "pos.datasource.replica.enabled=" + replica);
+        SaleFixtures.seed(context.getBean(JdbcTemplate.class), EXISTING_SALES, LOCATIONS);
+        posService = context.getBean(PosService.class);
+        reportEnd = SaleFixtures.SEED_START.plusSeconds((long) EXISTING_SALES * SaleFixtures.SECONDS_BETWEEN_SALES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Sale createSaleAlone() {
+        return createSale();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Sale write() {
+        return createSale();
+    }
+
+    /**
+     * A report over every seeded sale, in a read-only transaction
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public long report() {
+        return posService.countSalesByDateRange(SaleFixtures.SEED_START, reportEnd);
+    }
+
+    private Sale createSale() {
+        long locationId = 1 + invocation.getAndIncrement() % LOCATIONS;
+        return posService.createSale(SaleFixtures.sale(random, locationId, 5));
+    }
+}
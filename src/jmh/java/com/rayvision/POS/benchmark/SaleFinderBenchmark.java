@@ -0,0 +1,138 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import com.rayvision.POS.repository.SaleLineRepository;
+import com.rayvision.POS.repository.SaleRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Latency of the sale finders over millions of sales, with the V2 indexes
+ * ({@code indexed=true}) and with them dropped ({@code indexed=false}) to show the
+ * full scans they replace. Sales are seeded by {@link SaleFixtures#seed} over 50
+ * locations. Every invocation queries a different window,
+ * location or page so H2 cannot answer it from its result cache.
+ * <p>
+ * Pages and counts go through {@link PartitionedSaleRepository}, as the endpoints do; no
+ * month is sealed here, so they read the sale table alone.
+ * <p>
+ * H2 indexes foreign key columns on its own, so {@code linesForPage} only changes on
+ * databases that do not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaleFinderBenchmark {
+
+    private static final int LOCATIONS = 50;
+    private static final int VARIANTS = 64;
+
+    @Param({"100000", "1000000", "3000000"})
+    public int sales;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private ConfigurableApplicationContext context;
+    private SaleRepository saleRepository;
+    private PartitionedSaleRepository partitionedSaleRepository;
+    private SaleLineRepository saleLineRepository;
+
+    private final LocalDateTime[] dayStarts = new LocalDateTime[VARIANTS];
+    private final List<List<Long>> pageIds = new ArrayList<>();
+    private int invocation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        if (!indexed) {
+            jdbc.execute("DROP INDEX idx_sale_location_date");
+            jdbc.execute("DROP INDEX idx_sale_date");
+            jdbc.execute("DROP INDEX idx_sale_location_reference");
+            jdbc.execute("DROP INDEX idx_sale_line_sale");
+            jdbc.execute("ALTER TABLE sale DROP CONSTRAINT ux_sale_pos_reference");
+        }
+
+        SaleFixtures.seed(jdbc, sales, LOCATIONS);
+
+        // Days spread over the seeded period, leaving room for a week after each
+        long period = (long) sales * SaleFixtures.SECONDS_BETWEEN_SALES - Duration.ofDays(7).toSeconds();
+        for (int i = 0; i < VARIANTS; i++) {
+            dayStarts[i] = SaleFixtures.SEED_START.plusSeconds(period * i / VARIANTS);
+            long first = 1 + (long) sales * i / VARIANTS;
+            pageIds.add(LongStream.range(first, first + 20).boxed().toList());
+        }
+
+        saleRepository = context.getBean(SaleRepository.class);
+        partitionedSaleRepository = context.getBean(PartitionedSaleRepository.class);
+        saleLineRepository = context.getBean(SaleLineRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Long> locationDateRangePage() {
+        int i = next();
+        Pageable page = PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "saleDateTime"));
+        return partitionedSaleRepository.findIds(location(i), dayStarts[i], dayStarts[i].plusDays(7), page);
+    }
+
+    @Benchmark
+    public Page<Long> dateRangePage() {
+        int i = next();
+        Pageable page = PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "saleDateTime"));
+        return partitionedSaleRepository.findIds(null, dayStarts[i], dayStarts[i].plusDays(1), page);
+    }
+
+    @Benchmark
+    public long dateRangeCount() {
+        int i = next();
+        return partitionedSaleRepository.count(null, dayStarts[i], dayStarts[i].plusDays(1));
+    }
+
+    @Benchmark
+    public Page<Long> locationPage() {
+        return partitionedSaleRepository.findIds(location(next()), null, null, PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "id")));
+    }
+
+    @Benchmark
+    public Optional<String> invoicePrefixLookup() {
+        long locationId = location(next());
+        return saleRepository.findTopByPosReferenceStartingWithAndLocationIdOrderByIdDesc(
+                String.format("LOC%03d-", locationId), locationId);
+    }
+
+    @Benchmark
+    public List<SaleLine> linesForPage() {
+        return saleLineRepository.findBySaleIdIn(pageIds.get(next()));
+    }
+
+    private int next() {
+        return invocation++ & (VARIANTS - 1);
+    }
+
+    private static long location(int variant) {
+        return 1 + variant % LOCATIONS;
+    }
+}
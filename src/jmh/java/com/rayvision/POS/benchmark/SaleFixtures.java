@@ -0,0 +1,81 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic sales for the benchmarks.
+ * <p>
+ * {@link #sale} builds a single unsaved sale like the ones terminals submit; {@link #seed}
+ * bulk-loads sales straight into the tables with set-based SQL, which is far faster than
+ * going through the services when a trial needs millions of rows.
+ */
+public final class SaleFixtures {
+
+    /** Time of the first seeded sale; each following sale is {@link #SECONDS_BETWEEN_SALES} later */
+    public static final LocalDateTime SEED_START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    public static final int SECONDS_BETWEEN_SALES = 10;
+
+    // allocationSize of the sale and sale line id generators
+    private static final int ID_ALLOCATION_SIZE = 50;
+
+    // Products created by DataLoader
+    private static final int PRODUCTS = 20;
+
+    private SaleFixtures() {
+    }
+
+    /**
+     * An unsaved sale with the given number of lines for products POS1001-POS1020
+     */
+    public static Sale sale(Random random, long locationId, int lines) {
+        Sale sale = new Sale();
+        sale.setLocationId(locationId);
+        sale.setSaleDateTime(LocalDateTime.now());
+        List<SaleLine> saleLines = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            SaleLine line = new SaleLine();
+            int product = 1 + random.nextInt(PRODUCTS);
+            line.setPosCode("POS" + (1000 + product));
+            line.setMenuItemName("Product " + product);
+            line.setQuantityMilli(1000L * (1 + random.nextInt(5)));
+            line.setUnitPriceMinor(500L + 100L * product);
+            saleLines.add(line);
+        }
+        sale.setLines(saleLines);
+        return sale;
+    }
+
+    /**
+     * Insert sales with ids 1..count, spread round-robin over locations 1..locations, each
+     * with one line. Invoice numbers follow the LOCnnn-nnnnnnnn format and the id sequences
+     * are moved past the seeded rows, so sales created afterwards do not collide with them.
+     */
+    public static void seed(JdbcTemplate jdbc, int count, int locations) {
+        seed(jdbc, SEED_START, SECONDS_BETWEEN_SALES, count, locations);
+    }
+
+    /**
+     * Like {@link #seed(JdbcTemplate, int, int)}, with sale n at start + n * secondsBetweenSales
+     */
+    public static void seed(JdbcTemplate jdbc, LocalDateTime start, int secondsBetweenSales, int count, int locations) {
+        jdbc.update("INSERT INTO sale (id, sale_date_time, pos_reference, location_id, total_minor) "
+                + "SELECT X, DATEADD('SECOND', X * ?, CAST(? AS TIMESTAMP)), "
+                + "CONCAT('LOC', LPAD(CAST(MOD(X, ?) + 1 AS VARCHAR), 3, '0'), '-', LPAD(CAST(X AS VARCHAR), 8, '0')), "
+                + "MOD(X, ?) + 1, 1000 "
+                + "FROM SYSTEM_RANGE(1, ?)", secondsBetweenSales, Timestamp.valueOf(start), locations, locations, count);
+        jdbc.update("INSERT INTO sale_line (id, sale_id, pos_code, menu_item_name, quantity_milli, unit_price_minor, extended_minor) "
+                + "SELECT X, X, 'POS1001', 'Product 1', 1000, 1000, 1000 FROM SYSTEM_RANGE(1, ?)", count);
+        // Hibernate's pooled optimizer treats each sequence value as the top of a block of ids
+        jdbc.execute("ALTER SEQUENCE sale_seq RESTART WITH " + (count + ID_ALLOCATION_SIZE));
+        jdbc.execute("ALTER SEQUENCE sale_line_seq RESTART WITH " + (count + ID_ALLOCATION_SIZE));
+        jdbc.execute("ANALYZE");
+    }
+}
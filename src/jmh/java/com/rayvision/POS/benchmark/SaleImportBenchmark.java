@@ -0,0 +1,101 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.importer.SaleImportFormat;
+import com.rayvision.POS.service.SaleImportService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link SaleImportService#importSales} of {@link #SALES} sales with {@link #LINES} lines
+ * each, including the rollup and stock rebuild at the end. Every iteration imports new
+ * references into the same database, so later iterations also pay for the rows already
+ * there. Rows per second is (SALES * (1 + LINES)) divided by the score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SaleImportBenchmark {
+
+    private static final int SALES = 100_000;
+    private static final int LINES = 3;
+    private static final int LOCATIONS = 50;
+
+    @Param({"CSV", "NDJSON"})
+    public SaleImportFormat format;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private ConfigurableApplicationContext context;
+    private SaleImportService saleImportService;
+    private int iteration;
+    private byte[] input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("pos.import.threads=" + threads);
+        saleImportService = context.getBean(SaleImportService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void generateInput() {
+        input = generate(format, "B" + iteration++ + "-");
+    }
+
+    @Benchmark
+    public Map<String, Object> importSales() {
+        Map<String, Object> report = saleImportService.importSales(new ByteArrayInputStream(input), format, "benchmark");
+        if (!Long.valueOf(SALES).equals(report.get("salesImported"))) {
+            throw new IllegalStateException("Imported " + report.get("salesImported") + " sales: " + report.get("errors"));
+        }
+        return report;
+    }
+
+    private static byte[] generate(SaleImportFormat format, String referencePrefix) {
+        StringBuilder out = new StringBuilder(SALES * LINES * 80);
+        if (format == SaleImportFormat.CSV) {
+            out.append("posReference,saleDateTime,locationId,posCode,menuItemName,quantity,unitPrice\n");
+        }
+        for (int i = 0; i < SALES; i++) {
+            String reference = referencePrefix + i;
+            LocalDateTime time = SaleFixtures.SEED_START.plusSeconds((long) i * SaleFixtures.SECONDS_BETWEEN_SALES);
+            long locationId = 1 + i % LOCATIONS;
+            if (format == SaleImportFormat.NDJSON) {
+                out.append("{\"posReference\":\"").append(reference).append("\",\"saleDateTime\":\"").append(time)
+                        .append("\",\"locationId\":").append(locationId).append(",\"lines\":[");
+            }
+            for (int l = 0; l < LINES; l++) {
+                int product = 1 + (i + l) % 20;
+                String quantity = String.valueOf(1 + l);
+                String unitPrice = (5 + product) + ".25";
+                if (format == SaleImportFormat.CSV) {
+                    out.append(reference).append(',').append(time).append(',').append(locationId).append(",POS")
+                            .append(1000 + product).append(",Product ").append(product).append(',')
+                            .append(quantity).append(',').append(unitPrice).append('\n');
+                } else {
+                    out.append(l > 0 ? "," : "").append("{\"posCode\":\"POS").append(1000 + product)
+                            .append("\",\"menuItemName\":\"Product ").append(product).append("\",\"quantity\":")
+                            .append(quantity).append(",\"unitPrice\":").append(unitPrice).append('}');
+                }
+            }
+            if (format == SaleImportFormat.NDJSON) {
+                out.append("]}\n");
+            }
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
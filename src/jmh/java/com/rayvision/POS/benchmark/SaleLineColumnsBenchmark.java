@@ -0,0 +1,52 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.analytics.AnalyticsDimension;
+import com.rayvision.POS.analytics.SaleLineColumns;
+import com.rayvision.POS.dto.SalesAnalyticsRow;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revenue by product by hour for one location over a quarter, scanned from the columnar
+ * copy of a million sale lines spread over 50 locations, sequentially and with fork-join
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaleLineColumnsBenchmark {
+
+    private static final int SALES = 500_000;
+    private static final Set<AnalyticsDimension> PRODUCT_BY_HOUR = EnumSet.of(AnalyticsDimension.PRODUCT, AnalyticsDimension.HOUR);
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private SaleLineColumns columns;
+
+    @Setup
+    public void setUp() {
+        columns = new SaleLineColumns();
+        Random random = new Random(42);
+        for (int i = 0; i < SALES; i++) {
+            // A sale every 30 seconds is about half a year
+            columns.append(SaleFixtures.SEED_START.plusSeconds(i * 30L), 1 + random.nextInt(50), List.of(
+                    new SaleLineColumns.Line("POS" + (1001 + random.nextInt(20)), 1000L * (1 + random.nextInt(3)), 500L + 100L * random.nextInt(10)),
+                    new SaleLineColumns.Line("POS" + (1001 + random.nextInt(20)), 1000, 250)));
+        }
+    }
+
+    @Benchmark
+    public List<SalesAnalyticsRow> productByHourForOneLocation() {
+        LocalDateTime from = SaleFixtures.SEED_START.plusMonths(1);
+        return columns.aggregate(from, from.plusMonths(3), 17L, PRODUCT_BY_HOUR, 100_000, parallel);
+    }
+}
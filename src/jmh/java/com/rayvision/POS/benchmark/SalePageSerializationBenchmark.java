@@ -0,0 +1,83 @@
+package com.rayvision.POS.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.dto.SaleDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of a page of sales in the shape the paginated sale endpoints return,
+ * once from the {@link SaleDto} read model and once from the entities themselves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SalePageSerializationBenchmark {
+
+    @Param({"20", "100", "500"})
+    public int pageSize;
+
+    @Param({"3"})
+    public int linesPerSale;
+
+    private ObjectWriter writer;
+    private Map<String, Object> dtoPage;
+    private Map<String, Object> entityPage;
+
+    @Setup
+    public void setUp() {
+        // Same defaults as the ObjectMapper Spring Boot configures for the controllers
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        writer = objectMapper.writer();
+
+        Random random = new Random(42);
+        List<Sale> sales = new ArrayList<>(pageSize);
+        List<SaleDto> dtos = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            Sale sale = SaleFixtures.sale(random, 1 + i % 50, linesPerSale);
+            sale.setId((long) i + 1);
+            sale.setPosReference(String.format("LOC%03d-%06d", 1 + i % 50, i + 1));
+            for (SaleLine line : sale.getLines()) {
+                line.setSale(sale);
+                line.calculateExtended();
+            }
+            sale.calculateTotal();
+            sales.add(sale);
+            dtos.add(SaleDto.from(sale, sale.getLines()));
+        }
+        dtoPage = page(dtos);
+        entityPage = page(sales);
+    }
+
+    private Map<String, Object> page(List<?> content) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("content", content);
+        response.put("currentPage", 0);
+        response.put("totalItems", 1_000_000L);
+        response.put("totalPages", 1_000_000 / pageSize);
+        return response;
+    }
+
+    @Benchmark
+    public byte[] dtoPage() throws Exception {
+        return writer.writeValueAsBytes(dtoPage);
+    }
+
+    @Benchmark
+    public byte[] entityPage() throws Exception {
+        return writer.writeValueAsBytes(entityPage);
+    }
+}
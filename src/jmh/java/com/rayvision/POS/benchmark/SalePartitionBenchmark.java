@@ -0,0 +1,113 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.dto.SaleDto;
+import com.rayvision.POS.dto.SaleSlice;
+import com.rayvision.POS.service.PosService;
+import com.rayvision.POS.service.SalePartitionService;
+import com.rayvision.POS.service.SaleQueryService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date-range query latency as the sale history grows from one year to ten, with every
+ * month in the sale table ({@code partitioned=false}) and with all but the two open months
+ * sealed into monthly partitions ({@code partitioned=true}). Each month holds
+ * {@link #SALES_PER_MONTH} sales over 50 locations, seeded by {@link SaleFixtures#seed} so
+ * that the history ends in the current month.
+ * <p>
+ * The queries go through the services, as the endpoints do: a count and an offset page of a
+ * day anywhere in the history, and a keyset page of the last week. Every invocation queries a
+ * different day or location so H2 cannot answer it from its result cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SalePartitionBenchmark {
+
+    private static final int SALES_PER_MONTH = 10_000;
+    private static final int SECONDS_BETWEEN_SALES = 31 * 24 * 3600 / SALES_PER_MONTH;
+    private static final int LOCATIONS = 50;
+    private static final int VARIANTS = 64;
+
+    @Param({"12", "48", "120"})
+    public int months;
+
+    @Param({"false", "true"})
+    public boolean partitioned;
+
+    private ConfigurableApplicationContext context;
+    private PosService posService;
+    private SaleQueryService saleQueryService;
+
+    private final LocalDateTime[] dayStarts = new LocalDateTime[VARIANTS];
+    private LocalDateTime weekStart;
+    private LocalDateTime now;
+    private int invocation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        LocalDateTime start = YearMonth.now().minusMonths(months - 1).atDay(1).atStartOfDay();
+        now = LocalDateTime.now();
+        int sales = (int) (Duration.between(start, now).toSeconds() / SECONDS_BETWEEN_SALES);
+        SaleFixtures.seed(jdbc, start, SECONDS_BETWEEN_SALES, sales, LOCATIONS);
+        if (partitioned) {
+            context.getBean(SalePartitionService.class).sealClosedMonths();
+            jdbc.execute("ANALYZE");
+        }
+
+        // Days spread over the whole history, most of them in sealed months
+        long days = Duration.between(start, now).toDays() - 1;
+        for (int i = 0; i < VARIANTS; i++) {
+            dayStarts[i] = start.plusDays(days * i / VARIANTS);
+        }
+        weekStart = now.minusDays(7);
+
+        posService = context.getBean(PosService.class);
+        saleQueryService = context.getBean(SaleQueryService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long dayCount() {
+        int i = next();
+        return posService.countSalesByDateRange(dayStarts[i], dayStarts[i].plusDays(1));
+    }
+
+    @Benchmark
+    public Page<SaleDto> locationDayPage() {
+        int i = next();
+        return saleQueryService.findSalesByLocationAndDateRange(location(i), dayStarts[i], dayStarts[i].plusDays(1),
+                PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "saleDateTime")));
+    }
+
+    @Benchmark
+    public SaleSlice lastWeekScroll() {
+        return saleQueryService.scrollSalesByLocationAndDateRange(location(next()), weekStart, now, null, 20, Sort.Direction.DESC);
+    }
+
+    private int next() {
+        return invocation++ & (VARIANTS - 1);
+    }
+
+    private static long location(int variant) {
+        return 1 + variant % LOCATIONS;
+    }
+}
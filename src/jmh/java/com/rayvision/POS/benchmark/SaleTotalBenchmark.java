@@ -0,0 +1,108 @@
+package com.rayvision.POS.benchmark;
+
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Sale#calculateTotal()}, run by Hibernate before every insert and update of a sale,
+ * against the boxed-Double stream it replaced. Run with -prof gc to compare allocation per
+ * call; the fixed-point loop should report close to 0 B/op.
+ * <p>
+ * {@link #revenueInCents} and {@link #revenueInDoubles} add up the totals of a day's sales
+ * the two ways; the setup fails if the cent sum is not exact, and prints how far the double
+ * sum drifted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaleTotalBenchmark {
+
+    private static final int DAY_OF_SALES = 100_000;
+
+    @Param({"1", "10", "50"})
+    public int lines;
+
+    private Sale sale;
+    // The same lines as the previous Double fields held them
+    private List<BoxedLine> boxedLines;
+    private Double boxedTotal;
+
+    private long[] totalsMinor;
+    private double[] totals;
+
+    @Setup
+    public void setUp() {
+        sale = SaleFixtures.sale(new Random(42), 1L, lines);
+        boxedLines = new ArrayList<>(lines);
+        for (SaleLine line : sale.getLines()) {
+            boxedLines.add(new BoxedLine(FixedPoint.toDouble(line.getQuantityMilli(), FixedPoint.QUANTITY_SCALE),
+                    FixedPoint.toDouble(line.getUnitPriceMinor(), FixedPoint.MONEY_SCALE)));
+        }
+
+        // Totals with a cents part that has no exact binary form, e.g. 0.10
+        Random random = new Random(7);
+        totalsMinor = new long[DAY_OF_SALES];
+        totals = new double[DAY_OF_SALES];
+        long expected = 0;
+        for (int i = 0; i < DAY_OF_SALES; i++) {
+            totalsMinor[i] = 100L * random.nextInt(50) + 10;
+            totals[i] = FixedPoint.toDouble(totalsMinor[i], FixedPoint.MONEY_SCALE);
+            expected += totalsMinor[i];
+        }
+        if (revenueInCents() != expected) {
+            throw new IllegalStateException("Fixed-point revenue is not exact");
+        }
+        System.out.printf("%nRevenue of %d sales: exact %s, summed as doubles %s%n", DAY_OF_SALES,
+                FixedPoint.toDecimal(expected, FixedPoint.MONEY_SCALE), revenueInDoubles());
+    }
+
+    @Benchmark
+    public long calculateTotal() {
+        sale.calculateTotal();
+        return sale.getTotalMinor();
+    }
+
+    /**
+     * The total as it was computed before, over Double fields
+     */
+    @Benchmark
+    public Double calculateTotalBoxed() {
+        boxedTotal = boxedLines.stream()
+                .mapToDouble(line -> line.quantity() * line.unitPrice())
+                .sum();
+        return boxedTotal;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAY_OF_SALES)
+    public long revenueInCents() {
+        long sum = 0;
+        for (long total : totalsMinor) {
+            sum += total;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAY_OF_SALES)
+    public double revenueInDoubles() {
+        double sum = 0;
+        for (double total : totals) {
+            sum += total;
+        }
+        return sum;
+    }
+
+    private record BoxedLine(Double quantity, Double unitPrice) {
+    }
+}
@@ -1,52 +1,119 @@
 package com.rayvision.POS;
 
+import com.rayvision.POS.analytics.LeaderboardWindow;
+import com.rayvision.POS.analytics.SlidingTopSellers;
+import com.rayvision.POS.domain.FixedPoint;
 import com.rayvision.POS.domain.Location;
 import com.rayvision.POS.domain.Product;
+import com.rayvision.POS.domain.RollupGranularity;
 import com.rayvision.POS.domain.Sale;
-import com.rayvision.POS.repository.LocationRepository;
+import com.rayvision.POS.dto.SaleSlice;
+import com.rayvision.POS.dto.SalesSummaryBucket;
+import com.rayvision.POS.service.IdempotencyService;
+import com.rayvision.POS.service.LocationRegistry;
 import com.rayvision.POS.service.PosService;
+import com.rayvision.POS.service.ProductCatalog;
+import com.rayvision.POS.service.SaleQueryService;
+import com.rayvision.POS.service.SalesRollupService;
+import com.rayvision.POS.service.TopSellersService;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.DayOfWeek;
 import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Controller
 public class PosController {
     private final PosService posService;
-    private final LocationRepository locationRepository;
+    private final LocationRegistry locationRegistry;
+    private final ProductCatalog productCatalog;
+    private final TopSellersService topSellersService;
+    private final SaleQueryService saleQueryService;
+    private final SalesRollupService salesRollupService;
+    private final IdempotencyService idempotencyService;
 
-    public PosController(PosService posService, LocationRepository locationRepository) {
+    /** Sales rendered into the index page; older ones are loaded on demand */
+    static final int FIRST_PAGE_SIZE = 20;
+
+    public PosController(PosService posService, LocationRegistry locationRegistry, ProductCatalog productCatalog,
+                         TopSellersService topSellersService, SaleQueryService saleQueryService,
+                         SalesRollupService salesRollupService, IdempotencyService idempotencyService) {
         this.posService = posService;
-        this.locationRepository = locationRepository;
+        this.locationRegistry = locationRegistry;
+        this.productCatalog = productCatalog;
+        this.topSellersService = topSellersService;
+        this.saleQueryService = saleQueryService;
+        this.salesRollupService = salesRollupService;
+        this.idempotencyService = idempotencyService;
     }
 
-    // Show the index page with product list and sales
+    // Show the index page: the catalog, summary tiles and the first page of this week's sales for the
+    // selected location. Every part comes from a cache, the rollups or one keyset page, so rendering costs
+    // the same however many sales there are; the page lazy-loads older sales from the cursor APIs.
     @GetMapping("/")
     public String showIndex(@RequestParam(required = false) Long locationId, Model model) {
         List<Product> products = posService.getAllProducts();
-        List<Sale> sales;
+        List<Location> locations = locationRegistry.getAllLocations();
         
-        // If locationId is provided, filter sales by location
-        if (locationId != null) {
-            sales = posService.getSalesByLocation(locationId);
-        } else {
-            sales = posService.getAllSales();
+        // Without a locationId the dashboard opens on the first location
+        Long selectedLocationId = locationId;
+        if (selectedLocationId == null && !locations.isEmpty()) {
+            selectedLocationId = locations.get(0).getId();
         }
         
-        // Get all locations for the location selector
-        List<Location> locations = locationRepository.findAll();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime todayStart = now.toLocalDate().atStartOfDay();
+        LocalDateTime weekStart = todayStart.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        LocalDateTime todayEnd = todayStart.plusDays(1).minusNanos(1_000_000);
+        
+        SaleSlice firstPage = selectedLocationId != null
+                ? saleQueryService.scrollSalesByLocationAndDateRange(selectedLocationId, weekStart, todayEnd, null,
+                        FIRST_PAGE_SIZE, Sort.Direction.DESC)
+                : saleQueryService.scrollSalesByDateRange(weekStart, todayEnd, null, FIRST_PAGE_SIZE, Sort.Direction.DESC);
         
         model.addAttribute("products", products);
-        model.addAttribute("sales", sales);
+        model.addAttribute("sales", firstPage.content());
+        model.addAttribute("salesNextCursor", firstPage.nextCursor());
+        model.addAttribute("summary", summaryTiles(selectedLocationId, weekStart, todayStart, now));
         model.addAttribute("locations", locations);
+        model.addAttribute("selectedLocationId", selectedLocationId);
         model.addAttribute("newSale", new Sale());
         model.addAttribute("newProduct", new Product());
         
         return "index"; // => index.html in templates folder
     }
+    
+    /**
+     * Sale count and revenue for today and this week, from the daily rollup buckets
+     */
+    private Map<String, Object> summaryTiles(Long locationId, LocalDateTime weekStart, LocalDateTime todayStart,
+                                             LocalDateTime now) {
+        long todaySales = 0;
+        long weekSales = 0;
+        long todayRevenueMinor = 0;
+        long weekRevenueMinor = 0;
+        for (SalesSummaryBucket bucket : salesRollupService.summarize(locationId, RollupGranularity.DAY, weekStart, now)) {
+            weekSales += bucket.saleCount();
+            weekRevenueMinor += bucket.revenueMinor();
+            if (!bucket.bucketStart().isBefore(todayStart)) {
+                todaySales += bucket.saleCount();
+                todayRevenueMinor += bucket.revenueMinor();
+            }
+        }
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("todaySales", todaySales);
+        summary.put("todayRevenue", FixedPoint.toDecimal(todayRevenueMinor, FixedPoint.MONEY_SCALE));
+        summary.put("weekSales", weekSales);
+        summary.put("weekRevenue", FixedPoint.toDecimal(weekRevenueMinor, FixedPoint.MONEY_SCALE));
+        return summary;
+    }
 
     // Process the form submission from index.html
     @PostMapping("/sales")
@@ -58,9 +125,14 @@ public class PosController {
     // REST API endpoint for integration with other systems
     @PostMapping(value = "/sales", consumes = "application/json", produces = "application/json")
     @ResponseBody
-    public ResponseEntity<Sale> createSaleApi(@RequestBody Sale sale) {
-        Sale createdSale = posService.createSale(sale);
-        return ResponseEntity.ok(createdSale);
+    public ResponseEntity<?> createSaleApi(@RequestBody Sale sale,
+                                           @RequestHeader(value = IdempotencyService.KEY_HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null && !IdempotencyService.isValidKey(idempotencyKey)) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("message", "Idempotency-Key must be 1 to " + IdempotencyService.MAX_KEY_LENGTH + " characters");
+            return ResponseEntity.badRequest().body(result);
+        }
+        return idempotencyService.execute("sales", idempotencyKey, sale, () -> ResponseEntity.ok(posService.createSale(sale)));
     }
     
     // Create a new product
@@ -78,6 +150,42 @@ public class PosController {
         return posService.getAllProducts();
     }
     
+    // Product catalog cache statistics
+    @GetMapping("/api/products/catalog/stats")
+    @ResponseBody
+    public Map<String, Object> getCatalogStats() {
+        return productCatalog.getStats();
+    }
+    
+    // Top sellers by quantity over a sliding window (15m, 1h or today), for a location or all of them.
+    // Quantities are estimates: never below the true quantity and at most maxError above it, where
+    // maxError <= windowQuantity / counters; guaranteedQuantity is never above the true quantity.
+    @GetMapping("/api/products/top")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getTopSellers(@RequestParam(required = false) Long locationId,
+                                                             @RequestParam(defaultValue = "1h") String window,
+                                                             @RequestParam(defaultValue = "10") int k) {
+        LeaderboardWindow leaderboardWindow;
+        try {
+            leaderboardWindow = LeaderboardWindow.parse(window);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (k < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        SlidingTopSellers.Snapshot snapshot = topSellersService.topSellers(locationId, leaderboardWindow, k);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("locationId", locationId);
+        response.put("window", leaderboardWindow);
+        response.put("top", snapshot.top());
+        response.put("windowQuantity", snapshot.windowQuantity());
+        response.put("maxError", snapshot.maxError());
+        response.put("counters", topSellersService.getCounters());
+        return ResponseEntity.ok(response);
+    }
+    
     // Get a specific product by posCode
     @GetMapping("/api/products/{posCode}")
     @ResponseBody
@@ -0,0 +1,19 @@
+package com.rayvision.POS.analytics;
+
+/**
+ * What sales analytics can be grouped by
+ */
+public enum AnalyticsDimension {
+    PRODUCT,
+    LOCATION,
+    HOUR;
+
+    /**
+     * Parse a dimension name case-insensitively
+     *
+     * @throws IllegalArgumentException for unknown names
+     */
+    public static AnalyticsDimension parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
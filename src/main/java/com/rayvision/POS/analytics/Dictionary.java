@@ -0,0 +1,50 @@
+package com.rayvision.POS.analytics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense int codes for the distinct values of a column, assigned in order of first appearance.
+ * Codes are added by the single appending thread and can be read concurrently.
+ */
+final class Dictionary<T> {
+
+    private final Map<T, Integer> codes = new ConcurrentHashMap<>();
+    private volatile Object[] values = new Object[16];
+    private volatile int size;
+
+    /**
+     * Code of a value, adding it if it is new; called with the append lock held
+     */
+    int encode(T value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        int next = size;
+        if (next == values.length) {
+            values = Arrays.copyOf(values, next * 2);
+        }
+        values[next] = value;
+        codes.put(value, next);
+        size = next + 1;
+        return next;
+    }
+
+    /**
+     * Code of a value, or -1 if it has never been seen
+     */
+    int code(T value) {
+        return codes.getOrDefault(value, -1);
+    }
+
+    @SuppressWarnings("unchecked")
+    T value(int code) {
+        return (T) values[code];
+    }
+
+    int size() {
+        return size;
+    }
+}
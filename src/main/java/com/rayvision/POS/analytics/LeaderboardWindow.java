@@ -0,0 +1,58 @@
+package com.rayvision.POS.analytics;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sliding windows the top-seller leaderboards are kept for. Each is a ring of panes, and a
+ * window includes every pane that overlaps it, so it can reach back up to one pane further
+ * than its nominal start.
+ */
+public enum LeaderboardWindow {
+    LAST_15_MINUTES("15m", 60, 16),
+    LAST_HOUR("1h", 300, 13),
+    TODAY("today", 3600, 25);
+
+    private final String code;
+    private final int paneSeconds;
+    private final int paneCount;
+
+    LeaderboardWindow(String code, int paneSeconds, int paneCount) {
+        this.code = code;
+        this.paneSeconds = paneSeconds;
+        this.paneCount = paneCount;
+    }
+
+    /**
+     * Nominal start of the window ending at now
+     */
+    public LocalDateTime start(LocalDateTime now) {
+        return switch (this) {
+            case LAST_15_MINUTES -> now.minusMinutes(15);
+            case LAST_HOUR -> now.minusHours(1);
+            case TODAY -> now.toLocalDate().atStartOfDay();
+        };
+    }
+
+    public int getPaneSeconds() {
+        return paneSeconds;
+    }
+
+    int paneCount() {
+        return paneCount;
+    }
+
+    /**
+     * Parse a window by its short code (15m, 1h, today) or its name, case-insensitively
+     *
+     * @throws IllegalArgumentException for unknown windows
+     */
+    public static LeaderboardWindow parse(String name) {
+        String value = name.trim();
+        for (LeaderboardWindow window : values()) {
+            if (window.code.equalsIgnoreCase(value) || window.name().equalsIgnoreCase(value)) {
+                return window;
+            }
+        }
+        throw new IllegalArgumentException("Unknown leaderboard window: " + name);
+    }
+}
@@ -0,0 +1,316 @@
+package com.rayvision.POS.analytics;
+
+import com.rayvision.POS.dto.SalesAnalyticsRow;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-optimised, append-only columnar copy of the sale lines.
+ * <p>
+ * Every line is one row across primitive columns: the sale's time in epoch seconds (its
+ * local time read as UTC, so hours line up with the sale's own clock), its location and
+ * product as dictionary codes, its quantity in thousandths and its unit price in cents.
+ * Columns are split into fixed-size chunks so appending never copies earlier rows.
+ * <p>
+ * There is one writer at a time and any number of readers. A reader scans the rows that
+ * were published when it started; appends after that are invisible to it.
+ */
+public final class SaleLineColumns {
+
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int SECONDS_PER_HOUR = 3600;
+
+    private static final class Chunk {
+        final long[] epochSeconds = new long[CHUNK_SIZE];
+        final int[] locations = new int[CHUNK_SIZE];
+        final int[] products = new int[CHUNK_SIZE];
+        final long[] quantityMillis = new long[CHUNK_SIZE];
+        final long[] unitPriceCents = new long[CHUNK_SIZE];
+    }
+
+    private final Dictionary<String> products = new Dictionary<>();
+    private final Dictionary<Long> locations = new Dictionary<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+    private volatile long minEpochSecond = Long.MAX_VALUE;
+    private volatile long maxEpochSecond = Long.MIN_VALUE;
+
+    /**
+     * Append the lines of one sale
+     *
+     * @param time When the sale happened
+     * @param lines The sale's lines as posCode, quantity and unit price
+     */
+    public void append(LocalDateTime time, long locationId, List<Line> lines) {
+        long epochSecond = time.toEpochSecond(ZoneOffset.UTC);
+        appendLock.lock();
+        try {
+            int location = locations.encode(locationId);
+            int row = size;
+            for (Line line : lines) {
+                Chunk chunk = chunkFor(row);
+                int i = row & (CHUNK_SIZE - 1);
+                chunk.epochSeconds[i] = epochSecond;
+                chunk.locations[i] = location;
+                chunk.products[i] = products.encode(line.posCode());
+                chunk.quantityMillis[i] = line.quantityMilli();
+                chunk.unitPriceCents[i] = line.unitPriceCents();
+                row++;
+            }
+            minEpochSecond = Math.min(minEpochSecond, epochSecond);
+            maxEpochSecond = Math.max(maxEpochSecond, epochSecond);
+            // Publishing the size makes the rows, and the codes they use, visible to readers
+            size = row;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * One sale line to append, in the units of the columns
+     */
+    public record Line(String posCode, long quantityMilli, long unitPriceCents) {
+    }
+
+    /**
+     * Sum the lines in a time range, optionally at one location, grouped by any of the
+     * dimensions. Groups without lines are left out; the rest are ordered by hour, then
+     * location, then product in order of first appearance.
+     *
+     * @param from Start of the range, inclusive, or null for the oldest line
+     * @param to End of the range, inclusive, or null for the newest line
+     * @param locationId Location to include, or null for all
+     * @param groupBy Dimensions to group by; empty for one total
+     * @param maxGroups Largest number of groups the query may need space for
+     * @param parallel Whether to split the scan over the common fork-join pool
+     * @throws IllegalArgumentException if the range is inverted or needs more than maxGroups groups
+     */
+    public List<SalesAnalyticsRow> aggregate(LocalDateTime from, LocalDateTime to, Long locationId,
+                                             Set<AnalyticsDimension> groupBy, int maxGroups, boolean parallel) {
+        // Size first: every code used by the rows below it is then in the dictionaries
+        int rows = size;
+        Chunk[] snapshot = chunks;
+        if (rows == 0) {
+            return List.of();
+        }
+        long fromSecond = from != null ? from.toEpochSecond(ZoneOffset.UTC) : minEpochSecond;
+        long toSecond = to != null ? to.toEpochSecond(ZoneOffset.UTC) : maxEpochSecond;
+        if (fromSecond > toSecond) {
+            throw new IllegalArgumentException("Range start is after its end");
+        }
+        int locationCode = -1;
+        if (locationId != null) {
+            locationCode = locations.code(locationId);
+            if (locationCode < 0) {
+                return List.of();
+            }
+        }
+
+        Grouping grouping = new Grouping(groupBy, Math.floorDiv(fromSecond, SECONDS_PER_HOUR),
+                Math.floorDiv(toSecond, SECONDS_PER_HOUR), locations.size(), products.size());
+        if (grouping.cells > maxGroups) {
+            throw new IllegalArgumentException("Query needs " + grouping.cells + " groups, more than the maximum of " + maxGroups);
+        }
+        Scan scan = new Scan(snapshot, fromSecond, toSecond, locationCode, grouping);
+
+        Sums sums;
+        if (parallel) {
+            int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            // A few tasks per worker for balance, but each keeps its own set of sums
+            int threshold = Math.max(CHUNK_SIZE, rows / Math.max(1, parallelism * 4));
+            sums = ForkJoinPool.commonPool().invoke(new ScanTask(scan, 0, rows, threshold));
+        } else {
+            sums = scan.run(0, rows);
+        }
+        return sums.toRows(grouping);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Row, dictionary and memory figures for monitoring
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int chunkCount = chunks.length;
+        stats.put("rows", size);
+        stats.put("chunks", chunkCount);
+        stats.put("products", products.size());
+        stats.put("locations", locations.size());
+        stats.put("columnBytes", (long) chunkCount * CHUNK_SIZE * (8 + 4 + 4 + 8 + 8));
+        stats.put("oldest", size > 0 ? LocalDateTime.ofEpochSecond(minEpochSecond, 0, ZoneOffset.UTC) : null);
+        stats.put("newest", size > 0 ? LocalDateTime.ofEpochSecond(maxEpochSecond, 0, ZoneOffset.UTC) : null);
+        return stats;
+    }
+
+    private Chunk chunkFor(int row) {
+        int index = row >>> CHUNK_BITS;
+        Chunk[] current = chunks;
+        if (index == current.length) {
+            current = Arrays.copyOf(current, index + 1);
+            current[index] = new Chunk();
+            chunks = current;
+        }
+        return current[index];
+    }
+
+    /**
+     * Maps a row's dimensions to a cell: hour major, then location, then product
+     */
+    private final class Grouping {
+        final boolean byHour;
+        final boolean byLocation;
+        final boolean byProduct;
+        final long firstHour;
+        final int locationCount;
+        final int productCount;
+        final long cells;
+
+        Grouping(Set<AnalyticsDimension> groupBy, long firstHour, long lastHour, int locationCount, int productCount) {
+            this.byHour = groupBy.contains(AnalyticsDimension.HOUR);
+            this.byLocation = groupBy.contains(AnalyticsDimension.LOCATION);
+            this.byProduct = groupBy.contains(AnalyticsDimension.PRODUCT);
+            this.firstHour = firstHour;
+            this.locationCount = byLocation ? locationCount : 1;
+            this.productCount = byProduct ? productCount : 1;
+            this.cells = (byHour ? lastHour - firstHour + 1 : 1) * this.locationCount * this.productCount;
+        }
+
+        SalesAnalyticsRow row(int cell, long lines, long quantityMillis, long revenueMilliCents) {
+            String posCode = byProduct ? products.value(cell % productCount) : null;
+            cell /= productCount;
+            Long locationId = byLocation ? locations.value(cell % locationCount) : null;
+            cell /= locationCount;
+            LocalDateTime hour = byHour
+                    ? LocalDateTime.ofEpochSecond((firstHour + cell) * SECONDS_PER_HOUR, 0, ZoneOffset.UTC)
+                    : null;
+            return new SalesAnalyticsRow(posCode, locationId, hour, lines, quantityMillis, revenueMilliCents);
+        }
+    }
+
+    private static final class Sums {
+        final long[] lines;
+        final long[] quantityMillis;
+        final long[] revenueMilliCents;
+
+        Sums(int cells) {
+            lines = new long[cells];
+            quantityMillis = new long[cells];
+            revenueMilliCents = new long[cells];
+        }
+
+        Sums add(Sums other) {
+            for (int c = 0; c < lines.length; c++) {
+                lines[c] += other.lines[c];
+                quantityMillis[c] += other.quantityMillis[c];
+                revenueMilliCents[c] += other.revenueMilliCents[c];
+            }
+            return this;
+        }
+
+        List<SalesAnalyticsRow> toRows(Grouping grouping) {
+            List<SalesAnalyticsRow> rows = new ArrayList<>();
+            for (int c = 0; c < lines.length; c++) {
+                if (lines[c] > 0) {
+                    rows.add(grouping.row(c, lines[c], quantityMillis[c], revenueMilliCents[c]));
+                }
+            }
+            return rows;
+        }
+    }
+
+    private record Scan(Chunk[] chunks, long fromSecond, long toSecond, int locationCode, Grouping grouping) {
+
+        /**
+         * Sum rows [start, end) into a fresh set of cells
+         */
+        Sums run(int start, int end) {
+            Sums sums = new Sums((int) grouping.cells);
+            long[] lines = sums.lines;
+            long[] quantities = sums.quantityMillis;
+            long[] revenues = sums.revenueMilliCents;
+            boolean byHour = grouping.byHour;
+            boolean byLocation = grouping.byLocation;
+            boolean byProduct = grouping.byProduct;
+            long firstHour = grouping.firstHour;
+            int locationCount = grouping.locationCount;
+            int productCount = grouping.productCount;
+
+            int row = start;
+            while (row < end) {
+                Chunk chunk = chunks[row >>> CHUNK_BITS];
+                int offset = row & (CHUNK_SIZE - 1);
+                int limit = Math.min(CHUNK_SIZE, offset + (end - row));
+                long[] seconds = chunk.epochSeconds;
+                int[] locationCodes = chunk.locations;
+                int[] productCodes = chunk.products;
+                long[] quantityMillis = chunk.quantityMillis;
+                long[] priceCents = chunk.unitPriceCents;
+                for (int i = offset; i < limit; i++) {
+                    long second = seconds[i];
+                    if (second < fromSecond || second > toSecond) {
+                        continue;
+                    }
+                    int location = locationCodes[i];
+                    if (locationCode >= 0 && location != locationCode) {
+                        continue;
+                    }
+                    int cell = byHour ? (int) (Math.floorDiv(second, SECONDS_PER_HOUR) - firstHour) : 0;
+                    if (byLocation) {
+                        cell = cell * locationCount + location;
+                    }
+                    if (byProduct) {
+                        cell = cell * productCount + productCodes[i];
+                    }
+                    long quantity = quantityMillis[i];
+                    lines[cell]++;
+                    quantities[cell] += quantity;
+                    revenues[cell] += quantity * priceCents[i];
+                }
+                row += limit - offset;
+            }
+            return sums;
+        }
+    }
+
+    private static final class ScanTask extends RecursiveTask<Sums> {
+        private final Scan scan;
+        private final int start;
+        private final int end;
+        private final int threshold;
+
+        ScanTask(Scan scan, int start, int end, int threshold) {
+            this.scan = scan;
+            this.start = start;
+            this.end = end;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Sums compute() {
+            if (end - start <= threshold) {
+                return scan.run(start, end);
+            }
+            int middle = (start + end) >>> 1;
+            ScanTask left = new ScanTask(scan, start, middle, threshold);
+            left.fork();
+            Sums right = new ScanTask(scan, middle, end, threshold).compute();
+            return left.join().add(right);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.rayvision.POS.analytics;
+
+import com.rayvision.POS.dto.TopSeller;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Top sellers over one sliding window: a ring of {@link SpaceSaving} summaries, one per pane,
+ * merged when queried. Memory is bounded by the pane count times the counters per pane,
+ * whatever the size of the catalog.
+ * <p>
+ * Error bounds, for a window whose panes hold a total quantity N and m counters per pane:
+ * a reported quantity is never below the true quantity and at most N / m above it, and
+ * guaranteedQuantity is never above it; any product that sold more than N / m in the
+ * window is on the board if k is large enough. The window can include up to one pane of
+ * sales from before its nominal start.
+ */
+public final class SlidingTopSellers {
+
+    private static final class Pane {
+        long index = Long.MIN_VALUE;
+        final SpaceSaving summary;
+
+        Pane(int capacity) {
+            summary = new SpaceSaving(capacity);
+        }
+    }
+
+    /**
+     * The leaderboard of a window
+     *
+     * @param top Products in descending order of estimated quantity
+     * @param windowQuantity Total quantity sold in the window
+     * @param maxError Largest amount any estimate can exceed the true quantity by
+     */
+    public record Snapshot(List<TopSeller> top, double windowQuantity, double maxError) {
+    }
+
+    private final LeaderboardWindow window;
+    private final int capacity;
+    private final Pane[] panes;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public SlidingTopSellers(LeaderboardWindow window, int capacity) {
+        this.window = window;
+        this.capacity = capacity;
+        this.panes = new Pane[window.paneCount()];
+        for (int i = 0; i < panes.length; i++) {
+            panes[i] = new Pane(capacity);
+        }
+    }
+
+    /**
+     * Count a quantity sold at a time; ignored if the time has left the ring or is more
+     * than a pane ahead of now
+     */
+    public void add(LocalDateTime now, LocalDateTime time, String posCode, double quantity) {
+        long nowPane = paneOf(now);
+        long pane = paneOf(time);
+        if (pane > nowPane + 1 || pane <= nowPane - panes.length) {
+            return;
+        }
+        lock.lock();
+        try {
+            Pane slot = panes[(int) Math.floorMod(pane, (long) panes.length)];
+            if (slot.index < pane) {
+                slot.summary.clear();
+                slot.index = pane;
+            } else if (slot.index > pane) {
+                return;
+            }
+            slot.summary.add(posCode, quantity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The k best sellers of the window ending at now
+     */
+    public Snapshot top(LocalDateTime now, int k) {
+        long first = paneOf(window.start(now));
+        long last = paneOf(now);
+        Map<String, double[]> bounds = new HashMap<>();   // upper and lower bound per product
+        double total = 0;
+        double unseen = 0;
+        lock.lock();
+        try {
+            for (Pane pane : panes) {
+                if (pane.index < first || pane.index > last) {
+                    continue;
+                }
+                double min = pane.summary.minCount();
+                total += pane.summary.total();
+                // A product without a counter in this pane sold at most min there
+                unseen += min;
+                for (Map.Entry<String, SpaceSaving.Counter> entry : pane.summary.counters().entrySet()) {
+                    double[] bound = bounds.computeIfAbsent(entry.getKey(), key -> new double[2]);
+                    bound[0] += entry.getValue().count - min;
+                    bound[1] += entry.getValue().count - entry.getValue().error;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        List<TopSeller> top = new ArrayList<>(bounds.size());
+        for (Map.Entry<String, double[]> entry : bounds.entrySet()) {
+            top.add(new TopSeller(entry.getKey(), null, entry.getValue()[0] + unseen, entry.getValue()[1]));
+        }
+        top.sort(Comparator.comparingDouble(TopSeller::quantity).reversed().thenComparing(TopSeller::posCode));
+        return new Snapshot(List.copyOf(top.subList(0, Math.min(k, top.size()))), total, unseen);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private long paneOf(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), window.getPaneSeconds());
+    }
+}
@@ -0,0 +1,85 @@
+package com.rayvision.POS.analytics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Weighted Space-Saving summary (Metwally et al.) of the heaviest keys in a stream, in at
+ * most {@code capacity} counters however many distinct keys the stream has.
+ * <p>
+ * A key's count never underestimates its true weight and overestimates it by at most its
+ * error, which is at most {@link #minCount()} and so at most total / capacity. Any key whose
+ * true weight exceeds {@link #minCount()} has a counter. Not thread-safe.
+ */
+final class SpaceSaving {
+
+    static final class Counter {
+        double count;
+        double error;
+
+        Counter(double count, double error) {
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private double total;
+
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    void add(String key, double weight) {
+        total += weight;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new Counter(weight, 0));
+            return;
+        }
+        // The new key takes over the smallest counter, inheriting its count as error
+        String smallest = null;
+        Counter min = null;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (min == null || entry.getValue().count < min.count) {
+                smallest = entry.getKey();
+                min = entry.getValue();
+            }
+        }
+        counters.remove(smallest);
+        counters.put(key, new Counter(min.count + weight, min.count));
+    }
+
+    /**
+     * Upper bound on the true weight of any key without a counter
+     */
+    double minCount() {
+        if (counters.size() < capacity) {
+            return 0;
+        }
+        double min = Double.MAX_VALUE;
+        for (Counter counter : counters.values()) {
+            min = Math.min(min, counter.count);
+        }
+        return min;
+    }
+
+    Map<String, Counter> counters() {
+        return counters;
+    }
+
+    double total() {
+        return total;
+    }
+
+    void clear() {
+        counters.clear();
+        total = 0;
+    }
+}
@@ -0,0 +1,28 @@
+package com.rayvision.POS.api;
+
+import com.rayvision.POS.datasource.ReplicaLagGuard;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/datasource")
+public class DataSourceController {
+
+    private final ReplicaLagGuard replicaLagGuard;
+
+    @Autowired
+    public DataSourceController(ReplicaLagGuard replicaLagGuard) {
+        this.replicaLagGuard = replicaLagGuard;
+    }
+
+    /**
+     * Replica lag, where read-only transactions went, and the connections in use in each pool
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(replicaLagGuard.getStats());
+    }
+}
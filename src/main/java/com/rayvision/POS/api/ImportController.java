@@ -0,0 +1,87 @@
+package com.rayvision.POS.api;
+
+import com.rayvision.POS.importer.SaleImportFormat;
+import com.rayvision.POS.service.SaleImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+@RestController
+@RequestMapping("/api/admin/import")
+public class ImportController {
+
+    private final SaleImportService saleImportService;
+
+    @Autowired
+    public ImportController(SaleImportService saleImportService) {
+        this.saleImportService = saleImportService;
+    }
+
+    /**
+     * Import the sales in the request body, streamed as it arrives. The format is taken from
+     * the format parameter (csv or ndjson), or else from the Content-Type (text/csv or
+     * application/x-ndjson); a gzip Content-Encoding is unpacked. Answers with the import's
+     * report once every sale is loaded; its progress meanwhile is at GET /api/admin/import.
+     * Imported sales are committed before the report is sent but not journaled, so keep the
+     * input to run the import again after a restart.
+     */
+    @PostMapping
+    public ResponseEntity<?> importSales(@RequestParam(required = false) String format,
+                                         @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+                                         @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+                                         HttpServletRequest request) throws IOException {
+        SaleImportFormat importFormat;
+        try {
+            importFormat = format != null ? SaleImportFormat.fromName(format) : SaleImportFormat.fromContentType(contentType);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+        if (importFormat == null) {
+            return badRequest("Send text/csv or application/x-ndjson, or set format to csv or ndjson");
+        }
+        boolean gzip = "gzip".equalsIgnoreCase(contentEncoding);
+        if (contentEncoding != null && !gzip && !"identity".equalsIgnoreCase(contentEncoding)) {
+            return badRequest("Content-Encoding must be gzip or identity");
+        }
+
+        InputStream body = gzip ? new GZIPInputStream(request.getInputStream(), 1 << 16) : request.getInputStream();
+        Map<String, Object> report;
+        try {
+            report = saleImportService.importSales(body, importFormat, "request body from " + request.getRemoteAddr());
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+        HttpStatus status = SaleImportService.FAILED.equals(report.get("status")) ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.OK;
+        return ResponseEntity.status(status).body(report);
+    }
+
+    /**
+     * The running import, if any, and the most recent finished ones
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getImports() {
+        return ResponseEntity.ok(saleImportService.getImports());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> getImport(@PathVariable long id) {
+        return saleImportService.getImport(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    private static ResponseEntity<Map<String, Object>> badRequest(String message) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("message", message);
+        return ResponseEntity.badRequest().body(result);
+    }
+}
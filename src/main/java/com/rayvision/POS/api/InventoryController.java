@@ -0,0 +1,66 @@
+package com.rayvision.POS.api;
+
+import com.rayvision.POS.domain.LocationStock;
+import com.rayvision.POS.service.InventoryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/inventory")
+public class InventoryController {
+
+    private final InventoryService inventoryService;
+
+    @Autowired
+    public InventoryController(InventoryService inventoryService) {
+        this.inventoryService = inventoryService;
+    }
+
+    /**
+     * Stock on hand of every product at a location
+     */
+    @GetMapping("/location/{locationId}")
+    public ResponseEntity<List<LocationStock>> getStock(@PathVariable Long locationId) {
+        return ResponseEntity.ok(inventoryService.getStock(locationId));
+    }
+
+    /**
+     * Record a delivery of a product to a location
+     */
+    @PostMapping("/location/{locationId}/receive")
+    public ResponseEntity<?> receive(@PathVariable Long locationId,
+                                     @RequestParam String posCode,
+                                     @RequestParam double quantity) {
+        try {
+            return ResponseEntity.ok(inventoryService.receive(locationId, posCode, quantity));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
+    }
+
+    /**
+     * Recompute sold quantities from the sale tables; run while no sales are being created
+     */
+    @PostMapping("/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcile() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("rows", inventoryService.reconcile());
+        result.put("message", "Stock reconciled with the sale tables");
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Ledger statistics: counters held, rows waiting to be flushed, rejected sales
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(inventoryService.getStats());
+    }
+}
@@ -0,0 +1,42 @@
+package com.rayvision.POS.api;
+
+import com.rayvision.POS.service.SaleJournalService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/journal")
+public class JournalController {
+
+    private final SaleJournalService saleJournalService;
+
+    @Autowired
+    public JournalController(SaleJournalService saleJournalService) {
+        this.saleJournalService = saleJournalService;
+    }
+
+    /**
+     * Journal statistics: segments, written and durable positions, sales not yet resolved
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(saleJournalService.getStats());
+    }
+
+    /**
+     * Compact the journal segments whose sales are all persisted
+     */
+    @PostMapping("/compact")
+    public ResponseEntity<Map<String, Object>> compact() {
+        if (!saleJournalService.isEnabled()) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("message", "Sale journal is disabled");
+            return ResponseEntity.badRequest().body(result);
+        }
+        return ResponseEntity.ok(saleJournalService.compact());
+    }
+}
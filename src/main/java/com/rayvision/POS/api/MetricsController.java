@@ -0,0 +1,44 @@
+package com.rayvision.POS.api;
+
+import com.rayvision.POS.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    private static final MediaType PROMETHEUS_TEXT = MediaType.parseMediaType("text/plain;version=0.0.4;charset=utf-8");
+
+    private final MetricsRegistry metricsRegistry;
+
+    @Autowired
+    public MetricsController(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * Latency and failures of the hot paths: sale creation, invoice numbers, repository calls,
+     * the simulator tick and every controller method. JSON by default, or the Prometheus text
+     * format with format=prometheus.
+     */
+    @GetMapping
+    public ResponseEntity<?> getMetrics(@RequestParam(required = false, defaultValue = "json") String format) {
+        if ("prometheus".equalsIgnoreCase(format)) {
+            return ResponseEntity.ok().contentType(PROMETHEUS_TEXT).body(metricsRegistry.prometheus());
+        }
+        if (!"json".equalsIgnoreCase(format)) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("message", "format must be json or prometheus");
+            return ResponseEntity.badRequest().body(result);
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("timers", metricsRegistry.snapshot());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,105 @@
+package com.rayvision.POS.api;
+
+import com.rayvision.POS.dto.SalePartition;
+import com.rayvision.POS.service.SalePartitionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/admin/partitions")
+public class PartitionController {
+
+    private final SalePartitionService salePartitionService;
+
+    @Autowired
+    public PartitionController(SalePartitionService salePartitionService) {
+        this.salePartitionService = salePartitionService;
+    }
+
+    /**
+     * The monthly sale partitions and the first month still kept in the sale table
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getPartitions() {
+        return ResponseEntity.ok(salePartitionService.getPartitions());
+    }
+
+    /**
+     * Move closed months out of the sale table: one month (yyyy-MM), or every closed month
+     * with sales in the sale table when no month is given
+     */
+    @PostMapping("/seal")
+    public ResponseEntity<Map<String, Object>> seal(@RequestParam(required = false) String month) {
+        if (month == null) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("sealed", salePartitionService.sealClosedMonths());
+            return ResponseEntity.ok(result);
+        }
+        try {
+            long moved = salePartitionService.sealMonth(YearMonth.parse(month));
+            Map<String, Object> result = new HashMap<>();
+            result.put("sealed", Map.of(month, moved));
+            return ResponseEntity.ok(result);
+        } catch (DateTimeParseException e) {
+            return badRequest("month must be yyyy-MM");
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        } catch (IllegalStateException e) {
+            return conflict(e.getMessage());
+        }
+    }
+
+    /**
+     * Stop reading a partition without deleting it
+     */
+    @PostMapping("/{month}/detach")
+    public ResponseEntity<Map<String, Object>> detach(@PathVariable YearMonth month) {
+        return describe(salePartitionService.detach(month));
+    }
+
+    /**
+     * Read a detached partition again; refused while one of its sales' posReference is used elsewhere
+     */
+    @PostMapping("/{month}/attach")
+    public ResponseEntity<Map<String, Object>> attach(@PathVariable YearMonth month) {
+        try {
+            return describe(salePartitionService.attach(month));
+        } catch (IllegalStateException e) {
+            return conflict(e.getMessage());
+        }
+    }
+
+    /**
+     * Drop a partition and every sale in it
+     */
+    @DeleteMapping("/{month}")
+    public ResponseEntity<Map<String, Object>> drop(@PathVariable YearMonth month) {
+        return describe(salePartitionService.drop(month));
+    }
+
+    private static ResponseEntity<Map<String, Object>> describe(Optional<SalePartition> partition) {
+        return partition
+                .map(p -> ResponseEntity.ok(SalePartitionService.describe(p)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    private static ResponseEntity<Map<String, Object>> badRequest(String message) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("message", message);
+        return ResponseEntity.badRequest().body(result);
+    }
+
+    private static ResponseEntity<Map<String, Object>> conflict(String message) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("message", message);
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+    }
+}
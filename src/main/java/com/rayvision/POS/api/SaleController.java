@@ -1,7 +1,24 @@
 package com.rayvision.POS.api;
 
+import com.rayvision.POS.analytics.AnalyticsDimension;
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.RollupGranularity;
 import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.dto.SaleBatchResult;
+import com.rayvision.POS.dto.SaleDto;
+import com.rayvision.POS.dto.SaleSlice;
+import com.rayvision.POS.dto.SalesAnalyticsRow;
+import com.rayvision.POS.dto.SalesSummaryBucket;
+import com.rayvision.POS.service.IdempotencyService;
 import com.rayvision.POS.service.PosService;
+import com.rayvision.POS.service.SaleBatchService;
+import com.rayvision.POS.service.SaleBatchTooLargeException;
+import com.rayvision.POS.service.SaleExportService;
+import com.rayvision.POS.service.SaleFeedService;
+import com.rayvision.POS.service.SaleQueryService;
+import com.rayvision.POS.service.SaleWriteBehindService;
+import com.rayvision.POS.service.SalesAnalyticsService;
+import com.rayvision.POS.service.SalesRollupService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -9,10 +26,15 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.net.URI;
 import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,15 +44,37 @@ import java.util.Optional;
 @RequestMapping("/api/sales")
 public class SaleController {
 
+    private static final String IDEMPOTENCY_SCOPE = "api/sales";
+
     private final PosService posService;
+    private final SaleBatchService saleBatchService;
+    private final SaleExportService saleExportService;
+    private final SaleQueryService saleQueryService;
+    private final SalesRollupService salesRollupService;
+    private final SaleWriteBehindService saleWriteBehindService;
+    private final SalesAnalyticsService salesAnalyticsService;
+    private final SaleFeedService saleFeedService;
+    private final IdempotencyService idempotencyService;
 
     @Autowired
-    public SaleController(PosService posService) {
+    public SaleController(PosService posService, SaleBatchService saleBatchService,
+                          SaleExportService saleExportService, SaleQueryService saleQueryService,
+                          SalesRollupService salesRollupService, SaleWriteBehindService saleWriteBehindService,
+                          SalesAnalyticsService salesAnalyticsService, SaleFeedService saleFeedService,
+                          IdempotencyService idempotencyService) {
         this.posService = posService;
+        this.saleBatchService = saleBatchService;
+        this.saleExportService = saleExportService;
+        this.saleQueryService = saleQueryService;
+        this.salesRollupService = salesRollupService;
+        this.saleWriteBehindService = saleWriteBehindService;
+        this.salesAnalyticsService = salesAnalyticsService;
+        this.saleFeedService = saleFeedService;
+        this.idempotencyService = idempotencyService;
     }
     
     /**
-     * Get all sales with optional pagination
+     * Get a page of sales, optionally between two dates; use the export for every sale
      */
     @GetMapping
     public ResponseEntity<?> getAllSales(
@@ -41,25 +85,44 @@ public class SaleController {
             @RequestParam(required = false, defaultValue = "id") String sortBy,
             @RequestParam(required = false, defaultValue = "DESC") String sortDir) {
         
-        Sort sort = Sort.by(Sort.Direction.fromString(sortDir), sortBy);
-        Pageable pageable = PageRequest.of(page, size, sort);
-
-        // If date range is provided, filter by date range
-        if (startDate != null && endDate != null) {
-            Page<Sale> salesPage = posService.findSalesByDateRange(startDate, endDate, pageable);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("content", salesPage.getContent());
-            response.put("currentPage", salesPage.getNumber());
-            response.put("totalItems", salesPage.getTotalElements());
-            response.put("totalPages", salesPage.getTotalPages());
-            
-            return ResponseEntity.ok(response);
+        Pageable pageable;
+        try {
+            pageable = offsetPage(page, size, sortBy, sortDir);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
 
-        // Otherwise, get all sales
-        List<Sale> sales = posService.getAllSales();
-        return ResponseEntity.ok(sales);
+        // A missing bound leaves that side of the range open
+        Page<SaleDto> salesPage = saleQueryService.findSalesByDateRange(startDate, endDate, pageable);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("content", salesPage.getContent());
+        response.put("currentPage", salesPage.getNumber());
+        response.put("totalItems", salesPage.getTotalElements());
+        response.put("totalPages", salesPage.getTotalPages());
+        
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Export sales as newline-delimited JSON, streamed from the database as they are read.
+     * Use this instead of the unpaginated list for large ranges.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportSales(
+            @RequestParam(required = false, defaultValue = "ndjson") String format,
+            @RequestParam(required = false) Long locationId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        
+        if (!"ndjson".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        StreamingResponseBody body = out -> saleExportService.exportNdjson(locationId, startDate, endDate, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     /**
@@ -75,12 +138,16 @@ public class SaleController {
             @RequestParam(required = false, defaultValue = "id") String sortBy,
             @RequestParam(required = false, defaultValue = "DESC") String sortDir) {
         
-        Sort sort = Sort.by(Sort.Direction.fromString(sortDir), sortBy);
-        Pageable pageable = PageRequest.of(page, size, sort);
+        Pageable pageable;
+        try {
+            pageable = offsetPage(page, size, sortBy, sortDir);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
 
         // If date range is provided, filter by location and date range
         if (startDate != null && endDate != null) {
-            Page<Sale> salesPage = posService.findSalesByLocationAndDateRange(locationId, startDate, endDate, pageable);
+            Page<SaleDto> salesPage = saleQueryService.findSalesByLocationAndDateRange(locationId, startDate, endDate, pageable);
             
             Map<String, Object> response = new HashMap<>();
             response.put("content", salesPage.getContent());
@@ -92,7 +159,7 @@ public class SaleController {
         }
         
         // Otherwise, get all sales for this location
-        Page<Sale> salesPage = posService.getSalesByLocation(locationId, pageable);
+        Page<SaleDto> salesPage = saleQueryService.getSalesByLocation(locationId, pageable);
         
         Map<String, Object> response = new HashMap<>();
         response.put("content", salesPage.getContent());
@@ -104,7 +171,10 @@ public class SaleController {
     }
 
     /**
-     * Get sales for a date range
+     * Get sales for a date range.
+     * With pagination=cursor (or a cursor) pages are keyed on (saleDateTime, id) and the
+     * response carries an opaque nextCursor instead of page numbers; the total count is
+     * only computed when includeCount=true.
      */
     @GetMapping("/date-range")
     public ResponseEntity<?> getSalesByDateRange(
@@ -113,13 +183,31 @@ public class SaleController {
             @RequestParam(required = false, defaultValue = "0") int page,
             @RequestParam(required = false, defaultValue = "20") int size,
             @RequestParam(required = false, defaultValue = "id") String sortBy,
-            @RequestParam(required = false, defaultValue = "DESC") String sortDir) {
+            @RequestParam(required = false, defaultValue = "DESC") String sortDir,
+            @RequestParam(required = false, defaultValue = "offset") String pagination,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "false") boolean includeCount) {
+        
+        if (isCursorMode(pagination, cursor)) {
+            try {
+                SaleSlice slice = saleQueryService.scrollSalesByDateRange(
+                        startDate, endDate, cursor, size, Sort.Direction.fromString(sortDir));
+                Long total = includeCount ? posService.countSalesByDateRange(startDate, endDate) : null;
+                return ResponseEntity.ok(cursorResponse(slice, total));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
         
-        Sort sort = Sort.by(Sort.Direction.fromString(sortDir), sortBy);
-        Pageable pageable = PageRequest.of(page, size, sort);
+        Pageable pageable;
+        try {
+            pageable = offsetPage(page, size, sortBy, sortDir);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
 
         // Get sales for the date range with pagination
-        Page<Sale> salesPage = posService.findSalesByDateRange(startDate, endDate, pageable);
+        Page<SaleDto> salesPage = saleQueryService.findSalesByDateRange(startDate, endDate, pageable);
         
         Map<String, Object> response = new HashMap<>();
         response.put("content", salesPage.getContent());
@@ -131,7 +219,7 @@ public class SaleController {
     }
 
     /**
-     * Get sales for a location and date range
+     * Get sales for a location and date range; supports the same cursor mode as /date-range
      */
     @GetMapping("/location/{locationId}/date-range")
     public ResponseEntity<?> getSalesByLocationAndDateRange(
@@ -141,13 +229,31 @@ public class SaleController {
             @RequestParam(required = false, defaultValue = "0") int page,
             @RequestParam(required = false, defaultValue = "20") int size,
             @RequestParam(required = false, defaultValue = "id") String sortBy,
-            @RequestParam(required = false, defaultValue = "DESC") String sortDir) {
+            @RequestParam(required = false, defaultValue = "DESC") String sortDir,
+            @RequestParam(required = false, defaultValue = "offset") String pagination,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "false") boolean includeCount) {
         
-        Sort sort = Sort.by(Sort.Direction.fromString(sortDir), sortBy);
-        Pageable pageable = PageRequest.of(page, size, sort);
+        if (isCursorMode(pagination, cursor)) {
+            try {
+                SaleSlice slice = saleQueryService.scrollSalesByLocationAndDateRange(
+                        locationId, startDate, endDate, cursor, size, Sort.Direction.fromString(sortDir));
+                Long total = includeCount ? posService.countSalesByLocationAndDateRange(locationId, startDate, endDate) : null;
+                return ResponseEntity.ok(cursorResponse(slice, total));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        
+        Pageable pageable;
+        try {
+            pageable = offsetPage(page, size, sortBy, sortDir);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
 
         // Get sales for the specified location and date range with pagination
-        Page<Sale> salesPage = posService.findSalesByLocationAndDateRange(locationId, startDate, endDate, pageable);
+        Page<SaleDto> salesPage = saleQueryService.findSalesByLocationAndDateRange(locationId, startDate, endDate, pageable);
         
         Map<String, Object> response = new HashMap<>();
         response.put("content", salesPage.getContent());
@@ -158,6 +264,33 @@ public class SaleController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Page request for the offset-paged branches
+     *
+     * @throws IllegalArgumentException if sales cannot be sorted by sortBy or sortDir is not a direction
+     */
+    private Pageable offsetPage(int page, int size, String sortBy, String sortDir) {
+        if (!saleQueryService.canSortBy(sortBy)) {
+            throw new IllegalArgumentException("Cannot sort sales by " + sortBy);
+        }
+        return PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDir), sortBy));
+    }
+
+    private static boolean isCursorMode(String pagination, String cursor) {
+        return "cursor".equalsIgnoreCase(pagination) || (cursor != null && !cursor.isEmpty());
+    }
+    
+    private static Map<String, Object> cursorResponse(SaleSlice slice, Long totalItems) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("content", slice.content());
+        response.put("nextCursor", slice.nextCursor());
+        response.put("hasNext", slice.hasNext());
+        if (totalItems != null) {
+            response.put("totalItems", totalItems);
+        }
+        return response;
+    }
+
     /**
      * Get the total count of sales between two dates
      */
@@ -173,22 +306,215 @@ public class SaleController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Sales totals per minute, hour or day, answered from the rollup buckets rather than the sales.
+     * Without a locationId the buckets of all locations are combined.
+     */
+    @GetMapping("/summary")
+    public ResponseEntity<Map<String, Object>> getSalesSummary(
+            @RequestParam(required = false) Long locationId,
+            @RequestParam(required = false, defaultValue = "hour") String granularity,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        
+        try {
+            RollupGranularity bucketSize = RollupGranularity.parse(granularity);
+            List<SalesSummaryBucket> buckets = salesRollupService.summarize(locationId, bucketSize, from, to);
+            
+            long saleCount = 0;
+            long revenueMinor = 0;
+            long itemQuantityMilli = 0;
+            for (SalesSummaryBucket bucket : buckets) {
+                saleCount += bucket.saleCount();
+                revenueMinor += bucket.revenueMinor();
+                itemQuantityMilli += bucket.itemQuantityMilli();
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("locationId", locationId);
+            response.put("granularity", bucketSize);
+            response.put("from", from);
+            response.put("to", to);
+            response.put("buckets", buckets);
+            response.put("saleCount", saleCount);
+            response.put("revenue", FixedPoint.toDecimal(revenueMinor, FixedPoint.MONEY_SCALE));
+            response.put("itemQuantity", FixedPoint.toDecimal(itemQuantityMilli, FixedPoint.QUANTITY_SCALE));
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Regenerate the summary buckets from the sale tables
+     */
+    @PostMapping("/summary/rebuild")
+    public ResponseEntity<Map<RollupGranularity, Integer>> rebuildSalesSummary() {
+        return ResponseEntity.ok(salesRollupService.rebuild());
+    }
+
+    /**
+     * Line count, quantity and revenue of the sale lines in a range, grouped by any of
+     * product, location and hour (e.g. groupBy=product,hour), from the columnar analytics copy
+     */
+    @GetMapping("/analytics")
+    public ResponseEntity<Map<String, Object>> getSalesAnalytics(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Long locationId,
+            @RequestParam(required = false) List<String> groupBy,
+            @RequestParam(required = false) Boolean parallel) {
+
+        try {
+            EnumSet<AnalyticsDimension> dimensions = EnumSet.noneOf(AnalyticsDimension.class);
+            if (groupBy != null) {
+                groupBy.forEach(name -> dimensions.add(AnalyticsDimension.parse(name)));
+            }
+            long started = System.nanoTime();
+            List<SalesAnalyticsRow> rows = salesAnalyticsService.aggregate(from, to, locationId, dimensions, parallel);
+            long elapsedMicros = (System.nanoTime() - started) / 1000;
+
+            long lineCount = 0;
+            long quantityMilli = 0;
+            long revenue = 0;
+            for (SalesAnalyticsRow row : rows) {
+                lineCount += row.lineCount();
+                quantityMilli += row.quantityMilli();
+                revenue += row.revenue();
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("from", from);
+            response.put("to", to);
+            response.put("locationId", locationId);
+            response.put("groupBy", dimensions);
+            response.put("rows", rows);
+            response.put("lineCount", lineCount);
+            response.put("quantity", FixedPoint.toDecimal(quantityMilli, FixedPoint.QUANTITY_SCALE));
+            response.put("revenue", FixedPoint.toLineAmount(revenue));
+            response.put("elapsedMicros", elapsedMicros);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * Size of the columnar analytics copy
+     */
+    @GetMapping("/analytics/stats")
+    public ResponseEntity<Map<String, Object>> getSalesAnalyticsStats() {
+        return ResponseEntity.ok(salesAnalyticsService.getStats());
+    }
+
+    /**
+     * Live feed of created sales as Server-Sent Events ("sale" events carrying the sale, and
+     * "resync" when the client fell too far behind and should reload). Browsers resume from
+     * the Last-Event-ID header when they reconnect.
+     */
+    @GetMapping(value = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getLiveSales(
+            @RequestParam(required = false) Long locationId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return saleFeedService.subscribe(locationId, lastEventId);
+    }
+
+    /**
+     * Live feed statistics: subscribers, events published and sent, resyncs
+     */
+    @GetMapping("/live/stats")
+    public ResponseEntity<Map<String, Object>> getLiveSalesStats() {
+        return ResponseEntity.ok(saleFeedService.getStats());
+    }
+
     /**
      * Get sale by ID
      */
     @GetMapping("/{id}")
     public ResponseEntity<Sale> getSaleById(@PathVariable Long id) {
-        Optional<Sale> sale = posService.getSaleById(id);
+        // A sale accepted in write-behind mode is served from memory until it is committed
+        Optional<Sale> sale = saleWriteBehindService.findInFlight(id).or(() -> posService.getSaleById(id));
         return sale.map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     /**
-     * Create a new sale
+     * Create a new sale.
+     * In write-behind mode (pos.ingest.async.enabled) the sale is validated, numbered and
+     * queued, and the response is 202 with its id and invoice number; it can be read back
+     * from /api/sales/{id} straight away.
      */
     @PostMapping
-    public ResponseEntity<Sale> createSale(@RequestBody Sale sale) {
+    public ResponseEntity<?> createSale(@RequestBody Sale sale,
+                                        @RequestHeader(value = IdempotencyService.KEY_HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null && !IdempotencyService.isValidKey(idempotencyKey)) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("message", "Idempotency-Key must be 1 to " + IdempotencyService.MAX_KEY_LENGTH + " characters");
+            return ResponseEntity.badRequest().body(result);
+        }
+        // A retry with the same key gets the first response instead of creating the sale again
+        return idempotencyService.execute(IDEMPOTENCY_SCOPE, idempotencyKey, sale, () -> submitSale(sale, idempotencyKey));
+    }
+
+    private ResponseEntity<?> submitSale(Sale sale, String idempotencyKey) {
+        if (saleWriteBehindService.isEnabled()) {
+            // A sale the writers have to drop must not be replayed as accepted
+            Runnable onDropped = idempotencyKey != null ? () -> idempotencyService.evict(IDEMPOTENCY_SCOPE, idempotencyKey) : null;
+            Sale queuedSale = saleWriteBehindService.submit(sale, onDropped);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("id", queuedSale.getId());
+            response.put("posReference", queuedSale.getPosReference());
+            response.put("status", "ACCEPTED");
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/sales/" + queuedSale.getId()))
+                    .body(response);
+        }
+        
         Sale createdSale = posService.createSale(sale);
         return new ResponseEntity<>(createdSale, HttpStatus.CREATED);
     }
+
+    /**
+     * Idempotency-Key cache size, replays and coalesced duplicates
+     */
+    @GetMapping("/idempotency/stats")
+    public ResponseEntity<Map<String, Object>> getIdempotencyStats() {
+        return ResponseEntity.ok(idempotencyService.getStats());
+    }
+
+    /**
+     * Write-behind queue depth and throughput
+     */
+    @GetMapping("/ingest/stats")
+    public ResponseEntity<Map<String, Object>> getIngestStats() {
+        return ResponseEntity.ok(saleWriteBehindService.getStats());
+    }
+
+    /**
+     * Create many sales in one request, e.g. sales queued by a terminal while offline.
+     * Returns one result per submitted sale; 207 if any of them failed. A sale that fails
+     * validation (unknown location, incomplete lines) fails on its own and is reported in
+     * its result; 400 is for a batch that is malformed as a whole and 413 for one that is
+     * larger than pos.ingest.max-batch-size.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> createSales(@RequestBody List<Sale> sales) {
+        try {
+            SaleBatchResult result = saleBatchService.createSales(sales);
+            HttpStatus status = result.failed() == 0 ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+            return new ResponseEntity<>(result, status);
+        } catch (SaleBatchTooLargeException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", e.getMessage());
+            response.put("maxBatchSize", e.getMaxSize());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(response);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
 }
\ No newline at end of file
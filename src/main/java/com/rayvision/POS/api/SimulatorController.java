@@ -3,6 +3,7 @@ package com.rayvision.POS.api;
 import com.rayvision.POS.config.SimulatorConfig;
 import com.rayvision.POS.service.SalesSimulatorService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -32,6 +33,7 @@ public class SimulatorController {
         status.put("intervalMillis", config.getIntervalMillis());
         status.put("locationsEnabled", config.getLocations().isEnabled());
         status.put("locationCount", config.getLocations().getCount());
+        status.put("load", simulatorService.getLoadStatus());
         
         return ResponseEntity.ok(status);
     }
@@ -86,6 +88,68 @@ public class SimulatorController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Start load mode: sales at a target rate from many virtual-thread workers.
+     * Parameters override pos.simulator.load.* for this and later runs.
+     */
+    @PostMapping("/load/start")
+    public ResponseEntity<Map<String, Object>> startLoad(
+            @RequestParam(required = false) Integer targetSalesPerSecond,
+            @RequestParam(required = false) Integer concurrency,
+            @RequestParam(required = false) Boolean openLoop) {
+        try {
+            return ResponseEntity.ok(simulatorService.startLoad(targetSalesPerSecond, concurrency, openLoop));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
+    }
+
+    /**
+     * Stop load mode; the final figures stay available in /status
+     */
+    @PostMapping("/load/stop")
+    public ResponseEntity<Map<String, Object>> stopLoad() {
+        simulatorService.stopLoad();
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("load", simulatorService.getLoadStatus());
+        result.put("message", "Load mode stopped");
+        
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Latency percentiles (invoice generation, persistence, total) and throughput per location
+     * for the current or most recent load run. With openLoop, latency counts from each sale's
+     * intended start, so stalls are not hidden by the sales queued behind them.
+     */
+    @GetMapping("/report")
+    public ResponseEntity<Map<String, Object>> getReport() {
+        Map<String, Object> report = simulatorService.getLoadReport();
+        if (report == null) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("message", "Load mode has not run yet");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(result);
+        }
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * Return the report and start a new measurement window, e.g. after warm-up or between runs
+     */
+    @PostMapping("/report/reset")
+    public ResponseEntity<Map<String, Object>> resetReport() {
+        Map<String, Object> report = simulatorService.resetLoadReport();
+        if (report == null) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("message", "Load mode has not run yet");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(result);
+        }
+        return ResponseEntity.ok(report);
+    }
+
     /**
      * Manually generate a sale for a specific location
      */
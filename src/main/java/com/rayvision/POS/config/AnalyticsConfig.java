@@ -0,0 +1,62 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.analytics")
+public class AnalyticsConfig {
+
+    /**
+     * Whether the columnar copy of the sale lines is built and kept up to date
+     */
+    private boolean enabled = true;
+
+    /**
+     * Largest number of groups a single analytics query may need space for
+     */
+    private int maxGroups = 100000;
+
+    /**
+     * Queries that do not say whether to scan in parallel do so from this many lines
+     */
+    private int parallelMinRows = 262144;
+
+    /**
+     * Counters kept per pane of a top-sellers window; estimates are within the window's
+     * total quantity divided by this
+     */
+    private int leaderboardCounters = 100;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxGroups() {
+        return maxGroups;
+    }
+
+    public void setMaxGroups(int maxGroups) {
+        this.maxGroups = maxGroups;
+    }
+
+    public int getParallelMinRows() {
+        return parallelMinRows;
+    }
+
+    public void setParallelMinRows(int parallelMinRows) {
+        this.parallelMinRows = parallelMinRows;
+    }
+
+    public int getLeaderboardCounters() {
+        return leaderboardCounters;
+    }
+
+    public void setLeaderboardCounters(int leaderboardCounters) {
+        this.leaderboardCounters = leaderboardCounters;
+    }
+}
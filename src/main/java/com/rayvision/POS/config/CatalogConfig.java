@@ -0,0 +1,23 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.catalog")
+public class CatalogConfig {
+
+    /**
+     * Largest number of products kept in memory. Catalogs up to this size are cached
+     * whole; larger catalogs fall back to a least-recently-used cache of lookups by posCode.
+     */
+    private int maxSize = 10000;
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+}
@@ -2,9 +2,12 @@ package com.rayvision.POS.config;
 
 import com.rayvision.POS.domain.Location;
 import com.rayvision.POS.domain.Product;
+import com.rayvision.POS.event.LocationChangedEvent;
+import com.rayvision.POS.event.ProductCatalogChangedEvent;
 import com.rayvision.POS.repository.LocationRepository;
 import com.rayvision.POS.repository.ProductRepository;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -18,7 +21,8 @@ public class DataLoader {
     @Bean
     CommandLineRunner initDatabase(
             ProductRepository productRepository,
-            LocationRepository locationRepository) {
+            LocationRepository locationRepository,
+            ApplicationEventPublisher eventPublisher) {
         return args -> {
             // Initialize products if not exist
             if (productRepository.count() == 0) {
@@ -55,6 +59,7 @@ public class DataLoader {
                 }
                 
                 productRepository.saveAll(products);
+                eventPublisher.publishEvent(new ProductCatalogChangedEvent(null));
                 System.out.println("Sample products (POS1001-POS1020) have been initialized");
             }
             
@@ -81,6 +86,7 @@ public class DataLoader {
                 }
                 
                 locationRepository.saveAll(locations);
+                eventPublisher.publishEvent(new LocationChangedEvent(null));
                 System.out.println("50 sample locations have been initialized");
             }
         };
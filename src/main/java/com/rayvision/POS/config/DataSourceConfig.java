@@ -0,0 +1,67 @@
+package com.rayvision.POS.config;
+
+import com.rayvision.POS.datasource.ReadWriteRoutingDataSource;
+import com.rayvision.POS.datasource.ReadYourWritesFilter;
+import com.rayvision.POS.datasource.ReplicaLagGuard;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+
+/**
+ * Two connection pools, one for writes and one for read-only transactions, behind the single
+ * DataSource that JPA, Flyway and the JdbcTemplates use.
+ * <p>
+ * The primary pool is configured with the usual spring.datasource properties, the replica
+ * pool with pos.datasource.replica. Connections are fetched lazily, on a transaction's first
+ * statement, so the routing knows by then whether the transaction is read-only.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public HikariDataSource replicaDataSource(DataSourceProperties properties, ReplicaConfig config) {
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName("replica");
+        replica.setJdbcUrl(config.getUrl() != null ? config.getUrl() : properties.determineUrl());
+        replica.setUsername(config.getUsername() != null ? config.getUsername() : properties.determineUsername());
+        replica.setPassword(config.getPassword() != null ? config.getPassword() : properties.determinePassword());
+        replica.setMaximumPoolSize(config.getMaximumPoolSize());
+        replica.setConnectionTimeout(config.getConnectionTimeoutMillis());
+        replica.setReadOnly(true);
+        return replica;
+    }
+
+    @Bean
+    public ReplicaLagGuard replicaLagGuard(HikariDataSource primaryDataSource, HikariDataSource replicaDataSource,
+                                           ReplicaConfig config, ObjectProvider<Clock> clock) {
+        return new ReplicaLagGuard(primaryDataSource, replicaDataSource, config, clock.getIfAvailable(Clock::systemUTC));
+    }
+
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(ReplicaLagGuard replicaLagGuard, ReplicaConfig config) {
+        return new ReadYourWritesFilter(replicaLagGuard, config);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, HikariDataSource replicaDataSource,
+                                 ReplicaLagGuard replicaLagGuard) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primaryDataSource, replicaDataSource, replicaLagGuard);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
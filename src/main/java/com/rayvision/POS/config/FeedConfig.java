@@ -0,0 +1,62 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.feed")
+public class FeedConfig {
+
+    /**
+     * Number of recent sales kept so a reconnecting subscriber can resume from its Last-Event-ID
+     */
+    private int historySize = 1000;
+
+    /**
+     * Most sales waiting to be sent to one subscriber; when a slow subscriber overflows, its
+     * backlog is replaced by a single resync event
+     */
+    private int subscriberBufferSize = 256;
+
+    /**
+     * How often an idle subscriber is sent a keep-alive comment, which also detects closed connections
+     */
+    private long heartbeatMillis = 15000;
+
+    /**
+     * How long one live feed connection lasts before the browser has to reconnect
+     */
+    private long timeoutMillis = 1800000;
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    public void setHistorySize(int historySize) {
+        this.historySize = historySize;
+    }
+
+    public int getSubscriberBufferSize() {
+        return subscriberBufferSize;
+    }
+
+    public void setSubscriberBufferSize(int subscriberBufferSize) {
+        this.subscriberBufferSize = subscriberBufferSize;
+    }
+
+    public long getHeartbeatMillis() {
+        return heartbeatMillis;
+    }
+
+    public void setHeartbeatMillis(long heartbeatMillis) {
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+}
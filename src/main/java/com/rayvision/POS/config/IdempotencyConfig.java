@@ -0,0 +1,63 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.idempotency")
+public class IdempotencyConfig {
+
+    /**
+     * Most Idempotency-Key responses held in memory; older ones are still answered from the
+     * idempotency_key table
+     */
+    private int maxEntries = 10000;
+
+    /**
+     * How long a key's response is replayed, in memory and in the table
+     */
+    private long ttlMillis = 86400000;
+
+    /**
+     * How long a duplicate waits for the original request with the same key to finish before
+     * it is answered 409
+     */
+    private long waitTimeoutMillis = 10000;
+
+    /**
+     * How often expired keys are deleted from memory and from the table
+     */
+    private long purgeIntervalMillis = 60000;
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getWaitTimeoutMillis() {
+        return waitTimeoutMillis;
+    }
+
+    public void setWaitTimeoutMillis(long waitTimeoutMillis) {
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
+    public long getPurgeIntervalMillis() {
+        return purgeIntervalMillis;
+    }
+
+    public void setPurgeIntervalMillis(long purgeIntervalMillis) {
+        this.purgeIntervalMillis = purgeIntervalMillis;
+    }
+}
@@ -0,0 +1,75 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.import")
+public class ImportConfig {
+
+    /**
+     * Number of threads parsing and loading chunks, each holding a primary connection while
+     * it loads; 0 for one per processor
+     */
+    private int threads = 0;
+
+    /**
+     * Input records (CSV rows or NDJSON lines) per chunk; a chunk is loaded in one transaction
+     */
+    private int chunkSize = 5000;
+
+    /**
+     * How often a running import logs its progress
+     */
+    private long progressLogIntervalMillis = 5000;
+
+    /**
+     * Most rejected records described in an import's report; the rest are only counted
+     */
+    private int maxErrors = 100;
+
+    /**
+     * Number of finished imports kept for GET /api/admin/import
+     */
+    private int historySize = 10;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public long getProgressLogIntervalMillis() {
+        return progressLogIntervalMillis;
+    }
+
+    public void setProgressLogIntervalMillis(long progressLogIntervalMillis) {
+        this.progressLogIntervalMillis = progressLogIntervalMillis;
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    public void setMaxErrors(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    public void setHistorySize(int historySize) {
+        this.historySize = historySize;
+    }
+}
@@ -0,0 +1,115 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.ingest")
+public class IngestConfig {
+
+    /**
+     * Number of sales persisted per transaction by the batch endpoint
+     */
+    private int chunkSize = 500;
+
+    /**
+     * Largest number of sales accepted in a single batch request
+     */
+    private int maxBatchSize = 5000;
+
+    /**
+     * Write-behind mode for single sales posted to /api/sales
+     */
+    private Async async = new Async();
+
+    public static class Async {
+        /**
+         * Whether POST /api/sales queues sales and answers 202 instead of persisting them first
+         */
+        private boolean enabled = false;
+
+        /**
+         * Most sales waiting to be written; further sales are refused with 503 until writers catch up
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * Number of background writer threads
+         */
+        private int writerThreads = 2;
+
+        /**
+         * Most sales a writer persists in one transaction
+         */
+        private int batchSize = 500;
+
+        /**
+         * How long a request waits for room in a full queue before it is refused
+         */
+        private long enqueueTimeoutMillis = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getWriterThreads() {
+            return writerThreads;
+        }
+
+        public void setWriterThreads(int writerThreads) {
+            this.writerThreads = writerThreads;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getEnqueueTimeoutMillis() {
+            return enqueueTimeoutMillis;
+        }
+
+        public void setEnqueueTimeoutMillis(long enqueueTimeoutMillis) {
+            this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        }
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public Async getAsync() {
+        return async;
+    }
+
+    public void setAsync(Async async) {
+        this.async = async;
+    }
+}
@@ -0,0 +1,49 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.inventory")
+public class InventoryConfig {
+
+    /**
+     * How often stock changes held in memory are written to the location_stock table
+     */
+    private long flushIntervalMillis = 1000;
+
+    /**
+     * Whether to reject sales that would take a product's stock at their location below zero
+     */
+    private boolean rejectNegative = false;
+
+    /**
+     * Whether to recompute sold quantities from the sale tables when the application starts,
+     * recovering stock changes that were committed but not yet flushed
+     */
+    private boolean reconcileOnStartup = true;
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public boolean isRejectNegative() {
+        return rejectNegative;
+    }
+
+    public void setRejectNegative(boolean rejectNegative) {
+        this.rejectNegative = rejectNegative;
+    }
+
+    public boolean isReconcileOnStartup() {
+        return reconcileOnStartup;
+    }
+
+    public void setReconcileOnStartup(boolean reconcileOnStartup) {
+        this.reconcileOnStartup = reconcileOnStartup;
+    }
+}
@@ -0,0 +1,23 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.invoice")
+public class InvoiceConfig {
+
+    /**
+     * How many invoice numbers to reserve per location in one database round trip.
+     * Unused numbers of a block are skipped after a restart.
+     */
+    private int blockSize = 100;
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+}
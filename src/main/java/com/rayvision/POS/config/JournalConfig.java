@@ -0,0 +1,117 @@
+package com.rayvision.POS.config;
+
+import com.rayvision.POS.journal.FsyncPolicy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.journal")
+public class JournalConfig {
+
+    /**
+     * Whether accepted sales are written to the journal and replayed from it on startup
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory holding the journal segment files
+     */
+    private String directory = "data/journal";
+
+    /**
+     * Size each segment file is preallocated to before a new one is started
+     */
+    private int segmentSizeBytes = 64 * 1024 * 1024;
+
+    /**
+     * When appended sales are forced to disk: PER_RECORD, GROUP_COMMIT or INTERVAL
+     */
+    private FsyncPolicy fsync = FsyncPolicy.GROUP_COMMIT;
+
+    /**
+     * How often the journal is forced to disk under the INTERVAL policy
+     */
+    private long fsyncIntervalMillis = 100;
+
+    /**
+     * Whether compaction deletes segments whose sales are all persisted instead of rewriting
+     * them; only safe when the database itself survives a restart
+     */
+    private boolean deletePersistedSegments = false;
+
+    /**
+     * Sales older than this many days are left out when segments are compacted, so the journal
+     * and startup replay stop growing; after a restart of the in-memory database older sales
+     * are gone. 0 keeps every sale.
+     */
+    private int retentionDays = 92;
+
+    /**
+     * How often the segments whose sales are all persisted are compacted
+     */
+    private long compactIntervalMillis = 3600000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getSegmentSizeBytes() {
+        return segmentSizeBytes;
+    }
+
+    public void setSegmentSizeBytes(int segmentSizeBytes) {
+        this.segmentSizeBytes = segmentSizeBytes;
+    }
+
+    public FsyncPolicy getFsync() {
+        return fsync;
+    }
+
+    public void setFsync(FsyncPolicy fsync) {
+        this.fsync = fsync;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+
+    public void setFsyncIntervalMillis(long fsyncIntervalMillis) {
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    public boolean isDeletePersistedSegments() {
+        return deletePersistedSegments;
+    }
+
+    public void setDeletePersistedSegments(boolean deletePersistedSegments) {
+        this.deletePersistedSegments = deletePersistedSegments;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public void setRetentionDays(int retentionDays) {
+        this.retentionDays = retentionDays;
+    }
+
+    public long getCompactIntervalMillis() {
+        return compactIntervalMillis;
+    }
+
+    public void setCompactIntervalMillis(long compactIntervalMillis) {
+        this.compactIntervalMillis = compactIntervalMillis;
+    }
+}
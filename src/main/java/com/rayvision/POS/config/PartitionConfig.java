@@ -0,0 +1,63 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.partition")
+public class PartitionConfig {
+
+    /**
+     * Move closed months out of the sale table into monthly partitions on a schedule;
+     * POST /api/admin/partitions/seal works either way
+     */
+    private boolean autoSealEnabled = false;
+
+    /**
+     * How often closed months are sealed when auto sealing is on
+     */
+    private long sealIntervalMillis = 3600000;
+
+    /**
+     * Months kept in the sale table, the current one included; older months can be sealed.
+     * At least 1; late sales for a sealed month land in the sale table until the next seal.
+     */
+    private int openMonths = 2;
+
+    /**
+     * Sales moved from the sale table to a partition per transaction while sealing
+     */
+    private int batchSize = 5000;
+
+    public boolean isAutoSealEnabled() {
+        return autoSealEnabled;
+    }
+
+    public void setAutoSealEnabled(boolean autoSealEnabled) {
+        this.autoSealEnabled = autoSealEnabled;
+    }
+
+    public long getSealIntervalMillis() {
+        return sealIntervalMillis;
+    }
+
+    public void setSealIntervalMillis(long sealIntervalMillis) {
+        this.sealIntervalMillis = sealIntervalMillis;
+    }
+
+    public int getOpenMonths() {
+        return openMonths;
+    }
+
+    public void setOpenMonths(int openMonths) {
+        this.openMonths = openMonths;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
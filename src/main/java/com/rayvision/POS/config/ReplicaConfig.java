@@ -0,0 +1,109 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.datasource.replica")
+public class ReplicaConfig {
+
+    /**
+     * Send read-only transactions to the replica; when off everything uses the primary. Off by
+     * default, since H2 has no replication: only turn it on with a url pointing at a real replica
+     */
+    private boolean enabled = false;
+
+    /**
+     * JDBC URL of the replica; defaults to spring.datasource.url, which gives reads their own
+     * pool on the same database
+     */
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    /**
+     * Connections in the replica pool, separate from spring.datasource.hikari.maximum-pool-size
+     */
+    private int maximumPoolSize = 10;
+
+    /**
+     * How long a read waits for a replica connection before failing
+     */
+    private long connectionTimeoutMillis = 30000;
+
+    /**
+     * Reads go to the primary while the replica is further behind than this
+     */
+    private long maxLagMillis = 5000;
+
+    /**
+     * How often a heartbeat is written to the primary and looked for on the replica to measure its lag
+     */
+    private long heartbeatMillis = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    public long getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    public void setConnectionTimeoutMillis(long connectionTimeoutMillis) {
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    public void setMaxLagMillis(long maxLagMillis) {
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    public long getHeartbeatMillis() {
+        return heartbeatMillis;
+    }
+
+    public void setHeartbeatMillis(long heartbeatMillis) {
+        this.heartbeatMillis = heartbeatMillis;
+    }
+}
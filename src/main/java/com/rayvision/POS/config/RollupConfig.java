@@ -0,0 +1,35 @@
+package com.rayvision.POS.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "pos.rollup")
+public class RollupConfig {
+
+    /**
+     * How often rollup updates held in memory are written to the rollup table
+     */
+    private long flushIntervalMillis = 1000;
+
+    /**
+     * Largest number of buckets a single summary request may cover
+     */
+    private int maxBuckets = 10000;
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public int getMaxBuckets() {
+        return maxBuckets;
+    }
+
+    public void setMaxBuckets(int maxBuckets) {
+        this.maxBuckets = maxBuckets;
+    }
+}
@@ -0,0 +1,90 @@
+package com.rayvision.POS.config;
+
+import com.rayvision.POS.importer.SaleImportFormat;
+import com.rayvision.POS.service.SaleImportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Imports sale files named on the command line once the application has started:
+ * <pre>
+ * java -jar pos.jar --import=sales-2023.csv --import=sales-2024.ndjson.gz [--import-format=csv] [--import-exit]
+ * </pre>
+ * The format follows the file extension unless --import-format is given, and .gz files are
+ * unpacked. With --import-exit the application stops afterwards, with exit code 1 if any
+ * sale could not be imported, so it can be used as a migration step.
+ */
+@Component
+public class SaleImportRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SaleImportRunner.class);
+
+    static final String IMPORT_OPTION = "import";
+    static final String FORMAT_OPTION = "import-format";
+    static final String EXIT_OPTION = "import-exit";
+
+    private final SaleImportService saleImportService;
+    private final ApplicationArguments arguments;
+    private final ApplicationContext context;
+
+    public SaleImportRunner(SaleImportService saleImportService, ApplicationArguments arguments, ApplicationContext context) {
+        this.saleImportService = saleImportService;
+        this.arguments = arguments;
+        this.context = context;
+    }
+
+    // After every CommandLineRunner, so the products and locations of DataLoader exist
+    @EventListener(ApplicationReadyEvent.class)
+    public void importOnStartup() {
+        List<String> files = arguments.getOptionValues(IMPORT_OPTION);
+        if (files == null || files.isEmpty()) {
+            return;
+        }
+        boolean clean = true;
+        for (String file : files) {
+            clean &= importFile(Path.of(file));
+        }
+        if (arguments.containsOption(EXIT_OPTION)) {
+            int exitCode = clean ? 0 : 1;
+            System.exit(SpringApplication.exit(context, () -> exitCode));
+        }
+    }
+
+    private boolean importFile(Path file) {
+        try {
+            List<String> formats = arguments.getOptionValues(FORMAT_OPTION);
+            SaleImportFormat format = formats != null && !formats.isEmpty()
+                    ? SaleImportFormat.fromName(formats.get(0))
+                    : SaleImportFormat.fromFileName(file.getFileName().toString());
+            Map<String, Object> report;
+            try (InputStream in = open(file)) {
+                report = saleImportService.importSales(in, format, file.toString());
+            }
+            logger.info("Import of {} finished: {}", file, report);
+            return SaleImportService.COMPLETED.equals(report.get("status"))
+                    && ((Long) report.get("salesRejected")) == 0 && ((Long) report.get("recordsFailed")) == 0;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Could not import {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+}
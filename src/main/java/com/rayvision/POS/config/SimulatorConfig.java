@@ -22,6 +22,11 @@ public class SimulatorConfig {
      */
     private Locations locations = new Locations();
     
+    /**
+     * Configuration for the high-throughput load mode
+     */
+    private Load load = new Load();
+    
     public static class Locations {
         /**
          * Whether to enable multi-location sales simulation
@@ -50,6 +55,74 @@ public class SimulatorConfig {
         }
     }
 
+    public static class Load {
+        /**
+         * Whether load mode starts with the application
+         */
+        private boolean enabled = false;
+        
+        /**
+         * Sales per second the load mode tries to sustain across all locations
+         */
+        private int targetSalesPerSecond = 1000;
+        
+        /**
+         * Number of virtual-thread workers, i.e. the most sales in flight at once
+         */
+        private int concurrency = 64;
+        
+        /**
+         * Number of locations to spread the load over; 0 uses every location
+         */
+        private int locationCount = 0;
+        
+        /**
+         * Start each sale at its scheduled time whether or not earlier ones have finished,
+         * and measure latency from that time, instead of a fixed set of workers sending in turn
+         */
+        private boolean openLoop = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTargetSalesPerSecond() {
+            return targetSalesPerSecond;
+        }
+
+        public void setTargetSalesPerSecond(int targetSalesPerSecond) {
+            this.targetSalesPerSecond = targetSalesPerSecond;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public int getLocationCount() {
+            return locationCount;
+        }
+
+        public void setLocationCount(int locationCount) {
+            this.locationCount = locationCount;
+        }
+
+        public boolean isOpenLoop() {
+            return openLoop;
+        }
+
+        public void setOpenLoop(boolean openLoop) {
+            this.openLoop = openLoop;
+        }
+    }
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -73,4 +146,12 @@ public class SimulatorConfig {
     public void setLocations(Locations locations) {
         this.locations = locations;
     }
+    
+    public Load getLoad() {
+        return load;
+    }
+    
+    public void setLoad(Load load) {
+        this.load = load;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.rayvision.POS.datasource;
+
+import com.rayvision.POS.config.ReplicaConfig;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Carries the time of a client's last write from one request to the next in the
+ * {@value #LAST_WRITE_COOKIE} cookie, so the {@link ReplicaLagGuard} keeps the client's reads
+ * on the primary until the replica has its writes, whichever thread serves the request.
+ * <p>
+ * The cookie lives for pos.datasource.replica.max-lag-millis: after that the replica either
+ * has the write or is too far behind to be read at all. Clients that drop cookies read their
+ * own writes only within a request. Sales queued by the write-behind ingest are written on
+ * the writer threads, not for the client, so they set no cookie.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String LAST_WRITE_COOKIE = "pos-last-write";
+
+    private final ReplicaLagGuard guard;
+    private final ReplicaConfig config;
+
+    public ReadYourWritesFilter(ReplicaLagGuard guard, ReplicaConfig config) {
+        this.guard = guard;
+        this.config = config;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        // Writes commit inside the handler, before the response is committed, so the cookie can still be added
+        guard.actFor(lastWriteMillis(request), millis -> response.addCookie(lastWriteCookie(millis)));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            guard.clientDone();
+        }
+    }
+
+    private Cookie lastWriteCookie(long millis) {
+        Cookie cookie = new Cookie(LAST_WRITE_COOKIE, Long.toString(millis));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.max(1, (config.getMaxLagMillis() + 999) / 1000));
+        return cookie;
+    }
+
+    private static long lastWriteMillis(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                    try {
+                        return Long.parseLong(cookie.getValue());
+                    } catch (NumberFormatException e) {
+                        return Long.MIN_VALUE;
+                    }
+                }
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+}
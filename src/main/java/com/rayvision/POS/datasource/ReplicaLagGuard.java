@@ -0,0 +1,182 @@
+package com.rayvision.POS.datasource;
+
+import com.rayvision.POS.config.ReplicaConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Decides whether a read-only transaction may use the replica.
+ * <p>
+ * A heartbeat holding the current time is written to the primary every
+ * pos.datasource.replica.heartbeat-millis and read back from the replica. The newest
+ * heartbeat the replica has tells how far behind it is, and that every write committed
+ * before that heartbeat is on the replica too. Reads stay on the primary while the replica is
+ * unreachable or more than pos.datasource.replica.max-lag-millis behind.
+ * <p>
+ * Reads also stay on the primary until the replica has caught up with the last write of
+ * whoever is reading, so they see their own writes. For HTTP requests that is the client:
+ * {@link ReadYourWritesFilter} tells the guard when the client last wrote, whichever pooled
+ * thread serves its request. Work outside of requests, e.g. the write-behind writers, is
+ * tracked per thread.
+ */
+public class ReplicaLagGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagGuard.class);
+
+    private static final String WRITE_HEARTBEAT_SQL = "MERGE INTO replica_heartbeat KEY (id) VALUES (1, ?)";
+    private static final String READ_HEARTBEAT_SQL = "SELECT written_at_millis FROM replica_heartbeat WHERE id = 1";
+
+    private final HikariDataSource primary;
+    private final HikariDataSource replica;
+    private final JdbcTemplate primaryJdbc;
+    private final JdbcTemplate replicaJdbc;
+    private final ReplicaConfig config;
+    private final Clock clock;
+
+    // The last write of the client this thread serves, or of the thread itself outside of requests
+    private final ThreadLocal<long[]> lastWriteMillis = ThreadLocal.withInitial(() -> new long[]{Long.MIN_VALUE});
+    private final ThreadLocal<LongConsumer> writeListener = new ThreadLocal<>();
+    // Every write committed before this time is on the replica; nothing is known until the first heartbeat
+    private volatile long replicaCaughtUpTo = Long.MIN_VALUE;
+    private volatile long lagMillis = -1;
+    private volatile boolean replicaReachable;
+
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder laggingReads = new LongAdder();
+    private final LongAdder ownWriteReads = new LongAdder();
+
+    public ReplicaLagGuard(HikariDataSource primary, HikariDataSource replica, ReplicaConfig config, Clock clock) {
+        this.primary = primary;
+        this.replica = replica;
+        this.primaryJdbc = new JdbcTemplate(primary);
+        this.replicaJdbc = new JdbcTemplate(replica);
+        this.config = config;
+        this.clock = clock;
+    }
+
+    /**
+     * Serve a client on this thread until {@link #clientDone()}
+     *
+     * @param clientLastWriteMillis When the client's last write committed, Long.MIN_VALUE if unknown
+     * @param onWrite               Told the commit time of every write made for the client
+     */
+    public void actFor(long clientLastWriteMillis, LongConsumer onWrite) {
+        lastWriteMillis.get()[0] = clientLastWriteMillis;
+        writeListener.set(onWrite);
+    }
+
+    /**
+     * Stop serving the client, so the next one on this pooled thread does not inherit its writes
+     */
+    public void clientDone() {
+        lastWriteMillis.remove();
+        writeListener.remove();
+    }
+
+    /**
+     * Whether the read-only transaction starting on this thread may use the replica
+     */
+    public boolean routeRead() {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        long caughtUpTo = replicaCaughtUpTo;
+        if (!replicaReachable || lagMillis > config.getMaxLagMillis()) {
+            laggingReads.increment();
+            return false;
+        }
+        if (lastWriteMillis.get()[0] >= caughtUpTo) {
+            ownWriteReads.increment();
+            return false;
+        }
+        replicaReads.increment();
+        return true;
+    }
+
+    /**
+     * Called after this thread commits a write transaction
+     */
+    public void committedWrite() {
+        long now = clock.millis();
+        lastWriteMillis.get()[0] = now;
+        LongConsumer listener = writeListener.get();
+        if (listener != null) {
+            listener.accept(now);
+        }
+    }
+
+    /**
+     * Write a heartbeat to the primary and measure the replica against the last one it has
+     */
+    @Scheduled(fixedDelayString = "${pos.datasource.replica.heartbeat-millis:1000}")
+    public void heartbeat() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        long now = clock.millis();
+        try {
+            primaryJdbc.update(WRITE_HEARTBEAT_SQL, now);
+        } catch (DataAccessException e) {
+            logger.warn("Failed to write the replica heartbeat: {}", e.getMessage());
+            return;
+        }
+        try {
+            List<Long> seen = replicaJdbc.queryForList(READ_HEARTBEAT_SQL, Long.class);
+            if (seen.isEmpty()) {
+                replicaReachable = false;
+                return;
+            }
+            // The time the replica's heartbeat was written, not the time it was read, so work before it is covered
+            replicaCaughtUpTo = seen.get(0);
+            lagMillis = Math.max(0, now - seen.get(0));
+            if (!replicaReachable) {
+                logger.info("Replica is reachable, {} ms behind; read-only transactions use it", lagMillis);
+            }
+            replicaReachable = true;
+        } catch (DataAccessException e) {
+            if (replicaReachable) {
+                logger.warn("Replica is unreachable, reads go to the primary: {}", e.getMessage());
+            }
+            replicaReachable = false;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("replicaEnabled", config.isEnabled());
+        stats.put("replicaReachable", replicaReachable);
+        stats.put("lagMillis", lagMillis);
+        stats.put("maxLagMillis", config.getMaxLagMillis());
+        stats.put("replicaReads", replicaReads.sum());
+        stats.put("primaryReadsWhileLagging", laggingReads.sum());
+        stats.put("primaryReadsAfterOwnWrite", ownWriteReads.sum());
+        stats.put("primaryPool", poolStats(primary));
+        stats.put("replicaPool", poolStats(replica));
+        return stats;
+    }
+
+    private static Map<String, Object> poolStats(HikariDataSource pool) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maximumPoolSize", pool.getMaximumPoolSize());
+        HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+        // Null until the pool has handed out its first connection
+        if (bean != null) {
+            stats.put("active", bean.getActiveConnections());
+            stats.put("idle", bean.getIdleConnections());
+            stats.put("waiting", bean.getThreadsAwaitingConnection());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,189 @@
+package com.rayvision.POS.domain;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point amounts as plain longs: money in minor units (cents) and quantities in
+ * thousandths. Sums of them are exact and need no objects.
+ * <p>
+ * {@link #UNSET} stands for a value that was never given, where the entities used to hold
+ * null. The Jackson codecs below read and write the amounts as decimal JSON numbers, so the
+ * API shape is unchanged: 12.5 in JSON is 1250 minor units.
+ */
+public final class FixedPoint {
+
+    /** Digits after the decimal point of money amounts */
+    public static final int MONEY_SCALE = 2;
+    /** Digits after the decimal point of quantities */
+    public static final int QUANTITY_SCALE = 3;
+
+    /** Digits after the decimal point of a quantity times a unit price before it is rounded to a minor unit */
+    public static final int LINE_AMOUNT_SCALE = MONEY_SCALE + QUANTITY_SCALE;
+
+    public static final long MINOR_UNITS = 100;
+    public static final long QUANTITY_UNITS = 1000;
+
+    /** Marks a value that was not provided */
+    public static final long UNSET = Long.MIN_VALUE;
+
+    private FixedPoint() {
+    }
+
+    public static boolean isSet(long value) {
+        return value != UNSET;
+    }
+
+    /**
+     * Price of a quantity at a unit price, rounded half up to a minor unit
+     *
+     * @throws ArithmeticException if the product does not fit in a long
+     */
+    public static long extended(long quantityThousandths, long unitPriceMinor) {
+        long thousandths = Math.multiplyExact(quantityThousandths, unitPriceMinor);
+        return Math.floorDiv(thousandths + QUANTITY_UNITS / 2, QUANTITY_UNITS);
+    }
+
+    /**
+     * A decimal amount in units of the given scale, rounded half up
+     *
+     * @throws ArithmeticException if it does not fit in a long
+     */
+    public static long fromDecimal(BigDecimal value, int scale) {
+        return value.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * A double in units of the given scale, read as its shortest decimal form so 0.1 is exactly 10 cents
+     */
+    public static long fromDouble(double value, int scale) {
+        return fromDecimal(BigDecimal.valueOf(value), scale);
+    }
+
+    public static BigDecimal toDecimal(long value, int scale) {
+        return BigDecimal.valueOf(value, scale);
+    }
+
+    /**
+     * An unrounded line amount ({@link #LINE_AMOUNT_SCALE}) as a decimal with the digits it
+     * needs, but at least those of money: 16.5 is 16.50 and 0.00125 stays as it is
+     */
+    public static BigDecimal toLineAmount(long value) {
+        BigDecimal amount = toDecimal(value, LINE_AMOUNT_SCALE).stripTrailingZeros();
+        return amount.scale() < MONEY_SCALE ? amount.setScale(MONEY_SCALE) : amount;
+    }
+
+    /**
+     * For reporting paths that still work in doubles; the nearest double to the exact amount
+     */
+    public static double toDouble(long value, int scale) {
+        return scale == MONEY_SCALE ? (double) value / MINOR_UNITS
+                : scale == QUANTITY_SCALE ? (double) value / QUANTITY_UNITS
+                : toDecimal(value, scale).doubleValue();
+    }
+
+    /**
+     * Writes a fixed-point long as a decimal JSON number, or null when unset
+     */
+    public abstract static class Serializer extends StdSerializer<Long> {
+        private final int scale;
+
+        protected Serializer(int scale) {
+            super(Long.class);
+            this.scale = scale;
+        }
+
+        @Override
+        public void serialize(Long value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            if (value == null || value == UNSET) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(toDecimal(value, scale));
+            }
+        }
+    }
+
+    /**
+     * Reads a decimal JSON number (or numeric string) into a fixed-point long; null becomes unset
+     */
+    public abstract static class Deserializer extends StdDeserializer<Long> {
+        private final int scale;
+
+        protected Deserializer(int scale) {
+            super(Long.class);
+            this.scale = scale;
+        }
+
+        @Override
+        public Long deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken token = p.currentToken();
+            try {
+                if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                    return fromDecimal(p.getDecimalValue(), scale);
+                }
+                if (token == JsonToken.VALUE_STRING) {
+                    return fromDecimal(new BigDecimal(p.getText().trim()), scale);
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                return (Long) ctxt.handleWeirdStringValue(Long.class, p.getText(), "not a decimal amount in range");
+            }
+            return (Long) ctxt.handleUnexpectedToken(Long.class, p);
+        }
+
+        @Override
+        public Long getNullValue(DeserializationContext ctxt) {
+            return UNSET;
+        }
+    }
+
+    public static final class MoneySerializer extends Serializer {
+        public MoneySerializer() {
+            super(MONEY_SCALE);
+        }
+    }
+
+    public static final class MoneyDeserializer extends Deserializer {
+        public MoneyDeserializer() {
+            super(MONEY_SCALE);
+        }
+    }
+
+    public static final class QuantitySerializer extends Serializer {
+        public QuantitySerializer() {
+            super(QUANTITY_SCALE);
+        }
+    }
+
+    /**
+     * Writes an unrounded line amount ({@link #LINE_AMOUNT_SCALE}) with at least the digits of money
+     */
+    public static final class LineAmountSerializer extends Serializer {
+        public LineAmountSerializer() {
+            super(LINE_AMOUNT_SCALE);
+        }
+
+        @Override
+        public void serialize(Long value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            if (value == null || value == UNSET) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(toLineAmount(value));
+            }
+        }
+    }
+
+    public static final class QuantityDeserializer extends Deserializer {
+        public QuantityDeserializer() {
+            super(QUANTITY_SCALE);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.rayvision.POS.domain;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * High-water mark of the invoice numbers reserved for a location.
+ * Numbers are handed out in memory from blocks reserved here, so a row is
+ * only touched once per block rather than once per sale.
+ */
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class InvoiceSequence {
+    @Id
+    private Long locationId;
+
+    // Highest invoice number reserved so far; nothing above it has been handed out
+    private Long reservedThrough;
+}
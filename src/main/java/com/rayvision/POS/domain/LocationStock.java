@@ -0,0 +1,50 @@
+package com.rayvision.POS.domain;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Stock of one product at one location. Rows are written in batches from the
+ * in-memory inventory ledger; the sold quantity can be recomputed from the sale tables.
+ */
+@Entity
+@IdClass(LocationStock.Key.class)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LocationStock {
+    @Id
+    private Long locationId;
+
+    @Id
+    private String posCode;
+
+    // Opening stock plus deliveries, in thousandths; "receivedQuantity" in JSON
+    @JsonProperty("receivedQuantity")
+    @JsonSerialize(using = FixedPoint.QuantitySerializer.class)
+    private long receivedQuantityMilli;
+
+    // Sum of sale line quantities, in thousandths; "soldQuantity" in JSON
+    @JsonProperty("soldQuantity")
+    @JsonSerialize(using = FixedPoint.QuantitySerializer.class)
+    private long soldQuantityMilli;
+
+    @JsonProperty("onHand")
+    @JsonSerialize(using = FixedPoint.QuantitySerializer.class)
+    public long getOnHandMilli() {
+        return receivedQuantityMilli - soldQuantityMilli;
+    }
+
+    public record Key(Long locationId, String posCode) implements Serializable {
+    }
+}
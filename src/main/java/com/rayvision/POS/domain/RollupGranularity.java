@@ -0,0 +1,42 @@
+package com.rayvision.POS.domain;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Bucket sizes kept by the sales rollups
+ */
+public enum RollupGranularity {
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    RollupGranularity(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * Start of the bucket the given time falls into
+     */
+    public LocalDateTime bucketStart(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    /**
+     * Number of buckets needed to cover [from, to]
+     */
+    public long bucketsBetween(LocalDateTime from, LocalDateTime to) {
+        return unit.between(bucketStart(from), bucketStart(to)) + 1;
+    }
+
+    /**
+     * Parse a granularity name case-insensitively
+     *
+     * @throws IllegalArgumentException for unknown names
+     */
+    public static RollupGranularity parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -1,6 +1,9 @@
 package com.rayvision.POS.domain;
 
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -9,13 +12,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_sale_location_date", columnList = "location_id, sale_date_time"),
+        @Index(name = "idx_sale_date", columnList = "sale_date_time"),
+        @Index(name = "idx_sale_location_reference", columnList = "location_id, pos_reference"),
+        @Index(name = "ux_sale_pos_reference", columnList = "pos_reference", unique = true)
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 public class Sale {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sale_seq")
+    @SequenceGenerator(name = "sale_seq", sequenceName = "sale_seq", allocationSize = 50) // pooled ids so inserts can be JDBC-batched
     private Long id;
 
     private LocalDateTime saleDateTime;   // date/time of the sale
@@ -26,19 +36,23 @@ public class Sale {
     @JsonManagedReference
     private List<SaleLine> lines = new ArrayList<>();
     
-    // Calculated total for the sale
-    private Double total;
-    
-    // Helper method to calculate the total
+    // Calculated total for the sale in cents; "total" in JSON
+    @JsonProperty("total")
+    @JsonSerialize(using = FixedPoint.MoneySerializer.class)
+    @JsonDeserialize(using = FixedPoint.MoneyDeserializer.class)
+    private long totalMinor;
+
+    // Helper method to calculate the total: the sum of the rounded line amounts, exact and without boxing
     @PrePersist
     @PreUpdate
     public void calculateTotal() {
-        if (lines != null && !lines.isEmpty()) {
-            total = lines.stream()
-                .mapToDouble(line -> line.getQuantity() * line.getUnitPrice())
-                .sum();
-        } else {
-            total = 0.0;
+        long sum = 0;
+        if (lines != null) {
+            for (int i = 0, n = lines.size(); i < n; i++) {
+                SaleLine line = lines.get(i);
+                sum = Math.addExact(sum, FixedPoint.extended(line.getQuantityMilli(), line.getUnitPriceMinor()));
+            }
         }
+        totalMinor = sum;
     }
 }
@@ -1,6 +1,9 @@
 package com.rayvision.POS.domain;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -8,22 +11,40 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
+@Table(indexes = @Index(name = "idx_sale_line_sale", columnList = "sale_id"))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 public class SaleLine {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sale_line_seq")
+    @SequenceGenerator(name = "sale_line_seq", sequenceName = "sale_line_seq", allocationSize = 50) // pooled ids so inserts can be JDBC-batched
     private Long id;
 
     private String posCode;
     private String menuItemName;  // Changed from itemName to menuItemName to match API
-    private Double quantity;
-    private Double unitPrice;     // Changed from price to unitPrice to match API
-    
-    // Extended price (quantity * unitPrice)
-    private Double extended;
+
+    // Thousandths of a unit; "quantity" in JSON
+    @JsonProperty("quantity")
+    @JsonSerialize(using = FixedPoint.QuantitySerializer.class)
+    @JsonDeserialize(using = FixedPoint.QuantityDeserializer.class)
+    @Builder.Default
+    private long quantityMilli = FixedPoint.UNSET;
+
+    // Cents; "unitPrice" in JSON
+    @JsonProperty("unitPrice")
+    @JsonSerialize(using = FixedPoint.MoneySerializer.class)
+    @JsonDeserialize(using = FixedPoint.MoneyDeserializer.class)
+    @Builder.Default
+    private long unitPriceMinor = FixedPoint.UNSET;
+
+    // Extended price (quantity * unitPrice) in cents
+    @JsonProperty("extended")
+    @JsonSerialize(using = FixedPoint.MoneySerializer.class)
+    @JsonDeserialize(using = FixedPoint.MoneyDeserializer.class)
+    @Builder.Default
+    private long extendedMinor = FixedPoint.UNSET;
 
     @ManyToOne(fetch=FetchType.LAZY)
     @JoinColumn(name="sale_id")
@@ -33,6 +54,6 @@ public class SaleLine {
     @PrePersist
     @PreUpdate
     public void calculateExtended() {
-        this.extended = this.quantity * this.unitPrice;
+        this.extendedMinor = FixedPoint.extended(this.quantityMilli, this.unitPriceMinor);
     }
 }
@@ -0,0 +1,44 @@
+package com.rayvision.POS.domain;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Sales totals for one location over one minute, hour or day.
+ * Rows are maintained incrementally as sales are created and can be
+ * regenerated from the sale tables at any time.
+ */
+@Entity
+@IdClass(SalesRollup.Key.class)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SalesRollup {
+    @Id
+    private Long locationId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private RollupGranularity granularity;
+
+    @Id
+    private LocalDateTime bucketStart;    // inclusive start of the bucket
+
+    private long saleCount;
+    private long revenueMinor;            // sum of sale totals, in cents
+    private long itemQuantityMilli;       // sum of line quantities, in thousandths
+
+    public record Key(Long locationId, RollupGranularity granularity, LocalDateTime bucketStart) implements Serializable {
+    }
+}
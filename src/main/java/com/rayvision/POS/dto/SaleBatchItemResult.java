@@ -0,0 +1,20 @@
+package com.rayvision.POS.dto;
+
+/**
+ * Outcome of one sale in a batch upload, in the order the sales were submitted
+ */
+public record SaleBatchItemResult(int index, Status status, Long id, String posReference, String error) {
+
+    public enum Status {
+        CREATED,
+        FAILED
+    }
+
+    public static SaleBatchItemResult created(int index, Long id, String posReference) {
+        return new SaleBatchItemResult(index, Status.CREATED, id, posReference, null);
+    }
+
+    public static SaleBatchItemResult failed(int index, String error) {
+        return new SaleBatchItemResult(index, Status.FAILED, null, null, error);
+    }
+}
@@ -0,0 +1,16 @@
+package com.rayvision.POS.dto;
+
+import java.util.List;
+
+/**
+ * Per-item results of a batch upload plus how well the inserts were batched:
+ * {@code rowsPerRoundTrip} is the number of sale and sale line rows written
+ * per JDBC batch execution.
+ */
+public record SaleBatchResult(List<SaleBatchItemResult> results,
+                              int created,
+                              int failed,
+                              long rowsInserted,
+                              long jdbcBatches,
+                              double rowsPerRoundTrip) {
+}
@@ -0,0 +1,38 @@
+package com.rayvision.POS.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Immutable, fully loaded view of a sale with the same JSON shape as {@link Sale}.
+ * Built from rows that are already in memory, so serializing it never triggers lazy loading.
+ */
+public record SaleDto(Long id,
+                      LocalDateTime saleDateTime,
+                      String posReference,
+                      Long locationId,
+                      List<SaleLineDto> lines,
+                      @JsonProperty("total") @JsonSerialize(using = FixedPoint.MoneySerializer.class) long totalMinor) {
+
+    public static SaleDto from(Sale sale, List<SaleLine> lines) {
+        return new SaleDto(
+                sale.getId(),
+                sale.getSaleDateTime(),
+                sale.getPosReference(),
+                sale.getLocationId(),
+                lines.stream().map(SaleLineDto::from).toList(),
+                sale.getTotalMinor());
+    }
+
+    // Decimal total for the templates
+    public BigDecimal totalAmount() {
+        return FixedPoint.toDecimal(totalMinor, FixedPoint.MONEY_SCALE);
+    }
+}
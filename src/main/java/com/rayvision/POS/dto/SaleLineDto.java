@@ -0,0 +1,43 @@
+package com.rayvision.POS.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.SaleLine;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable view of a sale line with the same JSON shape as {@link SaleLine}
+ */
+public record SaleLineDto(Long id,
+                          String posCode,
+                          String menuItemName,
+                          @JsonProperty("quantity") @JsonSerialize(using = FixedPoint.QuantitySerializer.class) long quantityMilli,
+                          @JsonProperty("unitPrice") @JsonSerialize(using = FixedPoint.MoneySerializer.class) long unitPriceMinor,
+                          @JsonProperty("extended") @JsonSerialize(using = FixedPoint.MoneySerializer.class) long extendedMinor) {
+
+    public static SaleLineDto from(SaleLine line) {
+        return new SaleLineDto(
+                line.getId(),
+                line.getPosCode(),
+                line.getMenuItemName(),
+                line.getQuantityMilli(),
+                line.getUnitPriceMinor(),
+                line.getExtendedMinor());
+    }
+
+    // Decimal amounts for the templates
+
+    public BigDecimal quantityAmount() {
+        return FixedPoint.toDecimal(quantityMilli, FixedPoint.QUANTITY_SCALE);
+    }
+
+    public BigDecimal unitPriceAmount() {
+        return FixedPoint.toDecimal(unitPriceMinor, FixedPoint.MONEY_SCALE);
+    }
+
+    public BigDecimal extendedAmount() {
+        return FixedPoint.toDecimal(extendedMinor, FixedPoint.MONEY_SCALE);
+    }
+}
@@ -0,0 +1,40 @@
+package com.rayvision.POS.dto;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+/**
+ * One month of sales moved out of the sale table into its own pair of tables
+ *
+ * @param month Calendar month the partition holds
+ * @param attached Whether queries read it; a detached partition is kept but no longer queried
+ * @param saleCount Number of sales in the partition when it was last sealed
+ * @param sealedAt When sales were last moved into the partition
+ */
+public record SalePartition(YearMonth month, boolean attached, long saleCount, LocalDateTime sealedAt) {
+
+    /**
+     * Table name suffix, e.g. _2024_03 for sale_2024_03 and sale_line_2024_03
+     */
+    public String suffix() {
+        return "_%04d_%02d".formatted(month.getYear(), month.getMonthValue());
+    }
+
+    public LocalDateTime start() {
+        return month.atDay(1).atStartOfDay();
+    }
+
+    /**
+     * Exclusive end: the start of the next month
+     */
+    public LocalDateTime end() {
+        return month.plusMonths(1).atDay(1).atStartOfDay();
+    }
+
+    /**
+     * Whether any time in the inclusive range falls in this month; a null bound is open
+     */
+    public boolean overlaps(LocalDateTime startDate, LocalDateTime endDate) {
+        return (startDate == null || startDate.isBefore(end())) && (endDate == null || !endDate.isBefore(start()));
+    }
+}
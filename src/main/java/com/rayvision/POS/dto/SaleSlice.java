@@ -0,0 +1,13 @@
+package com.rayvision.POS.dto;
+
+import java.util.List;
+
+/**
+ * One keyset page of sales. {@code nextCursor} is null on the last page.
+ */
+public record SaleSlice(List<SaleDto> content, String nextCursor) {
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,23 @@
+package com.rayvision.POS.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.rayvision.POS.domain.FixedPoint;
+
+import java.time.LocalDateTime;
+
+/**
+ * Totals of the sale lines in one group of a sales analytics query.
+ * Dimensions the query did not group by are null.
+ *
+ * @param posCode Product of the group
+ * @param locationId Location of the group
+ * @param hour Start of the hour of the group
+ * @param lineCount Number of sale lines
+ * @param quantityMilli Sum of the line quantities, in thousandths
+ * @param revenue Sum of quantity times unit price, unrounded ({@link FixedPoint#LINE_AMOUNT_SCALE})
+ */
+public record SalesAnalyticsRow(String posCode, Long locationId, LocalDateTime hour, long lineCount,
+                                @JsonProperty("quantity") @JsonSerialize(using = FixedPoint.QuantitySerializer.class) long quantityMilli,
+                                @JsonSerialize(using = FixedPoint.LineAmountSerializer.class) long revenue) {
+}
@@ -0,0 +1,20 @@
+package com.rayvision.POS.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.rayvision.POS.domain.FixedPoint;
+
+import java.time.LocalDateTime;
+
+/**
+ * Totals for one bucket of the sales summary
+ *
+ * @param bucketStart Inclusive start of the bucket
+ * @param saleCount Number of sales
+ * @param revenueMinor Sum of the sale totals, in minor units
+ * @param itemQuantityMilli Sum of the line quantities, in thousandths
+ */
+public record SalesSummaryBucket(LocalDateTime bucketStart, long saleCount,
+                                 @JsonProperty("revenue") @JsonSerialize(using = FixedPoint.MoneySerializer.class) long revenueMinor,
+                                 @JsonProperty("itemQuantity") @JsonSerialize(using = FixedPoint.QuantitySerializer.class) long itemQuantityMilli) {
+}
@@ -0,0 +1,12 @@
+package com.rayvision.POS.dto;
+
+/**
+ * One product on a top-sellers leaderboard
+ *
+ * @param posCode Product code
+ * @param name Product name, if the product is in the catalog
+ * @param quantity Estimated quantity sold in the window; never below the true quantity
+ * @param guaranteedQuantity Quantity the product is certain to have sold in the window
+ */
+public record TopSeller(String posCode, String name, double quantity, double guaranteedQuantity) {
+}
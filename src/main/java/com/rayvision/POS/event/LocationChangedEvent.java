@@ -0,0 +1,9 @@
+package com.rayvision.POS.event;
+
+/**
+ * Published whenever locations are created, updated or deleted
+ *
+ * @param locationId ID of the changed location, or null if many locations changed
+ */
+public record LocationChangedEvent(Long locationId) {
+}
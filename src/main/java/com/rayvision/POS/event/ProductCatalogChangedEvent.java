@@ -0,0 +1,9 @@
+package com.rayvision.POS.event;
+
+/**
+ * Published whenever products are written, so cached views of the catalog can be invalidated
+ *
+ * @param posCode Code of the changed product, or null if many products changed
+ */
+public record ProductCatalogChangedEvent(String posCode) {
+}
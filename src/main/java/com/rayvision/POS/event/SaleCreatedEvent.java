@@ -0,0 +1,12 @@
+package com.rayvision.POS.event;
+
+import com.rayvision.POS.domain.Sale;
+
+/**
+ * Published when a sale is persisted; listeners that only care about committed
+ * sales should use an after-commit transactional listener
+ *
+ * @param sale The persisted sale with its lines
+ */
+public record SaleCreatedEvent(Sale sale) {
+}
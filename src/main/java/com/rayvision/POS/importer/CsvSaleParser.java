@@ -0,0 +1,172 @@
+package com.rayvision.POS.importer;
+
+import com.rayvision.POS.domain.FixedPoint;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * CSV with a header row and one row per sale line. Consecutive rows with the same
+ * posReference are the lines of one sale, whose time and location are taken from its first
+ * row. Columns are found by name, case-insensitively, and may come in any order:
+ * posReference, saleDateTime, locationId, posCode, quantity and unitPrice are required,
+ * menuItemName is optional and other columns are ignored.
+ * <p>
+ * Fields may be quoted, with "" for a quote inside them, but may not span lines.
+ */
+final class CsvSaleParser extends SaleRecordParser {
+
+    private static final String[] REQUIRED_COLUMNS = {"posReference", "saleDateTime", "locationId", "posCode", "quantity", "unitPrice"};
+
+    private final int reference;
+    private final int time;
+    private final int location;
+    private final int posCode;
+    private final int menuItemName;
+    private final int quantity;
+    private final int unitPrice;
+    // Fields read from each row; columns after the last one used are not split at all
+    private final int width;
+
+    /**
+     * @throws IllegalArgumentException if the header is missing a required column
+     */
+    CsvSaleParser(String header, int maxErrors) {
+        super(maxErrors);
+        // A byte order mark is left in by some spreadsheet exports
+        String line = header.startsWith("\uFEFF") ? header.substring(1) : header;
+        List<String> columns = new ArrayList<>();
+        String[] fields = new String[line.split(",", -1).length];
+        int count = split(line, fields);
+        for (int i = 0; i < count; i++) {
+            columns.add(fields[i].trim().toLowerCase(Locale.ROOT));
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (String column : REQUIRED_COLUMNS) {
+            if (!columns.contains(column.toLowerCase(Locale.ROOT))) {
+                missing.add(column);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("CSV header is missing the column(s) " + String.join(", ", missing));
+        }
+        reference = columns.indexOf("posreference");
+        time = columns.indexOf("saledatetime");
+        location = columns.indexOf("locationid");
+        posCode = columns.indexOf("poscode");
+        menuItemName = columns.indexOf("menuitemname");
+        quantity = columns.indexOf("quantity");
+        unitPrice = columns.indexOf("unitprice");
+        width = 1 + Math.max(Math.max(Math.max(reference, time), Math.max(location, posCode)),
+                Math.max(menuItemName, Math.max(quantity, unitPrice)));
+    }
+
+    @Override
+    public String saleKey(String record) {
+        if (record.isBlank()) {
+            return null;
+        }
+        String[] fields = new String[reference + 1];
+        try {
+            split(record, fields);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return fields[reference];
+    }
+
+    @Override
+    public SaleChunk parse(List<String> records, long firstRecord) {
+        SaleChunk chunk = new SaleChunk(firstRecord, records.size());
+        String[] fields = new String[width];
+        Set<String> references = new HashSet<>();
+        String current = null;      // posReference of the sale being added, or being skipped
+        boolean skipping = false;   // whether that sale was rejected
+
+        for (int i = 0; i < records.size(); i++) {
+            String record = records.get(i);
+            if (record.isBlank()) {
+                continue;
+            }
+            try {
+                split(record, fields);
+                String ref = reference(fields[reference]);
+                if (!ref.equals(current)) {
+                    chunk.endSale();
+                    current = ref;
+                    skipping = false;
+                    if (!references.add(ref)) {
+                        throw new IllegalArgumentException("posReference " + ref
+                                + " was used by an earlier sale; the rows of a sale must be consecutive");
+                    }
+                    chunk.beginSale();
+                    chunk.setSale(ref, time(fields[time]), locationId(fields[location]));
+                } else if (skipping) {
+                    continue;
+                }
+                chunk.addLine(posCode(fields[posCode]), menuItemName >= 0 ? fields[menuItemName] : null,
+                        amount("quantity", fields[quantity], FixedPoint.QUANTITY_SCALE),
+                        amount("unitPrice", fields[unitPrice], FixedPoint.MONEY_SCALE));
+            } catch (RuntimeException e) {
+                // Also drops the sale this row belongs to, or would have ended; never import part of a sale
+                chunk.reject(firstRecord + i, message(e), maxErrors);
+                skipping = true;
+            }
+        }
+        chunk.endSale();
+        return chunk;
+    }
+
+    /**
+     * Split the first fields.length fields of a row; missing fields are null
+     *
+     * @return Number of fields found, at most fields.length
+     * @throws IllegalArgumentException if a quoted field is not closed
+     */
+    static int split(String record, String[] fields) {
+        int count = 0;
+        int i = 0;
+        int length = record.length();
+        while (count < fields.length) {
+            if (i < length && record.charAt(i) == '"') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("Quoted field " + (count + 1) + " is not closed");
+                    }
+                    char c = record.charAt(i++);
+                    if (c != '"') {
+                        value.append(c);
+                    } else if (i < length && record.charAt(i) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < length && record.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Field " + (count + 1) + " has text after its closing quote");
+                }
+                fields[count++] = value.toString();
+            } else {
+                int comma = record.indexOf(',', i);
+                int end = comma < 0 ? length : comma;
+                fields[count++] = record.substring(i, end);
+                i = end;
+            }
+            if (i >= length) {
+                break;
+            }
+            i++;    // the comma
+        }
+        for (int f = count; f < fields.length; f++) {
+            fields[f] = null;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,140 @@
+package com.rayvision.POS.importer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.rayvision.POS.domain.FixedPoint;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Newline-delimited JSON with one sale per line, in the shape GET /api/sales/export writes:
+ * posReference, saleDateTime, locationId and lines of posCode, menuItemName, quantity and
+ * unitPrice. Ids, totals and extended amounts in the input are ignored; the ids are new and
+ * the amounts are computed again. Lines are read token by token, without building a tree
+ * or an entity.
+ */
+final class NdjsonSaleParser extends SaleRecordParser {
+
+    private final JsonFactory jsonFactory;
+
+    NdjsonSaleParser(JsonFactory jsonFactory, int maxErrors) {
+        super(maxErrors);
+        this.jsonFactory = jsonFactory;
+    }
+
+    @Override
+    public String saleKey(String record) {
+        return null;
+    }
+
+    @Override
+    public SaleChunk parse(List<String> records, long firstRecord) {
+        SaleChunk chunk = new SaleChunk(firstRecord, records.size());
+        Set<String> references = new HashSet<>();
+        for (int i = 0; i < records.size(); i++) {
+            String record = records.get(i);
+            if (record.isBlank()) {
+                continue;
+            }
+            try (JsonParser parser = jsonFactory.createParser(record)) {
+                chunk.beginSale();
+                String reference = parseSale(parser, chunk);
+                if (!references.add(reference)) {
+                    throw new IllegalArgumentException("posReference " + reference + " was used by an earlier sale");
+                }
+                chunk.endSale();
+            } catch (IOException | RuntimeException e) {
+                chunk.reject(firstRecord + i, message(e), maxErrors);
+            }
+        }
+        return chunk;
+    }
+
+    private static String parseSale(JsonParser parser, SaleChunk chunk) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        String reference = null;
+        String time = null;
+        String location = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "posReference" -> reference = text(parser, value);
+                case "saleDateTime" -> time = text(parser, value);
+                case "locationId" -> location = text(parser, value);
+                case "lines" -> parseLines(parser, value, chunk);
+                default -> parser.skipChildren();
+            }
+        }
+        if (parser.nextToken() != null) {
+            throw new IllegalArgumentException("Unexpected content after the sale object");
+        }
+        String ref = reference(reference);
+        LocalDateTime saleTime = time(time);
+        chunk.setSale(ref, saleTime, locationId(location));
+        return ref;
+    }
+
+    private static void parseLines(JsonParser parser, JsonToken value, SaleChunk chunk) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return;
+        }
+        if (value != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("lines is not an array");
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String posCode = null;
+            String menuItemName = null;
+            long quantity = FixedPoint.UNSET;
+            long unitPrice = FixedPoint.UNSET;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "posCode" -> posCode = text(parser, token);
+                    case "menuItemName" -> menuItemName = text(parser, token);
+                    case "quantity" -> quantity = amount(parser, token, "quantity", FixedPoint.QUANTITY_SCALE);
+                    case "unitPrice" -> unitPrice = amount(parser, token, "unitPrice", FixedPoint.MONEY_SCALE);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (!FixedPoint.isSet(quantity)) {
+                throw new IllegalArgumentException("quantity is missing");
+            }
+            if (!FixedPoint.isSet(unitPrice)) {
+                throw new IllegalArgumentException("unitPrice is missing");
+            }
+            chunk.addLine(posCode(posCode), menuItemName, quantity, unitPrice);
+        }
+        if (parser.currentToken() != JsonToken.END_ARRAY) {
+            throw new IllegalArgumentException("lines must hold only objects");
+        }
+    }
+
+    private static String text(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new IllegalArgumentException(parser.currentName() + " is not a single value");
+        }
+        return parser.getText();
+    }
+
+    private static long amount(JsonParser parser, JsonToken token, String field, int scale) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return amount(field, parser.getDecimalValue(), scale);
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return FixedPoint.UNSET;
+        }
+        return amount(field, text(parser, token), scale);
+    }
+}
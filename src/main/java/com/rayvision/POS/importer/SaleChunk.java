@@ -0,0 +1,202 @@
+package com.rayvision.POS.importer;
+
+import com.rayvision.POS.domain.FixedPoint;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A chunk of imported sales held as columns: one array per sale field and one per line
+ * field, with the lines of sale {@code i} at {@code lineStart(i)} to {@code lineStart(i + 1)}.
+ * Totals and extended amounts are computed here from quantities and unit prices, as
+ * {@link com.rayvision.POS.domain.Sale#calculateTotal()} does.
+ * <p>
+ * A sale is added with {@link #beginSale}, {@link #setSale} and {@link #addLine} for each
+ * line in any order, and then {@link #endSale}; or {@link #reject} if one of its records
+ * turns out to be invalid, which drops the sale with every line added so far. Not
+ * thread-safe; each chunk is parsed by one thread.
+ */
+public final class SaleChunk {
+
+    private final long firstRecord;
+    private final int records;
+
+    private int sales;
+    private String[] references;
+    private LocalDateTime[] times;
+    private long[] locationIds;
+    private long[] totals;
+    private int[] lineStarts;
+
+    private int lines;
+    private String[] posCodes;
+    private String[] menuItemNames;
+    private long[] quantities;
+    private long[] unitPrices;
+    private long[] extended;
+
+    private boolean open;
+    private int rejected;
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * @param firstRecord Input line number of the chunk's first record, for error messages
+     * @param records Number of input records in the chunk; the expected number of sales and lines
+     */
+    public SaleChunk(long firstRecord, int records) {
+        this.firstRecord = firstRecord;
+        this.records = records;
+        int capacity = Math.max(1, records);
+        references = new String[capacity];
+        times = new LocalDateTime[capacity];
+        locationIds = new long[capacity];
+        totals = new long[capacity];
+        lineStarts = new int[capacity + 1];
+        posCodes = new String[capacity];
+        menuItemNames = new String[capacity];
+        quantities = new long[capacity];
+        unitPrices = new long[capacity];
+        extended = new long[capacity];
+    }
+
+    public void beginSale() {
+        if (sales == references.length) {
+            int capacity = sales * 2;
+            references = Arrays.copyOf(references, capacity);
+            times = Arrays.copyOf(times, capacity);
+            locationIds = Arrays.copyOf(locationIds, capacity);
+            totals = Arrays.copyOf(totals, capacity);
+            lineStarts = Arrays.copyOf(lineStarts, capacity + 1);
+        }
+        references[sales] = null;
+        times[sales] = null;
+        totals[sales] = 0;
+        lineStarts[sales] = lines;
+        open = true;
+    }
+
+    public void setSale(String reference, LocalDateTime time, long locationId) {
+        references[sales] = reference;
+        times[sales] = time;
+        locationIds[sales] = locationId;
+    }
+
+    /**
+     * @throws ArithmeticException if the extended amount or the sale's total does not fit in a long
+     */
+    public void addLine(String posCode, String menuItemName, long quantityMilli, long unitPriceMinor) {
+        if (lines == posCodes.length) {
+            int capacity = lines * 2;
+            posCodes = Arrays.copyOf(posCodes, capacity);
+            menuItemNames = Arrays.copyOf(menuItemNames, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            unitPrices = Arrays.copyOf(unitPrices, capacity);
+            extended = Arrays.copyOf(extended, capacity);
+        }
+        long amount = FixedPoint.extended(quantityMilli, unitPriceMinor);
+        totals[sales] = Math.addExact(totals[sales], amount);
+        posCodes[lines] = posCode;
+        menuItemNames[lines] = menuItemName;
+        quantities[lines] = quantityMilli;
+        unitPrices[lines] = unitPriceMinor;
+        extended[lines] = amount;
+        lines++;
+    }
+
+    public void endSale() {
+        if (open) {
+            sales++;
+            lineStarts[sales] = lines;
+            open = false;
+        }
+    }
+
+    /**
+     * Drop the sale being added, if any, and note why
+     *
+     * @param record Input line number of the offending record
+     */
+    public void reject(long record, String message, int maxErrors) {
+        if (open) {
+            lines = lineStarts[sales];
+            open = false;
+        }
+        rejected++;
+        if (errors.size() < maxErrors) {
+            errors.add("Line " + record + ": " + message);
+        }
+    }
+
+    /**
+     * Whether a sale is being added, i.e. {@link #beginSale} was called without a matching {@link #endSale}
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    public long getFirstRecord() {
+        return firstRecord;
+    }
+
+    public int getRecords() {
+        return records;
+    }
+
+    public int getSales() {
+        return sales;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public String reference(int sale) {
+        return references[sale];
+    }
+
+    public LocalDateTime time(int sale) {
+        return times[sale];
+    }
+
+    public long locationId(int sale) {
+        return locationIds[sale];
+    }
+
+    public long total(int sale) {
+        return totals[sale];
+    }
+
+    public int lineStart(int sale) {
+        return lineStarts[sale];
+    }
+
+    public String posCode(int line) {
+        return posCodes[line];
+    }
+
+    public String menuItemName(int line) {
+        return menuItemNames[line];
+    }
+
+    public long quantity(int line) {
+        return quantities[line];
+    }
+
+    public long unitPrice(int line) {
+        return unitPrices[line];
+    }
+
+    public long extended(int line) {
+        return extended[line];
+    }
+}
@@ -0,0 +1,79 @@
+package com.rayvision.POS.importer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import java.util.Locale;
+
+/**
+ * Input formats of the sale import
+ */
+public enum SaleImportFormat {
+
+    /** One row per sale line with a header row; see {@link CsvSaleParser} */
+    CSV,
+    /** One sale per line, as written by the sale export; see {@link NdjsonSaleParser} */
+    NDJSON;
+
+    /**
+     * @throws IllegalArgumentException if the name is not csv or ndjson
+     */
+    public static SaleImportFormat fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("format must be csv or ndjson");
+        }
+    }
+
+    /**
+     * The format of a request body, or null if the content type is not one of them
+     */
+    public static SaleImportFormat fromContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String type = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return switch (type) {
+            case "text/csv" -> CSV;
+            case "application/x-ndjson", "application/ndjson", "application/jsonl" -> NDJSON;
+            default -> null;
+        };
+    }
+
+    /**
+     * The format of a file by its extension, ignoring a trailing .gz
+     *
+     * @throws IllegalArgumentException if the extension is not .csv, .ndjson or .jsonl
+     */
+    public static SaleImportFormat fromFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Cannot tell the format of " + fileName + "; name it .csv, .ndjson or .jsonl");
+    }
+
+    /**
+     * Whether the first line of the input is a header rather than a record
+     */
+    public boolean hasHeader() {
+        return this == CSV;
+    }
+
+    /**
+     * @param header The first line of the input, for formats with a header
+     * @throws IllegalArgumentException if the header does not fit the format
+     */
+    public SaleRecordParser parser(String header, JsonFactory jsonFactory, int maxErrors) {
+        return switch (this) {
+            case CSV -> new CsvSaleParser(header, maxErrors);
+            case NDJSON -> new NdjsonSaleParser(jsonFactory, maxErrors);
+        };
+    }
+}
@@ -0,0 +1,109 @@
+package com.rayvision.POS.importer;
+
+import com.rayvision.POS.domain.FixedPoint;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Parses a chunk of input records into a {@link SaleChunk}. One parser is shared by every
+ * thread of an import, so implementations keep no state between calls.
+ * <p>
+ * Records are lines of input, blank ones included so line numbers in error messages match
+ * the file. A record that cannot be parsed rejects its whole sale and the rest of the
+ * chunk is parsed as usual.
+ */
+public abstract class SaleRecordParser {
+
+    static final int MAX_REFERENCE_LENGTH = 255;
+
+    protected final int maxErrors;
+
+    protected SaleRecordParser(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Key shared by the consecutive records of one sale, so the reader never ends a chunk
+     * inside a sale; null when every record is a sale of its own
+     */
+    public abstract String saleKey(String record);
+
+    /**
+     * @param records Input lines, blank ones included
+     * @param firstRecord Line number of the first of them
+     */
+    public abstract SaleChunk parse(List<String> records, long firstRecord);
+
+    static String reference(String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("posReference is missing");
+        }
+        if (value.length() > MAX_REFERENCE_LENGTH) {
+            throw new IllegalArgumentException("posReference is longer than " + MAX_REFERENCE_LENGTH + " characters");
+        }
+        return value;
+    }
+
+    static LocalDateTime time(String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("saleDateTime is missing");
+        }
+        String text = value.trim();
+        // ISO-8601, also with a space between date and time as most databases export it
+        if (text.length() > 10 && text.charAt(10) == ' ') {
+            text = text.substring(0, 10) + 'T' + text.substring(11);
+        }
+        try {
+            return LocalDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("saleDateTime is not an ISO date and time: " + value);
+        }
+    }
+
+    static long locationId(String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("locationId is missing");
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("locationId is not a whole number: " + value);
+        }
+    }
+
+    static String posCode(String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("posCode is missing");
+        }
+        return value;
+    }
+
+    /**
+     * A decimal amount in units of the given scale
+     */
+    static long amount(String field, String value, int scale) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(field + " is missing");
+        }
+        try {
+            return amount(field, new BigDecimal(value.trim()), scale);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " is not a number: " + value);
+        }
+    }
+
+    static long amount(String field, BigDecimal value, int scale) {
+        try {
+            return FixedPoint.fromDecimal(value, scale);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(field + " is out of range: " + value);
+        }
+    }
+
+    static String message(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,21 @@
+package com.rayvision.POS.journal;
+
+/**
+ * When journal appends are forced to disk
+ */
+public enum FsyncPolicy {
+    /**
+     * Every record is forced before its append returns; one fsync per sale
+     */
+    PER_RECORD,
+    /**
+     * Appends return at once and callers wait in awaitDurable; whoever forces first
+     * covers every record written so far, so concurrent sales share one fsync
+     */
+    GROUP_COMMIT,
+    /**
+     * Records are forced every pos.journal.fsync-interval-millis and nobody waits;
+     * a crash can lose the sales of the last interval
+     */
+    INTERVAL
+}
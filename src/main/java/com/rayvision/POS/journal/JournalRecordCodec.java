@@ -0,0 +1,213 @@
+package com.rayvision.POS.journal;
+
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary layout of journal record payloads, big-endian:
+ * <pre>
+ * SALE:  type=3, id, nulls(byte), [locationId], [epochSecond, nano], [posReference], [total], lineCount(int), lines
+ * line:  id, nulls(byte), [posCode], [menuItemName], [quantity], [unitPrice], [extended]
+ * ABORT: type=2, saleId
+ * DROP:  type=4, year(int), month(byte)
+ * </pre>
+ * Fields in brackets are only present when their bit in the preceding null mask is clear;
+ * strings are an int byte length followed by UTF-8. Amounts are longs in cents and quantities
+ * in thousandths ({@link FixedPoint}), absent when unset. Type 1 is the older sale record with
+ * the amounts as doubles; it is still read, and converted on the way in. A DROP record says
+ * the month's partition was dropped, so the month's sales appended before it are gone.
+ */
+final class JournalRecordCodec {
+
+    static final byte SALE_DOUBLES = 1;
+    static final byte ABORT = 2;
+    static final byte SALE = 3;
+    static final byte DROP = 4;
+
+    private JournalRecordCodec() {
+    }
+
+    static byte[] encodeSale(Sale sale) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 48 * (sale.getLines() != null ? sale.getLines().size() : 0));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(SALE);
+            out.writeLong(sale.getId());
+            out.writeByte(nulls(sale.getLocationId(), sale.getSaleDateTime(), sale.getPosReference(), presence(sale.getTotalMinor())));
+            if (sale.getLocationId() != null) {
+                out.writeLong(sale.getLocationId());
+            }
+            if (sale.getSaleDateTime() != null) {
+                out.writeLong(sale.getSaleDateTime().toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(sale.getSaleDateTime().getNano());
+            }
+            if (sale.getPosReference() != null) {
+                writeString(out, sale.getPosReference());
+            }
+            writeAmount(out, sale.getTotalMinor());
+
+            List<SaleLine> lines = sale.getLines() != null ? sale.getLines() : List.of();
+            out.writeInt(lines.size());
+            for (SaleLine line : lines) {
+                out.writeLong(line.getId());
+                out.writeByte(nulls(line.getPosCode(), line.getMenuItemName(), presence(line.getQuantityMilli()),
+                        presence(line.getUnitPriceMinor()), presence(line.getExtendedMinor())));
+                if (line.getPosCode() != null) {
+                    writeString(out, line.getPosCode());
+                }
+                if (line.getMenuItemName() != null) {
+                    writeString(out, line.getMenuItemName());
+                }
+                writeAmount(out, line.getQuantityMilli());
+                writeAmount(out, line.getUnitPriceMinor());
+                writeAmount(out, line.getExtendedMinor());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] encodeAbort(long saleId) {
+        return ByteBuffer.allocate(9).put(ABORT).putLong(saleId).array();
+    }
+
+    static byte[] encodeDrop(YearMonth month) {
+        return ByteBuffer.allocate(6).put(DROP).putInt(month.getYear()).put((byte) month.getMonthValue()).array();
+    }
+
+    /**
+     * Month a DROP record is about
+     */
+    static YearMonth droppedMonth(ByteBuffer payload) {
+        return YearMonth.of(payload.getInt(payload.position() + 1), payload.get(payload.position() + 5));
+    }
+
+    static byte type(ByteBuffer payload) {
+        return payload.get(payload.position());
+    }
+
+    static boolean isSale(ByteBuffer payload) {
+        byte type = type(payload);
+        return type == SALE || type == SALE_DOUBLES;
+    }
+
+    /**
+     * Id of the sale a SALE or ABORT record is about
+     */
+    static long saleId(ByteBuffer payload) {
+        return payload.getLong(payload.position() + 1);
+    }
+
+    /**
+     * Time of the sale in a SALE record, read without decoding the rest; null if it has none
+     */
+    static LocalDateTime saleDateTime(ByteBuffer payload) {
+        int start = payload.position();
+        byte nulls = payload.get(start + 9);
+        if (!present(nulls, 1)) {
+            return null;
+        }
+        int at = start + 10 + (present(nulls, 0) ? 8 : 0);
+        return LocalDateTime.ofEpochSecond(payload.getLong(at), payload.getInt(at + 8), ZoneOffset.UTC);
+    }
+
+    static Sale decodeSale(ByteBuffer in) {
+        boolean doubles = in.get() == SALE_DOUBLES;
+        Sale sale = new Sale();
+        sale.setId(in.getLong());
+        byte nulls = in.get();
+        if (present(nulls, 0)) {
+            sale.setLocationId(in.getLong());
+        }
+        if (present(nulls, 1)) {
+            sale.setSaleDateTime(LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC));
+        }
+        if (present(nulls, 2)) {
+            sale.setPosReference(readString(in));
+        }
+        if (present(nulls, 3)) {
+            sale.setTotalMinor(readAmount(in, doubles, FixedPoint.MONEY_SCALE));
+        }
+
+        int count = in.getInt();
+        List<SaleLine> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SaleLine line = new SaleLine();
+            line.setId(in.getLong());
+            byte lineNulls = in.get();
+            if (present(lineNulls, 0)) {
+                line.setPosCode(readString(in));
+            }
+            if (present(lineNulls, 1)) {
+                line.setMenuItemName(readString(in));
+            }
+            if (present(lineNulls, 2)) {
+                line.setQuantityMilli(readAmount(in, doubles, FixedPoint.QUANTITY_SCALE));
+            }
+            if (present(lineNulls, 3)) {
+                line.setUnitPriceMinor(readAmount(in, doubles, FixedPoint.MONEY_SCALE));
+            }
+            if (present(lineNulls, 4)) {
+                line.setExtendedMinor(readAmount(in, doubles, FixedPoint.MONEY_SCALE));
+            }
+            line.setSale(sale);
+            lines.add(line);
+        }
+        sale.setLines(lines);
+        return sale;
+    }
+
+    private static byte nulls(Object... values) {
+        int mask = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                mask |= 1 << i;
+            }
+        }
+        return (byte) mask;
+    }
+
+    // Unset amounts are left out like nulls
+    private static Object presence(long amount) {
+        return FixedPoint.isSet(amount) ? Boolean.TRUE : null;
+    }
+
+    private static void writeAmount(DataOutputStream out, long amount) throws IOException {
+        if (FixedPoint.isSet(amount)) {
+            out.writeLong(amount);
+        }
+    }
+
+    private static long readAmount(ByteBuffer in, boolean doubles, int scale) {
+        return doubles ? FixedPoint.fromDouble(in.getDouble(), scale) : in.getLong();
+    }
+
+    private static boolean present(byte nulls, int bit) {
+        return (nulls & (1 << bit)) == 0;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] utf8 = new byte[in.getInt()];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
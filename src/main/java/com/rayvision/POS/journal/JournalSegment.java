@@ -0,0 +1,246 @@
+package com.rayvision.POS.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * One journal file. The file starts with a 16 byte header (magic, version, flags) followed
+ * by records of {@code [payload length][CRC32C of payload][payload]}. Open segments are
+ * preallocated and memory-mapped, so the zero length after the last record marks its end;
+ * a record whose checksum does not match is a torn write and ends the segment as well.
+ * <p>
+ * Segments are named after their base position, the journal offset of their first byte,
+ * so their names sort in journal order.
+ */
+final class JournalSegment {
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_OVERHEAD = 8;
+    static final int FLAG_COMPACTED = 1;
+
+    private static final int MAGIC = 0x504F534A; // "POSJ"
+    private static final int VERSION = 1;
+    private static final Pattern NAME = Pattern.compile("sales-(\\d{19})\\.journal");
+
+    private final Path path;
+    private final long base;
+    private final boolean compacted;
+    private final int capacity;
+
+    /** Records appended to this segment that are neither committed nor aborted yet */
+    final AtomicInteger unresolved = new AtomicInteger();
+
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;   // null once the segment is closed for writing
+    private volatile int writeOffset;
+    private int forcedOffset;
+
+    private JournalSegment(Path path, long base, boolean compacted, int capacity) {
+        this.path = path;
+        this.base = base;
+        this.compacted = compacted;
+        this.capacity = capacity;
+    }
+
+    static Path pathFor(Path directory, long base) {
+        return directory.resolve(String.format("sales-%019d.journal", base));
+    }
+
+    static boolean isSegment(Path path) {
+        return NAME.matcher(path.getFileName().toString()).matches();
+    }
+
+    /**
+     * Create and map a new segment for appending
+     */
+    static JournalSegment create(Path directory, long base, int capacity) throws IOException {
+        JournalSegment segment = new JournalSegment(pathFor(directory, base), base, false, capacity);
+        segment.channel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        segment.buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, 0);
+        segment.writeOffset = HEADER_SIZE;
+        segment.buffer.force(0, HEADER_SIZE);
+        segment.forcedOffset = HEADER_SIZE;
+        return segment;
+    }
+
+    /**
+     * Open an existing segment read-only
+     *
+     * @throws IOException if the file is not a journal segment
+     */
+    static JournalSegment open(Path path) throws IOException {
+        Matcher name = NAME.matcher(path.getFileName().toString());
+        if (!name.matches()) {
+            throw new IOException("Not a journal segment: " + path);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            file.read(header, 0);
+        }
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Unrecognised journal segment header: " + path);
+        }
+        boolean compacted = (header.getInt(8) & FLAG_COMPACTED) != 0;
+        return new JournalSegment(path, Long.parseLong(name.group(1)), compacted, (int) Files.size(path));
+    }
+
+    /**
+     * Write a compacted segment holding the given payloads, replacing any file at its path
+     */
+    static JournalSegment writeCompacted(Path directory, long base, Iterable<ByteBuffer> payloads) throws IOException {
+        Path target = pathFor(directory, base);
+        Path temp = target.resolveSibling(target.getFileName() + ".compacting");
+        long size = HEADER_SIZE;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(FLAG_COMPACTED).putInt(0).flip());
+            CRC32C crc = new CRC32C();
+            for (ByteBuffer payload : payloads) {
+                crc.reset();
+                crc.update(payload.duplicate());
+                ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.remaining())
+                        .putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload.duplicate()).flip();
+                size += record.remaining();
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        }
+        // Atomic replace: a crash leaves either the old segment or the compacted one
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new JournalSegment(target, base, true, (int) size);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long base() {
+        return base;
+    }
+
+    boolean compacted() {
+        return compacted;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    boolean isOpen() {
+        return buffer != null;
+    }
+
+    /**
+     * Journal position just after the last record written so far
+     */
+    long end() {
+        return base + writeOffset;
+    }
+
+    boolean fits(int payloadLength) {
+        return writeOffset + RECORD_OVERHEAD + payloadLength <= capacity;
+    }
+
+    static int checksum(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Append one record; the caller serialises appends
+     *
+     * @param checksum {@link #checksum} of the payload, computed before taking the append lock
+     * @return Journal position just after the record
+     */
+    long append(byte[] payload, int checksum) {
+        int offset = writeOffset;
+        buffer.putInt(offset + 4, checksum);
+        buffer.put(offset + RECORD_OVERHEAD, payload);
+        // Length last: until it is set the record reads as the end of the segment
+        buffer.putInt(offset, payload.length);
+        writeOffset = offset + RECORD_OVERHEAD + payload.length;
+        return base + writeOffset;
+    }
+
+    /**
+     * Force everything written so far to disk
+     */
+    void force() {
+        forceLock.lock();
+        try {
+            int upTo = writeOffset;
+            if (buffer != null && upTo > forcedOffset) {
+                buffer.force(forcedOffset, upTo - forcedOffset);
+                forcedOffset = upTo;
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Force the segment and stop writing to it
+     */
+    void close() throws IOException {
+        forceLock.lock();
+        try {
+            if (buffer == null) {
+                return;
+            }
+            force();
+            buffer = null;
+            channel.close();
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Visit the payload of every intact record, in order
+     *
+     * @return true if the segment ended cleanly, false if it ended in a torn or corrupt record
+     */
+    boolean forEachRecord(Consumer<ByteBuffer> visitor) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            CRC32C crc = new CRC32C();
+            int offset = HEADER_SIZE;
+            while (offset + RECORD_OVERHEAD <= data.limit()) {
+                int length = data.getInt(offset);
+                if (length == 0) {
+                    return true;
+                }
+                if (length < 0 || offset + RECORD_OVERHEAD + length > data.limit()) {
+                    return false;
+                }
+                ByteBuffer payload = data.slice(offset + RECORD_OVERHEAD, length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != data.getInt(offset + 4)) {
+                    return false;
+                }
+                visitor.accept(payload);
+                offset += RECORD_OVERHEAD + length;
+            }
+            return true;
+        }
+    }
+}
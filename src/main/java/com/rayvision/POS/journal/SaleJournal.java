@@ -0,0 +1,429 @@
+package com.rayvision.POS.journal;
+
+import com.rayvision.POS.domain.Sale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only write-ahead journal of sales in segmented, memory-mapped files.
+ * <p>
+ * A sale is appended once its ids are assigned and before its transaction commits; the
+ * returned position is then reported {@link #committed} or {@link #aborted}. When the sale
+ * must be durable before it is acknowledged, the caller passes the position to
+ * {@link #awaitDurable}, which honours the {@link FsyncPolicy}. Positions are byte offsets
+ * into the journal as a whole, so they grow across segments.
+ * <p>
+ * Appends are serialised by one lock that only covers copying the encoded record into the
+ * mapped segment; encoding and checksumming happen before it. A new segment is started
+ * when a record does not fit, and at every {@link #open}, so a torn tail left by a crash is
+ * never appended to.
+ */
+public final class SaleJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SaleJournal.class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsync;
+
+    private final ConcurrentSkipListMap<Long, JournalSegment> segments = new ConcurrentSkipListMap<>();
+    private final Set<Long> abortedSaleIds = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final ReentrantLock compactLock = new ReentrantLock();
+    private final AtomicLong durable = new AtomicLong();
+    private volatile JournalSegment current;
+    private volatile long written;
+    private volatile boolean closed;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder appendedBytes = new LongAdder();
+    private final LongAdder fsyncs = new LongAdder();
+
+    private SaleJournal(Path directory, int segmentSize, FsyncPolicy fsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Open the journal in a directory, creating it if needed, and start a new segment
+     *
+     * @param segmentSize Size each segment file is preallocated to
+     * @throws IOException if the directory cannot be created or holds an unreadable segment
+     */
+    public static SaleJournal open(Path directory, int segmentSize, FsyncPolicy fsync) throws IOException {
+        if (segmentSize < JournalSegment.HEADER_SIZE + 1024) {
+            throw new IllegalArgumentException("Journal segments must be at least " + (JournalSegment.HEADER_SIZE + 1024) + " bytes");
+        }
+        Files.createDirectories(directory);
+        SaleJournal journal = new SaleJournal(directory, segmentSize, fsync);
+        long next = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(JournalSegment::isSegment).sorted().toList()) {
+                JournalSegment segment = JournalSegment.open(path);
+                journal.segments.put(segment.base(), segment);
+                next = segment.base() + segment.capacity();
+            }
+        }
+        journal.current = JournalSegment.create(directory, next, segmentSize);
+        journal.segments.put(next, journal.current);
+        journal.written = journal.current.end();
+        journal.durable.set(journal.written);
+        return journal;
+    }
+
+    /**
+     * Call every sale in the journal that was not aborted, in the order they were appended,
+     * leaving out the sales of a month whose partition was dropped after they were appended.
+     * Meant for startup, before anything is appended.
+     *
+     * @return Number of sales replayed
+     */
+    public int replay(Consumer<Sale> consumer) throws IOException {
+        List<JournalSegment> existing = new ArrayList<>(segments.headMap(current.base()).values());
+        // Index of the last drop of each month, counting records from the start of the journal
+        Map<YearMonth, Long> drops = new HashMap<>();
+        long[] index = {0};
+        for (JournalSegment segment : existing) {
+            segment.forEachRecord(payload -> {
+                byte type = JournalRecordCodec.type(payload);
+                if (type == JournalRecordCodec.ABORT) {
+                    abortedSaleIds.add(JournalRecordCodec.saleId(payload));
+                } else if (type == JournalRecordCodec.DROP) {
+                    drops.put(JournalRecordCodec.droppedMonth(payload), index[0]);
+                }
+                index[0]++;
+            });
+        }
+        int[] replayed = {0};
+        index[0] = 0;
+        for (JournalSegment segment : existing) {
+            boolean clean = segment.forEachRecord(payload -> {
+                long at = index[0]++;
+                if (JournalRecordCodec.isSale(payload)
+                        && !abortedSaleIds.contains(JournalRecordCodec.saleId(payload))
+                        && !droppedLater(payload, at, drops)) {
+                    consumer.accept(JournalRecordCodec.decodeSale(payload));
+                    replayed[0]++;
+                }
+            });
+            if (!clean) {
+                logger.warn("Journal segment {} ends in a torn or corrupt record; replayed the records before it", segment.path());
+            }
+        }
+        return replayed[0];
+    }
+
+    /**
+     * Append a sale whose ids have been assigned
+     *
+     * @return Journal position just after the record, to pass to awaitDurable, committed or aborted
+     * @throws IllegalArgumentException if the encoded sale is larger than a segment
+     * @throws UncheckedIOException if a new segment cannot be created
+     */
+    public long append(Sale sale) {
+        long position = append(JournalRecordCodec.encodeSale(sale), true);
+        appended.increment();
+        return position;
+    }
+
+    /**
+     * Wait until the record ending at position is on disk, if the policy makes callers wait
+     */
+    public void awaitDurable(long position) {
+        if (fsync != FsyncPolicy.GROUP_COMMIT || durable.get() >= position) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            // Whoever held the lock before may have forced this record along with its own
+            if (durable.get() < position) {
+                force();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Force everything appended so far to disk; called periodically under FsyncPolicy.INTERVAL
+     */
+    public void force() {
+        JournalSegment segment;
+        long target;
+        appendLock.lock();
+        try {
+            segment = current;
+            target = written;
+        } finally {
+            appendLock.unlock();
+        }
+        segment.force();
+        fsyncs.increment();
+        durable.accumulateAndGet(target, Math::max);
+    }
+
+    /**
+     * The sale appended at position is committed to the database
+     */
+    public void committed(long position) {
+        resolve(position);
+    }
+
+    /**
+     * The sale appended at position was not persisted; it is skipped on replay.
+     * Durability of the abort itself follows the policy like any other record.
+     */
+    public void aborted(long position, long saleId) {
+        abortedSaleIds.add(saleId);
+        long abortPosition = append(JournalRecordCodec.encodeAbort(saleId), false);
+        resolve(position);
+        awaitDurable(abortPosition);
+    }
+
+    /**
+     * The month's partition was dropped, so the sales of the month appended so far are not
+     * replayed. Durability follows the policy like any other record.
+     */
+    public void monthDropped(YearMonth month) {
+        awaitDurable(append(JournalRecordCodec.encodeDrop(month), false));
+    }
+
+    /**
+     * Compact the closed segments at the start of the journal whose sales are all committed
+     * or aborted.
+     * <p>
+     * With deletePersisted the segments are deleted: only safe when the database itself is
+     * durable. Otherwise they are rewritten, together with what earlier compactions left,
+     * into one compacted segment holding only the sales that would be replayed and are not
+     * older than retainFrom, without unused preallocated space. Abort and drop records go
+     * too, since everything they apply to before them is rewritten. The compacted segment is
+     * written aside and moved over the first of them atomically before the rest are deleted,
+     * so a crash at any point leaves every retained sale in the journal (at worst twice, which
+     * replay tolerates).
+     *
+     * @param retainFrom Sales before this time are left out; null keeps them all
+     * @return What was compacted
+     */
+    public Map<String, Object> compact(boolean deletePersisted, LocalDateTime retainFrom) throws IOException {
+        compactLock.lock();
+        try {
+            List<JournalSegment> candidates = new ArrayList<>();
+            boolean allCompacted = true;
+            long bytesBefore = 0;
+            for (JournalSegment segment : segments.values()) {
+                if (segment == current || segment.isOpen() || segment.unresolved.get() > 0) {
+                    break;
+                }
+                candidates.add(segment);
+                allCompacted &= segment.compacted();
+                bytesBefore += Files.size(segment.path());
+            }
+
+            List<ByteBuffer> live = new ArrayList<>();
+            Set<Long> aborted = new HashSet<>();
+            long[] records = {0};
+            int[] expired = {0};
+            if (!deletePersisted && !candidates.isEmpty()) {
+                Map<YearMonth, Long> drops = new HashMap<>();
+                for (JournalSegment segment : candidates) {
+                    segment.forEachRecord(payload -> {
+                        if (JournalRecordCodec.type(payload) == JournalRecordCodec.DROP) {
+                            drops.put(JournalRecordCodec.droppedMonth(payload), records[0]);
+                        }
+                        records[0]++;
+                    });
+                }
+                long[] index = {0};
+                for (JournalSegment segment : candidates) {
+                    segment.forEachRecord(payload -> {
+                        long at = index[0]++;
+                        if (!JournalRecordCodec.isSale(payload)) {
+                            return;
+                        }
+                        long saleId = JournalRecordCodec.saleId(payload);
+                        LocalDateTime time = JournalRecordCodec.saleDateTime(payload);
+                        if (abortedSaleIds.contains(saleId)) {
+                            aborted.add(saleId);
+                        } else if (droppedLater(payload, at, drops) || retainFrom != null && time != null && time.isBefore(retainFrom)) {
+                            expired[0]++;
+                        } else {
+                            live.add(copy(payload));
+                        }
+                    });
+                }
+                // What an earlier compaction left, with nothing to take out since
+                if (allCompacted && live.size() == records[0]) {
+                    candidates.clear();
+                    bytesBefore = 0;
+                }
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("segments", candidates.size());
+            result.put("bytesBefore", bytesBefore);
+            if (candidates.isEmpty()) {
+                result.put("bytesAfter", 0L);
+                return result;
+            }
+
+            long bytesAfter = 0;
+            if (deletePersisted) {
+                for (JournalSegment segment : candidates) {
+                    segments.remove(segment.base());
+                    Files.deleteIfExists(segment.path());
+                }
+            } else {
+                JournalSegment compacted = JournalSegment.writeCompacted(directory, candidates.get(0).base(), live);
+                segments.put(compacted.base(), compacted);
+                for (JournalSegment segment : candidates.subList(1, candidates.size())) {
+                    segments.remove(segment.base());
+                    Files.deleteIfExists(segment.path());
+                }
+                // Their sales are gone, so the IDs need not be remembered
+                abortedSaleIds.removeAll(aborted);
+                bytesAfter = compacted.capacity();
+                result.put("expiredSales", expired[0]);
+            }
+            result.put("bytesAfter", bytesAfter);
+            logger.info("Compacted {} journal segments: {} bytes to {}", candidates.size(), bytesBefore, bytesAfter);
+            return result;
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * Counters for monitoring
+     */
+    public Map<String, Object> stats() {
+        int unresolved = 0;
+        for (JournalSegment segment : segments.values()) {
+            unresolved += segment.unresolved.get();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", directory.toString());
+        stats.put("fsync", fsync);
+        stats.put("segments", segments.size());
+        stats.put("currentSegment", current.path().getFileName().toString());
+        stats.put("writtenPosition", written);
+        stats.put("durablePosition", durable.get());
+        stats.put("appendedSales", appended.sum());
+        stats.put("appendedBytes", appendedBytes.sum());
+        stats.put("unresolvedSales", unresolved);
+        stats.put("abortedSales", abortedSaleIds.size());
+        stats.put("fsyncs", fsyncs.sum());
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            closed = true;
+            current.close();
+            durable.accumulateAndGet(written, Math::max);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private long append(byte[] payload, boolean sale) {
+        if (JournalSegment.HEADER_SIZE + JournalSegment.RECORD_OVERHEAD + payload.length > segmentSize) {
+            throw new IllegalArgumentException("Journal record of " + payload.length + " bytes does not fit in a segment");
+        }
+        int checksum = JournalSegment.checksum(payload);
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (!current.fits(payload.length)) {
+                roll();
+            }
+            long position = current.append(payload, checksum);
+            if (sale) {
+                current.unresolved.incrementAndGet();
+            }
+            written = position;
+            if (fsync == FsyncPolicy.PER_RECORD) {
+                current.force();
+                fsyncs.increment();
+                durable.accumulateAndGet(position, Math::max);
+            }
+            appendedBytes.add(JournalSegment.RECORD_OVERHEAD + payload.length);
+            return position;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void roll() {
+        try {
+            JournalSegment full = current;
+            full.close();
+            fsyncs.increment();
+            durable.accumulateAndGet(written, Math::max);
+            current = JournalSegment.create(directory, full.base() + full.capacity(), segmentSize);
+            segments.put(current.base(), current);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start a new journal segment", e);
+        }
+    }
+
+    private void resolve(long position) {
+        if (position < 0) {
+            return;
+        }
+        // The segment holding the record: the last one starting before its end
+        Map.Entry<Long, JournalSegment> entry = segments.floorEntry(position - 1);
+        if (entry != null) {
+            entry.getValue().unresolved.decrementAndGet();
+        }
+    }
+
+    /**
+     * Whether a sale record's month was dropped by a record further on
+     *
+     * @param at    Index of the sale record
+     * @param drops Index of the last drop of each month
+     */
+    private static boolean droppedLater(ByteBuffer payload, long at, Map<YearMonth, Long> drops) {
+        if (drops.isEmpty()) {
+            return false;
+        }
+        LocalDateTime time = JournalRecordCodec.saleDateTime(payload);
+        Long droppedAt = time != null ? drops.get(YearMonth.from(time)) : null;
+        return droppedAt != null && droppedAt > at;
+    }
+
+    private static ByteBuffer copy(ByteBuffer payload) {
+        ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+        copy.put(payload.duplicate()).flip();
+        return copy;
+    }
+}
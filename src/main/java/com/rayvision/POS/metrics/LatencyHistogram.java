@@ -0,0 +1,156 @@
+package com.rayvision.POS.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with log-linear buckets.
+ * <p>
+ * Every power of two is split into {@value #SUB_BUCKETS} equal buckets, so a recorded value
+ * is reported with a relative error of at most 1/{@value #SUB_BUCKETS} (about 3%) over the
+ * whole range of a long, in a fixed 15 KB of counters. Recording is a single atomic
+ * increment and safe from any number of threads; percentiles are computed from a copy of
+ * the counters, so they may miss values recorded while they are being read.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record one duration; negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Sum of the recorded durations in nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Value at the given percentile (0-100), reported as the upper edge of its bucket
+     *
+     * @return The percentile in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        return valueAt(snapshot(), percentile);
+    }
+
+    /**
+     * Values at several percentiles, from one copy of the counters
+     *
+     * @return The percentiles in nanoseconds, in the order asked for
+     */
+    public long[] getPercentiles(double... percentiles) {
+        long[] snapshot = snapshot();
+        long[] values = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            values[i] = valueAt(snapshot, percentiles[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Count, mean, p50/p90/p99/p99.9 and max in milliseconds, from one copy of the counters
+     */
+    public Map<String, Object> summary() {
+        long[] snapshot = snapshot();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", getCount());
+        summary.put("meanMillis", getMean() / 1e6);
+        summary.put("p50Millis", valueAt(snapshot, 50) / 1e6);
+        summary.put("p90Millis", valueAt(snapshot, 90) / 1e6);
+        summary.put("p99Millis", valueAt(snapshot, 99) / 1e6);
+        summary.put("p999Millis", valueAt(snapshot, 99.9) / 1e6);
+        summary.put("maxMillis", getMax() / 1e6);
+        return summary;
+    }
+
+    /**
+     * Forget everything recorded so far
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    private long valueAt(long[] snapshot, double percentile) {
+        long total = 0;
+        for (long bucketCount : snapshot) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperEdge(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperEdge(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,146 @@
+package com.rayvision.POS.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the {@link Timer}s on the hot paths, rendered as JSON or in the Prometheus
+ * text format.
+ * <p>
+ * A timer is identified by its name and labels; asking for the same pair again returns the
+ * same timer. Look timers up once and keep them, since building the key allocates.
+ */
+@Component
+public class MetricsRegistry {
+
+    /** Percentiles exported as Prometheus summary quantiles */
+    private static final double[] QUANTILES = {50, 90, 99, 99.9};
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Get or create a timer
+     *
+     * @param name Metric name in snake_case, without unit suffix, e.g. pos_sale_create
+     * @param help One-line description, taken from the first registration of the name
+     * @param labels Label names and values, alternating
+     * @throws IllegalArgumentException if the labels do not come in pairs
+     */
+    public Timer timer(String name, String help, String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+        }
+        return timers.computeIfAbsent(name + labelText(labels), key -> new Timer(name, help, labels.clone()));
+    }
+
+    /**
+     * Every timer with its count, mean, percentiles and max in milliseconds and its failures,
+     * ordered by name and labels
+     */
+    public List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> snapshot = new ArrayList<>();
+        for (Timer timer : sortedTimers()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", timer.getName());
+            Map<String, String> labels = new LinkedHashMap<>();
+            String[] pairs = timer.labels();
+            for (int i = 0; i < pairs.length; i += 2) {
+                labels.put(pairs[i], pairs[i + 1]);
+            }
+            entry.put("labels", labels);
+            entry.putAll(timer.getHistogram().summary());
+            entry.put("failures", timer.getFailures());
+            snapshot.add(entry);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Every timer in the Prometheus text exposition format (0.0.4): a summary in seconds
+     * named name_seconds, and a counter name_failures_total
+     */
+    public String prometheus() {
+        StringBuilder seconds = new StringBuilder();
+        StringBuilder failures = new StringBuilder();
+        StringBuilder text = new StringBuilder();
+        String family = null;
+        String help = null;
+        for (Timer timer : sortedTimers()) {
+            if (!timer.getName().equals(family)) {
+                appendFamilies(text, family, help, seconds, failures);
+                family = timer.getName();
+                help = timer.getHelp();
+                seconds.setLength(0);
+                failures.setLength(0);
+            }
+            LatencyHistogram histogram = timer.getHistogram();
+            String labels = labelText(timer.labels());
+            long[] quantiles = histogram.getPercentiles(QUANTILES);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                String quantile = "quantile=\"" + formatNumber(QUANTILES[i] / 100) + "\"";
+                seconds.append(family).append("_seconds")
+                        .append(labels.isEmpty() ? "{" + quantile + "}" : labels.substring(0, labels.length() - 1) + "," + quantile + "}")
+                        .append(' ').append(formatNumber(quantiles[i] / 1e9)).append('\n');
+            }
+            seconds.append(family).append("_seconds_sum").append(labels).append(' ')
+                    .append(formatNumber(histogram.getSum() / 1e9)).append('\n');
+            seconds.append(family).append("_seconds_count").append(labels).append(' ')
+                    .append(histogram.getCount()).append('\n');
+            failures.append(family).append("_failures_total").append(labels).append(' ')
+                    .append(timer.getFailures()).append('\n');
+        }
+        appendFamilies(text, family, help, seconds, failures);
+        return text.toString();
+    }
+
+    private List<Timer> sortedTimers() {
+        List<Timer> sorted = new ArrayList<>(timers.values());
+        sorted.sort(Comparator.comparing(Timer::getName).thenComparing(timer -> labelText(timer.labels())));
+        return sorted;
+    }
+
+    private static void appendFamilies(StringBuilder text, String family, String help,
+                                       CharSequence seconds, CharSequence failures) {
+        if (family == null) {
+            return;
+        }
+        String escapedHelp = help.replace("\\", "\\\\").replace("\n", "\\n");
+        text.append("# HELP ").append(family).append("_seconds ").append(escapedHelp).append('\n');
+        text.append("# TYPE ").append(family).append("_seconds summary\n");
+        text.append(seconds);
+        text.append("# HELP ").append(family).append("_failures_total ").append(escapedHelp).append(", failures\n");
+        text.append("# TYPE ").append(family).append("_failures_total counter\n");
+        text.append(failures);
+    }
+
+    /**
+     * Labels as {name="value",...}, or empty without labels
+     */
+    private static String labelText(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return text.append('}').toString();
+    }
+
+    private static String formatNumber(double value) {
+        return String.format(Locale.ROOT, "%.9g", value).replaceFirst("\\.?0+(e|$)", "$1");
+    }
+}
@@ -0,0 +1,72 @@
+package com.rayvision.POS.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Times every call to a Spring Data repository (finders, counts and saves) as
+ * pos_repository_call{repository, method}, by adding an interceptor to each repository proxy
+ * before it is created.
+ * <p>
+ * The registry is looked up on the first call rather than injected: post-processors are
+ * created before other beans, and depending on it directly would create it too early for
+ * the remaining post-processors to process it.
+ */
+@Component
+public class RepositoryMetrics implements BeanPostProcessor {
+
+    private final ObjectProvider<MetricsRegistry> registry;
+
+    public RepositoryMetrics(ObjectProvider<MetricsRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, information) ->
+                            proxyFactory.addAdvice(new TimingInterceptor(information.getRepositoryInterface()))));
+        }
+        return bean;
+    }
+
+    private final class TimingInterceptor implements MethodInterceptor {
+        private final Class<?> repository;
+        private final ConcurrentMap<Method, Timer> timers = new ConcurrentHashMap<>();
+
+        TimingInterceptor(Class<?> repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            if (method.getDeclaringClass() == Object.class) {
+                return invocation.proceed();
+            }
+            Timer timer = timers.get(method);
+            if (timer == null) {
+                timer = timers.computeIfAbsent(method, m -> registry.getObject().timer("pos_repository_call",
+                        "Spring Data repository calls", "repository", repository.getSimpleName(), "method", m.getName()));
+            }
+            long started = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invocation.proceed();
+                failed = false;
+                return result;
+            } finally {
+                timer.recordSince(started, failed);
+            }
+        }
+    }
+}
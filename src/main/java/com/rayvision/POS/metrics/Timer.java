@@ -0,0 +1,80 @@
+package com.rayvision.POS.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and failure count of one operation, obtained once from the
+ * {@link MetricsRegistry} and kept by the code it measures.
+ * <p>
+ * Recording allocates nothing: callers take {@link System#nanoTime()} before the operation
+ * and pass the elapsed time to {@link #record} or {@link #recordFailure}.
+ */
+public final class Timer {
+
+    private final String name;
+    private final String help;
+    private final String[] labels;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+
+    Timer(String name, String help, String[] labels) {
+        this.name = name;
+        this.help = help;
+        this.labels = labels;
+    }
+
+    /**
+     * Record a completed operation that took the given time
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    /**
+     * Record an operation that failed after the given time
+     */
+    public void recordFailure(long nanos) {
+        histogram.record(nanos);
+        failures.increment();
+    }
+
+    /**
+     * Time elapsed since a {@link System#nanoTime()} reading, recorded as a success or failure
+     */
+    public void recordSince(long startNanos, boolean failed) {
+        long nanos = System.nanoTime() - startNanos;
+        if (failed) {
+            recordFailure(nanos);
+        } else {
+            record(nanos);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * Label names and values, alternating
+     */
+    public String[] getLabels() {
+        return Arrays.copyOf(labels, labels.length);
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    String[] labels() {
+        return labels;
+    }
+}
@@ -0,0 +1,22 @@
+package com.rayvision.POS.repository;
+
+import com.rayvision.POS.domain.InvoiceSequence;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface InvoiceSequenceRepository extends JpaRepository<InvoiceSequence, Long> {
+
+    /**
+     * Load the sequence row for a location and lock it until the transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM InvoiceSequence s WHERE s.locationId = :locationId")
+    Optional<InvoiceSequence> findByLocationIdForUpdate(@Param("locationId") Long locationId);
+}
@@ -0,0 +1,9 @@
+package com.rayvision.POS.repository;
+
+import com.rayvision.POS.domain.LocationStock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface LocationStockRepository extends JpaRepository<LocationStock, LocationStock.Key> {
+}
@@ -0,0 +1,823 @@
+package com.rayvision.POS.repository;
+
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.dto.SaleCursor;
+import com.rayvision.POS.dto.SalePartition;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routing layer over the sale tables and the monthly partitions that closed months are moved into.
+ * <p>
+ * The sale and sale_line tables take every write. They hold the open months, and late sales
+ * for sealed months until the next seal. A sealed month lives in sale_yyyy_mm and
+ * sale_line_yyyy_mm, which have the same columns, a CHECK on the month and the date indexes
+ * of the sale table. A date-range query reads the attached partitions whose month overlaps
+ * the range and the sale table, in one UNION ALL statement, so it sees every sale exactly
+ * once even while a seal is moving sales. The sale table is left out when every month of the
+ * range is sealed into an attached partition and has no late sales: writers of the sale table
+ * report every write with {@link #saleWriting} and {@link #saleWritten}, and a seal only
+ * counts its month clean once no write for the month can have been missed by the move.
+ * Detaching or dropping a partition touches the catalog and two tables, however many sales
+ * they hold.
+ * <p>
+ * The sale table's unique constraint on pos_reference only covers the sales still in it, so
+ * the references of partitioned sales are kept in sale_reference: a seal adds them as it
+ * moves sales and fails on one already there, attaching checks a partition's are there, and
+ * dropping removes them.
+ * <p>
+ * In SQL handed to {@link #unionAll(String)}, {sale} and {sale_line} stand for the tables of
+ * one branch.
+ */
+@Repository
+public class PartitionedSaleRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedSaleRepository.class);
+
+    public static final String SALE_TABLE = "{sale}";
+    public static final String LINE_TABLE = "{sale_line}";
+
+    private static final String SALE_COLUMNS = "id, sale_date_time, pos_reference, location_id, total_minor";
+    private static final String LINE_COLUMNS = "id, sale_id, pos_code, menu_item_name, quantity_milli, unit_price_minor, extended_minor";
+
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "id", "id",
+            "saleDateTime", "sale_date_time",
+            "posReference", "pos_reference",
+            "locationId", "location_id",
+            "totalMinor", "total_minor",
+            "total", "total_minor");
+
+    private static final String CREATE_SALE_SQL = """
+            CREATE TABLE IF NOT EXISTS sale%1$s (
+                id bigint not null,
+                sale_date_time timestamp(6) not null,
+                pos_reference varchar(255),
+                location_id bigint,
+                total_minor bigint not null,
+                primary key (id),
+                constraint ck_sale%1$s_month check (sale_date_time >= TIMESTAMP '%2$s' and sale_date_time < TIMESTAMP '%3$s')
+            )
+            """;
+
+    private static final String CREATE_LINE_SQL = """
+            CREATE TABLE IF NOT EXISTS sale_line%1$s (
+                id bigint not null,
+                sale_id bigint not null,
+                pos_code varchar(255),
+                menu_item_name varchar(255),
+                quantity_milli bigint not null,
+                unit_price_minor bigint not null,
+                extended_minor bigint not null,
+                primary key (id)
+            )
+            """;
+
+    private static final String[] CREATE_INDEX_SQL = {
+            "CREATE INDEX IF NOT EXISTS idx_sale%1$s_location_date ON sale%1$s (location_id, sale_date_time)",
+            "CREATE INDEX IF NOT EXISTS idx_sale%1$s_date ON sale%1$s (sale_date_time)",
+            "CREATE INDEX IF NOT EXISTS idx_sale%1$s_reference ON sale%1$s (pos_reference)",
+            "CREATE INDEX IF NOT EXISTS idx_sale_line%1$s_sale ON sale_line%1$s (sale_id)",
+            "ALTER TABLE sale_line%1$s ADD CONSTRAINT IF NOT EXISTS fk_sale_line%1$s_sale FOREIGN KEY (sale_id) REFERENCES sale%1$s"
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SaleRepository saleRepository;
+
+    // Every partition in the catalog by month; replaced, never changed, so readers need no lock
+    private volatile NavigableMap<YearMonth, SalePartition> partitions = new TreeMap<>();
+    // Writes to the sale table by month, kept for sealed months while they may have sales there;
+    // changed under its own lock, read without
+    private final Map<YearMonth, SaleWrites> writes = new ConcurrentHashMap<>();
+
+    public PartitionedSaleRepository(JdbcTemplate jdbcTemplate, SaleRepository saleRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.saleRepository = saleRepository;
+    }
+
+    /**
+     * Read the catalog before any query is routed
+     */
+    @PostConstruct
+    public synchronized void loadCatalog() {
+        NavigableMap<YearMonth, SalePartition> loaded = new TreeMap<>();
+        jdbcTemplate.query("SELECT month_start, attached, sale_count, sealed_at FROM sale_partition", rs -> {
+            SalePartition partition = mapPartition(rs);
+            loaded.put(partition.month(), partition);
+        });
+        partitions = loaded;
+        findLateSales();
+        // Partitions sealed before sale_reference existed
+        for (SalePartition partition : loaded.values()) {
+            try {
+                indexReferences(partition);
+            } catch (IllegalStateException e) {
+                logger.warn("Sale references of partition {} are not all unique: {}", partition.month(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Every partition, attached or not, oldest first
+     */
+    public List<SalePartition> findAllPartitions() {
+        return List.copyOf(partitions.values());
+    }
+
+    public Optional<SalePartition> findPartition(YearMonth month) {
+        return Optional.ofNullable(partitions.get(month));
+    }
+
+    /**
+     * Whether sale pages can be ordered by a property
+     */
+    public boolean canSortBy(String property) {
+        return SORT_COLUMNS.containsKey(property);
+    }
+
+    /**
+     * Mark the sealed months that have sales in the sale table, after they were written
+     * without {@link #saleWriting}, as on startup; they are read there until sealed again
+     */
+    public void findLateSales() {
+        NavigableMap<YearMonth, SalePartition> sealed = partitions;
+        if (sealed.isEmpty()) {
+            return;
+        }
+        for (YearMonth month : findMonthsInSaleTableBefore(sealed.lastKey().plusMonths(1).atDay(1).atStartOfDay())) {
+            if (sealed.containsKey(month)) {
+                synchronized (writes) {
+                    writes.computeIfAbsent(month, m -> new SaleWrites()).changes++;
+                }
+            }
+        }
+    }
+
+    /**
+     * A sale for the month is about to be written to the sale table; call {@link #saleWritten}
+     * once it has committed or rolled back. If the month is sealed, queries read the sale
+     * table for it from now on, until a seal finds the month's sales all moved.
+     */
+    public void saleWriting(YearMonth month) {
+        synchronized (writes) {
+            SaleWrites monthWrites = writes.computeIfAbsent(month, m -> new SaleWrites());
+            monthWrites.inProgress++;
+            monthWrites.changes++;
+        }
+    }
+
+    /**
+     * A write announced with {@link #saleWriting} has committed or rolled back
+     */
+    public void saleWritten(YearMonth month) {
+        synchronized (writes) {
+            SaleWrites monthWrites = writes.get(month);
+            if (monthWrites == null) {
+                return;
+            }
+            monthWrites.inProgress = Math.max(0, monthWrites.inProgress - 1);
+            monthWrites.changes++;
+            // An open month's write is committed, so the next seal moves it; a sealed month's stays late
+            if (monthWrites.inProgress == 0 && !monthWrites.sealing && !partitions.containsKey(month)) {
+                writes.remove(month);
+            }
+        }
+    }
+
+    /**
+     * Start sealing a month, before its partition is created: queries read the sale table for
+     * it until {@link #finishSeal}
+     *
+     * @return Token to pass to finishSeal
+     */
+    public long startSeal(YearMonth month) {
+        synchronized (writes) {
+            SaleWrites monthWrites = writes.computeIfAbsent(month, m -> new SaleWrites());
+            monthWrites.sealing = true;
+            return monthWrites.changes;
+        }
+    }
+
+    /**
+     * A seal that started with the token found no sales of the month left in the sale table.
+     * Queries for the month stop reading the sale table, unless a sale for it was written
+     * since the seal started or is still being written.
+     *
+     * @return Whether the month is clean
+     */
+    public boolean finishSeal(YearMonth month, long token) {
+        synchronized (writes) {
+            SaleWrites monthWrites = writes.get(month);
+            if (monthWrites != null && (monthWrites.inProgress > 0 || monthWrites.changes != token)) {
+                monthWrites.sealing = false;
+                return false;
+            }
+            writes.remove(month);
+            return true;
+        }
+    }
+
+    /**
+     * The attached partitions with a month in the inclusive range, oldest first; null bounds are open
+     */
+    public List<SalePartition> findAttachedPartitions(LocalDateTime startDate, LocalDateTime endDate) {
+        NavigableMap<YearMonth, SalePartition> candidates = partitions;
+        if (startDate != null && endDate != null && endDate.isBefore(startDate)) {
+            return List.of();
+        }
+        if (startDate != null) {
+            candidates = candidates.tailMap(YearMonth.from(startDate), true);
+        }
+        if (endDate != null) {
+            candidates = candidates.headMap(YearMonth.from(endDate), true);
+        }
+        List<SalePartition> overlapping = new ArrayList<>();
+        for (SalePartition partition : candidates.values()) {
+            if (partition.attached() && partition.overlaps(startDate, endDate)) {
+                overlapping.add(partition);
+            }
+        }
+        return overlapping;
+    }
+
+    /**
+     * The select run against the sale tables and every attached partition, joined with UNION ALL
+     */
+    public String unionAll(String select) {
+        return unionAll(select, null, null);
+    }
+
+    /**
+     * The select run against the sale tables and the attached partitions overlapping the range,
+     * joined with UNION ALL. Bind parameters as ?1, ?2 and so on so they are shared by every branch.
+     */
+    public String unionAll(String select, LocalDateTime startDate, LocalDateTime endDate) {
+        StringBuilder sql = new StringBuilder();
+        for (String suffix : suffixes(startDate, endDate)) {
+            if (!sql.isEmpty()) {
+                sql.append("\nUNION ALL\n");
+            }
+            sql.append(select.replace(SALE_TABLE, "sale" + suffix).replace(LINE_TABLE, "sale_line" + suffix));
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Count sales, optionally for one location and within an inclusive date range
+     */
+    public long count(Long locationId, LocalDateTime startDate, LocalDateTime endDate) {
+        Filter filter = new Filter(locationId, startDate, endDate);
+        List<String> suffixes = suffixes(startDate, endDate);
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        for (String suffix : suffixes) {
+            sql.append(sql.isEmpty() ? "" : " UNION ALL ")
+                    .append("SELECT COUNT(*) AS n FROM sale").append(suffix).append(" WHERE ").append(filter.where());
+            filter.bind(params);
+        }
+        String query = suffixes.size() == 1 ? sql.toString() : "SELECT SUM(n) FROM (" + sql + ") u";
+        Long count = jdbcTemplate.queryForObject(query, Long.class, params.toArray());
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Page of sale IDs, optionally for one location and within an inclusive date range,
+     * in the order of the page's sort
+     *
+     * @throws IllegalArgumentException if the sort names a property sales cannot be ordered by
+     */
+    public Page<Long> findIds(Long locationId, LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
+        Filter filter = new Filter(locationId, startDate, endDate);
+        List<String> suffixes = suffixes(startDate, endDate);
+        String orderBy = orderBy(pageable.getSort());
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        if (suffixes.size() == 1) {
+            sql.append("SELECT id FROM sale").append(suffixes.get(0)).append(" WHERE ").append(filter.where()).append(orderBy);
+            filter.bind(params);
+        } else {
+            // Each branch only needs the rows up to the end of the page
+            for (String suffix : suffixes) {
+                sql.append(sql.isEmpty() ? "SELECT id FROM (" : " UNION ALL ")
+                        .append("(SELECT ").append(SALE_COLUMNS).append(" FROM sale").append(suffix)
+                        .append(" WHERE ").append(filter.where()).append(orderBy);
+                filter.bind(params);
+                if (pageable.isPaged()) {
+                    sql.append(" FETCH FIRST ? ROWS ONLY");
+                    params.add(pageable.getOffset() + pageable.getPageSize());
+                }
+                sql.append(')');
+            }
+            sql.append(") u").append(orderBy);
+        }
+        if (pageable.isPaged()) {
+            sql.append(" OFFSET ? ROWS FETCH NEXT ? ROWS ONLY");
+            params.add(pageable.getOffset());
+            params.add(pageable.getPageSize());
+        }
+        List<Long> ids = jdbcTemplate.queryForList(sql.toString(), Long.class, params.toArray());
+        return PageableExecutionUtils.getPage(ids, pageable, () -> count(locationId, startDate, endDate));
+    }
+
+    /**
+     * Keyset page of sale IDs within an inclusive date range, ordered by (saleDateTime, id),
+     * strictly after the cursor. Partitions wholly on the far side of the cursor are not read.
+     */
+    public List<Long> findIdsAfter(Long locationId, LocalDateTime startDate, LocalDateTime endDate,
+                                   SaleCursor after, Sort.Direction direction, int limit) {
+        boolean ascending = direction.isAscending();
+        LocalDateTime from = ascending && after.saleDateTime().isAfter(startDate) ? after.saleDateTime() : startDate;
+        LocalDateTime to = !ascending && after.saleDateTime().isBefore(endDate) ? after.saleDateTime() : endDate;
+        Filter filter = new Filter(locationId, startDate, endDate);
+        String keyset = ascending
+                ? " AND sale_date_time >= ? AND (sale_date_time > ? OR id > ?)"
+                : " AND sale_date_time <= ? AND (sale_date_time < ? OR id < ?)";
+        String orderBy = ascending ? " ORDER BY sale_date_time ASC, id ASC" : " ORDER BY sale_date_time DESC, id DESC";
+
+        List<String> suffixes = suffixes(from, to);
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        for (String suffix : suffixes) {
+            sql.append(sql.isEmpty() ? "" : " UNION ALL ")
+                    .append(suffixes.size() == 1 ? "SELECT id" : "(SELECT id, sale_date_time")
+                    .append(" FROM sale").append(suffix).append(" WHERE ").append(filter.where()).append(keyset)
+                    .append(orderBy).append(" FETCH FIRST ? ROWS ONLY").append(suffixes.size() == 1 ? "" : ")");
+            filter.bind(params);
+            Timestamp afterTime = Timestamp.valueOf(after.saleDateTime());
+            params.add(afterTime);
+            params.add(afterTime);
+            params.add(after.id());
+            params.add(limit);
+        }
+        String query = suffixes.size() == 1
+                ? sql.toString()
+                : "SELECT id FROM (" + sql + ") u" + orderBy + " FETCH FIRST ? ROWS ONLY";
+        if (suffixes.size() > 1) {
+            params.add(limit);
+        }
+        return jdbcTemplate.queryForList(query, Long.class, params.toArray());
+    }
+
+    /**
+     * Load sales with their lines in the order of the IDs, skipping IDs that match no sale.
+     * Sales in the sale table are loaded with JPA, unless the range leaves it out; the rest
+     * are looked for in the attached partitions overlapping the range, which also finds a
+     * sale that a seal moved after its ID was read. Call within a transaction.
+     */
+    public List<Sale> findWithLinesInOrder(List<Long> ids, LocalDateTime startDate, LocalDateTime endDate) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Sale> byId = new HashMap<>();
+        if (readsSaleTable(startDate, endDate, findAttachedPartitions(startDate, endDate))) {
+            for (Sale sale : saleRepository.findWithLinesByIdIn(ids)) {
+                byId.put(sale.getId(), sale);
+            }
+        }
+        if (byId.size() < ids.size()) {
+            List<Long> missing = new ArrayList<>(ids.size() - byId.size());
+            for (Long id : ids) {
+                if (!byId.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+            for (Sale sale : findWithLinesInPartitions(missing, startDate, endDate)) {
+                byId.put(sale.getId(), sale);
+            }
+        }
+        List<Sale> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Sale sale = byId.get(id);
+            if (sale != null) {
+                ordered.add(sale);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Load the sales with the given IDs, with their lines, from the attached partitions
+     * overlapping the range; sales still in the sale table are not looked for
+     *
+     * @return The sales found, not attached to any persistence context
+     */
+    public List<Sale> findWithLinesInPartitions(Collection<Long> ids, LocalDateTime startDate, LocalDateTime endDate) {
+        List<SalePartition> overlapping = findAttachedPartitions(startDate, endDate);
+        if (ids.isEmpty() || overlapping.isEmpty()) {
+            return List.of();
+        }
+        Long[] idArray = ids.toArray(Long[]::new);
+        StringBuilder sql = new StringBuilder();
+        List<String> suffixes = new ArrayList<>();
+        for (SalePartition partition : overlapping) {
+            sql.append(sql.isEmpty() ? "" : " UNION ALL ").append("SELECT ").append(SALE_COLUMNS)
+                    .append(" FROM sale").append(partition.suffix()).append(" WHERE id = ANY(CAST(?1 AS BIGINT ARRAY))");
+            suffixes.add(partition.suffix());
+        }
+        List<Sale> sales = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> mapSale(rs), (Object) idArray);
+        return withLines(sales, suffixes);
+    }
+
+    /**
+     * Look a sale up by ID in every attached partition
+     */
+    public Optional<Sale> findInPartitions(long id) {
+        return findWithLinesInPartitions(List.of(id), null, null).stream().findFirst();
+    }
+
+    /**
+     * The given IDs that are in the partitions of the given months, attached or not
+     */
+    public Set<Long> findIdsInPartitions(Collection<Long> ids, Collection<YearMonth> months) {
+        NavigableMap<YearMonth, SalePartition> catalog = partitions;
+        StringBuilder sql = new StringBuilder();
+        for (YearMonth month : months) {
+            SalePartition partition = catalog.get(month);
+            if (partition != null) {
+                sql.append(sql.isEmpty() ? "" : " UNION ALL ").append("SELECT id FROM sale").append(partition.suffix())
+                        .append(" WHERE id = ANY(CAST(?1 AS BIGINT ARRAY))");
+            }
+        }
+        if (ids.isEmpty() || sql.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(sql.toString(), Long.class, (Object) ids.toArray(Long[]::new)));
+    }
+
+    /**
+     * Highest sale ID in the sale table and every partition, attached or not; 0 if there are no sales
+     */
+    public long findMaxSaleId() {
+        return findMaxId("sale");
+    }
+
+    /**
+     * Highest sale line ID in the sale_line table and every partition, attached or not; 0 if there are none
+     */
+    public long findMaxLineId() {
+        return findMaxId("sale_line");
+    }
+
+    /**
+     * The newest pos_reference with the prefix at the location in each partition that has one,
+     * attached or not
+     */
+    public List<String> findLatestReferencesInPartitions(String prefix, Long locationId) {
+        NavigableMap<YearMonth, SalePartition> catalog = partitions;
+        if (catalog.isEmpty()) {
+            return List.of();
+        }
+        StringBuilder sql = new StringBuilder();
+        for (SalePartition partition : catalog.values()) {
+            sql.append(sql.isEmpty() ? "" : " UNION ALL ").append("(SELECT pos_reference FROM sale").append(partition.suffix())
+                    .append(" WHERE pos_reference LIKE ?1 AND location_id = ?2 ORDER BY id DESC FETCH FIRST 1 ROW ONLY)");
+        }
+        return jdbcTemplate.queryForList(sql.toString(), String.class, prefix + "%", locationId);
+    }
+
+    /**
+     * Up to limit sales of one partition with an ID above afterId, in ID order, with their lines
+     */
+    public List<Sale> findChunkInPartition(SalePartition partition, Long locationId, LocalDateTime startDate,
+                                           LocalDateTime endDate, long afterId, int limit) {
+        Filter filter = new Filter(locationId, startDate, endDate);
+        List<Object> params = new ArrayList<>();
+        filter.bind(params);
+        params.add(afterId);
+        params.add(limit);
+        List<Sale> sales = jdbcTemplate.query("SELECT " + SALE_COLUMNS + " FROM sale" + partition.suffix()
+                        + " WHERE " + filter.where() + " AND id > ? ORDER BY id FETCH FIRST ? ROWS ONLY",
+                (rs, rowNum) -> mapSale(rs), params.toArray());
+        return withLines(sales, List.of(partition.suffix()));
+    }
+
+    /**
+     * The months before the given time that still have sales in the sale table, oldest first
+     */
+    public List<YearMonth> findMonthsInSaleTableBefore(LocalDateTime before) {
+        return jdbcTemplate.query(
+                "SELECT DISTINCT YEAR(sale_date_time), MONTH(sale_date_time) FROM sale WHERE sale_date_time < ? ORDER BY 1, 2",
+                (rs, rowNum) -> YearMonth.of(rs.getInt(1), rs.getInt(2)), Timestamp.valueOf(before));
+    }
+
+    /**
+     * Create the tables of a month's partition if they do not exist, and attach it
+     */
+    public synchronized SalePartition createPartition(YearMonth month) {
+        SalePartition existing = partitions.get(month);
+        if (existing != null) {
+            return existing;
+        }
+        SalePartition partition = new SalePartition(month, true, 0, LocalDateTime.now());
+        String suffix = partition.suffix();
+        jdbcTemplate.execute(CREATE_SALE_SQL.formatted(suffix, Timestamp.valueOf(partition.start()), Timestamp.valueOf(partition.end())));
+        jdbcTemplate.execute(CREATE_LINE_SQL.formatted(suffix));
+        for (String sql : CREATE_INDEX_SQL) {
+            jdbcTemplate.execute(sql.formatted(suffix));
+        }
+        // Registered before any sale is moved in, so no query misses the sales once they are
+        jdbcTemplate.update("INSERT INTO sale_partition (month_start, attached, sale_count, sealed_at) VALUES (?, TRUE, 0, ?)",
+                partition.month().atDay(1), Timestamp.valueOf(partition.sealedAt()));
+        return put(partition);
+    }
+
+    /**
+     * Move up to batchSize of the partition's sales, with their lines, out of the sale tables.
+     * Must run in a transaction, so no query sees a sale in both places or in neither.
+     *
+     * @return Number of sales moved; fewer than batchSize once the month is empty
+     * @throws org.springframework.dao.DuplicateKeyException if a sale's pos_reference is in another partition
+     */
+    public int moveBatch(SalePartition partition, int batchSize) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM sale WHERE sale_date_time >= ? AND sale_date_time < ? FETCH FIRST ? ROWS ONLY",
+                Long.class, Timestamp.valueOf(partition.start()), Timestamp.valueOf(partition.end()), batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Object idArray = ids.toArray(Long[]::new);
+        String suffix = partition.suffix();
+        jdbcTemplate.update("INSERT INTO sale" + suffix + " (" + SALE_COLUMNS + ") SELECT " + SALE_COLUMNS
+                + " FROM sale WHERE id = ANY(CAST(? AS BIGINT ARRAY))", idArray);
+        jdbcTemplate.update("INSERT INTO sale_line" + suffix + " (" + LINE_COLUMNS + ") SELECT " + LINE_COLUMNS
+                + " FROM sale_line WHERE sale_id = ANY(CAST(? AS BIGINT ARRAY))", idArray);
+        // Fails the batch if another partition already has one of the references
+        jdbcTemplate.update("INSERT INTO sale_reference (pos_reference, month_start) SELECT pos_reference, ? FROM sale"
+                + " WHERE id = ANY(CAST(? AS BIGINT ARRAY)) AND pos_reference IS NOT NULL", partition.month().atDay(1), idArray);
+        jdbcTemplate.update("DELETE FROM sale_line WHERE sale_id = ANY(CAST(? AS BIGINT ARRAY))", idArray);
+        jdbcTemplate.update("DELETE FROM sale WHERE id = ANY(CAST(? AS BIGINT ARRAY))", idArray);
+        return ids.size();
+    }
+
+    /**
+     * Record the partition's size and seal time after sales were moved into it
+     */
+    public synchronized SalePartition markSealed(SalePartition partition) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale" + partition.suffix(), Long.class);
+        SalePartition sealed = new SalePartition(partition.month(), partition.attached(), count != null ? count : 0, LocalDateTime.now());
+        jdbcTemplate.update("UPDATE sale_partition SET sale_count = ?, sealed_at = ? WHERE month_start = ?",
+                sealed.saleCount(), Timestamp.valueOf(sealed.sealedAt()), sealed.month().atDay(1));
+        return put(sealed);
+    }
+
+    /**
+     * Start or stop reading a partition; its tables are left as they are, and so are its
+     * references, which stay reserved while it is detached
+     *
+     * @throws IllegalStateException if attaching a partition holding a pos_reference that is used elsewhere
+     */
+    public synchronized Optional<SalePartition> setAttached(YearMonth month, boolean attached) {
+        SalePartition partition = partitions.get(month);
+        if (partition == null) {
+            return Optional.empty();
+        }
+        if (attached) {
+            indexReferences(partition);
+        }
+        jdbcTemplate.update("UPDATE sale_partition SET attached = ? WHERE month_start = ?", attached, month.atDay(1));
+        return Optional.of(put(new SalePartition(month, attached, partition.saleCount(), partition.sealedAt())));
+    }
+
+    /**
+     * Remove a partition from the catalog and drop its tables
+     *
+     * @return The partition dropped, or empty if there was none for the month
+     */
+    public synchronized Optional<SalePartition> dropPartition(YearMonth month) {
+        SalePartition partition = partitions.get(month);
+        if (partition == null) {
+            return Optional.empty();
+        }
+        // Stop routing to the tables before they go
+        NavigableMap<YearMonth, SalePartition> updated = new TreeMap<>(partitions);
+        updated.remove(month);
+        partitions = updated;
+        jdbcTemplate.execute("DROP TABLE IF EXISTS sale_line" + partition.suffix());
+        jdbcTemplate.execute("DROP TABLE IF EXISTS sale" + partition.suffix());
+        jdbcTemplate.update("DELETE FROM sale_reference WHERE month_start = ?", month.atDay(1));
+        jdbcTemplate.update("DELETE FROM sale_partition WHERE month_start = ?", month.atDay(1));
+        synchronized (writes) {
+            writes.remove(month);
+        }
+        return Optional.of(partition);
+    }
+
+    /**
+     * Add the references of a partition's sales that sale_reference is missing
+     *
+     * @throws IllegalStateException if one of them belongs to another partition or to a sale in the sale table
+     */
+    private void indexReferences(SalePartition partition) {
+        String table = "sale" + partition.suffix();
+        Object month = partition.month().atDay(1);
+        Long indexed = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale_reference WHERE month_start = ?", Long.class, month);
+        Long referenced = jdbcTemplate.queryForObject("SELECT COUNT(pos_reference) FROM " + table, Long.class);
+        if (Objects.equals(indexed, referenced)) {
+            return;
+        }
+        List<String> conflicts = jdbcTemplate.queryForList("SELECT p.pos_reference FROM " + table + " p WHERE"
+                + " EXISTS (SELECT 1 FROM sale_reference r WHERE r.pos_reference = p.pos_reference AND r.month_start <> ?)"
+                + " OR EXISTS (SELECT 1 FROM sale s WHERE s.pos_reference = p.pos_reference) FETCH FIRST 1 ROW ONLY",
+                String.class, month);
+        if (!conflicts.isEmpty()) {
+            throw new IllegalStateException("Partition " + partition.month() + " has a sale " + conflicts.get(0)
+                    + " whose pos_reference is used by another sale");
+        }
+        jdbcTemplate.update("INSERT INTO sale_reference (pos_reference, month_start) SELECT pos_reference, ? FROM " + table
+                + " p WHERE pos_reference IS NOT NULL"
+                + " AND NOT EXISTS (SELECT 1 FROM sale_reference r WHERE r.pos_reference = p.pos_reference)", month);
+    }
+
+    private SalePartition put(SalePartition partition) {
+        NavigableMap<YearMonth, SalePartition> updated = new TreeMap<>(partitions);
+        updated.put(partition.month(), partition);
+        partitions = updated;
+        return partition;
+    }
+
+    /**
+     * Table suffixes to read for a date range: the sale table's unless the range leaves it
+     * out, then the overlapping partitions'
+     */
+    private List<String> suffixes(LocalDateTime startDate, LocalDateTime endDate) {
+        List<SalePartition> overlapping = findAttachedPartitions(startDate, endDate);
+        List<String> suffixes = new ArrayList<>(overlapping.size() + 1);
+        if (readsSaleTable(startDate, endDate, overlapping)) {
+            suffixes.add("");
+        }
+        for (SalePartition partition : overlapping) {
+            suffixes.add(partition.suffix());
+        }
+        return suffixes;
+    }
+
+    /**
+     * Whether a range may have sales in the sale table: unless every month of it has an
+     * attached partition and no late sales
+     *
+     * @param overlapping The attached partitions overlapping the range
+     */
+    private boolean readsSaleTable(LocalDateTime startDate, LocalDateTime endDate, List<SalePartition> overlapping) {
+        if (startDate == null || endDate == null || overlapping.isEmpty()) {
+            return true;
+        }
+        // The partitions are distinct months within the range, so there is one for every month if the counts match
+        long months = YearMonth.from(startDate).until(YearMonth.from(endDate), ChronoUnit.MONTHS) + 1;
+        if (overlapping.size() != months) {
+            return true;
+        }
+        for (SalePartition partition : overlapping) {
+            if (writes.containsKey(partition.month())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long findMaxId(String table) {
+        StringBuilder sql = new StringBuilder("SELECT MAX(id) AS m FROM ").append(table);
+        for (SalePartition partition : partitions.values()) {
+            sql.append(" UNION ALL SELECT MAX(id) FROM ").append(table).append(partition.suffix());
+        }
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(m) FROM (" + sql + ") u", Long.class);
+        return max != null ? max : 0;
+    }
+
+    private List<Sale> withLines(List<Sale> sales, List<String> suffixes) {
+        if (sales.isEmpty()) {
+            return sales;
+        }
+        Map<Long, Sale> byId = new HashMap<>();
+        for (Sale sale : sales) {
+            byId.put(sale.getId(), sale);
+        }
+        StringBuilder sql = new StringBuilder();
+        for (String suffix : suffixes) {
+            sql.append(sql.isEmpty() ? "" : " UNION ALL ").append("SELECT ").append(LINE_COLUMNS)
+                    .append(" FROM sale_line").append(suffix).append(" WHERE sale_id = ANY(CAST(?1 AS BIGINT ARRAY))");
+        }
+        String query = suffixes.size() == 1 ? sql + " ORDER BY id" : "SELECT * FROM (" + sql + ") u ORDER BY id";
+        jdbcTemplate.query(query, rs -> {
+            Sale sale = byId.get(rs.getLong(2));
+            sale.getLines().add(SaleLine.builder()
+                    .id(rs.getLong(1))
+                    .sale(sale)
+                    .posCode(rs.getString(3))
+                    .menuItemName(rs.getString(4))
+                    .quantityMilli(rs.getLong(5))
+                    .unitPriceMinor(rs.getLong(6))
+                    .extendedMinor(rs.getLong(7))
+                    .build());
+        }, (Object) byId.keySet().toArray(Long[]::new));
+        return sales;
+    }
+
+    private static Sale mapSale(ResultSet rs) throws SQLException {
+        Timestamp time = rs.getTimestamp(2);
+        return Sale.builder()
+                .id(rs.getLong(1))
+                .saleDateTime(time != null ? time.toLocalDateTime() : null)
+                .posReference(rs.getString(3))
+                .locationId(rs.getObject(4, Long.class))
+                .totalMinor(rs.getLong(5))
+                .lines(new ArrayList<>())
+                .build();
+    }
+
+    private static SalePartition mapPartition(ResultSet rs) throws SQLException {
+        return new SalePartition(
+                YearMonth.from(rs.getDate(1).toLocalDate()),
+                rs.getBoolean(2),
+                rs.getLong(3),
+                rs.getTimestamp(4).toLocalDateTime());
+    }
+
+    private static String orderBy(Sort sort) {
+        if (sort.isUnsorted()) {
+            return " ORDER BY id";
+        }
+        StringBuilder orderBy = new StringBuilder();
+        boolean byId = false;
+        Sort.Direction last = Sort.Direction.ASC;
+        for (Sort.Order order : sort) {
+            String column = SORT_COLUMNS.get(order.getProperty());
+            if (column == null) {
+                throw new IllegalArgumentException("Cannot sort sales by " + order.getProperty());
+            }
+            orderBy.append(orderBy.isEmpty() ? " ORDER BY " : ", ").append(column).append(' ').append(order.getDirection().name());
+            byId |= column.equals("id");
+            last = order.getDirection();
+        }
+        // Ties broken by ID, so pages do not overlap
+        return byId ? orderBy.toString() : orderBy + ", id " + last.name();
+    }
+
+    /**
+     * Writes of a month's sales to the sale table: how many are in progress, and a count of
+     * every start and end, so a seal can tell whether one happened while it ran
+     */
+    private static final class SaleWrites {
+        private int inProgress;
+        private long changes;
+        private boolean sealing;
+    }
+
+    /**
+     * Optional location and inclusive date bounds, bound in that order
+     */
+    private record Filter(Long locationId, LocalDateTime startDate, LocalDateTime endDate) {
+
+        String where() {
+            List<String> conditions = new ArrayList<>(3);
+            if (locationId != null) {
+                conditions.add("location_id = ?");
+            }
+            if (startDate != null) {
+                conditions.add("sale_date_time >= ?");
+            }
+            if (endDate != null) {
+                conditions.add("sale_date_time <= ?");
+            }
+            return conditions.isEmpty() ? "TRUE" : String.join(" AND ", conditions);
+        }
+
+        void bind(List<Object> params) {
+            if (locationId != null) {
+                params.add(locationId);
+            }
+            if (startDate != null) {
+                params.add(Timestamp.valueOf(startDate));
+            }
+            if (endDate != null) {
+                params.add(Timestamp.valueOf(endDate));
+            }
+        }
+    }
+}
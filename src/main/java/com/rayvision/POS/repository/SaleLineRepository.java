@@ -2,9 +2,19 @@ package com.rayvision.POS.repository;
 
 import com.rayvision.POS.domain.SaleLine;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface SaleLineRepository extends JpaRepository<SaleLine, Long> {
 
+    /**
+     * Load the lines of several sales in one query
+     */
+    @Query("SELECT l FROM SaleLine l WHERE l.sale.id IN :saleIds ORDER BY l.id")
+    List<SaleLine> findBySaleIdIn(@Param("saleIds") Collection<Long> saleIds);
 }
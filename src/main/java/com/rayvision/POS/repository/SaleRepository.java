@@ -1,74 +1,62 @@
 package com.rayvision.POS.repository;
 
 import com.rayvision.POS.domain.Sale;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface SaleRepository extends JpaRepository<Sale, Long> {
     
-    /**
-     * Find sales between two dates with pagination
-     */
-    Page<Sale> findBySaleDateTimeBetween(LocalDateTime startDate, LocalDateTime endDate, Pageable pageable);
-    
-    /**
-     * Find sales between two dates without pagination
-     */
-    List<Sale> findBySaleDateTimeBetween(LocalDateTime startDate, LocalDateTime endDate);
-    
-    /**
-     * Count sales between two dates
-     */
-    long countBySaleDateTimeBetween(LocalDateTime startDate, LocalDateTime endDate);
-    
     /**
      * Find sales by location ID
      */
     List<Sale> findByLocationId(Long locationId);
     
     /**
-     * Find sales by location ID with pagination
-     */
-    Page<Sale> findByLocationId(Long locationId, Pageable pageable);
-    
-    /**
-     * Find sales by location ID between two dates
-     */
-    List<Sale> findByLocationIdAndSaleDateTimeBetween(Long locationId, LocalDateTime startDate, LocalDateTime endDate);
-    
-    /**
-     * Find sales by location ID between two dates with pagination
+     * Find the most recent sale with a posReference that starts with the given prefix
      */
-    Page<Sale> findByLocationIdAndSaleDateTimeBetween(Long locationId, LocalDateTime startDate, LocalDateTime endDate, Pageable pageable);
+    @Query(value = "SELECT s.pos_reference FROM sale s WHERE s.pos_reference LIKE :prefix% ORDER BY s.id DESC LIMIT 1", nativeQuery = true)
+    Optional<String> findTopByPosReferenceStartingWithOrderByIdDesc(@Param("prefix") String prefix);
     
     /**
-     * Count sales by location ID
+     * Find the most recent sale with a posReference that starts with the given prefix for a specific location
      */
-    long countByLocationId(Long locationId);
+    @Query(value = "SELECT s.pos_reference FROM sale s WHERE s.pos_reference LIKE :prefix% AND s.location_id = :locationId ORDER BY s.id DESC LIMIT 1", nativeQuery = true)
+    Optional<String> findTopByPosReferenceStartingWithAndLocationIdOrderByIdDesc(@Param("prefix") String prefix, @Param("locationId") Long locationId);
     
     /**
-     * Count sales by location ID between two dates
+     * Rows fetched per cursor round trip when streaming sales
      */
-    long countByLocationIdAndSaleDateTimeBetween(Long locationId, LocalDateTime startDate, LocalDateTime endDate);
+    int EXPORT_FETCH_SIZE = 500;
     
     /**
-     * Find the most recent sale with a posReference that starts with the given prefix
+     * Stream sales in id order for export, optionally filtered by location and date range.
+     * Rows are read from a forward-only cursor in fetch-size chunks; the caller must
+     * consume the stream inside a transaction and close it.
      */
-    @Query(value = "SELECT s.pos_reference FROM sale s WHERE s.pos_reference LIKE :prefix% ORDER BY s.id DESC LIMIT 1", nativeQuery = true)
-    Optional<String> findTopByPosReferenceStartingWithOrderByIdDesc(@Param("prefix") String prefix);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query("SELECT s FROM Sale s WHERE (:locationId IS NULL OR s.locationId = :locationId) "
+            + "AND (:startDate IS NULL OR s.saleDateTime >= :startDate) "
+            + "AND (:endDate IS NULL OR s.saleDateTime <= :endDate) ORDER BY s.id")
+    Stream<Sale> streamForExport(@Param("locationId") Long locationId,
+                                 @Param("startDate") LocalDateTime startDate,
+                                 @Param("endDate") LocalDateTime endDate);
     
     /**
-     * Find the most recent sale with a posReference that starts with the given prefix for a specific location
+     * Load sales together with their lines in a single query
      */
-    @Query(value = "SELECT s.pos_reference FROM sale s WHERE s.pos_reference LIKE :prefix% AND s.location_id = :locationId ORDER BY s.id DESC LIMIT 1", nativeQuery = true)
-    Optional<String> findTopByPosReferenceStartingWithAndLocationIdOrderByIdDesc(@Param("prefix") String prefix, @Param("locationId") Long locationId);
-}
+    @EntityGraph(attributePaths = "lines")
+    List<Sale> findWithLinesByIdIn(Collection<Long> ids);
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.rayvision.POS.repository;
+
+import com.rayvision.POS.domain.RollupGranularity;
+import com.rayvision.POS.domain.SalesRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface SalesRollupRepository extends JpaRepository<SalesRollup, SalesRollup.Key> {
+
+    /**
+     * Buckets of one granularity in [from, to], for one location or all locations if locationId is null
+     */
+    @Query("SELECT r FROM SalesRollup r WHERE r.granularity = :granularity " +
+           "AND r.bucketStart BETWEEN :from AND :to " +
+           "AND (:locationId IS NULL OR r.locationId = :locationId)")
+    List<SalesRollup> findBuckets(@Param("locationId") Long locationId,
+                                  @Param("granularity") RollupGranularity granularity,
+                                  @Param("from") LocalDateTime from,
+                                  @Param("to") LocalDateTime to);
+}
@@ -0,0 +1,348 @@
+package com.rayvision.POS.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rayvision.POS.config.IdempotencyConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key handling for sale submissions, so a register retrying a request after a
+ * network failure gets the original response instead of a second sale.
+ * <p>
+ * The first request with a key runs and its successful response is kept, in a bounded map
+ * in memory and in the idempotency_key table, for pos.idempotency.ttl-millis. Requests with
+ * the same key and body then get that response back, marked with an Idempotent-Replayed
+ * header, without touching the database. A duplicate arriving while the original is still
+ * running waits for it rather than running as well. When the map is full the oldest
+ * finished keys are dropped from memory and are answered from the table instead.
+ * <p>
+ * Keys are per scope (one per endpoint), since the endpoints answer differently. A key sent
+ * with a different body is refused. Error responses and exceptions are not kept, so the
+ * client may retry those with the same key.
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final String SELECT_SQL = """
+            SELECT request_hash, response_status, response_location, response_body, created_at
+            FROM idempotency_key WHERE scope = ? AND idempotency_key = ?
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO idempotency_key (scope, idempotency_key, request_hash, response_status,
+                                         response_location, response_body, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String PURGE_SQL = "DELETE FROM idempotency_key WHERE created_at < ?";
+
+    private static final String DELETE_SQL = "DELETE FROM idempotency_key WHERE scope = ? AND idempotency_key = ?";
+
+    private final IdempotencyConfig config;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    // In insertion order, so eviction drops the oldest keys first
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder replayedFromTable = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyService(IdempotencyConfig config, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public static boolean isValidKey(String key) {
+        return key != null && !key.isBlank() && key.length() <= MAX_KEY_LENGTH;
+    }
+
+    /**
+     * Run a request once per key
+     *
+     * @param scope Endpoint the key belongs to
+     * @param key The client's Idempotency-Key, or null to just run the action
+     * @param request Request body, compared with the original request's body
+     * @param action Handles the request; called at most once per key while its response is kept
+     * @return The response of the action, or of the original request with this key
+     * @throws IdempotencyKeyReusedException if the key was used for a different body
+     * @throws IdempotencyKeyInProgressException if the original request is still running after pos.idempotency.wait-timeout-millis
+     */
+    public ResponseEntity<?> execute(String scope, String key, Object request, Supplier<? extends ResponseEntity<?>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        String requestHash = fingerprint(request);
+        Key id = new Key(scope, key);
+        while (true) {
+            Entry entry = new Entry();
+            Entry existing;
+            lock.lock();
+            try {
+                existing = entries.putIfAbsent(id, entry);
+                if (existing == null) {
+                    evictOverflow();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (existing == null) {
+                return runFirst(id, entry, requestHash, action);
+            }
+
+            StoredResponse stored = await(existing, key);
+            if (stored == null || isExpired(stored)) {
+                // The original failed, or its response is too old to replay: handle this one afresh
+                remove(id, existing);
+                continue;
+            }
+            return replay(stored, key, requestHash);
+        }
+    }
+
+    private ResponseEntity<?> runFirst(Key id, Entry entry, String requestHash, Supplier<? extends ResponseEntity<?>> action) {
+        StoredResponse result = null;
+        try {
+            // Evicted from memory, or kept from before a restart
+            StoredResponse kept = load(id);
+            if (kept != null && !isExpired(kept)) {
+                result = kept;
+                replayedFromTable.increment();
+                return replay(kept, id.key(), requestHash);
+            }
+
+            ResponseEntity<?> response = action.get();
+            executed.increment();
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                return response;
+            }
+            URI location = response.getHeaders().getLocation();
+            result = new StoredResponse(requestHash, response.getStatusCode().value(),
+                    location != null ? location.toString() : null,
+                    objectMapper.writeValueAsString(response.getBody()), System.currentTimeMillis());
+            save(id, result);
+            if (entry.evicted) {
+                // Evicted while the response was being stored
+                delete(id);
+            }
+            return toResponse(result, false);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the response for Idempotency-Key " + id.key(), e);
+        } finally {
+            if (result == null) {
+                remove(id, entry);
+            }
+            entry.response.complete(entry.evicted ? null : result);
+        }
+    }
+
+    private StoredResponse await(Entry entry, String key) {
+        if (entry.response.isDone()) {
+            replayed.increment();
+        } else {
+            coalesced.increment();
+        }
+        try {
+            return entry.response.get(config.getWaitTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyInProgressException(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException(key);
+        } catch (ExecutionException e) {
+            // Never completed exceptionally; a failed original completes with null
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored, String key, String requestHash) {
+        if (!stored.requestHash().equals(requestHash)) {
+            rejected.increment();
+            throw new IdempotencyKeyReusedException(key);
+        }
+        return toResponse(stored, true);
+    }
+
+    private static ResponseEntity<String> toResponse(StoredResponse stored, boolean replayed) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(stored.status()).contentType(MediaType.APPLICATION_JSON);
+        if (stored.location() != null) {
+            builder.header(HttpHeaders.LOCATION, stored.location());
+        }
+        if (replayed) {
+            builder.header(REPLAYED_HEADER, "true");
+        }
+        return builder.body(stored.body());
+    }
+
+    private StoredResponse load(Key id) {
+        List<StoredResponse> rows = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> new StoredResponse(
+                rs.getString(1), rs.getInt(2), rs.getString(3), rs.getString(4), rs.getTimestamp(5).getTime()),
+                id.scope(), id.key());
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private void save(Key id, StoredResponse stored) {
+        try {
+            jdbcTemplate.update(INSERT_SQL, id.scope(), id.key(), stored.requestHash(), stored.status(),
+                    stored.location(), stored.body(), new Timestamp(stored.createdAtMillis()));
+        } catch (DuplicateKeyException e) {
+            // An expired row not purged yet; the new response replaces it
+            jdbcTemplate.update(DELETE_SQL, id.scope(), id.key());
+            jdbcTemplate.update(INSERT_SQL, id.scope(), id.key(), stored.requestHash(), stored.status(),
+                    stored.location(), stored.body(), new Timestamp(stored.createdAtMillis()));
+        } catch (DataAccessException e) {
+            // The response is still replayed from memory until it is evicted
+            logger.warn("Failed to store the response for Idempotency-Key {}: {}", id.key(), e.getMessage());
+        }
+    }
+
+    /**
+     * Forget the response kept for a key, e.g. once the sale it reported as accepted has been
+     * dropped, so a retry with the key runs again instead of replaying it
+     */
+    public void evict(String scope, String key) {
+        Key id = new Key(scope, key);
+        lock.lock();
+        try {
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                entry.evicted = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        delete(id);
+        evictions.increment();
+    }
+
+    private void delete(Key id) {
+        try {
+            jdbcTemplate.update(DELETE_SQL, id.scope(), id.key());
+        } catch (DataAccessException e) {
+            logger.warn("Failed to delete the response for Idempotency-Key {}: {}", id.key(), e.getMessage());
+        }
+    }
+
+    private boolean isExpired(StoredResponse stored) {
+        return stored.createdAtMillis() + config.getTtlMillis() < System.currentTimeMillis();
+    }
+
+    private void remove(Key id, Entry entry) {
+        lock.lock();
+        try {
+            entries.remove(id, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held; keys still being processed stay so their duplicates can wait on them
+    private void evictOverflow() {
+        int excess = entries.size() - config.getMaxEntries();
+        Iterator<Entry> oldest = entries.values().iterator();
+        while (excess > 0 && oldest.hasNext()) {
+            if (oldest.next().response.isDone()) {
+                oldest.remove();
+                evictions.increment();
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Drop expired keys from memory and from the table
+     */
+    @Scheduled(fixedDelayString = "${pos.idempotency.purge-interval-millis:60000}")
+    public int purgeExpired() {
+        lock.lock();
+        try {
+            entries.values().removeIf(entry -> {
+                StoredResponse stored = entry.response.getNow(null);
+                return stored != null && isExpired(stored);
+            });
+        } finally {
+            lock.unlock();
+        }
+        return jdbcTemplate.update(PURGE_SQL, new Timestamp(System.currentTimeMillis() - config.getTtlMillis()));
+    }
+
+    public Map<String, Object> getStats() {
+        int size;
+        lock.lock();
+        try {
+            size = entries.size();
+        } finally {
+            lock.unlock();
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", size);
+        stats.put("maxEntries", config.getMaxEntries());
+        stats.put("executed", executed.sum());
+        stats.put("replayed", replayed.sum());
+        stats.put("replayedFromTable", replayedFromTable.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the request", e);
+        }
+    }
+
+    private record Key(String scope, String key) {
+    }
+
+    private record StoredResponse(String requestHash, int status, String location, String body, long createdAtMillis) {
+    }
+
+    private static final class Entry {
+        // Completed with the response to replay, or null if the request failed
+        private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+        private volatile boolean evicted;
+    }
+}
@@ -0,0 +1,36 @@
+package com.rayvision.POS.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A sale would take a product's stock at its location below zero
+ * while pos.inventory.reject-negative is on
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class InsufficientStockException extends RuntimeException {
+
+    private final Long locationId;
+    private final String posCode;
+    private final double onHand;
+
+    public InsufficientStockException(Long locationId, String posCode, double requested, double onHand) {
+        super("Insufficient stock of " + posCode + " at location " + locationId
+                + ": requested " + requested + ", on hand " + onHand);
+        this.locationId = locationId;
+        this.posCode = posCode;
+        this.onHand = onHand;
+    }
+
+    public Long getLocationId() {
+        return locationId;
+    }
+
+    public String getPosCode() {
+        return posCode;
+    }
+
+    public double getOnHand() {
+        return onHand;
+    }
+}
@@ -0,0 +1,331 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.config.InventoryConfig;
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.LocationStock;
+import com.rayvision.POS.domain.Product;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.repository.LocationStockRepository;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-location stock ledger kept in memory and written behind to {@code location_stock}.
+ * <p>
+ * Each product at each location has its own pair of atomic counters (received and sold,
+ * in thousandths of a unit), so a sale only contends with sales of the same product at the
+ * same store, and then only on a compare-and-set; no database row is locked on the sale
+ * path. Changed counters are written to the table as absolute values in one JDBC batch every
+ * {@code pos.inventory.flush-interval-millis}. A location starts a product with the
+ * product's {@code stock} as its opening quantity.
+ * <p>
+ * Sold quantities are derived data: on startup they are recomputed from the sale tables,
+ * which recovers sales committed after the last flush before a crash.
+ */
+@Service
+@DependsOn("saleJournalService") // reconciles against the sales the journal replays
+public class InventoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryService.class);
+
+    private static final String MERGE_SQL = """
+            MERGE INTO location_stock s
+            USING (VALUES (CAST(? AS BIGINT), CAST(? AS VARCHAR), CAST(? AS BIGINT), CAST(? AS BIGINT)))
+                AS d(location_id, pos_code, received_quantity_milli, sold_quantity_milli)
+            ON s.location_id = d.location_id AND s.pos_code = d.pos_code
+            WHEN MATCHED THEN UPDATE SET received_quantity_milli = d.received_quantity_milli,
+                                         sold_quantity_milli = d.sold_quantity_milli
+            WHEN NOT MATCHED THEN INSERT (location_id, pos_code, received_quantity_milli, sold_quantity_milli)
+                VALUES (d.location_id, d.pos_code, d.received_quantity_milli, d.sold_quantity_milli)
+            """;
+
+    private static final String RECONCILE_SQL = """
+            MERGE INTO location_stock s
+            USING (SELECT location_id, pos_code, SUM(quantity_milli) AS sold
+                   FROM (%s) u
+                   GROUP BY location_id, pos_code) d
+            ON s.location_id = d.location_id AND s.pos_code = d.pos_code
+            WHEN MATCHED THEN UPDATE SET sold_quantity_milli = d.sold
+            WHEN NOT MATCHED THEN INSERT (location_id, pos_code, received_quantity_milli, sold_quantity_milli)
+                VALUES (d.location_id, d.pos_code,
+                        COALESCE((SELECT p.stock FROM product p WHERE p.pos_code = d.pos_code), 0) * 1000, d.sold)
+            """;
+
+    // Sold quantities per partition, added up by RECONCILE_SQL
+    private static final String SOLD_SQL = """
+            SELECT sale.location_id, line.pos_code, SUM(line.quantity_milli) AS quantity_milli
+            FROM {sale} sale JOIN {sale_line} line ON line.sale_id = sale.id
+            WHERE sale.location_id IS NOT NULL AND line.pos_code IS NOT NULL
+            GROUP BY sale.location_id, line.pos_code
+            """;
+
+    private final LocationStockRepository stockRepository;
+    private final PartitionedSaleRepository partitionedSaleRepository;
+    private final ProductCatalog productCatalog;
+    private final JdbcTemplate jdbcTemplate;
+    private final InventoryConfig config;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile Map<Long, Map<String, Counter>> counters = new ConcurrentHashMap<>();
+    private final Set<LocationStock.Key> dirty = ConcurrentHashMap.newKeySet();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rowsFlushed = new LongAdder();
+
+    public InventoryService(LocationStockRepository stockRepository, PartitionedSaleRepository partitionedSaleRepository,
+                            ProductCatalog productCatalog, JdbcTemplate jdbcTemplate, InventoryConfig config,
+                            PlatformTransactionManager transactionManager) {
+        this.stockRepository = stockRepository;
+        this.partitionedSaleRepository = partitionedSaleRepository;
+        this.productCatalog = productCatalog;
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = config;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Load the ledger before any sale can be created, reconciling it first if configured
+     */
+    @PostConstruct
+    public void loadOnStartup() {
+        if (config.isReconcileOnStartup()) {
+            reconcile();
+        } else {
+            load();
+        }
+    }
+
+    /**
+     * Take a sale's quantities out of stock at its location. All lines are taken or none.
+     *
+     * @param sale A sale with its location set
+     * @throws InsufficientStockException if pos.inventory.reject-negative is on and a product would go below zero
+     */
+    public void reserve(Sale sale) {
+        Map<String, Long> quantities = unitsByProduct(sale);
+        List<Map.Entry<String, Long>> taken = new ArrayList<>(quantities.size());
+        for (Map.Entry<String, Long> entry : quantities.entrySet()) {
+            Counter counter = counter(sale.getLocationId(), entry.getKey());
+            if (!counter.take(entry.getValue(), config.isRejectNegative())) {
+                // Put back what the earlier lines took; a flush may have written the taken values already
+                for (Map.Entry<String, Long> undo : taken) {
+                    counter(sale.getLocationId(), undo.getKey()).sold.addAndGet(-undo.getValue());
+                    dirty.add(new LocationStock.Key(sale.getLocationId(), undo.getKey()));
+                }
+                rejected.increment();
+                throw new InsufficientStockException(sale.getLocationId(), entry.getKey(),
+                        toQuantity(entry.getValue()), toQuantity(counter.onHand()));
+            }
+            taken.add(entry);
+            dirty.add(new LocationStock.Key(sale.getLocationId(), entry.getKey()));
+        }
+    }
+
+    /**
+     * Return a reserved sale's quantities to stock, e.g. when persisting it failed
+     */
+    public void release(Sale sale) {
+        for (Map.Entry<String, Long> entry : unitsByProduct(sale).entrySet()) {
+            counter(sale.getLocationId(), entry.getKey()).sold.addAndGet(-entry.getValue());
+            dirty.add(new LocationStock.Key(sale.getLocationId(), entry.getKey()));
+        }
+    }
+
+    /**
+     * Add a delivery to a product's stock at a location
+     *
+     * @return The new stock level
+     * @throws IllegalArgumentException if the quantity is not positive
+     */
+    public LocationStock receive(Long locationId, String posCode, double quantity) {
+        if (!(quantity > 0)) {
+            throw new IllegalArgumentException("Received quantity must be positive");
+        }
+        Counter counter = counter(locationId, posCode);
+        counter.received.addAndGet(FixedPoint.fromDouble(quantity, FixedPoint.QUANTITY_SCALE));
+        dirty.add(new LocationStock.Key(locationId, posCode));
+        return counter.toStock(locationId, posCode);
+    }
+
+    /**
+     * Stock of every catalog product at a location, plus any other product it has sold
+     */
+    public List<LocationStock> getStock(Long locationId) {
+        Map<String, Counter> known = counters.getOrDefault(locationId, Map.of());
+        Map<String, LocationStock> stock = new LinkedHashMap<>();
+        for (Product product : productCatalog.getAllProducts()) {
+            Counter counter = known.get(product.getPosCode());
+            stock.put(product.getPosCode(), counter != null
+                    ? counter.toStock(locationId, product.getPosCode())
+                    : new LocationStock(locationId, product.getPosCode(), openingUnits(product.getPosCode()), 0));
+        }
+        known.forEach((posCode, counter) -> stock.putIfAbsent(posCode, counter.toStock(locationId, posCode)));
+        return new ArrayList<>(stock.values());
+    }
+
+    /**
+     * Write every changed counter to the stock table
+     *
+     * @return Number of rows written
+     */
+    @Scheduled(fixedDelayString = "${pos.inventory.flush-interval-millis:1000}")
+    public synchronized int flush() {
+        if (dirty.isEmpty()) {
+            return 0;
+        }
+        List<LocationStock.Key> keys = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (LocationStock.Key key : dirty) {
+            // Remove before reading: a change after the read marks the key dirty again
+            dirty.remove(key);
+            keys.add(key);
+            Counter counter = counter(key.locationId(), key.posCode());
+            rows.add(new Object[]{key.locationId(), key.posCode(), counter.received.get(), counter.sold.get()});
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(MERGE_SQL, rows));
+            rowsFlushed.add(rows.size());
+            return rows.size();
+        } catch (RuntimeException e) {
+            // Values are absolute, so writing the same keys again later loses nothing
+            logger.warn("Failed to flush {} stock rows, will retry: {}", rows.size(), e.getMessage());
+            dirty.addAll(keys);
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Recompute every sold quantity from the sale tables and attached partitions and reload the ledger.
+     * Sales created while this runs may be counted twice or not at all, so run it
+     * while no sales are being created.
+     *
+     * @return Number of stock rows after reconciling
+     */
+    public synchronized int reconcile() {
+        // Received quantities only live in the ledger until flushed
+        flush();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE location_stock SET sold_quantity_milli = 0");
+            jdbcTemplate.update(RECONCILE_SQL.formatted(partitionedSaleRepository.unionAll(SOLD_SQL)));
+        });
+        int rows = load();
+        logger.info("Reconciled stock for {} products and locations with the sale tables", rows);
+        return rows;
+    }
+
+    /**
+     * Ledger statistics for monitoring
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("counters", counters.values().stream().mapToInt(Map::size).sum());
+        stats.put("dirty", dirty.size());
+        stats.put("rowsFlushed", rowsFlushed.sum());
+        stats.put("rejectedSales", rejected.sum());
+        stats.put("rejectNegative", config.isRejectNegative());
+        return stats;
+    }
+
+    private synchronized int load() {
+        Map<Long, Map<String, Counter>> loaded = new ConcurrentHashMap<>();
+        List<LocationStock> rows = stockRepository.findAll();
+        for (LocationStock row : rows) {
+            loaded.computeIfAbsent(row.getLocationId(), id -> new ConcurrentHashMap<>())
+                    .put(row.getPosCode(), new Counter(row.getReceivedQuantityMilli(), row.getSoldQuantityMilli()));
+        }
+        counters = loaded;
+        dirty.clear();
+        return rows.size();
+    }
+
+    private Counter counter(Long locationId, String posCode) {
+        Map<String, Counter> location = counters.computeIfAbsent(locationId, id -> new ConcurrentHashMap<>());
+        Counter counter = location.get(posCode);
+        if (counter != null) {
+            return counter;
+        }
+        return location.computeIfAbsent(posCode, code -> new Counter(openingUnits(code), 0));
+    }
+
+    private long openingUnits(String posCode) {
+        return productCatalog.findByPosCode(posCode)
+                .map(Product::getStock)
+                .map(stock -> stock * FixedPoint.QUANTITY_UNITS)
+                .orElse(0L);
+    }
+
+    private static Map<String, Long> unitsByProduct(Sale sale) {
+        Map<String, Long> units = new LinkedHashMap<>();
+        if (sale.getLines() != null) {
+            for (SaleLine line : sale.getLines()) {
+                // Thousandths already, the ledger's own unit
+                units.merge(line.getPosCode(), line.getQuantityMilli(), Long::sum);
+            }
+        }
+        return units;
+    }
+
+    private static double toQuantity(long units) {
+        return FixedPoint.toDouble(units, FixedPoint.QUANTITY_SCALE);
+    }
+
+    private static final class Counter {
+        private final AtomicLong received;
+        private final AtomicLong sold;
+
+        Counter(long received, long sold) {
+            this.received = new AtomicLong(received);
+            this.sold = new AtomicLong(sold);
+        }
+
+        long onHand() {
+            return received.get() - sold.get();
+        }
+
+        boolean take(long units, boolean rejectNegative) {
+            if (!rejectNegative) {
+                sold.addAndGet(units);
+                return true;
+            }
+            while (true) {
+                long current = sold.get();
+                // Deliveries only add to received, so a stale read can only make this stricter
+                if (received.get() - current < units) {
+                    return false;
+                }
+                if (sold.compareAndSet(current, current + units)) {
+                    return true;
+                }
+            }
+        }
+
+        LocationStock toStock(Long locationId, String posCode) {
+            return new LocationStock(locationId, posCode, received.get(), sold.get());
+        }
+    }
+}
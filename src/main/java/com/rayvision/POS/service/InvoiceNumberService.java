@@ -1,74 +1,183 @@
 package com.rayvision.POS.service;
 
+import com.rayvision.POS.config.InvoiceConfig;
+import com.rayvision.POS.domain.InvoiceSequence;
 import com.rayvision.POS.domain.Location;
-import com.rayvision.POS.repository.LocationRepository;
+import com.rayvision.POS.metrics.MetricsRegistry;
+import com.rayvision.POS.metrics.Timer;
+import com.rayvision.POS.repository.InvoiceSequenceRepository;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
 import com.rayvision.POS.repository.SaleRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentMap;
 
 @Service
 public class InvoiceNumberService {
 
     private final SaleRepository saleRepository;
-    private final LocationRepository locationRepository;
+    private final PartitionedSaleRepository partitionedSaleRepository;
+    private final LocationRegistry locationRegistry;
+    private final InvoiceSequenceRepository invoiceSequenceRepository;
+    private final InvoiceConfig config;
+    private final TransactionTemplate reserveTransaction;
+    private final Timer generateTimer;
+    private final ConcurrentMap<Long, LocationCounter> counters = new ConcurrentHashMap<>();
     private static final String INVOICE_PREFIX = "INV-";
     private static final int PADDING_LENGTH = 6;
-    
+
     @Autowired
-    public InvoiceNumberService(SaleRepository saleRepository, LocationRepository locationRepository) {
+    public InvoiceNumberService(SaleRepository saleRepository, PartitionedSaleRepository partitionedSaleRepository,
+                                LocationRegistry locationRegistry,
+                                InvoiceSequenceRepository invoiceSequenceRepository, InvoiceConfig config,
+                                PlatformTransactionManager transactionManager, MetricsRegistry metricsRegistry) {
         this.saleRepository = saleRepository;
-        this.locationRepository = locationRepository;
+        this.partitionedSaleRepository = partitionedSaleRepository;
+        this.locationRegistry = locationRegistry;
+        this.invoiceSequenceRepository = invoiceSequenceRepository;
+        this.config = config;
+
+        // Blocks are reserved in their own transaction so a rolled back sale never returns numbers to the pool
+        this.reserveTransaction = new TransactionTemplate(transactionManager);
+        this.reserveTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.generateTimer = metricsRegistry.timer("pos_invoice_number_generate",
+                "InvoiceNumberService.generateNextInvoiceNumber, including block reservations");
     }
-    
+
     /**
      * Generates the next invoice number in sequence.
      * Format: INV-000001, INV-000002, etc.
-     * 
+     *
      * @return The next invoice number
      */
-    @Transactional
     public String generateNextInvoiceNumber() {
         return generateNextInvoiceNumber(1L); // Default to location 1
     }
-    
+
     /**
      * Generates the next invoice number in sequence for a specific location.
      * Format: LOC001-000001, LOC002-000002, etc.
-     * 
+     * <p>
+     * Numbers come from an in-memory block per location and the location code
+     * from the {@link LocationRegistry}; the database is only touched when a block
+     * runs out, so issuance does not depend on the size of the sale table.
+     * Numbers are unique but may have gaps after a restart.
+     *
      * @param locationId The location ID
      * @return The next invoice number
+     * @throws UnknownLocationException if the location does not exist
      */
-    @Transactional
     public String generateNextInvoiceNumber(Long locationId) {
-        // Get the location code to use as prefix
-        String locationCode = locationRepository.findById(locationId)
-                .map(Location::getCode)
-                .orElse("LOC001");
-        
-        String prefix = locationCode + "-";
-        
-        // Get the highest invoice number for this location from the database
-        Optional<String> lastInvoiceOpt = saleRepository.findTopByPosReferenceStartingWithAndLocationIdOrderByIdDesc(prefix, locationId);
-        
-        int nextNumber = 1;
-        
-        if (lastInvoiceOpt.isPresent()) {
-            String lastInvoice = lastInvoiceOpt.get();
-            
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            String prefix = lookupPrefix(locationId);
+            long number = counters.computeIfAbsent(locationId, LocationCounter::new).next(prefix);
+            failed = false;
+
+            // Format the new invoice number with leading zeros
+            return prefix + String.format("%0" + PADDING_LENGTH + "d", number);
+        } finally {
+            generateTimer.recordSince(started, failed);
+        }
+    }
+
+    /**
+     * Reserve the next block of invoice numbers for a location. The sequence
+     * row is locked for the duration of the reservation so concurrent
+     * instances never receive the same block.
+     */
+    private Block reserveBlock(Long locationId, String prefix) {
+        int blockSize = Math.max(1, config.getBlockSize());
+        try {
+            return reserveTransaction.execute(status -> reserveBlock(locationId, prefix, blockSize));
+        } catch (DataIntegrityViolationException e) {
+            // Another instance created the sequence row first; it exists now, so lock it and retry
+            return reserveTransaction.execute(status -> reserveBlock(locationId, prefix, blockSize));
+        }
+    }
+
+    private Block reserveBlock(Long locationId, String prefix, int blockSize) {
+        InvoiceSequence sequence = invoiceSequenceRepository.findByLocationIdForUpdate(locationId)
+                .orElseGet(() -> InvoiceSequence.builder()
+                        .locationId(locationId)
+                        .reservedThrough(findHighestIssuedNumber(locationId, prefix))
+                        .build());
+
+        Block block = new Block(sequence.getReservedThrough() + 1, sequence.getReservedThrough() + blockSize);
+        sequence.setReservedThrough(block.last());
+        invoiceSequenceRepository.saveAndFlush(sequence);
+        return block;
+    }
+
+    /**
+     * One-off lookup used when a location has no sequence row yet, so numbering
+     * continues after any sales that were recorded before the sequence existed,
+     * including those sealed into partitions.
+     */
+    private long findHighestIssuedNumber(Long locationId, String prefix) {
+        List<String> lastInvoices = new ArrayList<>(partitionedSaleRepository.findLatestReferencesInPartitions(prefix, locationId));
+        saleRepository.findTopByPosReferenceStartingWithAndLocationIdOrderByIdDesc(prefix, locationId).ifPresent(lastInvoices::add);
+
+        long highest = 0;
+        for (String lastInvoice : lastInvoices) {
             try {
                 // Extract the numeric part of the last invoice number
-                String numericPart = lastInvoice.substring(prefix.length());
-                nextNumber = Integer.parseInt(numericPart) + 1;
+                highest = Math.max(highest, Long.parseLong(lastInvoice.substring(prefix.length())));
             } catch (NumberFormatException | IndexOutOfBoundsException e) {
-                // If there's any error parsing the number, just start from 1
-                nextNumber = 1;
+                // If there's any error parsing the number, it does not count
+            }
+        }
+        return highest;
+    }
+
+    private String lookupPrefix(Long locationId) {
+        // Get the location code to use as prefix; borrowing another location's would duplicate its numbers
+        String locationCode = locationRegistry.getLocation(locationId)
+                .map(Location::getCode)
+                .orElseThrow(() -> new UnknownLocationException(locationId));
+        return locationCode + "-";
+    }
+
+    private record Block(long first, long last) {
+    }
+
+    /**
+     * Hands out numbers for one location from the block currently reserved for it.
+     * Guarded by a ReentrantLock rather than a monitor so virtual threads waiting on a
+     * block reservation do not pin their carrier threads.
+     */
+    private final class LocationCounter {
+        private final Long locationId;
+        private final ReentrantLock lock = new ReentrantLock();
+        private long next;
+        private long blockEnd = -1;
+
+        LocationCounter(Long locationId) {
+            this.locationId = locationId;
+        }
+
+        long next(String prefix) {
+            lock.lock();
+            try {
+                if (next > blockEnd) {
+                    Block block = reserveBlock(locationId, prefix);
+                    next = block.first();
+                    blockEnd = block.last();
+                }
+                return next++;
+            } finally {
+                lock.unlock();
             }
         }
-        
-        // Format the new invoice number with leading zeros
-        return prefix + String.format("%0" + PADDING_LENGTH + "d", nextNumber);
     }
-}
\ No newline at end of file
+}
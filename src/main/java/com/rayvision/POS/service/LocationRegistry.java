@@ -0,0 +1,113 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.domain.Location;
+import com.rayvision.POS.event.LocationChangedEvent;
+import com.rayvision.POS.repository.LocationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared in-memory index of all locations by ID.
+ * <p>
+ * Loaded once on first use and kept current through {@link LocationChangedEvent}s
+ * published after location writes commit, so lookups by ID and listing all locations
+ * cost no queries. Entries are detached copies and must not be modified.
+ */
+@Component
+public class LocationRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocationRegistry.class);
+
+    private final LocationRepository locationRepository;
+    private final Map<Long, Location> byId = new ConcurrentHashMap<>();
+    private volatile List<Location> all;
+
+    public LocationRegistry(LocationRepository locationRepository) {
+        this.locationRepository = locationRepository;
+    }
+
+    /**
+     * Get location by ID
+     */
+    public Optional<Location> getLocation(Long id) {
+        ensureLoaded();
+        return Optional.ofNullable(byId.get(id));
+    }
+
+    /**
+     * Get all locations ordered by ID
+     */
+    public List<Location> getAllLocations() {
+        ensureLoaded();
+        return all;
+    }
+
+    /**
+     * Apply a committed location change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onLocationChanged(LocationChangedEvent event) {
+        if (event.locationId() == null || all == null) {
+            reload();
+            return;
+        }
+        Optional<Location> location = locationRepository.findById(event.locationId());
+        if (location.isPresent()) {
+            byId.put(event.locationId(), copy(location.get()));
+        } else {
+            byId.remove(event.locationId());
+        }
+        publishList();
+    }
+
+    private void ensureLoaded() {
+        if (all == null) {
+            synchronized (this) {
+                if (all == null) {
+                    reload();
+                }
+            }
+        }
+    }
+
+    private void reload() {
+        List<Location> locations = locationRepository.findAll();
+        byId.keySet().retainAll(locations.stream().map(Location::getId).toList());
+        for (Location location : locations) {
+            byId.put(location.getId(), copy(location));
+        }
+        publishList();
+        logger.info("Location registry loaded {} locations", locations.size());
+    }
+
+    private void publishList() {
+        all = byId.values().stream()
+                .sorted(Comparator.comparing(Location::getId))
+                .toList();
+    }
+
+    /**
+     * Copy so the registry never shares an instance with a persistence context
+     */
+    private static Location copy(Location location) {
+        return Location.builder()
+                .id(location.getId())
+                .name(location.getName())
+                .code(location.getCode())
+                .address(location.getAddress())
+                .city(location.getCity())
+                .state(location.getState())
+                .zip(location.getZip())
+                .phone(location.getPhone())
+                .companyId(location.getCompanyId())
+                .build();
+    }
+}
@@ -1,9 +1,12 @@
 package com.rayvision.POS.service;
 
 import com.rayvision.POS.domain.Location;
+import com.rayvision.POS.event.LocationChangedEvent;
 import com.rayvision.POS.repository.LocationRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,36 +15,45 @@ import java.util.Optional;
 public class LocationService {
 
     private final LocationRepository locationRepository;
+    private final LocationRegistry locationRegistry;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public LocationService(LocationRepository locationRepository) {
+    public LocationService(LocationRepository locationRepository, LocationRegistry locationRegistry,
+                           ApplicationEventPublisher eventPublisher) {
         this.locationRepository = locationRepository;
+        this.locationRegistry = locationRegistry;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
      * Get all locations
      */
     public List<Location> getAllLocations() {
-        return locationRepository.findAll();
+        return locationRegistry.getAllLocations();
     }
 
     /**
      * Get location by ID
      */
     public Optional<Location> getLocationById(Long id) {
-        return locationRepository.findById(id);
+        return locationRegistry.getLocation(id);
     }
 
     /**
      * Create a new location
      */
+    @Transactional
     public Location createLocation(Location location) {
-        return locationRepository.save(location);
+        Location saved = locationRepository.save(location);
+        eventPublisher.publishEvent(new LocationChangedEvent(saved.getId()));
+        return saved;
     }
 
     /**
      * Update an existing location
      */
+    @Transactional
     public Location updateLocation(Long id, Location locationDetails) {
         Location location = locationRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Location not found with id: " + id));
@@ -55,15 +67,19 @@ public class LocationService {
         location.setPhone(locationDetails.getPhone());
         location.setCompanyId(locationDetails.getCompanyId());
 
-        return locationRepository.save(location);
+        Location saved = locationRepository.save(location);
+        eventPublisher.publishEvent(new LocationChangedEvent(id));
+        return saved;
     }
 
     /**
      * Delete a location
      */
+    @Transactional
     public void deleteLocation(Long id) {
         Location location = locationRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Location not found with id: " + id));
         locationRepository.delete(location);
+        eventPublisher.publishEvent(new LocationChangedEvent(id));
     }
 }
\ No newline at end of file
@@ -1,14 +1,24 @@
 package com.rayvision.POS.service;
 
+import com.rayvision.POS.domain.FixedPoint;
 import com.rayvision.POS.domain.Product;
 import com.rayvision.POS.domain.Sale;
 import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.event.ProductCatalogChangedEvent;
+import com.rayvision.POS.event.SaleCreatedEvent;
+import com.rayvision.POS.metrics.MetricsRegistry;
+import com.rayvision.POS.metrics.Timer;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
 import com.rayvision.POS.repository.ProductRepository;
 import com.rayvision.POS.repository.SaleRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -20,21 +30,39 @@ public class PosService {
     
     private final ProductRepository productRepository;
     private final SaleRepository saleRepository;
+    private final PartitionedSaleRepository partitionedSaleRepository;
     private final InvoiceNumberService invoiceNumberService;
+    private final InventoryService inventoryService;
+    private final SaleJournalService saleJournalService;
+    private final ProductCatalog productCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Timer createSaleTimer;
     private final Random random = new Random();
     
-    public PosService(ProductRepository productRepository, SaleRepository saleRepository, InvoiceNumberService invoiceNumberService) {
+    public PosService(ProductRepository productRepository, SaleRepository saleRepository,
+                      PartitionedSaleRepository partitionedSaleRepository, InvoiceNumberService invoiceNumberService,
+                      InventoryService inventoryService, SaleJournalService saleJournalService, ProductCatalog productCatalog,
+                      ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                      MetricsRegistry metricsRegistry) {
         this.productRepository = productRepository;
         this.saleRepository = saleRepository;
+        this.partitionedSaleRepository = partitionedSaleRepository;
         this.invoiceNumberService = invoiceNumberService;
+        this.inventoryService = inventoryService;
+        this.saleJournalService = saleJournalService;
+        this.productCatalog = productCatalog;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.createSaleTimer = metricsRegistry.timer("pos_sale_create", "PosService.createSale, from validation to commit");
     }
     
     public List<Product> getAllProducts() {
-        return productRepository.findAll();
+        return productCatalog.getAllProducts();
     }
     
     public Optional<Product> getProductByPosCode(String posCode) {
-        return productRepository.findByPosCode(posCode);
+        return productCatalog.findByPosCode(posCode);
     }
     
     @Transactional
@@ -54,11 +82,66 @@ public class PosService {
             product.setStock(100);
         }
         
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        eventPublisher.publishEvent(new ProductCatalogChangedEvent(saved.getPosCode()));
+        return saved;
     }
     
-    @Transactional
     public Sale createSale(Sale sale) {
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            // Prepared before the transaction opens: reserving a block of invoice numbers runs in
+            // its own transaction, and holding a second connection per sale can starve the pool
+            Sale saved = persistSale(prepareSale(sale));
+            failed = false;
+            return saved;
+        } finally {
+            createSaleTimer.recordSince(started, failed);
+        }
+    }
+    
+    /**
+     * Save a sale returned by prepareSale, journal it and announce it, in one transaction.
+     * If that fails the stock the sale reserved is returned.
+     * 
+     * @param sale A prepared sale
+     * @return The saved sale
+     */
+    public Sale persistSale(Sale sale) {
+        long[] ticket = {-1};
+        Sale saved;
+        try {
+            saved = transactionTemplate.execute(status -> {
+                Sale persisted = saleRepository.save(sale);
+                // Journaled once the ids are assigned and before the commit
+                ticket[0] = saleJournalService.append(persisted);
+                eventPublisher.publishEvent(new SaleCreatedEvent(persisted));
+                return persisted;
+            });
+        } catch (RuntimeException e) {
+            saleJournalService.aborted(ticket[0], sale);
+            inventoryService.release(sale);
+            throw e;
+        }
+        saleJournalService.committed(ticket[0]);
+        return saved;
+    }
+    
+    /**
+     * Validate a sale and fill in everything createSale would before it is persisted:
+     * defaults, the invoice number and the back-reference from each line. Also takes the
+     * sale's quantities out of stock; callers that do not persist it must release them.
+     * 
+     * @param sale The incoming sale
+     * @return The same sale, ready to be persisted
+     * @throws IllegalArgumentException if a line is missing its code, quantity or price
+     * @throws UnknownLocationException if the sale's location does not exist
+     * @throws InsufficientStockException if stock may not go negative and the sale would take it there
+     */
+    public Sale prepareSale(Sale sale) {
+        validateSale(sale);
+        
         // If saleDateTime is not provided, use current time
         if (sale.getSaleDateTime() == null) {
             sale.setSaleDateTime(LocalDateTime.now());
@@ -69,42 +152,48 @@ public class PosService {
             sale.setLocationId(1L);
         }
         
+        // Stock is taken from in-memory counters, before an invoice number is spent on a rejected sale
+        inventoryService.reserve(sale);
+        
         // Generate a unique invoice number, possibly including location code
-        sale.setPosReference(invoiceNumberService.generateNextInvoiceNumber(sale.getLocationId()));
+        try {
+            sale.setPosReference(invoiceNumberService.generateNextInvoiceNumber(sale.getLocationId()));
+        } catch (RuntimeException e) {
+            inventoryService.release(sale);
+            throw e;
+        }
         
         // Process each sale line
         if (sale.getLines() != null) {
             for (SaleLine line : sale.getLines()) {
                 line.setSale(sale);
-                
-                // Optional: Update product stock if needed
-                // productRepository.findByPosCode(line.getPosCode())
-                //    .ifPresent(product -> {
-                //        product.setStock(product.getStock() - line.getQuantity().intValue());
-                //        productRepository.save(product);
-                //    });
             }
         }
         
-        return saleRepository.save(sale);
+        return sale;
     }
     
-    public List<Sale> getAllSales() {
-        return saleRepository.findAll();
-    }
-    
-    /**
-     * Get sales for a specific location
-     */
-    public List<Sale> getSalesByLocation(Long locationId) {
-        return saleRepository.findByLocationId(locationId);
+    private void validateSale(Sale sale) {
+        if (sale == null) {
+            throw new IllegalArgumentException("Sale must not be null");
+        }
+        if (sale.getLines() == null) {
+            return;
+        }
+        for (SaleLine line : sale.getLines()) {
+            if (line == null || line.getPosCode() == null || !FixedPoint.isSet(line.getQuantityMilli())
+                    || !FixedPoint.isSet(line.getUnitPriceMinor())) {
+                throw new IllegalArgumentException("Every sale line needs a posCode, quantity and unitPrice");
+            }
+        }
     }
     
     /**
      * Get sales for a specific location with pagination
      */
+    @Transactional(readOnly = true)
     public Page<Sale> getSalesByLocation(Long locationId, Pageable pageable) {
-        return saleRepository.findByLocationId(locationId, pageable);
+        return load(partitionedSaleRepository.findIds(locationId, null, null, pageable), null, null);
     }
     
     /**
@@ -113,8 +202,9 @@ public class PosService {
      * @param id The sale ID
      * @return Optional containing the sale if found
      */
+    @Transactional(readOnly = true)
     public Optional<Sale> getSaleById(Long id) {
-        return saleRepository.findById(id);
+        return saleRepository.findById(id).or(() -> partitionedSaleRepository.findInPartitions(id));
     }
     
     /**
@@ -125,16 +215,18 @@ public class PosService {
      * @param pageable Pagination information
      * @return Page of sales within the date range
      */
+    @Transactional(readOnly = true)
     public Page<Sale> findSalesByDateRange(LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
-        return saleRepository.findBySaleDateTimeBetween(startDate, endDate, pageable);
+        return load(partitionedSaleRepository.findIds(null, startDate, endDate, pageable), startDate, endDate);
     }
     
     /**
      * Find sales for a specific location between two dates with pagination support
      */
+    @Transactional(readOnly = true)
     public Page<Sale> findSalesByLocationAndDateRange(
             Long locationId, LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
-        return saleRepository.findByLocationIdAndSaleDateTimeBetween(locationId, startDate, endDate, pageable);
+        return load(partitionedSaleRepository.findIds(locationId, startDate, endDate, pageable), startDate, endDate);
     }
     
     /**
@@ -144,21 +236,29 @@ public class PosService {
      * @param endDate The end date (inclusive)
      * @return Count of sales within the date range
      */
+    @Transactional(readOnly = true)
     public long countSalesByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return saleRepository.countBySaleDateTimeBetween(startDate, endDate);
+        return partitionedSaleRepository.count(null, startDate, endDate);
     }
     
     /**
      * Count sales for a specific location
      */
+    @Transactional(readOnly = true)
     public long countSalesByLocation(Long locationId) {
-        return saleRepository.countByLocationId(locationId);
+        return partitionedSaleRepository.count(locationId, null, null);
     }
     
     /**
      * Count sales for a specific location between two dates
      */
+    @Transactional(readOnly = true)
     public long countSalesByLocationAndDateRange(Long locationId, LocalDateTime startDate, LocalDateTime endDate) {
-        return saleRepository.countByLocationIdAndSaleDateTimeBetween(locationId, startDate, endDate);
+        return partitionedSaleRepository.count(locationId, startDate, endDate);
+    }
+
+    private Page<Sale> load(Page<Long> ids, LocalDateTime startDate, LocalDateTime endDate) {
+        return new PageImpl<>(partitionedSaleRepository.findWithLinesInOrder(ids.getContent(), startDate, endDate),
+                ids.getPageable(), ids.getTotalElements());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,168 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.config.CatalogConfig;
+import com.rayvision.POS.domain.Product;
+import com.rayvision.POS.event.ProductCatalogChangedEvent;
+import com.rayvision.POS.repository.ProductRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process cache of the product catalog for pricing and simulation.
+ * <p>
+ * Reads are served from an immutable snapshot (product list plus posCode index) tagged
+ * with the catalog version it was loaded at. Every committed product write bumps the
+ * version through {@link ProductCatalogChangedEvent}; the next read notices the snapshot
+ * is stale and reloads it. Catalogs larger than {@code pos.catalog.max-size} are not held
+ * whole: lookups by posCode then go through a bounded LRU cache and listing all products
+ * reads from the database.
+ * <p>
+ * Products are mutable entities, so callers get copies and the cached ones never leave
+ * the catalog; a copy of a small catalog is far cheaper than the query it saves.
+ */
+@Component
+public class ProductCatalog {
+
+    private final ProductRepository productRepository;
+    private final CatalogConfig config;
+
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot = new Snapshot(-1, false, List.of(), Map.of());
+    private final LinkedHashMap<String, Optional<Product>> lookups = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ProductCatalog(ProductRepository productRepository, CatalogConfig config) {
+        this.productRepository = productRepository;
+        this.config = config;
+    }
+
+    /**
+     * All products, from the snapshot when the catalog fits in memory
+     */
+    public List<Product> getAllProducts() {
+        Snapshot current = currentSnapshot();
+        if (current.complete()) {
+            hits.increment();
+            return current.products().stream().map(ProductCatalog::copy).toList();
+        }
+        misses.increment();
+        return List.copyOf(productRepository.findAll());
+    }
+
+    /**
+     * Look up a product by its POS code
+     */
+    public Optional<Product> findByPosCode(String posCode) {
+        Snapshot current = currentSnapshot();
+        if (current.complete()) {
+            // The snapshot holds every product, so an absent code is a cached answer as well
+            hits.increment();
+            return Optional.ofNullable(current.byPosCode().get(posCode)).map(ProductCatalog::copy);
+        }
+
+        synchronized (lookups) {
+            Optional<Product> cached = lookups.get(posCode);
+            if (cached != null) {
+                hits.increment();
+                return cached.map(ProductCatalog::copy);
+            }
+        }
+
+        misses.increment();
+        Optional<Product> loaded = productRepository.findByPosCode(posCode);
+        synchronized (lookups) {
+            // Only keep the result if no write happened while it was loading
+            if (snapshot == current && version.get() == current.version()) {
+                lookups.put(posCode, loaded);
+                while (lookups.size() > Math.max(1, config.getMaxSize())) {
+                    lookups.remove(lookups.keySet().iterator().next());
+                    evictions.increment();
+                }
+            }
+        }
+        return loaded.map(ProductCatalog::copy);
+    }
+
+    /**
+     * Invalidate cached products once the write that changed them has committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(ProductCatalogChangedEvent event) {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Cache statistics for monitoring
+     */
+    public Map<String, Object> getStats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("version", version.get());
+        stats.put("snapshotVersion", current.version());
+        stats.put("complete", current.complete());
+        stats.put("size", current.complete() ? current.products().size() : lookupCount());
+        stats.put("maxSize", config.getMaxSize());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    private int lookupCount() {
+        synchronized (lookups) {
+            return lookups.size();
+        }
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        if (current.version() == version.get()) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            long target = version.get();
+            if (current.version() == target) {
+                return current;
+            }
+
+            // Read the version before loading: a write committing during the load bumps it again
+            misses.increment();
+            Snapshot reloaded;
+            if (productRepository.count() <= config.getMaxSize()) {
+                List<Product> products = List.copyOf(productRepository.findAll());
+                Map<String, Product> byPosCode = new HashMap<>(products.size() * 2);
+                for (Product product : products) {
+                    byPosCode.put(product.getPosCode(), product);
+                }
+                reloaded = new Snapshot(target, true, products, Collections.unmodifiableMap(byPosCode));
+            } else {
+                reloaded = new Snapshot(target, false, List.of(), Map.of());
+            }
+            synchronized (lookups) {
+                lookups.clear();
+                snapshot = reloaded;
+            }
+            return reloaded;
+        }
+    }
+
+    private static Product copy(Product product) {
+        return new Product(product.getId(), product.getPosCode(), product.getName(), product.getPrice(), product.getStock());
+    }
+
+    private record Snapshot(long version, boolean complete, List<Product> products, Map<String, Product> byPosCode) {
+    }
+}
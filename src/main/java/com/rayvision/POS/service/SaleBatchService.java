@@ -0,0 +1,171 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.config.IngestConfig;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.dto.SaleBatchItemResult;
+import com.rayvision.POS.dto.SaleBatchResult;
+import com.rayvision.POS.event.SaleCreatedEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.hibernate.SessionEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists many sales at once, e.g. the queue a terminal uploads after being offline.
+ * Sales are written in chunked transactions so Hibernate can group the inserts into
+ * JDBC batches; a failing chunk is retried one sale at a time so a single bad sale
+ * does not reject its neighbours.
+ */
+@Service
+public class SaleBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SaleBatchService.class);
+
+    private final PosService posService;
+    private final InventoryService inventoryService;
+    private final SaleJournalService saleJournalService;
+    private final IngestConfig config;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public SaleBatchService(PosService posService, InventoryService inventoryService, SaleJournalService saleJournalService,
+                            IngestConfig config, PlatformTransactionManager transactionManager,
+                            ApplicationEventPublisher eventPublisher) {
+        this.posService = posService;
+        this.inventoryService = inventoryService;
+        this.saleJournalService = saleJournalService;
+        this.config = config;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Persist a batch of sales
+     *
+     * @param sales The sales in submission order
+     * @return One result per sale plus JDBC batching statistics
+     * @throws IllegalArgumentException if the batch holds no sales
+     * @throws SaleBatchTooLargeException if the batch is larger than pos.ingest.max-batch-size
+     */
+    public SaleBatchResult createSales(List<Sale> sales) {
+        if (sales == null || sales.isEmpty()) {
+            throw new IllegalArgumentException("Batch contains no sales");
+        }
+        if (sales.size() > config.getMaxBatchSize()) {
+            throw new SaleBatchTooLargeException(sales.size(), config.getMaxBatchSize());
+        }
+
+        SaleBatchItemResult[] results = new SaleBatchItemResult[sales.size()];
+        JdbcBatchCounter counter = new JdbcBatchCounter();
+        int chunkSize = Math.max(1, config.getChunkSize());
+
+        for (int from = 0; from < sales.size(); from += chunkSize) {
+            List<Integer> chunk = new ArrayList<>();
+            for (int i = from; i < Math.min(from + chunkSize, sales.size()); i++) {
+                try {
+                    posService.prepareSale(sales.get(i));
+                    chunk.add(i);
+                } catch (RuntimeException e) {
+                    results[i] = SaleBatchItemResult.failed(i, e.getMessage());
+                }
+            }
+
+            try {
+                persist(sales, chunk, counter);
+                for (int i : chunk) {
+                    results[i] = SaleBatchItemResult.created(i, sales.get(i).getId(), sales.get(i).getPosReference());
+                }
+            } catch (RuntimeException chunkFailure) {
+                logger.warn("Batch chunk of {} sales failed, retrying individually: {}", chunk.size(), chunkFailure.getMessage());
+                for (int i : chunk) {
+                    try {
+                        persist(sales, List.of(i), counter);
+                        results[i] = SaleBatchItemResult.created(i, sales.get(i).getId(), sales.get(i).getPosReference());
+                    } catch (RuntimeException e) {
+                        inventoryService.release(sales.get(i));
+                        results[i] = SaleBatchItemResult.failed(i, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        int created = 0;
+        for (SaleBatchItemResult result : results) {
+            if (result.status() == SaleBatchItemResult.Status.CREATED) {
+                created++;
+            }
+        }
+        long batches = counter.batches;
+        return new SaleBatchResult(List.of(results), created, results.length - created, counter.rows,
+                batches, batches == 0 ? 0 : (double) counter.rows / batches);
+    }
+
+    private void persist(List<Sale> sales, List<Integer> indexes, JdbcBatchCounter counter) {
+        long rows = 0;
+        List<Long> tickets = new ArrayList<>(indexes.size());
+        try {
+            rows = transactionTemplate.execute(status -> {
+                entityManager.unwrap(Session.class).addEventListeners(counter);
+                long written = 0;
+                for (int i : indexes) {
+                    Sale sale = sales.get(i);
+                    entityManager.persist(sale);
+                    tickets.add(saleJournalService.append(sale));
+                    eventPublisher.publishEvent(new SaleCreatedEvent(sale));
+                    written += 1 + (sale.getLines() != null ? sale.getLines().size() : 0);
+                }
+                entityManager.flush();
+                entityManager.clear();
+                return written;
+            });
+        } catch (RuntimeException e) {
+            for (int n = 0; n < tickets.size(); n++) {
+                saleJournalService.aborted(tickets.get(n), sales.get(indexes.get(n)));
+            }
+            // The rolled back inserts consumed ids; drop them so the sales can be persisted again
+            for (int i : indexes) {
+                resetIds(sales.get(i));
+            }
+            throw e;
+        }
+        for (long ticket : tickets) {
+            saleJournalService.committed(ticket);
+        }
+        counter.rows += rows;
+    }
+
+    private void resetIds(Sale sale) {
+        sale.setId(null);
+        if (sale.getLines() != null) {
+            for (SaleLine line : sale.getLines()) {
+                line.setId(null);
+            }
+        }
+    }
+
+    /**
+     * Counts the JDBC batch executions Hibernate performs while flushing
+     */
+    private static final class JdbcBatchCounter implements SessionEventListener {
+        private long batches;
+        private long rows;
+
+        @Override
+        public void jdbcExecuteBatchStart() {
+            batches++;
+        }
+    }
+}
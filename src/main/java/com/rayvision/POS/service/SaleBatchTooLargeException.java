@@ -0,0 +1,28 @@
+package com.rayvision.POS.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A batch upload holds more sales than pos.ingest.max-batch-size; the client should split it
+ */
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class SaleBatchTooLargeException extends RuntimeException {
+
+    private final int size;
+    private final int maxSize;
+
+    public SaleBatchTooLargeException(int size, int maxSize) {
+        super("Batch of " + size + " sales exceeds the maximum of " + maxSize);
+        this.size = size;
+        this.maxSize = maxSize;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
@@ -0,0 +1,151 @@
+package com.rayvision.POS.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.dto.SaleDto;
+import com.rayvision.POS.dto.SalePartition;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import com.rayvision.POS.repository.SaleLineRepository;
+import com.rayvision.POS.repository.SaleRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes sales as newline-delimited JSON while reading them from a database cursor.
+ * Sales are processed in chunks of {@link SaleRepository#EXPORT_FETCH_SIZE}: the lines of
+ * a chunk are loaded with one query, the chunk is written and flushed, and the persistence
+ * context is cleared, so memory use does not depend on how many sales are exported.
+ * <p>
+ * Sales in sealed partitions come first, a partition at a time, oldest month first and in
+ * ID order within it; then the sales in the sale table, in ID order.
+ */
+@Service
+public class SaleExportService {
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final SaleRepository saleRepository;
+    private final SaleLineRepository saleLineRepository;
+    private final PartitionedSaleRepository partitionedSaleRepository;
+    private final ObjectWriter writer;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public SaleExportService(SaleRepository saleRepository, SaleLineRepository saleLineRepository,
+                             PartitionedSaleRepository partitionedSaleRepository, ObjectMapper objectMapper) {
+        this.saleRepository = saleRepository;
+        this.saleLineRepository = saleLineRepository;
+        this.partitionedSaleRepository = partitionedSaleRepository;
+        // The response stream is flushed once per chunk and closed by the caller
+        this.writer = objectMapper.writerFor(SaleDto.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+
+    /**
+     * Export sales as NDJSON, one sale with its lines per line of output
+     *
+     * @param locationId Optional location filter
+     * @param startDate Optional start date (inclusive)
+     * @param endDate Optional end date (inclusive)
+     * @param out Destination; flushed after every chunk
+     * @return Number of sales written
+     */
+    @Transactional(readOnly = true)
+    public long exportNdjson(Long locationId, LocalDateTime startDate, LocalDateTime endDate, OutputStream out) {
+        long written = 0;
+        for (SalePartition partition : partitionedSaleRepository.findAttachedPartitions(startDate, endDate)) {
+            written += exportPartition(partition, locationId, startDate, endDate, out);
+        }
+        List<Sale> chunk = new ArrayList<>(SaleRepository.EXPORT_FETCH_SIZE);
+
+        try (Stream<Sale> sales = saleRepository.streamForExport(locationId, startDate, endDate)) {
+            var iterator = sales.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == SaleRepository.EXPORT_FETCH_SIZE) {
+                    written += writeChunk(chunk, out);
+                }
+            }
+            written += writeChunk(chunk, out);
+        }
+        return written;
+    }
+
+    private long exportPartition(SalePartition partition, Long locationId, LocalDateTime startDate,
+                                 LocalDateTime endDate, OutputStream out) {
+        long written = 0;
+        long afterId = Long.MIN_VALUE;
+        List<Sale> chunk;
+        do {
+            chunk = partitionedSaleRepository.findChunkInPartition(partition, locationId, startDate, endDate,
+                    afterId, SaleRepository.EXPORT_FETCH_SIZE);
+            for (Sale sale : chunk) {
+                write(SaleDto.from(sale, sale.getLines()), out);
+                afterId = sale.getId();
+            }
+            flush(out);
+            written += chunk.size();
+        } while (chunk.size() == SaleRepository.EXPORT_FETCH_SIZE);
+        return written;
+    }
+
+    private int writeChunk(List<Sale> chunk, OutputStream out) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> ids = new ArrayList<>(chunk.size());
+        for (Sale sale : chunk) {
+            ids.add(sale.getId());
+        }
+        Map<Long, List<SaleLine>> linesBySale = new HashMap<>();
+        for (SaleLine line : saleLineRepository.findBySaleIdIn(ids)) {
+            linesBySale.computeIfAbsent(line.getSale().getId(), id -> new ArrayList<>()).add(line);
+        }
+
+        for (Sale sale : chunk) {
+            write(SaleDto.from(sale, linesBySale.getOrDefault(sale.getId(), List.of())), out);
+        }
+        flush(out);
+
+        int size = chunk.size();
+        chunk.clear();
+        // Detach everything read so far; the cursor itself stays open
+        entityManager.clear();
+        return size;
+    }
+
+    private void write(SaleDto sale, OutputStream out) {
+        try {
+            writer.writeValue(out, sale);
+            out.write(NEWLINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void flush(OutputStream out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.rayvision.POS.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rayvision.POS.config.FeedConfig;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.dto.SaleDto;
+import com.rayvision.POS.event.SaleCreatedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Live feed of created sales as Server-Sent Events, so dashboards are told about new sales
+ * instead of re-fetching pages of them.
+ * <p>
+ * Every committed sale gets the next event id and is kept in a bounded history, then offered
+ * to each subscriber's bounded buffer; publishing never blocks on a subscriber. Each
+ * subscriber has a virtual thread that writes its buffer to the connection, so a slow
+ * client only holds up itself. When a buffer overflows its backlog is dropped and replaced
+ * by one {@code resync} event, telling the client to reload instead of catching up sale by
+ * sale. A client reconnecting with a Last-Event-ID is sent the sales it missed from the
+ * history, or a resync if they are no longer there.
+ */
+@Service
+public class SaleFeedService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SaleFeedService.class);
+
+    static final String SALE_EVENT = "sale";
+    static final String RESYNC_EVENT = "resync";
+
+    private final FeedConfig config;
+    private final ObjectMapper objectMapper;
+
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final ArrayDeque<FeedEvent> history = new ArrayDeque<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private long lastEventId;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+
+    public SaleFeedService(FeedConfig config, ObjectMapper objectMapper) {
+        this.config = config;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Publish a sale once the transaction that created it has committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSaleCreated(SaleCreatedEvent event) {
+        publish(event.sale());
+    }
+
+    public void publish(Sale sale) {
+        SaleDto dto = SaleDto.from(sale, sale.getLines() != null ? sale.getLines() : List.of());
+        publishLock.lock();
+        try {
+            FeedEvent feedEvent = new FeedEvent(++lastEventId, dto);
+            history.addLast(feedEvent);
+            if (history.size() > config.getHistorySize()) {
+                history.removeFirst();
+            }
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(feedEvent);
+            }
+        } finally {
+            publishLock.unlock();
+        }
+        published.increment();
+    }
+
+    /**
+     * Open a live feed
+     *
+     * @param locationId Location to follow, or null for all
+     * @param lastEventId Id of the last event the client received, when it is reconnecting
+     */
+    public SseEmitter subscribe(Long locationId, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(config.getTimeoutMillis());
+        Subscriber subscriber = new Subscriber(locationId, emitter);
+
+        // Registered under the publish lock so no sale falls between the history and the live events
+        publishLock.lock();
+        try {
+            if (lastEventId != null) {
+                long oldest = history.isEmpty() ? this.lastEventId + 1 : history.getFirst().id();
+                if (lastEventId > this.lastEventId || lastEventId < oldest - 1) {
+                    // From before a restart, or older than the history reaches
+                    subscriber.requestResync();
+                } else {
+                    for (FeedEvent event : history) {
+                        if (event.id() > lastEventId) {
+                            subscriber.offer(event);
+                        }
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+        } finally {
+            publishLock.unlock();
+        }
+
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        Thread.ofVirtual().name("sale-feed-" + Long.toHexString(System.identityHashCode(subscriber))).start(subscriber::run);
+        return emitter;
+    }
+
+    /**
+     * End every open feed; browsers reconnect with their Last-Event-ID
+     */
+    @PreDestroy
+    public void closeAll() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        publishLock.lock();
+        try {
+            stats.put("lastEventId", lastEventId);
+            stats.put("history", history.size());
+        } finally {
+            publishLock.unlock();
+        }
+        stats.put("subscribers", subscribers.size());
+        stats.put("published", published.sum());
+        stats.put("sent", sent.sum());
+        stats.put("resyncs", resyncs.sum());
+        return stats;
+    }
+
+    /**
+     * A sale as published, serialized on first use so sales nobody is watching cost no JSON
+     */
+    private final class FeedEvent {
+        private final long id;
+        private final SaleDto sale;
+        private volatile String json;
+
+        FeedEvent(long id, SaleDto sale) {
+            this.id = id;
+            this.sale = sale;
+        }
+
+        long id() {
+            return id;
+        }
+
+        Long locationId() {
+            return sale.locationId();
+        }
+
+        String json() throws JsonProcessingException {
+            String value = json;
+            if (value == null) {
+                value = objectMapper.writeValueAsString(sale);
+                json = value;
+            }
+            return value;
+        }
+    }
+
+    private final class Subscriber {
+        private final Long locationId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<FeedEvent> buffer;
+        private final AtomicBoolean resync = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscriber(Long locationId, SseEmitter emitter) {
+            this.locationId = locationId;
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(Math.max(1, config.getSubscriberBufferSize()));
+        }
+
+        /**
+         * Called with the publish lock held; never blocks
+         */
+        void offer(FeedEvent event) {
+            if (closed || (locationId != null && !locationId.equals(event.locationId()))) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                // Too far behind to be worth catching up one sale at a time
+                buffer.clear();
+                requestResync();
+            }
+        }
+
+        void requestResync() {
+            resync.set(true);
+        }
+
+        /**
+         * Drop the backlog and return the id the client should resume after; every event
+         * offered from now on has a higher id
+         */
+        private long resyncPoint() {
+            publishLock.lock();
+            try {
+                buffer.clear();
+                return lastEventId;
+            } finally {
+                publishLock.unlock();
+            }
+        }
+
+        void run() {
+            try {
+                while (!closed) {
+                    if (resync.getAndSet(false)) {
+                        resyncs.increment();
+                        emitter.send(SseEmitter.event().name(RESYNC_EVENT).id(String.valueOf(resyncPoint()))
+                                .data("{}", MediaType.TEXT_PLAIN));
+                    }
+                    FeedEvent event = buffer.poll(config.getHeartbeatMillis(), TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        emitter.send(SseEmitter.event().comment("keep-alive"));
+                    } else {
+                        emitter.send(SseEmitter.event().name(SALE_EVENT).id(String.valueOf(event.id()))
+                                .data(event.json(), MediaType.TEXT_PLAIN));
+                        sent.increment();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away or the emitter completed
+                logger.debug("Live sales feed subscriber disconnected: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscribers.remove(this);
+            buffer.clear();
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                // Already completed
+            }
+        }
+    }
+
+}
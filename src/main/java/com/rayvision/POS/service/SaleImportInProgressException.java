@@ -0,0 +1,15 @@
+package com.rayvision.POS.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Another sale import is running; only one runs at a time
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class SaleImportInProgressException extends RuntimeException {
+
+    public SaleImportInProgressException(String source) {
+        super("An import of " + source + " is already running");
+    }
+}
@@ -0,0 +1,552 @@
+package com.rayvision.POS.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rayvision.POS.analytics.SaleLineColumns;
+import com.rayvision.POS.config.ImportConfig;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.importer.SaleChunk;
+import com.rayvision.POS.importer.SaleImportFormat;
+import com.rayvision.POS.importer.SaleRecordParser;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bulk import of historical sales from CSV or NDJSON, for migrating from another POS and
+ * for building large datasets.
+ * <p>
+ * The calling thread only reads the input and cuts it into chunks of pos.import.chunk-size
+ * records, never inside a sale. pos.import.threads workers parse the chunks into columns
+ * ({@link SaleChunk}) and load each one in its own transaction, with one
+ * INSERT ... SELECT FROM UNNEST per table that takes every column as an array; no entity is
+ * built. Ids come from the same generators as sales persisted through JPA. At most two
+ * chunks per worker are read ahead, so memory does not depend on the size of the input.
+ * <p>
+ * Sales whose posReference already exists are skipped, so an interrupted import can simply
+ * be run again. An invalid record rejects its sale, is described in the report, and the
+ * import goes on.
+ * <p>
+ * Imported sales raise no SaleCreatedEvent. Their lines are added to the analytics columns
+ * as chunks commit, and the rollups and stock ledger are rebuilt from the sale tables when
+ * the import ends, which is best done while no sales are being created. The live feed and
+ * the top sellers do not see imported sales.
+ * <p>
+ * Imports are not written to the {@link SaleJournalService}. Each chunk commits before it is
+ * counted, and the report is returned only once every chunk has committed, so an import never
+ * acknowledges a sale the database does not already hold; the input itself is the durable
+ * record. After a restart of the in-memory database, run the import again: the journaled
+ * sales are replayed and the imported ones are loaded anew, skipping any that exist.
+ */
+@Service
+public class SaleImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SaleImportService.class);
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    // = ANY(array) is an index lookup per element; IN (SELECT ... UNNEST) is not in H2.
+    // sale_reference holds the references of every partition, attached or not, whatever month the chunk is for.
+    private static final String EXISTING_SQL = """
+            SELECT pos_reference FROM sale WHERE pos_reference = ANY(CAST(?1 AS VARCHAR ARRAY))
+            UNION ALL
+            SELECT pos_reference FROM sale_reference WHERE pos_reference = ANY(CAST(?1 AS VARCHAR ARRAY))
+            """;
+
+    private static final String INSERT_SALES_SQL = """
+            INSERT INTO sale (id, sale_date_time, pos_reference, location_id, total_minor)
+            SELECT * FROM UNNEST(CAST(? AS BIGINT ARRAY), CAST(? AS TIMESTAMP(6) ARRAY), CAST(? AS VARCHAR ARRAY),
+                                 CAST(? AS BIGINT ARRAY), CAST(? AS BIGINT ARRAY))
+            """;
+
+    private static final String INSERT_LINES_SQL = """
+            INSERT INTO sale_line (id, sale_id, pos_code, menu_item_name, quantity_milli, unit_price_minor, extended_minor)
+            SELECT * FROM UNNEST(CAST(? AS BIGINT ARRAY), CAST(? AS BIGINT ARRAY), CAST(? AS VARCHAR ARRAY),
+                                 CAST(? AS VARCHAR ARRAY), CAST(? AS BIGINT ARRAY), CAST(? AS BIGINT ARRAY),
+                                 CAST(? AS BIGINT ARRAY))
+            """;
+
+    private final ImportConfig config;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SessionFactoryImplementor sessionFactory;
+    private final ObjectMapper objectMapper;
+    private final SalesAnalyticsService salesAnalyticsService;
+    private final SalesRollupService salesRollupService;
+    private final InventoryService inventoryService;
+    private final PartitionedSaleRepository partitionedSaleRepository;
+
+    private final ReentrantLock importLock = new ReentrantLock();
+    private final AtomicLong nextId = new AtomicLong();
+    private volatile Run current;
+    private final ArrayDeque<Run> history = new ArrayDeque<>();
+
+    public SaleImportService(ImportConfig config, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             EntityManagerFactory entityManagerFactory, ObjectMapper objectMapper,
+                             SalesAnalyticsService salesAnalyticsService, SalesRollupService salesRollupService,
+                             InventoryService inventoryService, PartitionedSaleRepository partitionedSaleRepository) {
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.objectMapper = objectMapper;
+        this.salesAnalyticsService = salesAnalyticsService;
+        this.salesRollupService = salesRollupService;
+        this.inventoryService = inventoryService;
+        this.partitionedSaleRepository = partitionedSaleRepository;
+    }
+
+    /**
+     * Import every sale in a stream, returning when all of them are loaded
+     *
+     * @param in Input, read to its end but not closed
+     * @param format Format of the input
+     * @param source Name of the input for the report and the log, such as a file name
+     * @return Report of the import; its status is FAILED if the input could not be read to the end
+     * @throws IllegalArgumentException if the CSV header is missing a required column
+     * @throws SaleImportInProgressException if another import is running
+     */
+    public Map<String, Object> importSales(InputStream in, SaleImportFormat format, String source) {
+        if (!importLock.tryLock()) {
+            Run running = current;
+            throw new SaleImportInProgressException(running != null ? running.source : "another source");
+        }
+        try {
+            Run run = new Run(nextId.incrementAndGet(), format, source, config.getMaxErrors());
+            current = run;
+            try {
+                run(in, format, run);
+            } catch (RuntimeException e) {
+                run.finish(FAILED, e.getMessage());
+                throw e;
+            } finally {
+                current = null;
+                remember(run);
+            }
+            return run.snapshot();
+        } finally {
+            importLock.unlock();
+        }
+    }
+
+    /**
+     * The running import, if any, and the most recent finished ones
+     */
+    public Map<String, Object> getImports() {
+        Run running = current;
+        List<Map<String, Object>> recent = new ArrayList<>();
+        synchronized (history) {
+            for (Run run : history) {
+                recent.add(run.snapshot());
+            }
+        }
+        Map<String, Object> imports = new HashMap<>();
+        imports.put("current", running != null ? running.snapshot() : null);
+        imports.put("recent", recent);
+        return imports;
+    }
+
+    public Optional<Map<String, Object>> getImport(long id) {
+        Run running = current;
+        if (running != null && running.id == id) {
+            return Optional.of(running.snapshot());
+        }
+        synchronized (history) {
+            for (Run run : history) {
+                if (run.id == id) {
+                    return Optional.of(run.snapshot());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void run(InputStream in, SaleImportFormat format, Run run) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        long lineNumber = 0;
+        SaleRecordParser parser;
+        try {
+            String header = null;
+            if (format.hasHeader()) {
+                header = reader.readLine();
+                lineNumber++;
+                if (header == null) {
+                    run.finish(COMPLETED, null);
+                    return;
+                }
+            }
+            parser = format.parser(header, objectMapper.getFactory(), config.getMaxErrors());
+        } catch (IOException e) {
+            run.finish(FAILED, "Could not read the input: " + e.getMessage());
+            return;
+        }
+
+        int threads = config.getThreads() > 0 ? config.getThreads() : Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(1, config.getChunkSize());
+        ExecutorService workers = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("SaleImport-", 0).daemon().factory());
+        // Chunks read but not loaded yet
+        Semaphore slots = new Semaphore(threads * 2);
+        logger.info("Importing {} as {} with {} threads", run.source, format, threads);
+
+        String failure = null;
+        long lastLog = System.nanoTime();
+        try {
+            List<String> records = new ArrayList<>(chunkSize);
+            long firstRecord = lineNumber + 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (records.size() >= chunkSize && !sameSale(parser, records.get(records.size() - 1), line)) {
+                    submit(workers, slots, parser, records, firstRecord, run);
+                    records = new ArrayList<>(chunkSize);
+                    firstRecord = lineNumber;
+                    if (System.nanoTime() - lastLog >= config.getProgressLogIntervalMillis() * 1_000_000) {
+                        lastLog = System.nanoTime();
+                        run.logProgress();
+                    }
+                }
+                records.add(line);
+                run.records.increment();
+            }
+            if (!records.isEmpty()) {
+                submit(workers, slots, parser, records, firstRecord, run);
+            }
+        } catch (IOException e) {
+            failure = "Could not read the input after line " + lineNumber + ": " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = "Interrupted after line " + lineNumber;
+        } finally {
+            // Whatever was read is still loaded
+            slots.acquireUninterruptibly(threads * 2);
+            workers.shutdown();
+        }
+
+        if (run.sales.sum() > 0) {
+            try {
+                salesRollupService.rebuild();
+                inventoryService.reconcile();
+            } catch (RuntimeException e) {
+                logger.error("Imported sales from {} but could not rebuild the rollups and stock", run.source, e);
+                failure = failure != null ? failure : "Could not rebuild the rollups and stock: " + e.getMessage();
+            }
+        }
+        run.finish(failure != null ? FAILED : COMPLETED, failure);
+    }
+
+    private static boolean sameSale(SaleRecordParser parser, String last, String next) {
+        String key = parser.saleKey(next);
+        return key != null && key.equals(parser.saleKey(last));
+    }
+
+    private void submit(ExecutorService workers, Semaphore slots, SaleRecordParser parser,
+                        List<String> records, long firstRecord, Run run) throws InterruptedException {
+        slots.acquire();
+        workers.execute(() -> {
+            try {
+                load(parser.parse(records, firstRecord), run);
+            } catch (RuntimeException e) {
+                run.failed(firstRecord, records.size(), e);
+            } finally {
+                slots.release();
+            }
+        });
+    }
+
+    private void load(SaleChunk chunk, Run run) {
+        run.parsed(chunk);
+        if (chunk.getSales() == 0) {
+            return;
+        }
+        Long[][] ids = reserveIds(chunk);
+        boolean[] loaded;
+        try {
+            loaded = insert(chunk, ids[0], ids[1]);
+        } catch (DataIntegrityViolationException e) {
+            // Usually a posReference another chunk committed meanwhile, which is skipped this time
+            loaded = insert(chunk, ids[0], ids[1]);
+        }
+
+        int sales = 0;
+        int lines = 0;
+        for (int i = 0; i < chunk.getSales(); i++) {
+            if (!loaded[i]) {
+                continue;
+            }
+            int start = chunk.lineStart(i);
+            int end = chunk.lineStart(i + 1);
+            List<SaleLineColumns.Line> columns = new ArrayList<>(end - start);
+            for (int l = start; l < end; l++) {
+                columns.add(new SaleLineColumns.Line(chunk.posCode(l), chunk.quantity(l), chunk.unitPrice(l)));
+            }
+            salesAnalyticsService.record(chunk.time(i), chunk.locationId(i), columns);
+            sales++;
+            lines += end - start;
+        }
+        run.loaded(chunk.getSales() - sales, sales, lines);
+    }
+
+    /**
+     * Take ids for every sale and line of a chunk up front, outside the load transaction so
+     * a worker never holds two connections; ids of skipped sales are left unused
+     */
+    private Long[][] reserveIds(SaleChunk chunk) {
+        Long[] saleIds = new Long[chunk.getSales()];
+        Long[] lineIds = new Long[chunk.getLines()];
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            SharedSessionContractImplementor implementor = (SharedSessionContractImplementor) session;
+            BeforeExecutionGenerator saleGenerator = generator(Sale.class);
+            BeforeExecutionGenerator lineGenerator = generator(SaleLine.class);
+            for (int i = 0; i < saleIds.length; i++) {
+                saleIds[i] = (Long) saleGenerator.generate(implementor, null, null, EventType.INSERT);
+            }
+            for (int i = 0; i < lineIds.length; i++) {
+                lineIds[i] = (Long) lineGenerator.generate(implementor, null, null, EventType.INSERT);
+            }
+        }
+        return new Long[][]{saleIds, lineIds};
+    }
+
+    private BeforeExecutionGenerator generator(Class<?> entity) {
+        return (BeforeExecutionGenerator) sessionFactory.getMappingMetamodel().getEntityDescriptor(entity).getGenerator();
+    }
+
+    /**
+     * Insert the sales of a chunk whose posReference is new, with their lines. The chunk's
+     * months are reported to the partitioned repository while the insert is open, so queries
+     * keep finding sales of a sealed month in the sale table.
+     *
+     * @return Which sales were inserted
+     */
+    private boolean[] insert(SaleChunk chunk, Long[] saleIds, Long[] lineIds) {
+        Set<YearMonth> months = new HashSet<>();
+        for (int i = 0; i < chunk.getSales(); i++) {
+            months.add(YearMonth.from(chunk.time(i)));
+        }
+        months.forEach(partitionedSaleRepository::saleWriting);
+        try {
+            return insertNew(chunk, saleIds, lineIds);
+        } finally {
+            months.forEach(partitionedSaleRepository::saleWritten);
+        }
+    }
+
+    private boolean[] insertNew(SaleChunk chunk, Long[] saleIds, Long[] lineIds) {
+        return transactionTemplate.execute(status -> {
+            int sales = chunk.getSales();
+            String[] references = new String[sales];
+            for (int i = 0; i < sales; i++) {
+                references[i] = chunk.reference(i);
+            }
+            Set<String> existing = new HashSet<>(jdbcTemplate.queryForList(EXISTING_SQL, String.class, new Object[]{references}));
+
+            boolean[] loaded = new boolean[sales];
+            int saleCount = 0;
+            int lineCount = 0;
+            for (int i = 0; i < sales; i++) {
+                if (!existing.contains(references[i])) {
+                    loaded[i] = true;
+                    saleCount++;
+                    lineCount += chunk.lineStart(i + 1) - chunk.lineStart(i);
+                }
+            }
+            if (saleCount == 0) {
+                return loaded;
+            }
+
+            Long[] ids = new Long[saleCount];
+            Timestamp[] times = new Timestamp[saleCount];
+            String[] refs = new String[saleCount];
+            Long[] locations = new Long[saleCount];
+            Long[] totals = new Long[saleCount];
+            Long[] lineIdColumn = new Long[lineCount];
+            Long[] saleIdColumn = new Long[lineCount];
+            String[] posCodes = new String[lineCount];
+            String[] names = new String[lineCount];
+            Long[] quantities = new Long[lineCount];
+            Long[] unitPrices = new Long[lineCount];
+            Long[] extended = new Long[lineCount];
+            int s = 0;
+            int l = 0;
+            for (int i = 0; i < sales; i++) {
+                if (!loaded[i]) {
+                    continue;
+                }
+                ids[s] = saleIds[i];
+                times[s] = Timestamp.valueOf(chunk.time(i));
+                refs[s] = references[i];
+                locations[s] = chunk.locationId(i);
+                totals[s] = chunk.total(i);
+                s++;
+                for (int line = chunk.lineStart(i); line < chunk.lineStart(i + 1); line++) {
+                    lineIdColumn[l] = lineIds[line];
+                    saleIdColumn[l] = saleIds[i];
+                    posCodes[l] = chunk.posCode(line);
+                    names[l] = chunk.menuItemName(line);
+                    quantities[l] = chunk.quantity(line);
+                    unitPrices[l] = chunk.unitPrice(line);
+                    extended[l] = chunk.extended(line);
+                    l++;
+                }
+            }
+            jdbcTemplate.update(INSERT_SALES_SQL, new Object[]{ids, times, refs, locations, totals});
+            if (lineCount > 0) {
+                jdbcTemplate.update(INSERT_LINES_SQL,
+                        new Object[]{lineIdColumn, saleIdColumn, posCodes, names, quantities, unitPrices, extended});
+            }
+            return loaded;
+        });
+    }
+
+    private void remember(Run run) {
+        synchronized (history) {
+            history.addFirst(run);
+            while (history.size() > Math.max(1, config.getHistorySize())) {
+                history.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Progress of one import, updated by the reader and every worker
+     */
+    private static final class Run {
+        private final long id;
+        private final SaleImportFormat format;
+        private final String source;
+        private final int maxErrors;
+        private final Instant startedAt = Instant.now();
+        private final long started = System.nanoTime();
+        private volatile String status = RUNNING;
+        private volatile String message;
+        private volatile Instant finishedAt;
+        private volatile long elapsedNanos;
+
+        private final LongAdder records = new LongAdder();
+        private final LongAdder chunks = new LongAdder();
+        private final LongAdder sales = new LongAdder();
+        private final LongAdder lines = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        Run(long id, SaleImportFormat format, String source, int maxErrors) {
+            this.id = id;
+            this.format = format;
+            this.source = source;
+            this.maxErrors = maxErrors;
+        }
+
+        void parsed(SaleChunk chunk) {
+            rejected.add(chunk.getRejected());
+            for (String error : chunk.getErrors()) {
+                error(error);
+            }
+        }
+
+        void loaded(int skippedSales, int loadedSales, int loadedLines) {
+            chunks.increment();
+            skipped.add(skippedSales);
+            sales.add(loadedSales);
+            lines.add(loadedLines);
+        }
+
+        void failed(long firstRecord, int count, RuntimeException e) {
+            logger.warn("Could not load lines {}-{} of {}: {}", firstRecord, firstRecord + count - 1, source, e.getMessage());
+            // Counted in records, since a chunk that could not be parsed has no sales to count
+            failed.add(count);
+            error("Lines " + firstRecord + "-" + (firstRecord + count - 1) + " could not be loaded: " + e.getMessage());
+        }
+
+        private void error(String error) {
+            synchronized (errors) {
+                if (errors.size() < maxErrors) {
+                    errors.add(error);
+                }
+            }
+        }
+
+        void finish(String status, String message) {
+            elapsedNanos = System.nanoTime() - started;
+            finishedAt = Instant.now();
+            this.message = message;
+            this.status = status;
+            if (FAILED.equals(status)) {
+                logger.error("Import of {} failed: {}", source, message);
+            }
+            logProgress();
+        }
+
+        void logProgress() {
+            logger.info("Importing {}: {} records read, {} sales and {} lines loaded, {} skipped, {} rejected, {} rows/s",
+                    source, records.sum(), sales.sum(), lines.sum(), skipped.sum(), rejected.sum(), rowsPerSecond());
+        }
+
+        private long rowsPerSecond() {
+            long nanos = finishedAt != null ? elapsedNanos : System.nanoTime() - started;
+            return nanos > 0 ? (sales.sum() + lines.sum()) * 1_000_000_000L / nanos : 0;
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("id", id);
+            snapshot.put("source", source);
+            snapshot.put("format", format);
+            snapshot.put("status", status);
+            snapshot.put("message", message);
+            snapshot.put("startedAt", startedAt.toString());
+            snapshot.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+            snapshot.put("elapsedMillis", (finishedAt != null ? elapsedNanos : System.nanoTime() - started) / 1_000_000);
+            snapshot.put("recordsRead", records.sum());
+            snapshot.put("chunksLoaded", chunks.sum());
+            snapshot.put("salesImported", sales.sum());
+            snapshot.put("saleLinesImported", lines.sum());
+            snapshot.put("salesSkipped", skipped.sum());
+            snapshot.put("salesRejected", rejected.sum());
+            snapshot.put("recordsFailed", failed.sum());
+            snapshot.put("rowsPerSecond", rowsPerSecond());
+            synchronized (errors) {
+                snapshot.put("errors", new ArrayList<>(errors));
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.config.JournalConfig;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.journal.FsyncPolicy;
+import com.rayvision.POS.journal.SaleJournal;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write-ahead journal of sales (pos.journal.enabled), so sales survive a restart of the
+ * in-memory database.
+ * <p>
+ * Every path that persists sales created by clients (single, batch and write-behind) appends
+ * them with {@link #append} once their ids are assigned, reports the outcome with
+ * {@link #committed} or {@link #aborted}, and only then answers the client. Bulk imports
+ * are outside its scope; see {@link SaleImportService}. On startup the journal is replayed into the sale tables before any
+ * other service reads them: rows keep their ids, rows that already exist are left alone,
+ * whether in the sale table or in their month's partition, the id sequences are moved past
+ * the replayed ids and the rollups are rebuilt. Dropping a partition is journaled too
+ * ({@link #monthDropped}), so the month's sales are not brought back. The journal is compacted
+ * every pos.journal.compact-interval-millis and keeps pos.journal.retention-days of sales.
+ * <p>
+ * When the journal is disabled every method is a no-op and append returns -1.
+ */
+@Service
+public class SaleJournalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SaleJournalService.class);
+
+    private static final int REPLAY_BATCH_SIZE = 500;
+
+    private static final String MERGE_SALE_SQL = """
+            MERGE INTO sale s
+            USING (VALUES (CAST(? AS BIGINT), CAST(? AS TIMESTAMP), CAST(? AS VARCHAR), CAST(? AS BIGINT), CAST(? AS BIGINT)))
+                AS d(id, sale_date_time, pos_reference, location_id, total_minor)
+            ON s.id = d.id
+            WHEN NOT MATCHED THEN INSERT (id, sale_date_time, pos_reference, location_id, total_minor)
+                VALUES (d.id, d.sale_date_time, d.pos_reference, d.location_id, d.total_minor)
+            """;
+
+    private static final String MERGE_LINE_SQL = """
+            MERGE INTO sale_line l
+            USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS VARCHAR), CAST(? AS VARCHAR),
+                           CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT)))
+                AS d(id, sale_id, pos_code, menu_item_name, quantity_milli, unit_price_minor, extended_minor)
+            ON l.id = d.id
+            WHEN NOT MATCHED THEN INSERT (id, sale_id, pos_code, menu_item_name, quantity_milli, unit_price_minor, extended_minor)
+                VALUES (d.id, d.sale_id, d.pos_code, d.menu_item_name, d.quantity_milli, d.unit_price_minor, d.extended_minor)
+            """;
+
+    /** Allocation size of the Hibernate sequence generators (increment by in V1) */
+    private static final long SEQUENCE_INCREMENT = 50;
+
+    private final JournalConfig config;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SalesRollupService salesRollupService;
+    private final PartitionedSaleRepository partitionedSaleRepository;
+
+    private SaleJournal journal;
+    private int replayed;
+
+    public SaleJournalService(JournalConfig config, JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager, SalesRollupService salesRollupService,
+                              PartitionedSaleRepository partitionedSaleRepository) {
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.salesRollupService = salesRollupService;
+        this.partitionedSaleRepository = partitionedSaleRepository;
+    }
+
+    /**
+     * Open the journal and replay it into the sale tables
+     */
+    @PostConstruct
+    public void openAndReplay() throws IOException {
+        if (!config.isEnabled()) {
+            return;
+        }
+        journal = SaleJournal.open(Path.of(config.getDirectory()), config.getSegmentSizeBytes(), config.getFsync());
+
+        long started = System.nanoTime();
+        List<Sale> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+        int[] inserted = {0};
+        replayed = journal.replay(sale -> {
+            batch.add(sale);
+            if (batch.size() == REPLAY_BATCH_SIZE) {
+                inserted[0] += insertMissing(batch);
+                batch.clear();
+            }
+        });
+        inserted[0] += insertMissing(batch);
+
+        if (inserted[0] > 0) {
+            advanceSequence("sale_seq", partitionedSaleRepository.findMaxSaleId());
+            advanceSequence("sale_line_seq", partitionedSaleRepository.findMaxLineId());
+            // Rows written straight to the tables bypass the SaleCreatedEvent listeners
+            salesRollupService.rebuild();
+            partitionedSaleRepository.findLateSales();
+        }
+        logger.info("Sale journal opened in {} ({} fsync): replayed {} sales, {} were missing from the database, in {} ms",
+                config.getDirectory(), config.getFsync(), replayed, inserted[0], (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Append a sale whose ids are assigned, before its transaction commits
+     *
+     * @return Ticket to pass to committed or aborted, or -1 if the journal is disabled
+     */
+    public long append(Sale sale) {
+        return journal != null ? journal.append(sale) : -1;
+    }
+
+    /**
+     * The sale's transaction committed; waits until its journal record is durable if the
+     * fsync policy makes callers wait
+     */
+    public void committed(long ticket) {
+        if (journal != null && ticket >= 0) {
+            journal.committed(ticket);
+            journal.awaitDurable(ticket);
+        }
+    }
+
+    /**
+     * Wait until a sale's journal record is durable, for sales acknowledged before they commit
+     */
+    public void awaitDurable(long ticket) {
+        if (journal != null && ticket >= 0) {
+            journal.awaitDurable(ticket);
+        }
+    }
+
+    /**
+     * The sale was not persisted, so it must not be replayed
+     */
+    public void aborted(long ticket, Sale sale) {
+        if (journal != null && ticket >= 0) {
+            journal.aborted(ticket, sale.getId());
+        }
+    }
+
+    /**
+     * A month's partition is being dropped, so its sales must not be replayed
+     */
+    public void monthDropped(YearMonth month) {
+        if (journal != null) {
+            journal.monthDropped(month);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pos.journal.fsync-interval-millis:100}")
+    public void forceOnInterval() {
+        if (journal != null && config.getFsync() == FsyncPolicy.INTERVAL) {
+            journal.force();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pos.journal.compact-interval-millis:3600000}",
+            initialDelayString = "${pos.journal.compact-interval-millis:3600000}")
+    public void compactOnInterval() {
+        if (journal != null) {
+            compact();
+        }
+    }
+
+    /**
+     * Compact the segments whose sales are all persisted, leaving out sales older than
+     * pos.journal.retention-days, or delete them instead if pos.journal.delete-persisted-segments is set
+     *
+     * @return What was compacted
+     * @throws IllegalStateException if the journal is disabled
+     */
+    public Map<String, Object> compact() {
+        if (journal == null) {
+            throw new IllegalStateException("Sale journal is disabled");
+        }
+        LocalDateTime retainFrom = config.getRetentionDays() > 0 ? LocalDateTime.now().minusDays(config.getRetentionDays()) : null;
+        try {
+            return journal.compact(config.isDeletePersistedSegments(), retainFrom);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal compaction failed", e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", journal != null);
+        if (journal != null) {
+            stats.putAll(journal.stats());
+            stats.put("replayedOnStartup", replayed);
+        }
+        return stats;
+    }
+
+    private int insertMissing(List<Sale> sales) {
+        if (sales.isEmpty()) {
+            return 0;
+        }
+        // Sales already sealed into a partition are not in the sale table for the merge to find
+        List<Long> ids = new ArrayList<>(sales.size());
+        Set<YearMonth> months = new HashSet<>();
+        for (Sale sale : sales) {
+            ids.add(sale.getId());
+            if (sale.getSaleDateTime() != null) {
+                months.add(YearMonth.from(sale.getSaleDateTime()));
+            }
+        }
+        Set<Long> partitioned = partitionedSaleRepository.findIdsInPartitions(ids, months);
+        List<Object[]> saleRows = new ArrayList<>(sales.size());
+        List<Object[]> lineRows = new ArrayList<>();
+        for (Sale sale : sales) {
+            if (partitioned.contains(sale.getId())) {
+                continue;
+            }
+            saleRows.add(new Object[]{sale.getId(),
+                    sale.getSaleDateTime() != null ? Timestamp.valueOf(sale.getSaleDateTime()) : null,
+                    sale.getPosReference(), sale.getLocationId(), sale.getTotalMinor()});
+            for (SaleLine line : sale.getLines()) {
+                lineRows.add(new Object[]{line.getId(), sale.getId(), line.getPosCode(), line.getMenuItemName(),
+                        line.getQuantityMilli(), line.getUnitPriceMinor(), line.getExtendedMinor()});
+            }
+        }
+        return transactionTemplate.execute(status -> {
+            int inserted = 0;
+            for (int count : jdbcTemplate.batchUpdate(MERGE_SALE_SQL, saleRows)) {
+                inserted += Math.max(count, 0);
+            }
+            jdbcTemplate.batchUpdate(MERGE_LINE_SQL, lineRows);
+            return inserted;
+        });
+    }
+
+    /**
+     * Restart a pooled sequence so the next block Hibernate fetches lies above maxId
+     */
+    private void advanceSequence(String sequence, long maxId) {
+        Long next = jdbcTemplate.queryForObject(
+                "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?", Long.class,
+                sequence.toUpperCase());
+        // A fetched value v hands out ids v-49 through v
+        long required = maxId + SEQUENCE_INCREMENT;
+        if (next == null || next < required) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + required);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.config.PartitionConfig;
+import com.rayvision.POS.dto.SalePartition;
+import com.rayvision.POS.event.SaleCreatedEvent;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Monthly partitioning of the sale tables; see {@link PartitionedSaleRepository} for how
+ * queries are routed.
+ * <p>
+ * Sealing a closed month moves its sales and lines out of the sale tables into the month's
+ * partition, {@code pos.partition.batch-size} sales per transaction, so the sale tables
+ * only keep growing with the open months. A month is closed once it is older than the
+ * {@code pos.partition.open-months} newest. Sealing a month again moves the sales that
+ * arrived for it since.
+ * <p>
+ * Old months leave the query path in constant time: detaching a partition keeps its tables
+ * but stops every query from reading them, dropping it deletes them. Summaries already built
+ * from those sales (rollups, the stock ledger, the analytics columns) keep them until they
+ * are rebuilt.
+ */
+@Service
+public class SalePartitionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SalePartitionService.class);
+
+    private final PartitionedSaleRepository partitionedSaleRepository;
+    private final PartitionConfig config;
+    private final SaleJournalService saleJournalService;
+    private final TransactionTemplate transactionTemplate;
+
+    // One seal, attach, detach or drop at a time
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+
+    public SalePartitionService(PartitionedSaleRepository partitionedSaleRepository, PartitionConfig config,
+                                SaleJournalService saleJournalService, PlatformTransactionManager transactionManager) {
+        this.partitionedSaleRepository = partitionedSaleRepository;
+        this.config = config;
+        this.saleJournalService = saleJournalService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * The oldest month that stays in the sale tables
+     */
+    public YearMonth firstOpenMonth() {
+        return YearMonth.now().minusMonths(Math.max(1, config.getOpenMonths()) - 1);
+    }
+
+    /**
+     * Seal every closed month that has sales in the sale tables
+     *
+     * @return Sales moved by month
+     */
+    public Map<String, Object> sealClosedMonths() {
+        maintenanceLock.lock();
+        try {
+            Map<String, Object> moved = new LinkedHashMap<>();
+            for (YearMonth month : partitionedSaleRepository.findMonthsInSaleTableBefore(firstOpenMonth().atDay(1).atStartOfDay())) {
+                Optional<SalePartition> existing = partitionedSaleRepository.findPartition(month);
+                if (existing.isPresent() && !existing.get().attached()) {
+                    logger.warn("Not sealing {}: its partition is detached", month);
+                    continue;
+                }
+                try {
+                    moved.put(month.toString(), seal(month));
+                } catch (IllegalStateException e) {
+                    logger.warn(e.getMessage());
+                }
+            }
+            return moved;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Move a closed month's sales from the sale tables into its partition, creating it if needed
+     *
+     * @return Number of sales moved
+     * @throws IllegalArgumentException if the month is still open or its partition is detached
+     * @throws IllegalStateException if a sale's posReference is already used in another partition
+     */
+    public long sealMonth(YearMonth month) {
+        if (!month.isBefore(firstOpenMonth())) {
+            throw new IllegalArgumentException(month + " is still open; months from " + firstOpenMonth() + " stay in the sale table");
+        }
+        maintenanceLock.lock();
+        try {
+            Optional<SalePartition> existing = partitionedSaleRepository.findPartition(month);
+            if (existing.isPresent() && !existing.get().attached()) {
+                throw new IllegalArgumentException("The partition for " + month + " is detached; attach it first");
+            }
+            return seal(month);
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Runs inside the sale's transaction, before it commits, so a seal of the sale's month
+     * cannot finish without knowing of it
+     */
+    @EventListener
+    public void onSaleCreated(SaleCreatedEvent event) {
+        YearMonth month = YearMonth.from(event.sale().getSaleDateTime());
+        partitionedSaleRepository.saleWriting(month);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            partitionedSaleRepository.saleWritten(month);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                partitionedSaleRepository.saleWritten(month);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${pos.partition.seal-interval-millis:3600000}",
+            initialDelayString = "${pos.partition.seal-interval-millis:3600000}")
+    public void autoSeal() {
+        if (config.isAutoSealEnabled()) {
+            sealClosedMonths();
+        }
+    }
+
+    /**
+     * Keep a partition's tables but stop reading them
+     */
+    public Optional<SalePartition> detach(YearMonth month) {
+        return setAttached(month, false);
+    }
+
+    /**
+     * Read a detached partition again
+     */
+    public Optional<SalePartition> attach(YearMonth month) {
+        return setAttached(month, true);
+    }
+
+    /**
+     * Drop a partition's tables and every sale in them; the drop is journaled first, so a
+     * restart does not replay the month's sales
+     */
+    public Optional<SalePartition> drop(YearMonth month) {
+        maintenanceLock.lock();
+        try {
+            if (partitionedSaleRepository.findPartition(month).isPresent()) {
+                saleJournalService.monthDropped(month);
+            }
+            Optional<SalePartition> dropped = partitionedSaleRepository.dropPartition(month);
+            dropped.ifPresent(partition -> logger.info("Dropped sale partition {} with {} sales", month, partition.saleCount()));
+            return dropped;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    public Map<String, Object> getPartitions() {
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        for (SalePartition partition : partitionedSaleRepository.findAllPartitions()) {
+            partitions.add(describe(partition));
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("firstOpenMonth", firstOpenMonth().toString());
+        result.put("autoSealEnabled", config.isAutoSealEnabled());
+        result.put("partitions", partitions);
+        return result;
+    }
+
+    public static Map<String, Object> describe(SalePartition partition) {
+        Map<String, Object> description = new HashMap<>();
+        description.put("month", partition.month().toString());
+        description.put("tables", List.of("sale" + partition.suffix(), "sale_line" + partition.suffix()));
+        description.put("attached", partition.attached());
+        description.put("saleCount", partition.saleCount());
+        description.put("sealedAt", partition.sealedAt());
+        return description;
+    }
+
+    private long seal(YearMonth month) {
+        long started = System.nanoTime();
+        long token = partitionedSaleRepository.startSeal(month);
+        SalePartition partition = partitionedSaleRepository.createPartition(month);
+        int batchSize = Math.max(1, config.getBatchSize());
+        long moved = 0;
+        int batch;
+        do {
+            try {
+                batch = transactionTemplate.execute(status -> partitionedSaleRepository.moveBatch(partition, batchSize));
+            } catch (DataIntegrityViolationException e) {
+                // The batch rolled back; what earlier batches moved stays sealed
+                partitionedSaleRepository.markSealed(partition);
+                throw new IllegalStateException("Cannot seal " + month + ": a sale's posReference is already used by a sale in another partition", e);
+            }
+            moved += batch;
+        } while (batch == batchSize);
+        partitionedSaleRepository.markSealed(partition);
+        if (!partitionedSaleRepository.finishSeal(month, token)) {
+            logger.info("Sales for {} were written while sealing it; queries keep reading them from the sale table", month);
+        }
+        logger.info("Sealed {} sales into partition {} in {} ms", moved, month, (System.nanoTime() - started) / 1_000_000);
+        return moved;
+    }
+
+    private Optional<SalePartition> setAttached(YearMonth month, boolean attached) {
+        maintenanceLock.lock();
+        try {
+            Optional<SalePartition> partition = partitionedSaleRepository.setAttached(month, attached);
+            partition.ifPresent(p -> logger.info("{} sale partition {}", attached ? "Attached" : "Detached", month));
+            return partition;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+}
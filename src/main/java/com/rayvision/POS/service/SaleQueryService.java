@@ -0,0 +1,132 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.dto.SaleCursor;
+import com.rayvision.POS.dto.SaleDto;
+import com.rayvision.POS.dto.SaleSlice;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Read path for the sale list endpoints. A page is loaded in two steps: one query for
+ * the page of sale IDs (plus the count query when Spring Data needs it) and one query
+ * that fetches those sales with their lines. The result is an immutable {@link SaleDto}
+ * page, so serializing it never triggers lazy loading.
+ * <p>
+ * Both queries go through {@link PartitionedSaleRepository}, so they read only the sale
+ * partitions that overlap the requested dates.
+ */
+@Service
+@Transactional(readOnly = true)
+public class SaleQueryService {
+
+    private final PartitionedSaleRepository partitionedSaleRepository;
+
+    public SaleQueryService(PartitionedSaleRepository partitionedSaleRepository) {
+        this.partitionedSaleRepository = partitionedSaleRepository;
+    }
+
+    /**
+     * Whether the offset-paged finders can order sales by a property
+     */
+    public boolean canSortBy(String property) {
+        return partitionedSaleRepository.canSortBy(property);
+    }
+
+    /**
+     * Find sales between two dates with pagination support
+     */
+    public Page<SaleDto> findSalesByDateRange(LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
+        return load(partitionedSaleRepository.findIds(null, startDate, endDate, pageable), startDate, endDate);
+    }
+
+    /**
+     * Find sales for a specific location between two dates with pagination support
+     */
+    public Page<SaleDto> findSalesByLocationAndDateRange(
+            Long locationId, LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
+        return load(partitionedSaleRepository.findIds(locationId, startDate, endDate, pageable), startDate, endDate);
+    }
+
+    /**
+     * Get sales for a specific location with pagination
+     */
+    public Page<SaleDto> getSalesByLocation(Long locationId, Pageable pageable) {
+        return load(partitionedSaleRepository.findIds(locationId, null, null, pageable), null, null);
+    }
+
+    /**
+     * Keyset page of sales between two dates, ordered by (saleDateTime, id)
+     *
+     * @param cursor The nextCursor of the previous page, or null for the first page
+     * @param size Page size
+     * @param direction DESC for newest first, ASC for oldest first
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public SaleSlice scrollSalesByDateRange(LocalDateTime startDate, LocalDateTime endDate,
+                                            String cursor, int size, Sort.Direction direction) {
+        SaleCursor after = startingPoint(cursor, startDate, endDate, direction);
+        List<Long> ids = partitionedSaleRepository.findIdsAfter(null, startDate, endDate, after, direction, size + 1);
+        return slice(ids, size, startDate, endDate);
+    }
+
+    /**
+     * Keyset page of sales for a location between two dates, ordered by (saleDateTime, id)
+     */
+    public SaleSlice scrollSalesByLocationAndDateRange(Long locationId, LocalDateTime startDate, LocalDateTime endDate,
+                                                       String cursor, int size, Sort.Direction direction) {
+        SaleCursor after = startingPoint(cursor, startDate, endDate, direction);
+        List<Long> ids = partitionedSaleRepository.findIdsAfter(locationId, startDate, endDate, after, direction, size + 1);
+        return slice(ids, size, startDate, endDate);
+    }
+
+    /**
+     * Without a cursor, start just outside the range so the first page uses the same query as every other page
+     */
+    private SaleCursor startingPoint(String cursor, LocalDateTime startDate, LocalDateTime endDate, Sort.Direction direction) {
+        if (cursor != null && !cursor.isEmpty()) {
+            return SaleCursor.decode(cursor);
+        }
+        return direction.isAscending()
+                ? new SaleCursor(startDate, Long.MIN_VALUE)
+                : new SaleCursor(endDate, Long.MAX_VALUE);
+    }
+
+    private SaleSlice slice(List<Long> ids, int size, LocalDateTime startDate, LocalDateTime endDate) {
+        boolean hasNext = ids.size() > size;
+        List<SaleDto> content = loadInOrder(hasNext ? ids.subList(0, size) : ids, startDate, endDate);
+        String nextCursor = null;
+        if (hasNext && !content.isEmpty()) {
+            SaleDto last = content.get(content.size() - 1);
+            nextCursor = new SaleCursor(last.saleDateTime(), last.id()).encode();
+        }
+        return new SaleSlice(content, nextCursor);
+    }
+
+    /**
+     * Fetch the sales and lines for a set of IDs, keeping the order of the IDs
+     */
+    public List<SaleDto> loadInOrder(List<Long> ids) {
+        return loadInOrder(ids, null, null);
+    }
+
+    /**
+     * Fetch the sales and lines for a set of IDs of sales in the date range, keeping the order of the IDs
+     */
+    public List<SaleDto> loadInOrder(List<Long> ids, LocalDateTime startDate, LocalDateTime endDate) {
+        return partitionedSaleRepository.findWithLinesInOrder(ids, startDate, endDate).stream()
+                .map(sale -> SaleDto.from(sale, sale.getLines()))
+                .toList();
+    }
+
+    private Page<SaleDto> load(Page<Long> ids, LocalDateTime startDate, LocalDateTime endDate) {
+        return new PageImpl<>(loadInOrder(ids.getContent(), startDate, endDate), ids.getPageable(), ids.getTotalElements());
+    }
+}
@@ -0,0 +1,347 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.config.IngestConfig;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.event.SaleCreatedEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind persistence for single sales (pos.ingest.async.enabled).
+ * <p>
+ * {@link #submit} validates the sale, reserves its stock, assigns its invoice number and
+ * ids, and puts it on a bounded queue; the request can answer as soon as that is done.
+ * Background writers drain the queue and insert up to {@code batch-size} sales and their
+ * lines per transaction with JDBC batches. Until its transaction commits a sale is served
+ * from memory by {@link #findInFlight}, so a client can read back the sale it was just given.
+ * <p>
+ * Ids come from the same Hibernate generators as sales persisted through JPA, so both
+ * paths can be used side by side. With the sale journal enabled a sale is journaled, and
+ * durable under the journal's fsync policy, before submit returns.
+ */
+@Service
+@DependsOn("salesRollupService") // stopped first, so sales written on shutdown still reach the rollups
+public class SaleWriteBehindService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SaleWriteBehindService.class);
+
+    private static final String INSERT_SALE_SQL =
+            "INSERT INTO sale (id, sale_date_time, pos_reference, location_id, total_minor) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_LINE_SQL =
+            "INSERT INTO sale_line (id, sale_id, pos_code, menu_item_name, quantity_milli, unit_price_minor, extended_minor) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final PosService posService;
+    private final InventoryService inventoryService;
+    private final SaleJournalService saleJournalService;
+    private final IngestConfig.Async config;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final BlockingQueue<Sale> queue;
+    private final Map<Long, Sale> inFlight = new ConcurrentHashMap<>();
+    private final Map<Long, Long> journalTickets = new ConcurrentHashMap<>();
+    private final Map<Long, Runnable> dropHandlers = new ConcurrentHashMap<>();
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean accepting;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder transactions = new LongAdder();
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+
+    public SaleWriteBehindService(PosService posService, InventoryService inventoryService,
+                                  SaleJournalService saleJournalService, IngestConfig config,
+                                  JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                  ApplicationEventPublisher eventPublisher, EntityManagerFactory entityManagerFactory) {
+        this.posService = posService;
+        this.inventoryService = inventoryService;
+        this.saleJournalService = saleJournalService;
+        this.config = config.getAsync();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, this.config.getQueueCapacity()));
+    }
+
+    @PostConstruct
+    public void startWriters() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        accepting = true;
+        for (int i = 0; i < Math.max(1, config.getWriterThreads()); i++) {
+            writers.add(Thread.ofPlatform().name("SaleWriter-" + i).daemon().start(this::drain));
+        }
+        logger.info("Write-behind sale ingestion started: queue of {}, {} writers, batches of {}",
+                config.getQueueCapacity(), writers.size(), config.getBatchSize());
+    }
+
+    /**
+     * Stop accepting sales and write everything already queued
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (writers.isEmpty()) {
+            return;
+        }
+        accepting = false;
+        for (Thread writer : writers) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Whatever the writers did not get to in time is written here
+        List<Sale> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            write(remaining);
+        }
+        logger.info("Write-behind sale ingestion stopped after writing {} sales ({} failed)", written.sum(), failed.sum());
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Prepare a sale and queue it to be written
+     *
+     * @param sale The incoming sale
+     * @return The sale with its id and invoice number assigned, before it is persisted
+     * @throws IllegalArgumentException if a line is missing its code, quantity or price
+     * @throws InsufficientStockException if stock may not go negative and the sale would take it there
+     * @throws IngestQueueFullException if the queue stayed full for pos.ingest.async.enqueue-timeout-millis
+     */
+    public Sale submit(Sale sale) {
+        return submit(sale, null);
+    }
+
+    /**
+     * Prepare a sale and queue it to be written
+     *
+     * @param sale The incoming sale
+     * @param onDropped Run if the sale is accepted but a writer later fails to insert it, e.g. to
+     *                  forget a response that told the client it was accepted; may be null
+     * @return The sale with its id and invoice number assigned, before it is persisted
+     * @throws IllegalArgumentException if a line is missing its code, quantity or price
+     * @throws InsufficientStockException if stock may not go negative and the sale would take it there
+     * @throws IngestQueueFullException if the queue stayed full for pos.ingest.async.enqueue-timeout-millis
+     */
+    public Sale submit(Sale sale, Runnable onDropped) {
+        if (!accepting) {
+            throw new IngestQueueFullException("Write-behind ingestion is not accepting sales");
+        }
+        if (queue.remainingCapacity() == 0) {
+            // Refuse before spending an invoice number on a sale that would not fit
+            refused.increment();
+            throw new IngestQueueFullException("Sale queue is full (" + queue.size() + " sales waiting)");
+        }
+
+        posService.prepareSale(sale);
+        long ticket;
+        try {
+            sale.calculateTotal();
+            if (sale.getLines() != null) {
+                sale.getLines().forEach(SaleLine::calculateExtended);
+            }
+            assignIds(sale);
+            ticket = saleJournalService.append(sale);
+        } catch (RuntimeException e) {
+            // The sale never reaches the queue, so nothing else gives its stock back
+            inventoryService.release(sale);
+            throw e;
+        }
+        if (ticket >= 0) {
+            journalTickets.put(sale.getId(), ticket);
+        }
+        if (onDropped != null) {
+            dropHandlers.put(sale.getId(), onDropped);
+        }
+
+        inFlight.put(sale.getId(), sale);
+        boolean queued;
+        try {
+            queued = queue.offer(sale, config.getEnqueueTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            inFlight.remove(sale.getId());
+            journalTickets.remove(sale.getId());
+            dropHandlers.remove(sale.getId());
+            saleJournalService.aborted(ticket, sale);
+            inventoryService.release(sale);
+            refused.increment();
+            throw new IngestQueueFullException("Sale queue is full (" + queue.size() + " sales waiting)");
+        }
+        accepted.increment();
+        maxQueueDepth.accumulate(queue.size());
+        // Acknowledged before it is committed, so the journal is what keeps it
+        saleJournalService.awaitDurable(ticket);
+        return sale;
+    }
+
+    /**
+     * A sale that was accepted but is not committed yet
+     */
+    public Optional<Sale> findInFlight(Long id) {
+        return Optional.ofNullable(inFlight.get(id));
+    }
+
+    /**
+     * Queue depth and throughput for monitoring
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", config.isEnabled());
+        stats.put("queueDepth", queue.size());
+        stats.put("maxQueueDepth", maxQueueDepth.get());
+        stats.put("queueCapacity", config.getQueueCapacity());
+        stats.put("inFlight", inFlight.size());
+        stats.put("accepted", accepted.sum());
+        stats.put("refused", refused.sum());
+        stats.put("written", written.sum());
+        stats.put("failed", failed.sum());
+        stats.put("transactions", transactions.sum());
+        return stats;
+    }
+
+    private void assignIds(Sale sale) {
+        BeforeExecutionGenerator saleIds = generator(Sale.class);
+        BeforeExecutionGenerator lineIds = generator(SaleLine.class);
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            SharedSessionContractImplementor implementor = (SharedSessionContractImplementor) session;
+            sale.setId((Long) saleIds.generate(implementor, sale, null, EventType.INSERT));
+            if (sale.getLines() != null) {
+                for (SaleLine line : sale.getLines()) {
+                    line.setId((Long) lineIds.generate(implementor, line, null, EventType.INSERT));
+                }
+            }
+        }
+    }
+
+    private BeforeExecutionGenerator generator(Class<?> entity) {
+        return (BeforeExecutionGenerator) sessionFactory.getMappingMetamodel().getEntityDescriptor(entity).getGenerator();
+    }
+
+    private void drain() {
+        int batchSize = Math.max(1, config.getBatchSize());
+        List<Sale> batch = new ArrayList<>(batchSize);
+        while (accepting || !queue.isEmpty()) {
+            try {
+                Sale first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Sale writer failed on a batch of {} sales", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Sale> batch) {
+        try {
+            insert(batch);
+        } catch (RuntimeException batchFailure) {
+            logger.warn("Write-behind batch of {} sales failed, retrying individually: {}", batch.size(), batchFailure.getMessage());
+            for (Sale sale : batch) {
+                try {
+                    insert(List.of(sale));
+                } catch (RuntimeException e) {
+                    // Already acknowledged to the client, so all that is left is to say so loudly
+                    logger.error("Dropping accepted sale {} ({}): {}", sale.getId(), sale.getPosReference(), e.getMessage());
+                    failed.increment();
+                    saleJournalService.aborted(ticketOf(sale), sale);
+                    inventoryService.release(sale);
+                    Runnable onDropped = dropHandlers.remove(sale.getId());
+                    if (onDropped != null) {
+                        onDropped.run();
+                    }
+                    // Last, so a sale no longer in flight has been fully undone
+                    inFlight.remove(sale.getId());
+                }
+            }
+        }
+    }
+
+    private void insert(List<Sale> sales) {
+        List<Object[]> saleRows = new ArrayList<>(sales.size());
+        List<Object[]> lineRows = new ArrayList<>();
+        for (Sale sale : sales) {
+            saleRows.add(new Object[]{sale.getId(), Timestamp.valueOf(sale.getSaleDateTime()), sale.getPosReference(),
+                    sale.getLocationId(), sale.getTotalMinor()});
+            if (sale.getLines() != null) {
+                for (SaleLine line : sale.getLines()) {
+                    lineRows.add(new Object[]{line.getId(), sale.getId(), line.getPosCode(), line.getMenuItemName(),
+                            line.getQuantityMilli(), line.getUnitPriceMinor(), line.getExtendedMinor()});
+                }
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_SALE_SQL, saleRows);
+            jdbcTemplate.batchUpdate(INSERT_LINE_SQL, lineRows);
+            for (Sale sale : sales) {
+                eventPublisher.publishEvent(new SaleCreatedEvent(sale));
+            }
+        });
+        transactions.increment();
+        written.add(sales.size());
+        // Only now can readers find the sales in the database. Leave flight last, so a sale no
+        // longer in flight has also been marked committed in the journal
+        for (Sale sale : sales) {
+            dropHandlers.remove(sale.getId());
+            saleJournalService.committed(ticketOf(sale));
+            inFlight.remove(sale.getId());
+        }
+    }
+
+    private long ticketOf(Sale sale) {
+        Long ticket = journalTickets.remove(sale.getId());
+        return ticket != null ? ticket : -1;
+    }
+}
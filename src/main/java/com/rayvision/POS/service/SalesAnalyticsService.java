@@ -0,0 +1,153 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.analytics.AnalyticsDimension;
+import com.rayvision.POS.analytics.SaleLineColumns;
+import com.rayvision.POS.config.AnalyticsConfig;
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.dto.SalesAnalyticsRow;
+import com.rayvision.POS.event.SaleCreatedEvent;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ad hoc sales analytics (revenue by product by hour for a location, and so on) answered
+ * from a {@link SaleLineColumns} copy of the sale lines instead of the sale entities.
+ * <p>
+ * The copy is built from the sale tables and attached partitions on startup and then appended to as sales commit,
+ * whichever path created them. Lines missing a code, quantity or price, and sales without
+ * a location or time, are left out.
+ */
+@Service
+@DependsOn("saleJournalService") // built after the journal has replayed its sales
+public class SalesAnalyticsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SalesAnalyticsService.class);
+
+    // Run against every attached partition, then ordered by sale so each sale's lines are together
+    private static final String LOAD_SQL = """
+            SELECT s.id AS sale_id, s.sale_date_time, s.location_id, l.pos_code, l.quantity_milli, l.unit_price_minor
+            FROM {sale} s JOIN {sale_line} l ON l.sale_id = s.id
+            WHERE s.sale_date_time IS NOT NULL AND s.location_id IS NOT NULL
+              AND l.pos_code IS NOT NULL
+            """;
+
+    private final AnalyticsConfig config;
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionedSaleRepository partitionedSaleRepository;
+    private final SaleLineColumns columns = new SaleLineColumns();
+
+    public SalesAnalyticsService(AnalyticsConfig config, JdbcTemplate jdbcTemplate,
+                                 PartitionedSaleRepository partitionedSaleRepository) {
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitionedSaleRepository = partitionedSaleRepository;
+    }
+
+    /**
+     * Load every existing sale line, before any sale can be created
+     */
+    @PostConstruct
+    public void load() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        long started = System.nanoTime();
+        List<SaleLineColumns.Line> lines = new ArrayList<>();
+        long[] current = {-1, 0};   // sale id, location id
+        LocalDateTime[] time = {null};
+        jdbcTemplate.query("SELECT * FROM (" + partitionedSaleRepository.unionAll(LOAD_SQL) + ") u ORDER BY sale_id", rs -> {
+            long saleId = rs.getLong(1);
+            if (saleId != current[0] && !lines.isEmpty()) {
+                columns.append(time[0], current[1], lines);
+                lines.clear();
+            }
+            current[0] = saleId;
+            current[1] = rs.getLong(3);
+            time[0] = rs.getTimestamp(2).toLocalDateTime();
+            lines.add(new SaleLineColumns.Line(rs.getString(4), rs.getLong(5), rs.getLong(6)));
+        });
+        if (!lines.isEmpty()) {
+            columns.append(time[0], current[1], lines);
+        }
+        logger.info("Loaded {} sale lines into the analytics columns in {} ms",
+                columns.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Add a sale's lines once the transaction that created it has committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSaleCreated(SaleCreatedEvent event) {
+        if (config.isEnabled()) {
+            record(event.sale());
+        }
+    }
+
+    /**
+     * Add a persisted sale's lines
+     */
+    public void record(Sale sale) {
+        if (sale.getLocationId() == null || sale.getSaleDateTime() == null || sale.getLines() == null) {
+            return;
+        }
+        List<SaleLineColumns.Line> lines = new ArrayList<>(sale.getLines().size());
+        for (SaleLine line : sale.getLines()) {
+            if (line.getPosCode() != null && FixedPoint.isSet(line.getQuantityMilli()) && FixedPoint.isSet(line.getUnitPriceMinor())) {
+                lines.add(new SaleLineColumns.Line(line.getPosCode(), line.getQuantityMilli(), line.getUnitPriceMinor()));
+            }
+        }
+        if (!lines.isEmpty()) {
+            columns.append(sale.getSaleDateTime(), sale.getLocationId(), lines);
+        }
+    }
+
+    /**
+     * Add the lines of a sale written without a SaleCreatedEvent, such as an imported one
+     */
+    public void record(LocalDateTime time, long locationId, List<SaleLineColumns.Line> lines) {
+        if (config.isEnabled() && !lines.isEmpty()) {
+            columns.append(time, locationId, lines);
+        }
+    }
+
+    /**
+     * Sum the sale lines in a range, grouped by any of product, location and hour
+     *
+     * @param from Start of the range, inclusive, or null for the oldest line
+     * @param to End of the range, inclusive, or null for the newest line
+     * @param locationId Location to include, or null for all
+     * @param groupBy Dimensions to group by; empty for one total
+     * @param parallel Whether to scan in parallel, or null to decide by the number of lines
+     * @return Non-empty groups ordered by hour, then location, then product
+     * @throws IllegalArgumentException if the range is inverted or needs more than pos.analytics.max-groups groups
+     * @throws IllegalStateException if analytics are disabled
+     */
+    public List<SalesAnalyticsRow> aggregate(LocalDateTime from, LocalDateTime to, Long locationId,
+                                             Set<AnalyticsDimension> groupBy, Boolean parallel) {
+        if (!config.isEnabled()) {
+            throw new IllegalStateException("Sales analytics are disabled");
+        }
+        boolean split = parallel != null ? parallel : columns.size() >= config.getParallelMinRows();
+        return columns.aggregate(from, to, locationId, groupBy, config.getMaxGroups(), split);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = columns.stats();
+        stats.put("enabled", config.isEnabled());
+        return stats;
+    }
+}
@@ -0,0 +1,285 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.config.RollupConfig;
+import com.rayvision.POS.domain.RollupGranularity;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.domain.SalesRollup;
+import com.rayvision.POS.dto.SalesSummaryBucket;
+import com.rayvision.POS.event.SaleCreatedEvent;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import com.rayvision.POS.repository.SalesRollupRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps per-location sales totals by minute, hour and day.
+ * <p>
+ * Every committed sale is added to in-memory deltas, one per bucket it falls into; the
+ * deltas are merged into the {@code sales_rollup} table in one JDBC batch every
+ * {@code pos.rollup.flush-interval-millis}. Summaries read the table rows for the requested
+ * range and add whatever has not been flushed yet, so they cost one query over at most one
+ * row per bucket and location no matter how many sales the range holds.
+ */
+@Service
+public class SalesRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SalesRollupService.class);
+
+    private static final String MERGE_SQL = """
+            MERGE INTO sales_rollup r
+            USING (VALUES (CAST(? AS BIGINT), CAST(? AS VARCHAR), CAST(? AS TIMESTAMP),
+                           CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT)))
+                AS d(location_id, granularity, bucket_start, sale_count, revenue_minor, item_quantity_milli)
+            ON r.location_id = d.location_id AND r.granularity = d.granularity AND r.bucket_start = d.bucket_start
+            WHEN MATCHED THEN UPDATE SET sale_count = r.sale_count + d.sale_count,
+                                         revenue_minor = r.revenue_minor + d.revenue_minor,
+                                         item_quantity_milli = r.item_quantity_milli + d.item_quantity_milli
+            WHEN NOT MATCHED THEN INSERT (location_id, granularity, bucket_start, sale_count, revenue_minor, item_quantity_milli)
+                VALUES (d.location_id, d.granularity, d.bucket_start, d.sale_count, d.revenue_minor, d.item_quantity_milli)
+            """;
+
+    private static final String REBUILD_SQL = """
+            INSERT INTO sales_rollup (location_id, granularity, bucket_start, sale_count, revenue_minor, item_quantity_milli)
+            SELECT location_id, '%1$s', bucket_start, SUM(sale_count), SUM(revenue_minor), SUM(item_quantity_milli)
+            FROM (%2$s) p
+            GROUP BY location_id, bucket_start
+            """;
+
+    // Buckets per partition, added up by REBUILD_SQL: late sales put a bucket in both the sale table and a partition
+    private static final String REBUILD_PARTITION_SQL = """
+            SELECT s.location_id, DATE_TRUNC('%1$s', s.sale_date_time) AS bucket_start, COUNT(*) AS sale_count,
+                   COALESCE(SUM(s.total_minor), 0) AS revenue_minor, COALESCE(SUM(q.quantity_milli), 0) AS item_quantity_milli
+            FROM {sale} s
+            LEFT JOIN (SELECT sale_id, SUM(quantity_milli) AS quantity_milli FROM {sale_line} GROUP BY sale_id) q ON q.sale_id = s.id
+            WHERE s.location_id IS NOT NULL AND s.sale_date_time IS NOT NULL
+            GROUP BY s.location_id, DATE_TRUNC('%1$s', s.sale_date_time)
+            """;
+
+    private final SalesRollupRepository rollupRepository;
+    private final PartitionedSaleRepository partitionedSaleRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final RollupConfig config;
+    private final TransactionTemplate transactionTemplate;
+
+    // Recorders share the read lock; a flush takes the write lock only to swap the maps
+    private final ReentrantReadWriteLock pendingLock = new ReentrantReadWriteLock();
+    // Summaries share the read lock so they never see a flush half applied to the table
+    private final ReentrantReadWriteLock tableLock = new ReentrantReadWriteLock();
+
+    private volatile Map<SalesRollup.Key, Delta> pending = new ConcurrentHashMap<>();
+    private volatile Map<SalesRollup.Key, Delta> flushing = Map.of();
+
+    public SalesRollupService(SalesRollupRepository rollupRepository, PartitionedSaleRepository partitionedSaleRepository,
+                              JdbcTemplate jdbcTemplate, RollupConfig config, PlatformTransactionManager transactionManager) {
+        this.rollupRepository = rollupRepository;
+        this.partitionedSaleRepository = partitionedSaleRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = config;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Add a sale to its buckets once the transaction that created it has committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSaleCreated(SaleCreatedEvent event) {
+        record(event.sale());
+    }
+
+    /**
+     * Add a persisted sale to its minute, hour and day buckets
+     */
+    public void record(Sale sale) {
+        if (sale.getLocationId() == null || sale.getSaleDateTime() == null) {
+            return;
+        }
+        long revenueMinor = sale.getTotalMinor();
+        long quantityMilli = 0;
+        if (sale.getLines() != null) {
+            for (SaleLine line : sale.getLines()) {
+                quantityMilli += line.getQuantityMilli();
+            }
+        }
+
+        pendingLock.readLock().lock();
+        try {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                SalesRollup.Key key = new SalesRollup.Key(sale.getLocationId(), granularity,
+                        granularity.bucketStart(sale.getSaleDateTime()));
+                pending.computeIfAbsent(key, k -> new Delta()).add(1, revenueMinor, quantityMilli);
+            }
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Merge the deltas collected since the last flush into the rollup table
+     *
+     * @return Number of buckets written
+     */
+    @Scheduled(fixedDelayString = "${pos.rollup.flush-interval-millis:1000}")
+    public synchronized int flush() {
+        Map<SalesRollup.Key, Delta> batch;
+        pendingLock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            batch = pending;
+            flushing = batch;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            pendingLock.writeLock().unlock();
+        }
+
+        tableLock.writeLock().lock();
+        try {
+            List<Object[]> rows = new ArrayList<>(batch.size());
+            batch.forEach((key, delta) -> rows.add(new Object[]{
+                    key.locationId(), key.granularity().name(), Timestamp.valueOf(key.bucketStart()),
+                    delta.count.sum(), delta.revenueMinor.sum(), delta.quantityMilli.sum()}));
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(MERGE_SQL, rows));
+            return rows.size();
+        } catch (RuntimeException e) {
+            // Keep the deltas for the next attempt rather than losing them
+            logger.warn("Failed to flush {} rollup buckets, will retry: {}", batch.size(), e.getMessage());
+            pendingLock.readLock().lock();
+            try {
+                batch.forEach((key, delta) -> pending.computeIfAbsent(key, k -> new Delta())
+                        .add(delta.count.sum(), delta.revenueMinor.sum(), delta.quantityMilli.sum()));
+            } finally {
+                pendingLock.readLock().unlock();
+            }
+            return 0;
+        } finally {
+            flushing = Map.of();
+            tableLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Summarize sales per bucket
+     *
+     * @param locationId Location to summarize, or null for all locations combined
+     * @param granularity Bucket size
+     * @param from Start of the range; the bucket containing it is included
+     * @param to End of the range; the bucket containing it is included
+     * @return Non-empty buckets in ascending order
+     * @throws IllegalArgumentException if the range is inverted or covers more than pos.rollup.max-buckets buckets
+     */
+    public List<SalesSummaryBucket> summarize(Long locationId, RollupGranularity granularity,
+                                              LocalDateTime from, LocalDateTime to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (granularity.bucketsBetween(from, to) > config.getMaxBuckets()) {
+            throw new IllegalArgumentException("Range covers more than " + config.getMaxBuckets() + " " + granularity + " buckets");
+        }
+        LocalDateTime first = granularity.bucketStart(from);
+        LocalDateTime last = granularity.bucketStart(to);
+
+        TreeMap<LocalDateTime, long[]> totals = new TreeMap<>();
+        tableLock.readLock().lock();
+        try {
+            for (SalesRollup row : rollupRepository.findBuckets(locationId, granularity, first, last)) {
+                accumulate(totals, row.getBucketStart(), row.getSaleCount(), row.getRevenueMinor(), row.getItemQuantityMilli());
+            }
+            pendingLock.readLock().lock();
+            try {
+                for (Map<SalesRollup.Key, Delta> deltas : List.of(flushing, pending)) {
+                    deltas.forEach((key, delta) -> {
+                        if (key.granularity() == granularity
+                                && (locationId == null || locationId.equals(key.locationId()))
+                                && !key.bucketStart().isBefore(first) && !key.bucketStart().isAfter(last)) {
+                            accumulate(totals, key.bucketStart(), delta.count.sum(), delta.revenueMinor.sum(), delta.quantityMilli.sum());
+                        }
+                    });
+                }
+            } finally {
+                pendingLock.readLock().unlock();
+            }
+        } finally {
+            tableLock.readLock().unlock();
+        }
+
+        List<SalesSummaryBucket> buckets = new ArrayList<>(totals.size());
+        totals.forEach((start, t) -> buckets.add(new SalesSummaryBucket(start, t[0], t[1], t[2])));
+        return buckets;
+    }
+
+    /**
+     * Regenerate every bucket from the sale tables and attached partitions, e.g. after sales were written
+     * without going through the services. Sales committed while the rebuild runs
+     * may be counted twice, so run it while no sales are being created.
+     *
+     * @return Number of buckets written per granularity
+     */
+    public synchronized Map<RollupGranularity, Integer> rebuild() {
+        tableLock.writeLock().lock();
+        pendingLock.writeLock().lock();
+        try {
+            Map<RollupGranularity, Integer> written = transactionTemplate.execute(status -> {
+                jdbcTemplate.update("DELETE FROM sales_rollup");
+                Map<RollupGranularity, Integer> counts = new EnumMap<>(RollupGranularity.class);
+                for (RollupGranularity granularity : RollupGranularity.values()) {
+                    String partitions = partitionedSaleRepository.unionAll(REBUILD_PARTITION_SQL.formatted(granularity.name()));
+                    counts.put(granularity, jdbcTemplate.update(REBUILD_SQL.formatted(granularity.name(), partitions)));
+                }
+                return counts;
+            });
+            // Everything pending is already part of the sale tables the rebuild read
+            pending = new ConcurrentHashMap<>();
+            logger.info("Rebuilt sales rollups: {}", written);
+            return written;
+        } finally {
+            pendingLock.writeLock().unlock();
+            tableLock.writeLock().unlock();
+        }
+    }
+
+    private static void accumulate(TreeMap<LocalDateTime, long[]> totals, LocalDateTime bucketStart,
+                                   long count, long revenueMinor, long quantityMilli) {
+        long[] t = totals.computeIfAbsent(bucketStart, k -> new long[3]);
+        t[0] += count;
+        t[1] += revenueMinor;
+        t[2] += quantityMilli;
+    }
+
+    // Sums in cents and thousandths, as in the table, so concurrent adds stay exact
+    private static final class Delta {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder revenueMinor = new LongAdder();
+        private final LongAdder quantityMilli = new LongAdder();
+
+        void add(long sales, long saleRevenueMinor, long itemQuantityMilli) {
+            count.add(sales);
+            revenueMinor.add(saleRevenueMinor);
+            quantityMilli.add(itemQuantityMilli);
+        }
+    }
+}
@@ -2,15 +2,19 @@ package com.rayvision.POS.service;
 
 import com.rayvision.POS.config.SimulatorConfig;
 import com.rayvision.POS.domain.Location;
+import com.rayvision.POS.domain.FixedPoint;
 import com.rayvision.POS.domain.Product;
 import com.rayvision.POS.domain.Sale;
 import com.rayvision.POS.domain.SaleLine;
-import com.rayvision.POS.repository.LocationRepository;
+import com.rayvision.POS.metrics.MetricsRegistry;
+import com.rayvision.POS.metrics.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.scheduling.support.PeriodicTrigger;
@@ -30,17 +34,20 @@ public class SalesSimulatorService {
     
     private final PosService posService;
     private final SimulatorConfig config;
-    private final LocationRepository locationRepository;
+    private final LocationRegistry locationRegistry;
+    private final Timer tickTimer;
     
     private TaskScheduler taskScheduler;
     private ScheduledFuture<?> scheduledTask;
-    private List<Location> locations;
+    private volatile SimulatorLoadRun loadRun;
 
     @Autowired
-    public SalesSimulatorService(PosService posService, SimulatorConfig config, LocationRepository locationRepository) {
+    public SalesSimulatorService(PosService posService, SimulatorConfig config, LocationRegistry locationRegistry,
+                                 MetricsRegistry metricsRegistry) {
         this.posService = posService;
         this.config = config;
-        this.locationRepository = locationRepository;
+        this.locationRegistry = locationRegistry;
+        this.tickTimer = metricsRegistry.timer("pos_simulator_tick", "One run of the sales simulator schedule");
         
         // Create a dedicated task scheduler for this service
         ThreadPoolTaskScheduler threadPoolTaskScheduler = new ThreadPoolTaskScheduler();
@@ -58,31 +65,16 @@ public class SalesSimulatorService {
     
     @PostConstruct
     public void startScheduler() {
-        // Load all locations for multi-tenant simulation
-        reloadLocations();
-        
         // Schedule the task with the initial interval
         scheduleAtCurrentRate();
     }
     
-    /**
-     * Reload locations from the database
-     */
-    private void reloadLocations() {
-        this.locations = locationRepository.findAll();
-        logger.info("Loaded {} locations for sales simulation", locations.size());
-        
-        // If no locations found, create default location
-        if (locations.isEmpty()) {
-            logger.info("No locations found, simulator will only generate sales for location 1");
-        }
-    }
-    
     @PreDestroy
     public void stopScheduler() {
         if (scheduledTask != null) {
             scheduledTask.cancel(false);
         }
+        stopLoad();
     }
     
     /**
@@ -110,8 +102,19 @@ public class SalesSimulatorService {
             return; // Skip if simulator is disabled
         }
         
-        // Reload locations to ensure we always have the latest
-        reloadLocations();
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            generateRandomSalesForLocations();
+            failed = false;
+        } finally {
+            tickTimer.recordSince(started, failed);
+        }
+    }
+    
+    private void generateRandomSalesForLocations() {
+        // The registry is kept current by location events, so this costs no queries
+        List<Location> locations = locationRegistry.getAllLocations();
         
         // Check if multi-location is enabled
         if (config.getLocations().isEnabled() && !locations.isEmpty()) {
@@ -144,23 +147,135 @@ public class SalesSimulatorService {
             return;
         }
         
-        // Create a new sale
+        // Save the sale; its POS reference is assigned by the invoice number service
+        Sale savedSale = posService.createSale(randomSale(locationId, availableProducts));
+        
+        logger.info("Generated simulated sale: ID={}, Location={}, Invoice={}, Total=${}, Items={}", 
+                savedSale.getId(),
+                locationId,
+                savedSale.getPosReference(),
+                FixedPoint.toDecimal(savedSale.getTotalMinor(), FixedPoint.MONEY_SCALE), 
+                savedSale.getLines().size());
+    }
+    
+    /**
+     * Start load mode, replacing any run in progress
+     * 
+     * @param targetSalesPerSecond Optional new target rate
+     * @param concurrency Optional new number of workers
+     * @param openLoop Optional new scheduling: true to start sales at their intended time regardless of earlier ones
+     * @return Status of the new run
+     * @throws IllegalArgumentException if the rate or concurrency is not positive, or there are no locations
+     */
+    public synchronized Map<String, Object> startLoad(Integer targetSalesPerSecond, Integer concurrency, Boolean openLoop) {
+        SimulatorConfig.Load load = config.getLoad();
+        int rate = targetSalesPerSecond != null ? targetSalesPerSecond : load.getTargetSalesPerSecond();
+        int workers = concurrency != null ? concurrency : load.getConcurrency();
+        boolean open = openLoop != null ? openLoop : load.isOpenLoop();
+        
+        List<Long> locationIds = locationRegistry.getAllLocations().stream()
+                .map(Location::getId)
+                .limit(load.getLocationCount() > 0 ? load.getLocationCount() : Long.MAX_VALUE)
+                .toList();
+        SimulatorLoadRun run = new SimulatorLoadRun(rate, workers, open, locationIds, loadSaleSteps());
+        
+        // Only settings that made a valid run are kept for later runs
+        load.setTargetSalesPerSecond(rate);
+        load.setConcurrency(workers);
+        load.setOpenLoop(open);
+        
+        stopLoad();
+        loadRun = run;
+        run.start();
+        return run.status();
+    }
+    
+    /**
+     * Stop load mode if it is running
+     */
+    public synchronized void stopLoad() {
+        if (loadRun != null && loadRun.isRunning()) {
+            loadRun.stop();
+        }
+    }
+    
+    /**
+     * Status of the current or most recent load run, or null if load mode never ran
+     */
+    public Map<String, Object> getLoadStatus() {
+        SimulatorLoadRun run = loadRun;
+        return run != null ? run.status() : null;
+    }
+    
+    /**
+     * Sales completed per location by the current or most recent load run
+     */
+    public Map<Long, Long> getLoadCountsByLocation() {
+        SimulatorLoadRun run = loadRun;
+        return run != null ? run.completedByLocation() : Map.of();
+    }
+    
+    /**
+     * Latency percentiles and per-location throughput of the current or most recent load run,
+     * or null if load mode never ran
+     */
+    public Map<String, Object> getLoadReport() {
+        SimulatorLoadRun run = loadRun;
+        return run != null ? run.report() : null;
+    }
+    
+    /**
+     * Report on the current or most recent load run, then start a new measurement window
+     * 
+     * @return The report before the reset, or null if load mode never ran
+     */
+    public Map<String, Object> resetLoadReport() {
+        SimulatorLoadRun run = loadRun;
+        if (run == null) {
+            return null;
+        }
+        Map<String, Object> report = run.report();
+        run.reset();
+        return report;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void startLoadIfConfigured() {
+        if (config.isEnabled() && config.getLoad().isEnabled()) {
+            startLoad(null, null, null);
+        }
+    }
+    
+    /**
+     * Same path as the interval simulation, without the per-sale logging, split so the
+     * load run can time invoice generation and persistence separately
+     */
+    private SimulatorLoadRun.SaleSteps loadSaleSteps() {
+        return new SimulatorLoadRun.SaleSteps() {
+            @Override
+            public Sale prepare(long locationId) {
+                List<Product> availableProducts = posService.getAllProducts();
+                if (availableProducts.isEmpty()) {
+                    throw new IllegalStateException("No products available to create simulated sales");
+                }
+                return posService.prepareSale(randomSale(locationId, availableProducts));
+            }
+            
+            @Override
+            public void persist(Sale sale) {
+                posService.persistSale(sale);
+            }
+        };
+    }
+    
+    /**
+     * Build a sale of 1-4 distinct random products with quantities of 1-5
+     */
+    private Sale randomSale(Long locationId, List<Product> availableProducts) {
         Sale sale = new Sale();
         sale.setSaleDateTime(LocalDateTime.now());
         sale.setLocationId(locationId);
         
-        // Use the location code as part of the POS reference
-        String locationCode = locations.stream()
-            .filter(loc -> loc.getId().equals(locationId))
-            .findFirst()
-            .map(Location::getCode)
-            .orElse("LOC001");
-        
-        // Generate a unique POS reference
-        String posReference = locationCode + "-" + 
-                              LocalDateTime.now().toString().replaceAll("[^0-9]", "").substring(0, 10);
-        sale.setPosReference(posReference);
-        
         // Determine how many different products to include (1-4)
         int maxProducts = Math.min(availableProducts.size(), 4);
         int numberOfProducts = ThreadLocalRandom.current().nextInt(1, maxProducts + 1);
@@ -176,10 +291,10 @@ public class SalesSimulatorService {
             line.setMenuItemName(product.getName());
             
             // Random quantity between 1 and 5
-            double quantity = ThreadLocalRandom.current().nextInt(1, 6);
-            line.setQuantity(quantity);
+            long quantity = ThreadLocalRandom.current().nextInt(1, 6);
+            line.setQuantityMilli(quantity * FixedPoint.QUANTITY_UNITS);
             
-            line.setUnitPrice(product.getPrice());
+            line.setUnitPriceMinor(FixedPoint.fromDouble(product.getPrice(), FixedPoint.MONEY_SCALE));
             line.setSale(sale);
             line.calculateExtended(); // Calculate extended price
             
@@ -188,25 +303,24 @@ public class SalesSimulatorService {
         
         sale.setLines(lines);
         sale.calculateTotal(); // Calculate total
-        
-        // Save the sale
-        Sale savedSale = posService.createSale(sale);
-        
-        logger.info("Generated simulated sale: ID={}, Location={}, Invoice={}, Total=${}, Items={}", 
-                savedSale.getId(),
-                locationId,
-                savedSale.getPosReference(),
-                String.format("%.2f", savedSale.getTotal()), 
-                savedSale.getLines().size());
+        return sale;
     }
     
     /**
      * Get a random subset of products
      */
     private List<Product> getRandomProducts(List<Product> availableProducts, int count) {
-        List<Product> products = new ArrayList<>(availableProducts);
-        Collections.shuffle(products);
-        return products.subList(0, count);
+        // Pick distinct indexes instead of shuffling a copy of the whole catalog for every sale
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Set<Integer> picked = new LinkedHashSet<>();
+        while (picked.size() < count) {
+            picked.add(random.nextInt(availableProducts.size()));
+        }
+        List<Product> products = new ArrayList<>(count);
+        for (int index : picked) {
+            products.add(availableProducts.get(index));
+        }
+        return products;
     }
     
     /**
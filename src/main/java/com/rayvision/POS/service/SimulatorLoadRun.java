@@ -0,0 +1,331 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One run of the simulator's load mode.
+ * <p>
+ * Closed loop: {@code concurrency} virtual threads share the target rate equally. Each
+ * worker owns a lane of locations and creates sales for them in turn on a fixed schedule:
+ * when a sale finishes early the worker waits for its next slot, when it falls behind it
+ * sends the next sale immediately until it has caught up. Sales for one location are
+ * therefore created by a single worker unless there are more workers than locations.
+ * Latency is measured from when a worker sends the sale, so a stall delays the sales
+ * behind it without showing up in the figures (coordinated omission).
+ * <p>
+ * Open loop: a dispatcher thread starts every sale at its intended time on a virtual
+ * thread of its own, whether or not earlier sales have finished, cycling through the
+ * locations. Latency is measured from the intended start, so time spent waiting behind a
+ * stall counts. {@code concurrency} then only caps the sales in flight; when the cap is
+ * reached the dispatcher falls behind and the delay shows up in the total latency.
+ */
+final class SimulatorLoadRun {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatorLoadRun.class);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * The two halves of creating a sale, timed separately
+     */
+    interface SaleSteps {
+        /**
+         * Build a sale for the location and assign its invoice number
+         */
+        Sale prepare(long locationId);
+
+        /**
+         * Save a prepared sale
+         */
+        void persist(Sale sale);
+    }
+
+    private record LocationStats(LongAdder completed, LatencyHistogram total) {
+    }
+
+    private final int targetSalesPerSecond;
+    private final int concurrency;
+    private final boolean openLoop;
+    private final List<Long> locationIds;
+    private final SaleSteps steps;
+
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Map<Long, LocationStats> byLocation = new HashMap<>();
+    private final LatencyHistogram invoiceLatency = new LatencyHistogram();
+    private final LatencyHistogram persistenceLatency = new LatencyHistogram();
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+
+    private Thread dispatcher;
+    private Thread sampler;
+    private volatile boolean running;
+    private volatile long startNanos;
+    private volatile long stopNanos;
+    private volatile double currentSalesPerSecond;
+
+    SimulatorLoadRun(int targetSalesPerSecond, int concurrency, boolean openLoop, List<Long> locationIds, SaleSteps steps) {
+        if (targetSalesPerSecond < 1 || concurrency < 1 || locationIds.isEmpty()) {
+            throw new IllegalArgumentException("Load mode needs a positive rate, a positive concurrency and at least one location");
+        }
+        this.targetSalesPerSecond = targetSalesPerSecond;
+        this.concurrency = concurrency;
+        this.openLoop = openLoop;
+        this.locationIds = List.copyOf(locationIds);
+        this.steps = steps;
+        for (Long locationId : locationIds) {
+            byLocation.put(locationId, new LocationStats(new LongAdder(), new LatencyHistogram()));
+        }
+    }
+
+    void start() {
+        running = true;
+        startNanos = System.nanoTime();
+        if (openLoop) {
+            // A platform thread, like the sampler, so sales start on time however busy the carriers are
+            dispatcher = Thread.ofPlatform().name("SalesSimulator-load-dispatcher").daemon().start(this::dispatch);
+        } else {
+            long period = Math.max(1, TimeUnit.SECONDS.toNanos(concurrency) / targetSalesPerSecond);
+            for (int w = 0; w < concurrency; w++) {
+                long[] lane = lane(w);
+                // Stagger the workers so their slots spread evenly over one period
+                long firstSlot = startNanos + period * w / concurrency;
+                workers.execute(() -> work(lane, firstSlot, period));
+            }
+        }
+        // A platform thread, so the rate is still sampled while busy workers occupy every carrier
+        sampler = Thread.ofPlatform().name("SalesSimulator-load-sampler").daemon().start(this::sampleRate);
+        logger.info("Simulator load started ({} loop): {} sales/s over {} locations with {} workers",
+                openLoop ? "open" : "closed", targetSalesPerSecond, locationIds.size(), concurrency);
+    }
+
+    void stop() {
+        // Let sales in flight finish; idle workers notice within MAX_PARK_NANOS
+        running = false;
+        sampler.interrupt();
+        try {
+            if (dispatcher != null) {
+                dispatcher.interrupt();
+                dispatcher.join();
+            }
+            workers.shutdown();
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Simulator load workers did not stop within 10 seconds, interrupting them");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        stopNanos = System.nanoTime();
+        logger.info("Simulator load stopped after {} sales ({} failed)", completed.sum(), failed.sum());
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Start a new measurement window, e.g. once the run has warmed up: counts, rates
+     * and latencies only cover sales that finish from now on
+     */
+    void reset() {
+        startNanos = running ? System.nanoTime() : stopNanos;
+        completed.reset();
+        failed.reset();
+        invoiceLatency.reset();
+        persistenceLatency.reset();
+        totalLatency.reset();
+        for (LocationStats stats : byLocation.values()) {
+            stats.completed().reset();
+            stats.total().reset();
+        }
+    }
+
+    /**
+     * Achieved versus target throughput for /api/simulator/status
+     */
+    Map<String, Object> status() {
+        double elapsedSeconds = elapsedSeconds();
+        double achieved = elapsedSeconds > 0 ? completed.sum() / elapsedSeconds : 0;
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running);
+        status.put("openLoop", openLoop);
+        status.put("targetSalesPerSecond", targetSalesPerSecond);
+        status.put("concurrency", concurrency);
+        status.put("locations", locationIds.size());
+        status.put("elapsedSeconds", elapsedSeconds);
+        status.put("completed", completed.sum());
+        status.put("failed", failed.sum());
+        status.put("achievedSalesPerSecond", achieved);
+        status.put("currentSalesPerSecond", running ? currentSalesPerSecond : 0.0);
+        status.put("achievedPercentOfTarget", achieved * 100 / targetSalesPerSecond);
+        return status;
+    }
+
+    /**
+     * Status plus latency percentiles per step and throughput and latency per location,
+     * for /api/simulator/report
+     */
+    Map<String, Object> report() {
+        double elapsedSeconds = elapsedSeconds();
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("invoice", invoiceLatency.summary());
+        latency.put("persistence", persistenceLatency.summary());
+        latency.put("total", totalLatency.summary());
+
+        Map<Long, Object> locations = new LinkedHashMap<>();
+        for (Long locationId : locationIds) {
+            LocationStats stats = byLocation.get(locationId);
+            Map<String, Object> location = new LinkedHashMap<>();
+            location.put("completed", stats.completed().sum());
+            location.put("salesPerSecond", elapsedSeconds > 0 ? stats.completed().sum() / elapsedSeconds : 0);
+            location.put("latency", stats.total().summary());
+            locations.put(locationId, location);
+        }
+
+        Map<String, Object> report = status();
+        report.put("latencyMeasuredFrom", openLoop ? "intended start" : "send");
+        report.put("latency", latency);
+        report.put("byLocation", locations);
+        return report;
+    }
+
+    /**
+     * Sales completed per location, in location order
+     */
+    Map<Long, Long> completedByLocation() {
+        Map<Long, Long> counts = new LinkedHashMap<>();
+        for (Long locationId : locationIds) {
+            counts.put(locationId, byLocation.get(locationId).completed().sum());
+        }
+        return counts;
+    }
+
+    private double elapsedSeconds() {
+        long end = running ? System.nanoTime() : stopNanos;
+        return Math.max(0, end - startNanos) / 1e9;
+    }
+
+    private long[] lane(int worker) {
+        List<Long> lane = new ArrayList<>();
+        for (int i = worker; i < locationIds.size(); i += concurrency) {
+            lane.add(locationIds.get(i));
+        }
+        if (lane.isEmpty()) {
+            // More workers than locations: share locations round-robin
+            lane.add(locationIds.get(worker % locationIds.size()));
+        }
+        return lane.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void work(long[] lane, long firstSlot, long period) {
+        long slot = firstSlot;
+        int next = 0;
+        while (running) {
+            long wait = slot - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(Math.min(wait, MAX_PARK_NANOS));
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                continue;
+            }
+
+            long locationId = lane[next];
+            next = (next + 1) % lane.length;
+            createSale(locationId, System.nanoTime());
+            slot += period;
+            // Virtual threads are not time-sliced: a worker that is behind schedule would keep
+            // its carrier thread and starve the other lanes, so give others a turn between sales
+            Thread.yield();
+        }
+    }
+
+    private void dispatch() {
+        Semaphore inFlight = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        long sent = 0;
+        int next = 0;
+        try {
+            while (running) {
+                // Computed from the start rather than accumulated, so rounding never drifts the rate
+                long intended = start + sent * TimeUnit.SECONDS.toNanos(1) / targetSalesPerSecond;
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(Math.min(wait, MAX_PARK_NANOS));
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    continue;
+                }
+
+                inFlight.acquire();
+                long locationId = locationIds.get(next);
+                next = (next + 1) % locationIds.size();
+                workers.execute(() -> {
+                    try {
+                        createSale(locationId, intended);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                sent++;
+            }
+        } catch (InterruptedException e) {
+            // Stopped while waiting for a sale in flight to finish
+        }
+    }
+
+    private void createSale(long locationId, long measuredFrom) {
+        try {
+            long prepareStart = System.nanoTime();
+            Sale sale = steps.prepare(locationId);
+            long persistStart = System.nanoTime();
+            steps.persist(sale);
+            long end = System.nanoTime();
+
+            invoiceLatency.record(persistStart - prepareStart);
+            persistenceLatency.record(end - persistStart);
+            totalLatency.record(end - measuredFrom);
+            completed.increment();
+            LocationStats stats = byLocation.get(locationId);
+            stats.completed().increment();
+            stats.total().record(end - measuredFrom);
+        } catch (RuntimeException e) {
+            failed.increment();
+            logger.debug("Simulated sale for location {} failed: {}", locationId, e.getMessage());
+        }
+    }
+
+    private void sampleRate() {
+        long previous = completed.sum();
+        while (running) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = completed.sum();
+            // A reset in between makes the difference negative for one sample
+            currentSalesPerSecond = Math.max(0, now - previous);
+            previous = now;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.analytics.LeaderboardWindow;
+import com.rayvision.POS.analytics.SlidingTopSellers;
+import com.rayvision.POS.config.AnalyticsConfig;
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.Product;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import com.rayvision.POS.dto.TopSeller;
+import com.rayvision.POS.event.SaleCreatedEvent;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * "Top sellers right now" per location and company-wide, by quantity sold, over the last
+ * 15 minutes, the last hour and today. Each location and window has its own
+ * {@link SlidingTopSellers}, so memory grows with the number of locations but not with
+ * the catalog; see that class for the error bounds.
+ * <p>
+ * Fed from SaleCreatedEvent once a sale commits, and warmed with today's sales on startup.
+ */
+@Service
+@DependsOn("saleJournalService") // warmed after the journal has replayed its sales
+public class TopSellersService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopSellersService.class);
+
+    private static final String TODAY_SQL = """
+            SELECT s.sale_date_time, s.location_id, l.pos_code, l.quantity_milli
+            FROM sale s JOIN sale_line l ON l.sale_id = s.id
+            WHERE s.sale_date_time >= ? AND s.location_id IS NOT NULL
+              AND l.pos_code IS NOT NULL
+            """;
+
+    private final ProductCatalog productCatalog;
+    private final JdbcTemplate jdbcTemplate;
+    private final int counters;
+
+    private final Map<LeaderboardWindow, SlidingTopSellers> global;
+    private final Map<Long, Map<LeaderboardWindow, SlidingTopSellers>> byLocation = new ConcurrentHashMap<>();
+
+    public TopSellersService(ProductCatalog productCatalog, JdbcTemplate jdbcTemplate, AnalyticsConfig config) {
+        this.productCatalog = productCatalog;
+        this.jdbcTemplate = jdbcTemplate;
+        this.counters = Math.max(1, config.getLeaderboardCounters());
+        this.global = windows();
+    }
+
+    /**
+     * Count the sales made so far today, so the leaderboards do not start empty after a restart
+     */
+    @PostConstruct
+    public void warmUp() {
+        LocalDateTime now = LocalDateTime.now();
+        int[] lines = {0};
+        jdbcTemplate.query(TODAY_SQL, rs -> {
+            record(now, rs.getTimestamp(1).toLocalDateTime(), rs.getLong(2), rs.getString(3),
+                    FixedPoint.toDouble(rs.getLong(4), FixedPoint.QUANTITY_SCALE));
+            lines[0]++;
+        }, Timestamp.valueOf(LeaderboardWindow.TODAY.start(now)));
+        logger.info("Warmed top-seller leaderboards with {} sale lines from today", lines[0]);
+    }
+
+    /**
+     * Count a sale's lines once the transaction that created it has committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSaleCreated(SaleCreatedEvent event) {
+        record(event.sale());
+    }
+
+    /**
+     * Count a persisted sale's lines
+     */
+    public void record(Sale sale) {
+        if (sale.getLocationId() == null || sale.getSaleDateTime() == null || sale.getLines() == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (SaleLine line : sale.getLines()) {
+            if (line.getPosCode() != null && FixedPoint.isSet(line.getQuantityMilli())) {
+                record(now, sale.getSaleDateTime(), sale.getLocationId(), line.getPosCode(),
+                        FixedPoint.toDouble(line.getQuantityMilli(), FixedPoint.QUANTITY_SCALE));
+            }
+        }
+    }
+
+    /**
+     * The k products with the most quantity sold in a window
+     *
+     * @param locationId Location, or null for all locations combined
+     * @param window Window ending now
+     * @param k Number of products, at most pos.analytics.leaderboard-counters
+     * @return The leaderboard; empty for a location without sales
+     */
+    public SlidingTopSellers.Snapshot topSellers(Long locationId, LeaderboardWindow window, int k) {
+        Map<LeaderboardWindow, SlidingTopSellers> windows = locationId == null ? global : byLocation.get(locationId);
+        if (windows == null) {
+            return new SlidingTopSellers.Snapshot(List.of(), 0, 0);
+        }
+        SlidingTopSellers.Snapshot snapshot = windows.get(window).top(LocalDateTime.now(), Math.min(k, counters));
+        List<TopSeller> named = new ArrayList<>(snapshot.top().size());
+        for (TopSeller seller : snapshot.top()) {
+            String name = productCatalog.findByPosCode(seller.posCode()).map(Product::getName).orElse(null);
+            named.add(new TopSeller(seller.posCode(), name, seller.quantity(), seller.guaranteedQuantity()));
+        }
+        return new SlidingTopSellers.Snapshot(named, snapshot.windowQuantity(), snapshot.maxError());
+    }
+
+    public int getCounters() {
+        return counters;
+    }
+
+    private void record(LocalDateTime now, LocalDateTime time, long locationId, String posCode, double quantity) {
+        Map<LeaderboardWindow, SlidingTopSellers> local = byLocation.computeIfAbsent(locationId, id -> windows());
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            local.get(window).add(now, time, posCode, quantity);
+            global.get(window).add(now, time, posCode, quantity);
+        }
+    }
+
+    private Map<LeaderboardWindow, SlidingTopSellers> windows() {
+        Map<LeaderboardWindow, SlidingTopSellers> windows = new EnumMap<>(LeaderboardWindow.class);
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            windows.put(window, new SlidingTopSellers(window, counters));
+        }
+        return windows;
+    }
+}
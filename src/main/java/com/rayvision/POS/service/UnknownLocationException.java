@@ -0,0 +1,22 @@
+package com.rayvision.POS.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A sale names a location that does not exist, so it has no invoice prefix
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnknownLocationException extends IllegalArgumentException {
+
+    private final Long locationId;
+
+    public UnknownLocationException(Long locationId) {
+        super("Unknown location " + locationId);
+        this.locationId = locationId;
+    }
+
+    public Long getLocationId() {
+        return locationId;
+    }
+}
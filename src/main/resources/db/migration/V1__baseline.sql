@@ -0,0 +1,64 @@
+-- Schema as previously generated by Hibernate (ddl-auto=update)
+
+create sequence sale_seq start with 1 increment by 50;
+
+create sequence sale_line_seq start with 1 increment by 50;
+
+create table location (
+    id bigint generated by default as identity,
+    name varchar(255),
+    code varchar(255),
+    address varchar(255),
+    city varchar(255),
+    state varchar(255),
+    zip varchar(255),
+    phone varchar(255),
+    company_id bigint,
+    primary key (id)
+);
+
+create table product (
+    id bigint generated by default as identity,
+    name varchar(255),
+    pos_code varchar(255) unique,
+    price float(53),
+    stock integer,
+    primary key (id)
+);
+
+create table sale (
+    id bigint not null,
+    sale_date_time timestamp(6),
+    pos_reference varchar(255),
+    location_id bigint,
+    total float(53),
+    primary key (id)
+);
+
+create table sale_line (
+    id bigint not null,
+    sale_id bigint,
+    pos_code varchar(255),
+    menu_item_name varchar(255),
+    quantity float(53),
+    unit_price float(53),
+    extended float(53),
+    primary key (id),
+    constraint fk_sale_line_sale foreign key (sale_id) references sale
+);
+
+create table invoice_sequence (
+    location_id bigint not null,
+    reserved_through bigint,
+    primary key (location_id)
+);
+
+create table sales_rollup (
+    location_id bigint not null,
+    granularity enum ('DAY','HOUR','MINUTE') not null,
+    bucket_start timestamp(6) not null,
+    sale_count bigint not null,
+    revenue float(53) not null,
+    item_quantity float(53) not null,
+    primary key (location_id, granularity, bucket_start)
+);
@@ -0,0 +1,16 @@
+-- Indexes for the SaleRepository access patterns; keep in sync with @Table(indexes) on Sale and SaleLine
+
+-- location pages and location + date range pages
+create index idx_sale_location_date on sale (location_id, sale_date_time);
+
+-- date range pages and counts across all locations
+create index idx_sale_date on sale (sale_date_time);
+
+-- invoice prefix lookups per location
+create index idx_sale_location_reference on sale (location_id, pos_reference);
+
+-- invoice numbers are unique; also serves the prefix lookup across locations
+alter table sale add constraint ux_sale_pos_reference unique (pos_reference);
+
+-- loading the lines of a page of sales
+create index idx_sale_line_sale on sale_line (sale_id);
@@ -0,0 +1,8 @@
+-- Stock per location and product, maintained by InventoryService; on hand = received - sold
+create table location_stock (
+    location_id bigint not null,
+    pos_code varchar(255) not null,
+    received_quantity float(53) not null,
+    sold_quantity float(53) not null,
+    primary key (location_id, pos_code)
+);
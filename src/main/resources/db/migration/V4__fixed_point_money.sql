@@ -0,0 +1,20 @@
+-- Money in minor units (cents) and quantities in thousandths instead of floating point
+
+alter table sale add column total_minor bigint;
+update sale set total_minor = coalesce(round(total * 100), 0);
+alter table sale alter column total_minor set not null;
+alter table sale drop column total;
+
+alter table sale_line add column quantity_milli bigint;
+alter table sale_line add column unit_price_minor bigint;
+alter table sale_line add column extended_minor bigint;
+update sale_line set
+    quantity_milli = coalesce(round(quantity * 1000), 0),
+    unit_price_minor = coalesce(round(unit_price * 100), 0),
+    extended_minor = coalesce(round(extended * 100), 0);
+alter table sale_line alter column quantity_milli set not null;
+alter table sale_line alter column unit_price_minor set not null;
+alter table sale_line alter column extended_minor set not null;
+alter table sale_line drop column quantity;
+alter table sale_line drop column unit_price;
+alter table sale_line drop column extended;
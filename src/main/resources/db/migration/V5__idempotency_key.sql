@@ -0,0 +1,14 @@
+-- Responses to sale submissions by Idempotency-Key, so a retried request is answered without creating the sale again
+create table idempotency_key (
+    scope varchar(32) not null,
+    idempotency_key varchar(255) not null,
+    request_hash varchar(64) not null,
+    response_status integer not null,
+    response_location varchar(255),
+    response_body clob not null,
+    created_at timestamp(6) not null,
+    primary key (scope, idempotency_key)
+);
+
+-- purging expired keys
+create index idx_idempotency_key_created on idempotency_key (created_at);
@@ -0,0 +1,6 @@
+-- Written to the primary and read back from the replica to measure how far the replica is behind
+create table replica_heartbeat (
+    id integer not null,
+    written_at_millis bigint not null,
+    primary key (id)
+);
@@ -0,0 +1,9 @@
+-- Catalog of the monthly partitions that closed months of sales are moved into, one pair of
+-- tables per month: sale_yyyy_mm and sale_line_yyyy_mm, created by PartitionedSaleRepository
+create table sale_partition (
+    month_start date not null,
+    attached boolean not null,
+    sale_count bigint not null,
+    sealed_at timestamp(6) not null,
+    primary key (month_start)
+);
@@ -0,0 +1,21 @@
+-- Rollup totals and stock levels in minor units and thousandths, like the sale tables since V4
+
+alter table sales_rollup add column revenue_minor bigint;
+alter table sales_rollup add column item_quantity_milli bigint;
+update sales_rollup set
+    revenue_minor = coalesce(round(revenue * 100), 0),
+    item_quantity_milli = coalesce(round(item_quantity * 1000), 0);
+alter table sales_rollup alter column revenue_minor set not null;
+alter table sales_rollup alter column item_quantity_milli set not null;
+alter table sales_rollup drop column revenue;
+alter table sales_rollup drop column item_quantity;
+
+alter table location_stock add column received_quantity_milli bigint;
+alter table location_stock add column sold_quantity_milli bigint;
+update location_stock set
+    received_quantity_milli = coalesce(round(received_quantity * 1000), 0),
+    sold_quantity_milli = coalesce(round(sold_quantity * 1000), 0);
+alter table location_stock alter column received_quantity_milli set not null;
+alter table location_stock alter column sold_quantity_milli set not null;
+alter table location_stock drop column received_quantity;
+alter table location_stock drop column sold_quantity;
@@ -0,0 +1,10 @@
+-- The pos_reference of every sale in a partition, so invoice numbers stay unique once their sales
+-- leave the sale table, whose unique constraint only covers the sales still in it. Kept by
+-- PartitionedSaleRepository: filled as a seal moves sales, checked on attach, cleared on drop.
+create table sale_reference (
+    pos_reference varchar(255) not null,
+    month_start date not null,
+    primary key (pos_reference)
+);
+
+create index idx_sale_reference_month on sale_reference (month_start);
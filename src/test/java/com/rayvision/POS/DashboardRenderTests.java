@@ -0,0 +1,90 @@
+package com.rayvision.POS;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Renders the dashboard over 1,000 and then 1,000,000 sales, in a database of its own
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:dashboard-render"
+})
+@AutoConfigureMockMvc
+@DirtiesContext
+class DashboardRenderTests {
+
+    private static final int RENDERS = 7;
+
+    // Sale X happened X seconds before now at location 1, 2 or 3, so later inserts are older than the first page
+    private static final String INSERT_SALES_SQL = """
+            INSERT INTO sale (id, sale_date_time, pos_reference, location_id, total_minor)
+            SELECT X, DATEADD(SECOND, -X, CAST(? AS TIMESTAMP)), 'RENDER-' || X, MOD(X, 3) + 1, 1250
+            FROM SYSTEM_RANGE(CAST(? AS BIGINT), CAST(? AS BIGINT))
+            """;
+
+    private static final String INSERT_LINES_SQL = """
+            INSERT INTO sale_line (id, sale_id, pos_code, menu_item_name, quantity_milli, unit_price_minor, extended_minor)
+            SELECT X, X, 'POS1001', 'Big Burger', 2000, 625, 1250
+            FROM SYSTEM_RANGE(CAST(? AS BIGINT), CAST(? AS BIGINT))
+            """;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void responseSizeAndLatencyDoNotGrowWithTheSaleTable() throws Exception {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(INSERT_SALES_SQL, now, 1, 1_000);
+        jdbcTemplate.update(INSERT_LINES_SQL, 1, 1_000);
+        render();   // warm up the template and queries
+        long[] small = timedRenders();
+        String smallBody = render();
+
+        jdbcTemplate.update(INSERT_SALES_SQL, now, 1_001, 1_000_000);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale", Long.class)).isEqualTo(1_000_000L);
+        render();
+        long[] large = timedRenders();
+        String largeBody = render();
+
+        // Same first page of sales, summary and catalog: not a byte more
+        assertThat(largeBody).contains(">RENDER-3<").doesNotContain(">RENDER-999999<");
+        assertThat(largeBody.length()).isEqualTo(smallBody.length());
+        // Medians; generous bounds for a shared machine, loading every sale would take seconds
+        long smallMedian = small[RENDERS / 2];
+        long largeMedian = large[RENDERS / 2];
+        assertThat(largeMedian).isLessThan(Math.max(5 * smallMedian, smallMedian + 500_000_000L));
+    }
+
+    private long[] timedRenders() throws Exception {
+        long[] nanos = new long[RENDERS];
+        for (int i = 0; i < RENDERS; i++) {
+            long started = System.nanoTime();
+            render();
+            nanos[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private String render() throws Exception {
+        return mockMvc.perform(get("/"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+}
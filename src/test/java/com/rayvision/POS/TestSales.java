@@ -0,0 +1,45 @@
+package com.rayvision.POS;
+
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sales as a client would post them: ids, invoice numbers, totals and, without a time, the
+ * sale time are left to the services. The line list is mutable so tests can add to it.
+ */
+public final class TestSales {
+
+    private TestSales() {
+    }
+
+    public static Sale sale(long locationId, SaleLine... lines) {
+        return sale(locationId, null, lines);
+    }
+
+    public static Sale sale(long locationId, LocalDateTime saleDateTime, SaleLine... lines) {
+        Sale sale = new Sale();
+        sale.setLocationId(locationId);
+        sale.setSaleDateTime(saleDateTime);
+        sale.setLines(new ArrayList<>(List.of(lines)));
+        return sale;
+    }
+
+    /**
+     * A line without a menu item name
+     *
+     * @param quantity Units, e.g. 0.5
+     * @param unitPrice Price per unit, e.g. 2.50
+     */
+    public static SaleLine line(String posCode, double quantity, double unitPrice) {
+        SaleLine line = new SaleLine();
+        line.setPosCode(posCode);
+        line.setQuantityMilli(FixedPoint.fromDouble(quantity, FixedPoint.QUANTITY_SCALE));
+        line.setUnitPriceMinor(FixedPoint.fromDouble(unitPrice, FixedPoint.MONEY_SCALE));
+        return line;
+    }
+}
@@ -0,0 +1,73 @@
+package com.rayvision.POS.analytics;
+
+import com.rayvision.POS.dto.SalesAnalyticsRow;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class SaleLineColumnsTests {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Test
+    void groupsByProductAndHourWithinTheFilter() {
+        SaleLineColumns columns = new SaleLineColumns();
+        columns.append(START.plusMinutes(10), 17L, List.of(
+                new SaleLineColumns.Line("POS1001", 2000, 550),
+                new SaleLineColumns.Line("POS1002", 1000, 225)));
+        columns.append(START.plusMinutes(50), 17L, List.of(new SaleLineColumns.Line("POS1001", 1000, 550)));
+        columns.append(START.plusMinutes(70), 17L, List.of(new SaleLineColumns.Line("POS1001", 500, 550)));
+        columns.append(START.plusMinutes(20), 18L, List.of(new SaleLineColumns.Line("POS1001", 4000, 550)));
+        columns.append(START.plusHours(5), 17L, List.of(new SaleLineColumns.Line("POS1001", 9000, 550)));
+
+        List<SalesAnalyticsRow> rows = columns.aggregate(START, START.plusHours(2), 17L,
+                EnumSet.of(AnalyticsDimension.PRODUCT, AnalyticsDimension.HOUR), 1000, false);
+
+        assertThat(rows).containsExactly(
+                new SalesAnalyticsRow("POS1001", null, START, 2, 3000, 1_650_000),
+                new SalesAnalyticsRow("POS1002", null, START, 1, 1000, 225_000),
+                new SalesAnalyticsRow("POS1001", null, START.plusHours(1), 1, 500, 275_000));
+        assertThat(columns.aggregate(null, null, null, Set.of(AnalyticsDimension.LOCATION), 1000, false))
+                .extracting(SalesAnalyticsRow::locationId, SalesAnalyticsRow::lineCount)
+                .containsExactly(tuple(17L, 5L), tuple(18L, 1L));
+        assertThat(columns.aggregate(null, null, 99L, Set.of(), 1000, false)).isEmpty();
+    }
+
+    @Test
+    void parallelScanMatchesSequentialAcrossChunks() {
+        SaleLineColumns columns = new SaleLineColumns();
+        Random random = new Random(7);
+        int sales = SaleLineColumns.CHUNK_SIZE + 5000;
+        for (int i = 0; i < sales; i++) {
+            columns.append(START.plusSeconds(i * 37L), 1 + random.nextInt(20), List.of(
+                    new SaleLineColumns.Line("POS" + (1001 + random.nextInt(20)), 1000L * (1 + random.nextInt(3)), 500L + 100L * random.nextInt(10)),
+                    new SaleLineColumns.Line("POS" + (1001 + random.nextInt(20)), 1000, 250)));
+        }
+        assertThat(columns.size()).isEqualTo(2 * sales);
+
+        Set<AnalyticsDimension> groupBy = EnumSet.of(AnalyticsDimension.PRODUCT, AnalyticsDimension.LOCATION);
+        LocalDateTime to = START.plusDays(20);
+        List<SalesAnalyticsRow> sequential = columns.aggregate(START.plusDays(1), to, null, groupBy, 1000, false);
+        List<SalesAnalyticsRow> parallel = columns.aggregate(START.plusDays(1), to, null, groupBy, 1000, true);
+        assertThat(parallel).isEqualTo(sequential).hasSize(400);
+
+        long revenue = columns.aggregate(START.plusDays(1), to, null, Set.of(), 1000, true).get(0).revenue();
+        assertThat(sequential.stream().mapToLong(SalesAnalyticsRow::revenue).sum()).isEqualTo(revenue);
+    }
+
+    @Test
+    void rejectsQueriesNeedingTooManyGroups() {
+        SaleLineColumns columns = new SaleLineColumns();
+        columns.append(START, 1L, List.of(new SaleLineColumns.Line("POS1001", 1000, 100)));
+        assertThatThrownBy(() -> columns.aggregate(START, START.plusDays(365), null, Set.of(AnalyticsDimension.HOUR), 1000, false))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
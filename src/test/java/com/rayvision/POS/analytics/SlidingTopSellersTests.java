@@ -0,0 +1,63 @@
+package com.rayvision.POS.analytics;
+
+import com.rayvision.POS.dto.TopSeller;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlidingTopSellersTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 1, 12, 0, 30);
+
+    @Test
+    void findsHeavyHittersWithinTheErrorBoundAmongManyProducts() {
+        SlidingTopSellers board = new SlidingTopSellers(LeaderboardWindow.LAST_HOUR, 20);
+        Map<String, Double> truth = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) {
+            // Three best sellers among 5,000 products
+            String posCode = i % 10 < 3 ? "HIT" + (i % 10) : "POS" + random.nextInt(5000);
+            double quantity = 1 + random.nextInt(3);
+            board.add(NOW, NOW.minusSeconds(random.nextInt(3000)), posCode, quantity);
+            truth.merge(posCode, quantity, Double::sum);
+        }
+
+        SlidingTopSellers.Snapshot snapshot = board.top(NOW, 3);
+        assertThat(snapshot.top()).extracting(TopSeller::posCode).containsExactlyInAnyOrder("HIT0", "HIT1", "HIT2");
+        double windowQuantity = truth.values().stream().mapToDouble(Double::doubleValue).sum();
+        assertThat(snapshot.windowQuantity()).isEqualTo(windowQuantity);
+        assertThat(snapshot.maxError()).isLessThanOrEqualTo(windowQuantity / 20);
+        for (TopSeller seller : snapshot.top()) {
+            double actual = truth.get(seller.posCode());
+            assertThat(seller.quantity()).isBetween(actual, actual + snapshot.maxError());
+            assertThat(seller.guaranteedQuantity()).isLessThanOrEqualTo(actual);
+        }
+    }
+
+    @Test
+    void forgetsSalesThatLeaveTheWindow() {
+        SlidingTopSellers board = new SlidingTopSellers(LeaderboardWindow.LAST_15_MINUTES, 10);
+        board.add(NOW, NOW.minusMinutes(40), "OLD", 100);
+        board.add(NOW.minusMinutes(20), NOW.minusMinutes(20), "EARLIER", 50);
+        board.add(NOW, NOW.minusMinutes(5), "RECENT", 2);
+        board.add(NOW, NOW.plusHours(2), "FUTURE", 100);
+
+        assertThat(board.top(NOW, 10).top()).extracting(TopSeller::posCode).containsExactly("RECENT");
+        assertThat(board.top(NOW.minusMinutes(19), 10).top()).extracting(TopSeller::posCode).containsExactly("EARLIER");
+        assertThat(board.top(NOW.plusMinutes(30), 10).top()).isEmpty();
+    }
+
+    @Test
+    void todayStartsAtMidnight() {
+        SlidingTopSellers board = new SlidingTopSellers(LeaderboardWindow.TODAY, 10);
+        board.add(NOW, NOW.toLocalDate().atStartOfDay().minusMinutes(1), "YESTERDAY", 5);
+        board.add(NOW, NOW.toLocalDate().atStartOfDay().plusMinutes(1), "TODAY", 1);
+
+        assertThat(board.top(NOW, 10).top()).extracting(TopSeller::posCode).containsExactly("TODAY");
+    }
+}
@@ -0,0 +1,134 @@
+package com.rayvision.POS.api;
+
+import com.jayway.jsonpath.JsonPath;
+import com.rayvision.POS.StatementCounter;
+import com.rayvision.POS.service.PosService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(StatementCounter.class)
+class SaleControllerTests {
+
+    private static final long LOCATION_ID = 7L;
+    private static final int SALES = 45;
+    private static final int LINES_PER_SALE = 3;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    @BeforeEach
+    void setUp() {
+        if (posService.countSalesByLocation(LOCATION_ID) == 0) {
+            for (int i = 0; i < SALES; i++) {
+                posService.createSale(sale(LOCATION_ID,
+                        line("POS1001", 1, 2.50), line("POS1002", 2, 2.50), line("POS1003", 3, 2.50)));
+            }
+        }
+        statementCounter.start();
+    }
+
+    @Test
+    void locationDateRangePageUsesConstantStatementCount() throws Exception {
+        mockMvc.perform(get("/api/sales/location/{id}/date-range", LOCATION_ID)
+                        .param("startDate", "2000-01-01T00:00:00")
+                        .param("endDate", "2100-01-01T00:00:00")
+                        .param("size", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(20))
+                .andExpect(jsonPath("$.content[0].lines.length()").value(LINES_PER_SALE))
+                .andExpect(jsonPath("$.totalItems").value(SALES));
+
+        // page of IDs, count, sales with lines
+        assertThat(statementCounter.count()).isEqualTo(3);
+    }
+
+    @Test
+    void locationPageDoesNotLoadLinesPerSale() throws Exception {
+        mockMvc.perform(get("/api/sales/location/{id}", LOCATION_ID)
+                        .param("size", "40"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(40))
+                .andExpect(jsonPath("$.content[39].lines.length()").value(LINES_PER_SALE));
+
+        assertThat(statementCounter.count()).isEqualTo(3);
+    }
+
+    @Test
+    void allSalesComeOnePageAtATime() throws Exception {
+        mockMvc.perform(get("/api/sales").param("size", "40"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(40))
+                .andExpect(jsonPath("$.currentPage").value(0));
+
+        assertThat(statementCounter.count()).isEqualTo(3);
+    }
+
+    @Test
+    void offsetPagesRejectAnUnknownSortLikeCursorPages() throws Exception {
+        mockMvc.perform(get("/api/sales/location/{id}", LOCATION_ID).param("sortBy", "lines"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/sales/date-range")
+                        .param("startDate", "2000-01-01T00:00:00")
+                        .param("endDate", "2100-01-01T00:00:00")
+                        .param("sortBy", "lines"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/sales/location/{id}/date-range", LOCATION_ID)
+                        .param("startDate", "2000-01-01T00:00:00")
+                        .param("endDate", "2100-01-01T00:00:00")
+                        .param("sortBy", "saleDateTime")
+                        .param("sortDir", "ASC"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void cursorPagesVisitEverySaleOnce() throws Exception {
+        Set<Integer> seen = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var request = get("/api/sales/location/{id}/date-range", LOCATION_ID)
+                    .param("startDate", "2000-01-01T00:00:00")
+                    .param("endDate", "2100-01-01T00:00:00")
+                    .param("pagination", "cursor")
+                    .param("size", "10");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            String body = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.totalItems").doesNotExist())
+                    .andReturn().getResponse().getContentAsString();
+            List<Integer> ids = JsonPath.read(body, "$.content[*].id");
+            seen.addAll(ids);
+            cursor = JsonPath.read(body, "$.nextCursor");
+            pages++;
+        } while (cursor != null);
+
+        assertThat(seen).hasSize(SALES);
+        assertThat(pages).isEqualTo((SALES + 9) / 10);
+    }
+}
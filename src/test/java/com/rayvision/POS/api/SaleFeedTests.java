@@ -0,0 +1,99 @@
+package com.rayvision.POS.api;
+
+import com.rayvision.POS.service.PosService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@SpringBootTest(properties = {
+        "pos.feed.history-size=5"
+})
+@AutoConfigureMockMvc
+class SaleFeedTests {
+
+    private static final Pattern SALE_EVENT = Pattern.compile("event:sale\nid:(\\d+)\ndata:\\{\"id\":(\\d+),[^\n]*\"locationId\":(\\d+)");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PosService posService;
+
+    @Test
+    void pushesSalesOfTheLocationAndResumesFromLastEventId() throws Exception {
+        MockHttpServletResponse live = subscribe("/api/sales/live?locationId=41", null);
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(posService.createSale(sale(41L, line("POS1004", 1, 7.00))).getId());
+            posService.createSale(sale(42L, line("POS1004", 1, 7.00)));
+        }
+
+        List<long[]> events = awaitSaleEvents(live, 3);
+        assertThat(events).extracting(e -> e[1]).containsExactlyElementsOf(ids);
+        assertThat(events).extracting(e -> e[2]).containsOnly(41L);
+
+        // Reconnecting after the first event replays the two after it, then carries on live
+        MockHttpServletResponse resumed = subscribe("/api/sales/live?locationId=41", events.get(0)[0]);
+        ids.add(posService.createSale(sale(41L, line("POS1004", 1, 7.00))).getId());
+        assertThat(awaitSaleEvents(resumed, 3)).extracting(e -> e[1]).containsExactlyElementsOf(ids.subList(1, 4));
+    }
+
+    @Test
+    void asksClientsToResyncWhenTheHistoryNoLongerReachesBack() throws Exception {
+        posService.createSale(sale(43L, line("POS1004", 1, 7.00)));
+        for (int i = 0; i < 5; i++) {
+            posService.createSale(sale(44L, line("POS1004", 1, 7.00)));
+        }
+        MockHttpServletResponse live = subscribe("/api/sales/live", 1L);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!live.getContentAsString().contains("event:resync")) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+        assertThat(live.getContentAsString()).doesNotContain("event:sale");
+    }
+
+    private MockHttpServletResponse subscribe(String url, Long lastEventId) throws Exception {
+        var request = get(url);
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return mockMvc.perform(request).andExpect(request().asyncStarted()).andReturn().getResponse();
+    }
+
+    /**
+     * Wait for a number of sale events: event id, sale id and location id of each
+     */
+    private static List<long[]> awaitSaleEvents(MockHttpServletResponse response, int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            List<long[]> events = new ArrayList<>();
+            Matcher matcher = SALE_EVENT.matcher(response.getContentAsString());
+            while (matcher.find()) {
+                events.add(new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)),
+                        Long.parseLong(matcher.group(3))});
+            }
+            if (events.size() >= count) {
+                return events;
+            }
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.rayvision.POS.api;
+
+import com.jayway.jsonpath.JsonPath;
+import com.rayvision.POS.service.IdempotencyService;
+import com.rayvision.POS.service.PosService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "pos.idempotency.max-entries=3"
+})
+@AutoConfigureMockMvc
+class SaleIdempotencyTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Test
+    void retriesGetTheOriginalResponse() throws Exception {
+        String first = create("/api/sales", "retry-1", saleJson(31, 2))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(IdempotencyService.REPLAYED_HEADER))
+                .andReturn().getResponse().getContentAsString();
+        String retry = create("/api/sales", "retry-1", saleJson(31, 2))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(IdempotencyService.REPLAYED_HEADER, "true"))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(retry).isEqualTo(first);
+        assertThat(posService.countSalesByLocation(31L)).isEqualTo(1);
+
+        create("/api/sales", "retry-1", saleJson(31, 3)).andExpect(status().isUnprocessableEntity());
+        create("/api/sales", "x".repeat(IdempotencyService.MAX_KEY_LENGTH + 1), saleJson(31, 2)).andExpect(status().isBadRequest());
+
+        // The other endpoint keeps its own keys
+        create("/sales", "retry-1", saleJson(31, 2)).andExpect(status().isOk());
+        create("/sales", "retry-1", saleJson(31, 2)).andExpect(header().string(IdempotencyService.REPLAYED_HEADER, "true"));
+        assertThat(posService.countSalesByLocation(31L)).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentDuplicatesCreateOneSale() throws Exception {
+        int requests = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> bodies = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(requests)) {
+            for (int i = 0; i < requests; i++) {
+                bodies.add(executor.submit(() -> {
+                    start.await();
+                    return create("/api/sales", "concurrent-1", saleJson(32, 1))
+                            .andExpect(status().isCreated())
+                            .andReturn().getResponse().getContentAsString();
+                }));
+            }
+            start.countDown();
+            Object id = JsonPath.read(bodies.get(0).get(), "$.id");
+            for (Future<String> body : bodies) {
+                assertThat((Object) JsonPath.read(body.get(), "$.id")).isEqualTo(id);
+            }
+        }
+        assertThat(posService.countSalesByLocation(32L)).isEqualTo(1);
+    }
+
+    @Test
+    void keysEvictedFromMemoryAreAnsweredFromTheTable() throws Exception {
+        String first = create("/api/sales", "evicted-0", saleJson(33, 1)).andReturn().getResponse().getContentAsString();
+        for (int i = 1; i <= 4; i++) {
+            create("/api/sales", "evicted-" + i, saleJson(33, 1)).andExpect(status().isCreated());
+        }
+        assertThat((int) idempotencyService.getStats().get("entries")).isLessThanOrEqualTo(3);
+        long fromTable = (long) idempotencyService.getStats().get("replayedFromTable");
+
+        String retry = create("/api/sales", "evicted-0", saleJson(33, 1))
+                .andExpect(header().string(IdempotencyService.REPLAYED_HEADER, "true"))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(retry).isEqualTo(first);
+        assertThat((long) idempotencyService.getStats().get("replayedFromTable")).isEqualTo(fromTable + 1);
+        assertThat(posService.countSalesByLocation(33L)).isEqualTo(5);
+    }
+
+    private ResultActions create(String path, String key, String json) throws Exception {
+        return mockMvc.perform(post(path).contentType(MediaType.APPLICATION_JSON)
+                .header(IdempotencyService.KEY_HEADER, key).content(json));
+    }
+
+    private static String saleJson(long locationId, int quantity) {
+        return """
+                {"locationId": %d, "lines": [
+                  {"posCode": "POS1003", "menuItemName": "Chicken Burger", "quantity": %d, "unitPrice": 5.5}]}
+                """.formatted(locationId, quantity);
+    }
+}
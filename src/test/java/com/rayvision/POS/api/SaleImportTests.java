@@ -0,0 +1,136 @@
+package com.rayvision.POS.api;
+
+import com.jayway.jsonpath.JsonPath;
+import com.rayvision.POS.service.PosService;
+import com.rayvision.POS.service.SaleExportService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "pos.import.chunk-size=2",
+        "pos.import.threads=2"
+})
+@AutoConfigureMockMvc
+class SaleImportTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private SaleExportService saleExportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void importsCsvAndSkipsSalesAlreadyImported() throws Exception {
+        String csv = """
+                quantity,unitPrice,posReference,saleDateTime,locationId,posCode,menuItemName,extended
+                2,1.25,OLD-45-1,2021-03-01 10:15:00,45,POS1001,"Burger, large",ignored
+                1,0.10,OLD-45-1,2021-03-01 10:15:00,45,POS1002,"Say \"\"cheese\"\"",
+                0.5,4,OLD-45-1,2021-03-01 10:15:00,45,POS1003,,
+
+                1,3.00,OLD-45-2,2021-03-01T11:00:00,45,POS1001,Burger,
+                lots,3.00,OLD-45-3,2021-03-01T12:00:00,45,POS1001,Burger,
+                1,3.00,OLD-45-3,2021-03-01T12:00:00,45,POS1002,Cola,
+                1,3.00,OLD-45-4,not a time,45,POS1001,Burger,
+                3,2.50,OLD-45-5,2021-03-02T09:00:00,45,POS1004,Fries,
+                """;
+        mockMvc.perform(post("/api/admin/import").contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.salesImported").value(3))
+                .andExpect(jsonPath("$.saleLinesImported").value(5))
+                .andExpect(jsonPath("$.salesRejected").value(2))
+                .andExpect(jsonPath("$.errors", hasSize(2)))
+                .andExpect(jsonPath("$.errors[0]", startsWith("Line ")));
+
+        Map<String, Object> first = jdbcTemplate.queryForMap(
+                "SELECT id, total_minor, location_id FROM sale WHERE pos_reference = 'OLD-45-1'");
+        // 2 x 1.25 + 1 x 0.10 + 0.5 x 4
+        assertThat(first).containsEntry("TOTAL_MINOR", 460L).containsEntry("LOCATION_ID", 45L);
+        assertThat(jdbcTemplate.queryForList("SELECT menu_item_name FROM sale_line WHERE sale_id = ? ORDER BY pos_code",
+                String.class, first.get("ID"))).containsExactly("Burger, large", "Say \"cheese\"", "");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale WHERE pos_reference IN ('OLD-45-3', 'OLD-45-4')",
+                Long.class)).isZero();
+        // The rollups are rebuilt after the import and the analytics columns fed as chunks commit
+        mockMvc.perform(get("/api/sales/summary").param("locationId", "45").param("granularity", "day")
+                        .param("from", "2021-03-01T00:00:00").param("to", "2021-03-03T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.saleCount").value(3))
+                .andExpect(jsonPath("$.revenue").value(15.1))
+                .andExpect(jsonPath("$.itemQuantity").value(7.5));
+        mockMvc.perform(get("/api/sales/analytics").param("locationId", "45")
+                        .param("from", "2021-03-01T00:00:00").param("to", "2021-03-03T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lineCount").value(5))
+                .andExpect(jsonPath("$.revenue").value(15.1));
+
+        // Running the same file again only skips
+        mockMvc.perform(post("/api/admin/import").param("format", "csv").contentType(MediaType.TEXT_PLAIN).content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.salesImported").value(0))
+                .andExpect(jsonPath("$.salesSkipped").value(3));
+        mockMvc.perform(get("/api/admin/import"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.current").doesNotExist())
+                .andExpect(jsonPath("$.recent[0].salesSkipped").value(3));
+    }
+
+    @Test
+    void importsWhatTheExportWrites() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            posService.createSale(sale(46L, LocalDateTime.of(2024, 5, 1, 12, 0).plusMinutes(i + 1),
+                    line("POS1001", i + 1, 1.99), line("POS1002", 1, 2.50), line("POS1003", 2, 10.75)));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        saleExportService.exportNdjson(46L, null, null, out);
+        String exported = out.toString(StandardCharsets.UTF_8);
+
+        // The same sales under other references and at another location, as if from another system
+        String ndjson = exported.replace("\"LOC046-", "\"OLD-47-").replace("\"locationId\":46", "\"locationId\":47");
+        String report = mockMvc.perform(post("/api/admin/import").contentType(MediaType.APPLICATION_NDJSON).content(ndjson))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat((Integer) JsonPath.read(report, "$.salesImported")).isEqualTo(5);
+        assertThat((Integer) JsonPath.read(report, "$.saleLinesImported")).isEqualTo(15);
+
+        String totals = "SELECT SUM(total_minor) FROM sale WHERE location_id = ?";
+        assertThat(jdbcTemplate.queryForObject(totals, Long.class, 47L))
+                .isEqualTo(jdbcTemplate.queryForObject(totals, Long.class, 46L));
+    }
+
+    @Test
+    void refusesInputItCannotRead() throws Exception {
+        mockMvc.perform(post("/api/admin/import").contentType("text/csv").content("posReference,locationId\nA,1\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", startsWith("CSV header is missing the column(s) saleDateTime")));
+        mockMvc.perform(post("/api/admin/import").contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/admin/import").param("format", "xml").content("<sales/>"))
+                .andExpect(status().isBadRequest());
+    }
+}
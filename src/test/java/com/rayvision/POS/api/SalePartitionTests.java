@@ -0,0 +1,301 @@
+package com.rayvision.POS.api;
+
+import com.jayway.jsonpath.JsonPath;
+import com.rayvision.POS.config.InvoiceConfig;
+import com.rayvision.POS.config.JournalConfig;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.metrics.MetricsRegistry;
+import com.rayvision.POS.repository.InvoiceSequenceRepository;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import com.rayvision.POS.repository.SaleRepository;
+import com.rayvision.POS.service.InvoiceNumberService;
+import com.rayvision.POS.service.LocationRegistry;
+import com.rayvision.POS.service.PosService;
+import com.rayvision.POS.service.SaleExportService;
+import com.rayvision.POS.service.SaleJournalService;
+import com.rayvision.POS.service.SalePartitionService;
+import com.rayvision.POS.service.SalesRollupService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "pos.partition.batch-size=2"
+})
+@AutoConfigureMockMvc
+class SalePartitionTests {
+
+    private static final long LOCATION = 48L;
+    private static final String START = "2019-01-01T00:00:00";
+    private static final String END = "2019-03-31T23:59:59";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private SaleExportService saleExportService;
+
+    @Autowired
+    private PartitionedSaleRepository partitionedSaleRepository;
+
+    @Autowired
+    private SalePartitionService salePartitionService;
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SaleRepository saleRepository;
+
+    @Autowired
+    private LocationRegistry locationRegistry;
+
+    @Autowired
+    private InvoiceSequenceRepository invoiceSequenceRepository;
+
+    @Autowired
+    private InvoiceConfig invoiceConfig;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    @Test
+    void sealedMonthsAreStillQueriedAndCanBeDetachedOrDropped() throws Exception {
+        Long sealedId = null;
+        for (int month = 1; month <= 3; month++) {
+            for (int day = 1; day <= 3; day++) {
+                Sale sale = posService.createSale(sale(LOCATION, LocalDateTime.of(2019, month, day * 5, 12, 0),
+                        line("POS1001", 2, 1.99), line("POS1002", 1, 2.50)));
+                sealedId = sealedId == null ? sale.getId() : sealedId;
+            }
+        }
+
+        mockMvc.perform(post("/api/admin/partitions/seal").param("month", "2019-01"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sealed['2019-01']").value(3));
+        mockMvc.perform(post("/api/admin/partitions/seal").param("month", "2019-02"))
+                .andExpect(status().isOk());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale WHERE location_id = ?", Long.class, LOCATION))
+                .isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale_line_2019_01", Long.class)).isEqualTo(6);
+
+        // Queries read only the partitions that overlap the range
+        String routed = partitionedSaleRepository.unionAll("SELECT id FROM {sale}",
+                LocalDateTime.parse("2019-02-10T00:00:00"), LocalDateTime.parse("2019-03-10T00:00:00"));
+        assertThat(routed).contains("sale_2019_02").doesNotContain("sale_2019_01");
+        // and leave out the sale table when the range lies in sealed months without late sales
+        LocalDateTime januaryStart = LocalDateTime.parse("2019-01-10T00:00:00");
+        LocalDateTime februaryEnd = LocalDateTime.parse("2019-02-20T00:00:00");
+        assertThat(partitionedSaleRepository.unionAll("SELECT id FROM {sale}", januaryStart, februaryEnd))
+                .isEqualTo("SELECT id FROM sale_2019_01\nUNION ALL\nSELECT id FROM sale_2019_02");
+
+        // Offset pages, keyset pages, counts and lookups by ID across the sale table and partitions
+        mockMvc.perform(get("/api/sales/location/48/date-range").param("startDate", START).param("endDate", END)
+                        .param("size", "4").param("page", "1").param("sortBy", "saleDateTime").param("sortDir", "ASC"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalItems").value(9))
+                .andExpect(jsonPath("$.content", hasSize(4)))
+                .andExpect(jsonPath("$.content[0].saleDateTime").value("2019-02-10T12:00:00"))
+                .andExpect(jsonPath("$.content[0].lines", hasSize(2)));
+        assertThat(scroll()).hasSize(9).doesNotHaveDuplicates().isSortedAccordingTo((a, b) -> b.compareTo(a));
+        mockMvc.perform(get("/api/sales/" + sealedId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lines", hasSize(2)));
+
+        // A late sale for a sealed month is found in the sale table until the next seal moves it
+        posService.createSale(sale(LOCATION, LocalDateTime.of(2019, 1, 30, 12, 0), line("POS1001", 2, 1.99), line("POS1002", 1, 2.50)));
+        assertThat(posService.countSalesByLocationAndDateRange(LOCATION, LocalDateTime.parse(START), LocalDateTime.parse(END)))
+                .isEqualTo(10);
+        assertThat(posService.countSalesByLocationAndDateRange(LOCATION, januaryStart, februaryEnd)).isEqualTo(6);
+        mockMvc.perform(post("/api/admin/partitions/seal").param("month", "2019-01"))
+                .andExpect(jsonPath("$.sealed['2019-01']").value(1));
+        assertThat(partitionedSaleRepository.unionAll("SELECT id FROM {sale}", januaryStart, februaryEnd))
+                .startsWith("SELECT id FROM sale_2019_01\n");
+        assertThat(posService.countSalesByLocationAndDateRange(LOCATION, januaryStart, februaryEnd)).isEqualTo(6);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(saleExportService.exportNdjson(LOCATION, LocalDateTime.parse(START), LocalDateTime.parse(END), out))
+                .isEqualTo(10);
+        assertThat(out.toString(StandardCharsets.UTF_8)).startsWith("{\"id\":" + sealedId + ",");
+
+        mockMvc.perform(post("/api/admin/partitions/2019-01/detach"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.attached").value(false));
+        assertThat(count()).isEqualTo(6);
+        mockMvc.perform(get("/api/sales/" + sealedId)).andExpect(status().isNotFound());
+        mockMvc.perform(post("/api/admin/partitions/2019-01/attach")).andExpect(status().isOk());
+        assertThat(count()).isEqualTo(10);
+
+        mockMvc.perform(delete("/api/admin/partitions/2019-02"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.saleCount").value(3));
+        assertThat(count()).isEqualTo(7);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'SALE_2019_02'", Long.class)).isZero();
+        mockMvc.perform(get("/api/admin/partitions"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.partitions[?(@.month == '2019-01')].saleCount").value(4));
+
+        // Sales written without telling the repository, as by a restart's replay, are found once it looks for them
+        LocalDateTime januaryEnd = LocalDateTime.parse("2019-01-31T23:59:59");
+        jdbcTemplate.update("INSERT INTO sale (id, sale_date_time, pos_reference, location_id, total_minor)"
+                + " VALUES (990000001, ?, NULL, ?, 0)", LocalDateTime.of(2019, 1, 20, 12, 0), LOCATION);
+        assertThat(posService.countSalesByLocationAndDateRange(LOCATION, januaryStart, januaryEnd)).isEqualTo(3);
+        partitionedSaleRepository.findLateSales();
+        assertThat(posService.countSalesByLocationAndDateRange(LOCATION, januaryStart, januaryEnd)).isEqualTo(4);
+        salePartitionService.sealMonth(YearMonth.of(2019, 1));
+        assertThat(partitionedSaleRepository.unionAll("SELECT id FROM {sale}", januaryStart, januaryEnd))
+                .isEqualTo("SELECT id FROM sale_2019_01");
+        assertThat(posService.countSalesByLocationAndDateRange(LOCATION, januaryStart, januaryEnd)).isEqualTo(4);
+    }
+
+    @Test
+    void journalReplayLeavesSealedAndDroppedSalesAlone(@TempDir Path directory) throws Exception {
+        List<Sale> sales = new ArrayList<>();
+        for (int month = 5; month <= 6; month++) {
+            for (int day = 1; day <= 2; day++) {
+                sales.add(posService.createSale(sale(49L, LocalDateTime.of(2018, month, day, 12, 0), line("POS1001", 1, 1.99))));
+            }
+        }
+        salePartitionService.sealMonth(YearMonth.of(2018, 5));
+        salePartitionService.sealMonth(YearMonth.of(2018, 6));
+
+        JournalConfig config = new JournalConfig();
+        config.setEnabled(true);
+        config.setDirectory(directory.toString());
+        config.setSegmentSizeBytes(64 * 1024);
+        SaleJournalService journal = journalService(config);
+        for (Sale sale : sales) {
+            journal.committed(journal.append(sale));
+        }
+        journal.monthDropped(YearMonth.of(2018, 6));
+        salePartitionService.drop(YearMonth.of(2018, 6));
+        journal.close();
+
+        SaleJournalService restarted = journalService(config);
+        restarted.close();
+        assertThat(restarted.getStats()).containsEntry("replayedOnStartup", 2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale WHERE location_id = 49", Long.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale_2018_05", Long.class)).isEqualTo(2);
+    }
+
+    @Test
+    void referencesOfSealedSalesStayReservedUntilTheirPartitionIsDropped() throws Exception {
+        List<String> references = new ArrayList<>();
+        for (int day = 1; day <= 3; day++) {
+            references.add(posService.createSale(sale(50L, LocalDateTime.of(2018, 7, day, 12, 0), line("POS1001", 1, 1.99)))
+                    .getPosReference());
+        }
+        salePartitionService.sealMonth(YearMonth.of(2018, 7));
+        assertThat(monthReferences()).containsExactlyInAnyOrderElementsOf(references);
+
+        // An import for another month skips a reference that is only in a partition
+        mockMvc.perform(post("/api/admin/import").contentType("text/csv").content("""
+                        quantity,unitPrice,posReference,saleDateTime,locationId,posCode
+                        1,1.99,%s,2018-08-01T12:00:00,50,POS1001
+                        """.formatted(references.get(0))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.salesImported").value(0))
+                .andExpect(jsonPath("$.salesSkipped").value(1));
+
+        // A new sequence for the location continues after the sealed numbers
+        jdbcTemplate.update("DELETE FROM invoice_sequence WHERE location_id = 50");
+        InvoiceNumberService restarted = new InvoiceNumberService(saleRepository, partitionedSaleRepository, locationRegistry,
+                invoiceSequenceRepository, invoiceConfig, transactionManager, metricsRegistry);
+        assertThat(restarted.generateNextInvoiceNumber(50L)).isGreaterThan(references.get(2));
+
+        // A sale in the sale table reusing a sealed reference cannot be sealed next to it
+        jdbcTemplate.update("INSERT INTO sale (id, sale_date_time, pos_reference, location_id, total_minor)"
+                + " VALUES (-50, TIMESTAMP '2018-07-20 12:00:00', ?, 50, 199)", references.get(1));
+        mockMvc.perform(post("/api/admin/partitions/seal").param("month", "2018-07"))
+                .andExpect(status().isConflict());
+        jdbcTemplate.update("DELETE FROM sale WHERE id = -50");
+
+        // Attaching fills in references missing from the index, as for partitions sealed before it existed
+        jdbcTemplate.update("DELETE FROM sale_reference WHERE month_start = DATE '2018-07-01'");
+        mockMvc.perform(post("/api/admin/partitions/2018-07/detach")).andExpect(status().isOk());
+        mockMvc.perform(post("/api/admin/partitions/2018-07/attach")).andExpect(status().isOk());
+        assertThat(monthReferences()).containsExactlyInAnyOrderElementsOf(references);
+
+        mockMvc.perform(delete("/api/admin/partitions/2018-07")).andExpect(status().isOk());
+        assertThat(monthReferences()).isEmpty();
+    }
+
+    @Test
+    void refusesToSealOpenMonthsOrUnknownPartitions() throws Exception {
+        mockMvc.perform(post("/api/admin/partitions/seal").param("month", YearMonth.now().toString()))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/admin/partitions/seal").param("month", "January"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(delete("/api/admin/partitions/1999-01"))
+                .andExpect(status().isNotFound());
+    }
+
+    private SaleJournalService journalService(JournalConfig config) throws IOException {
+        SaleJournalService journal = new SaleJournalService(config, jdbcTemplate, transactionManager, salesRollupService,
+                partitionedSaleRepository);
+        journal.openAndReplay();
+        return journal;
+    }
+
+    private List<String> monthReferences() {
+        return jdbcTemplate.queryForList("SELECT pos_reference FROM sale_reference WHERE month_start = DATE '2018-07-01'", String.class);
+    }
+
+    private long count() {
+        return posService.countSalesByLocationAndDateRange(LOCATION, LocalDateTime.parse(START), LocalDateTime.parse(END));
+    }
+
+    private List<Long> scroll() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            var request = get("/api/sales/location/48/date-range").param("startDate", START).param("endDate", END)
+                    .param("pagination", "cursor").param("size", "2");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            String body = mockMvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+            List<String> times = JsonPath.read(body, "$.content[*].saleDateTime");
+            List<Number> pageIds = JsonPath.read(body, "$.content[*].id");
+            for (int i = 0; i < pageIds.size(); i++) {
+                ids.add(pageIds.get(i).longValue());
+            }
+            assertThat(times).isSortedAccordingTo((a, b) -> b.compareTo(a));
+            cursor = JsonPath.read(body, "$.nextCursor");
+        } while (cursor != null);
+        return ids;
+    }
+}
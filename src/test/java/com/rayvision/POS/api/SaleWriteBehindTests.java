@@ -0,0 +1,143 @@
+package com.rayvision.POS.api;
+
+import com.jayway.jsonpath.JsonPath;
+import com.rayvision.POS.domain.LocationStock;
+import com.rayvision.POS.service.IdempotencyService;
+import com.rayvision.POS.service.InventoryService;
+import com.rayvision.POS.service.PosService;
+import com.rayvision.POS.service.SaleJournalService;
+import com.rayvision.POS.service.SaleWriteBehindService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "pos.ingest.async.enabled=true",
+        "pos.ingest.async.batch-size=20"
+})
+@AutoConfigureMockMvc
+class SaleWriteBehindTests {
+
+    private static final long LOCATION_ID = 12L;
+    private static final String SALE_JSON = """
+            {"locationId": 12, "lines": [
+              {"posCode": "POS1003", "menuItemName": "Chicken Burger", "quantity": 2, "unitPrice": 5.5},
+              {"posCode": "POS1007", "menuItemName": "Sprite", "quantity": 1, "unitPrice": 2.0}]}
+            """;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private SaleWriteBehindService saleWriteBehindService;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @MockitoSpyBean
+    private SaleJournalService saleJournalService;
+
+    @Test
+    void acceptedSalesCanBeReadBackAndAreAllWritten() throws Exception {
+        long failedBefore = (long) saleWriteBehindService.getStats().get("failed");
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            String body = mockMvc.perform(post("/api/sales").contentType(MediaType.APPLICATION_JSON).content(SALE_JSON))
+                    .andExpect(status().isAccepted())
+                    .andExpect(header().exists("Location"))
+                    .andReturn().getResponse().getContentAsString();
+            long id = ((Number) JsonPath.read(body, "$.id")).longValue();
+            ids.add(id);
+
+            // Read-your-writes, whether or not a writer has got to it yet
+            mockMvc.perform(get("/api/sales/{id}", id))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.posReference").value((String) JsonPath.read(body, "$.posReference")))
+                    .andExpect(jsonPath("$.total").value(13.0));
+        }
+        // Ids come from the same generator as sales persisted through JPA
+        ids.add(posService.createSale(sale(LOCATION_ID, line("POS1003", 1, 5.50))).getId());
+        assertThat(ids).hasSize(101);
+
+        awaitWritten();
+        assertThat(posService.countSalesByLocation(LOCATION_ID)).isEqualTo(101);
+        for (Long id : ids) {
+            assertThat(posService.getSaleById(id)).isPresent();
+        }
+        assertThat(saleWriteBehindService.getStats()).containsEntry("written", 100L).containsEntry("failed", failedBefore);
+    }
+
+    @Test
+    void submitThatFailsAfterReservingGivesTheStockBack() {
+        long sold = sold("POS1003");
+        doThrow(new IllegalStateException("Journal unavailable")).when(saleJournalService).append(any());
+        try {
+            assertThatThrownBy(() -> saleWriteBehindService.submit(sale(LOCATION_ID, line("POS1003", 1, 5.50)))).hasMessage("Journal unavailable");
+        } finally {
+            reset(saleJournalService);
+        }
+        assertThat(sold("POS1003")).isEqualTo(sold);
+    }
+
+    @Test
+    void droppedSaleIsNotReplayedAsAccepted() throws Exception {
+        long sold = sold("POS1004");
+        // Passes validation but is too long for the menu_item_name column, so the writer drops it
+        String json = """
+                {"locationId": 12, "lines": [{"posCode": "POS1004", "menuItemName": "%s", "quantity": 1, "unitPrice": 3.0}]}
+                """.formatted("x".repeat(300));
+        long failed = (long) saleWriteBehindService.getStats().get("failed");
+
+        mockMvc.perform(post("/api/sales").header(IdempotencyService.KEY_HEADER, "dropped-1")
+                        .contentType(MediaType.APPLICATION_JSON).content(json))
+                .andExpect(status().isAccepted());
+        awaitWritten();
+        assertThat(saleWriteBehindService.getStats()).containsEntry("failed", failed + 1);
+        assertThat(sold("POS1004")).isEqualTo(sold);
+
+        // The retry runs again instead of being told the dropped sale was accepted
+        mockMvc.perform(post("/api/sales").header(IdempotencyService.KEY_HEADER, "dropped-1")
+                        .contentType(MediaType.APPLICATION_JSON).content(json))
+                .andExpect(status().isAccepted())
+                .andExpect(header().doesNotExist(IdempotencyService.REPLAYED_HEADER));
+        awaitWritten();
+    }
+
+    private void awaitWritten() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((int) saleWriteBehindService.getStats().get("inFlight") > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private long sold(String posCode) {
+        return inventoryService.getStock(LOCATION_ID).stream()
+                .filter(stock -> stock.getPosCode().equals(posCode))
+                .mapToLong(LocationStock::getSoldQuantityMilli)
+                .sum();
+    }
+}
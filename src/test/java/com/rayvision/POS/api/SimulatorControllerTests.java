@@ -0,0 +1,71 @@
+package com.rayvision.POS.api;
+
+import com.rayvision.POS.config.SimulatorConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "pos.simulator.load.location-count=1"
+})
+@AutoConfigureMockMvc
+class SimulatorControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SimulatorConfig config;
+
+    @AfterEach
+    void stopLoad() throws Exception {
+        mockMvc.perform(post("/api/simulator/load/stop")).andExpect(status().isOk());
+    }
+
+    @Test
+    void rejectedStartLeavesTheLoadSettingsAlone() throws Exception {
+        int concurrency = config.getLoad().getConcurrency();
+        int rate = config.getLoad().getTargetSalesPerSecond();
+
+        mockMvc.perform(post("/api/simulator/load/start").param("targetSalesPerSecond", "10").param("concurrency", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").exists());
+        assertThat(config.getLoad().getConcurrency()).isEqualTo(concurrency);
+        assertThat(config.getLoad().getTargetSalesPerSecond()).isEqualTo(rate);
+    }
+
+    @Test
+    void loadRunsUntilStoppedAndReportsItsLatency() throws Exception {
+        mockMvc.perform(post("/api/simulator/load/start").param("targetSalesPerSecond", "20").param("concurrency", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.running").value(true))
+                .andExpect(jsonPath("$.targetSalesPerSecond").value(20))
+                .andExpect(jsonPath("$.locations").value(1));
+        assertThat(config.getLoad().getConcurrency()).isEqualTo(2);
+
+        Thread.sleep(300);
+        mockMvc.perform(post("/api/simulator/load/stop"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.load.running").value(false));
+        mockMvc.perform(get("/api/simulator/report"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.latencyMeasuredFrom").value("send"))
+                .andExpect(jsonPath("$.latency.total.count").isNumber())
+                .andExpect(jsonPath("$.byLocation['1']").exists());
+
+        // Settings from the last accepted start apply to a start without parameters
+        mockMvc.perform(post("/api/simulator/load/start"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.targetSalesPerSecond").value(20))
+                .andExpect(jsonPath("$.concurrency").value(2));
+    }
+}
@@ -0,0 +1,183 @@
+package com.rayvision.POS.datasource;
+
+import com.rayvision.POS.service.PosService;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// The replica is its own pool on the same in-memory database, which stands in for a replica kept in sync;
+// ReplicaLagTests gives it a database of its own that falls behind
+@SpringBootTest(properties = {
+        "pos.datasource.replica.enabled=true",
+        "pos.datasource.replica.heartbeat-millis=3600000"
+})
+@AutoConfigureMockMvc
+class ReadWriteRoutingTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ManualClock clock;
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private ReplicaLagGuard guard;
+
+    @Autowired
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    private HikariDataSource replicaDataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void readOnlyTransactionsUseTheReplicaPool() {
+        replicaCatchesUp();
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+
+        int[] replicaActive = readOnly.execute(status -> {
+            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale", Long.class);
+            return activeConnections();
+        });
+        assertThat(replicaActive[1]).isEqualTo(1);
+
+        int[] primaryActive = readWrite.execute(status -> {
+            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sale", Long.class);
+            return activeConnections();
+        });
+        assertThat(primaryActive[0]).isGreaterThanOrEqualTo(1);
+        assertThat(primaryActive[1]).isZero();
+    }
+
+    @Test
+    void readsOwnWritesFromThePrimaryUntilTheReplicaHasThem() {
+        replicaCatchesUp();
+        posService.createSale(sale(38L, line("POS1001", 1, 2.50)));
+        long ownWriteReads = stat("primaryReadsAfterOwnWrite");
+        assertThat(posService.countSalesByLocation(38L)).isEqualTo(1);
+        assertThat(stat("primaryReadsAfterOwnWrite")).isEqualTo(ownWriteReads + 1);
+
+        // The clock has not moved, so the replica has everything up to the write but not past it
+        guard.heartbeat();
+        assertThat(posService.countSalesByLocation(38L)).isEqualTo(1);
+        assertThat(stat("primaryReadsAfterOwnWrite")).isEqualTo(ownWriteReads + 2);
+
+        replicaCatchesUp();
+        long replicaReads = stat("replicaReads");
+        assertThat(posService.countSalesByLocation(38L)).isEqualTo(1);
+        assertThat(stat("replicaReads")).isEqualTo(replicaReads + 1);
+    }
+
+    @Test
+    void clientsReadTheirOwnWritesAcrossRequestsButNotOthers() throws Exception {
+        replicaCatchesUp();
+        String lastWrite = mockMvc.perform(post("/api/sales").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"locationId\": 39, \"lines\": [{\"posCode\": \"POS1001\", \"quantity\": 1, \"unitPrice\": 2.5}]}"))
+                .andExpect(status().isCreated())
+                .andExpect(cookie().value(ReadYourWritesFilter.LAST_WRITE_COOKIE, Long.toString(clock.millis())))
+                .andReturn().getResponse().getCookie(ReadYourWritesFilter.LAST_WRITE_COOKIE).getValue();
+        Cookie writer = new Cookie(ReadYourWritesFilter.LAST_WRITE_COOKIE, lastWrite);
+
+        long ownWriteReads = stat("primaryReadsAfterOwnWrite");
+        mockMvc.perform(get("/api/sales/location/39").cookie(writer)).andExpect(status().isOk());
+        assertThat(stat("primaryReadsAfterOwnWrite")).isEqualTo(ownWriteReads + 1);
+
+        // Another client on the same thread does not inherit the write
+        long replicaReads = stat("replicaReads");
+        mockMvc.perform(get("/api/sales/location/39")).andExpect(status().isOk());
+        assertThat(stat("replicaReads")).isEqualTo(replicaReads + 1);
+
+        replicaCatchesUp();
+        mockMvc.perform(get("/api/sales/location/39").cookie(writer)).andExpect(status().isOk());
+        assertThat(stat("replicaReads")).isEqualTo(replicaReads + 2);
+    }
+
+    /**
+     * Move time on and record a heartbeat, so the replica has every write made before now
+     */
+    private void replicaCatchesUp() {
+        clock.advance(1);
+        guard.heartbeat();
+    }
+
+    private int[] activeConnections() {
+        return new int[]{primaryDataSource.getHikariPoolMXBean().getActiveConnections(),
+                replicaDataSource.getHikariPoolMXBean().getActiveConnections()};
+    }
+
+    private long stat(String name) {
+        return (long) guard.getStats().get(name);
+    }
+
+    @TestConfiguration
+    static class ClockConfig {
+        @Bean
+        ManualClock clock() {
+            return new ManualClock();
+        }
+    }
+
+    /**
+     * A clock that only moves when told to
+     */
+    static class ManualClock extends Clock {
+        private volatile long millis = System.currentTimeMillis();
+
+        void advance(long byMillis) {
+            millis += byMillis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.rayvision.POS.datasource;
+
+import com.rayvision.POS.config.ReplicaConfig;
+import com.rayvision.POS.service.PosService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The replica is a second in-memory database that only gets the primary's heartbeat when the test copies it,
+// so it lags for as long as the copy is held back. It has no sale tables, so reads must never reach it here.
+@SpringBootTest(properties = {
+        "pos.datasource.replica.enabled=true",
+        "pos.datasource.replica.url=" + ReplicaLagTests.REPLICA_URL,
+        "pos.datasource.replica.heartbeat-millis=3600000"
+})
+class ReplicaLagTests {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:posreplica;DB_CLOSE_DELAY=-1";
+
+    private final JdbcTemplate replicaJdbc = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @Autowired
+    private ReadWriteRoutingTests.ManualClock clock;
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private ReplicaLagGuard guard;
+
+    @Autowired
+    private ReplicaConfig config;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createReplicaHeartbeat() {
+        replicaJdbc.execute("create table if not exists replica_heartbeat ("
+                + "id integer not null, written_at_millis bigint not null, primary key (id))");
+    }
+
+    @AfterEach
+    void disconnectReplica() {
+        // Without a heartbeat the replica counts as unreachable, so nothing else in this context reads from it
+        replicaJdbc.update("DELETE FROM replica_heartbeat");
+        guard.heartbeat();
+    }
+
+    @Test
+    void readsStayOnThePrimaryWhileTheReplicaLags() {
+        guard.heartbeat();
+        copyHeartbeatToReplica();
+        guard.heartbeat();
+        assertThat(stat("lagMillis")).isZero();
+
+        // The primary moves on while the copy is held back
+        clock.advance(config.getMaxLagMillis() + 1);
+        guard.heartbeat();
+        assertThat(stat("lagMillis")).isEqualTo(config.getMaxLagMillis() + 1);
+        long laggingReads = stat("primaryReadsWhileLagging");
+        assertThat(posService.countSalesByLocation(79L)).isZero();
+        assertThat(stat("primaryReadsWhileLagging")).isEqualTo(laggingReads + 1);
+
+        copyHeartbeatToReplica();
+        guard.heartbeat();
+        assertThat(stat("lagMillis")).isZero();
+        assertThat(guard.routeRead()).isTrue();
+    }
+
+    private void copyHeartbeatToReplica() {
+        long writtenAt = jdbcTemplate.queryForObject("SELECT written_at_millis FROM replica_heartbeat WHERE id = 1", Long.class);
+        replicaJdbc.update("MERGE INTO replica_heartbeat KEY (id) VALUES (1, ?)", writtenAt);
+    }
+
+    private long stat(String name) {
+        return (long) guard.getStats().get(name);
+    }
+
+    @TestConfiguration
+    static class ClockConfig {
+        @Bean
+        ReadWriteRoutingTests.ManualClock clock() {
+            return new ReadWriteRoutingTests.ManualClock();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.rayvision.POS.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FixedPointTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void keepsTheDecimalJsonShape() throws Exception {
+        SaleLine line = mapper.readValue("""
+                {"posCode": "POS1003", "quantity": 2, "unitPrice": 5.55}""", SaleLine.class);
+        assertThat(line.getQuantityMilli()).isEqualTo(2000);
+        assertThat(line.getUnitPriceMinor()).isEqualTo(555);
+        assertThat(line.getExtendedMinor()).isEqualTo(FixedPoint.UNSET);
+
+        line.calculateExtended();
+        assertThat(mapper.readTree(mapper.writeValueAsString(line)).get("extended").decimalValue())
+                .isEqualByComparingTo("11.10");
+
+        SaleLine missing = mapper.readValue("""
+                {"posCode": "POS1003", "quantity": "1.5", "unitPrice": null}""", SaleLine.class);
+        assertThat(missing.getQuantityMilli()).isEqualTo(1500);
+        assertThat(missing.getUnitPriceMinor()).isEqualTo(FixedPoint.UNSET);
+        assertThat(mapper.writeValueAsString(missing)).contains("\"quantity\":1.500", "\"unitPrice\":null");
+
+        assertThatThrownBy(() -> mapper.readValue("{\"unitPrice\": \"abc\"}", SaleLine.class))
+                .isInstanceOf(com.fasterxml.jackson.databind.JsonMappingException.class);
+    }
+
+    @Test
+    void roundsLineAmountsHalfUpToACent() {
+        assertThat(FixedPoint.extended(333, 100)).isEqualTo(33);
+        assertThat(FixedPoint.extended(1500, 1)).isEqualTo(2);
+        assertThat(FixedPoint.fromDouble(0.1, FixedPoint.MONEY_SCALE)).isEqualTo(10);
+        assertThat(FixedPoint.fromDecimal(new BigDecimal("2.675"), FixedPoint.MONEY_SCALE)).isEqualTo(268);
+        assertThatThrownBy(() -> FixedPoint.extended(Long.MAX_VALUE / 10, 100)).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void totalsAreExact() {
+        Sale sale = new Sale();
+        for (int i = 0; i < 1000; i++) {
+            SaleLine line = new SaleLine();
+            line.setQuantityMilli(1000);
+            line.setUnitPriceMinor(10);
+            sale.getLines().add(line);
+        }
+        sale.calculateTotal();
+        assertThat(FixedPoint.toDecimal(sale.getTotalMinor(), FixedPoint.MONEY_SCALE)).isEqualTo("100.00");
+
+        // The same lines summed as doubles drift off the cent
+        double doubles = 0;
+        for (int i = 0; i < 1000; i++) {
+            doubles += 1.0 * 0.1;
+        }
+        assertThat(doubles).isNotEqualTo(100.0);
+    }
+}
@@ -0,0 +1,213 @@
+package com.rayvision.POS.journal;
+
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.domain.SaleLine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SaleJournalTests {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysCommittedSalesAcrossSegmentsButNotAbortedOnes() throws IOException {
+        try (SaleJournal journal = SaleJournal.open(directory, SEGMENT_SIZE, FsyncPolicy.GROUP_COMMIT)) {
+            for (long id = 1; id <= 100; id++) {
+                long position = journal.append(sale(id));
+                journal.awaitDurable(position);
+                if (id % 10 == 0) {
+                    journal.aborted(position, id);
+                } else {
+                    journal.committed(position);
+                }
+            }
+            assertThat((int) journal.stats().get("segments")).isGreaterThan(1);
+        }
+
+        List<Sale> replayed = replay();
+        assertThat(replayed).hasSize(90);
+        assertThat(replayed).extracting(Sale::getId).doesNotContain(10L, 50L, 100L).startsWith(1L, 2L, 3L);
+        Sale first = replayed.get(0);
+        assertThat(first.getPosReference()).isEqualTo("LOC001-000001");
+        assertThat(first.getSaleDateTime()).isEqualTo(LocalDateTime.of(2024, 1, 1, 12, 0, 1, 500));
+        assertThat(first.getLines()).hasSize(2);
+        assertThat(first.getLines().get(1).getMenuItemName()).isNull();
+        assertThat(first.getLines().get(1).getQuantityMilli()).isEqualTo(3000);
+        assertThat(first.getLines().get(1).getSale()).isSameAs(first);
+    }
+
+    @Test
+    void stopsAtATornRecord() throws IOException {
+        try (SaleJournal journal = SaleJournal.open(directory, SEGMENT_SIZE, FsyncPolicy.PER_RECORD)) {
+            for (long id = 1; id <= 3; id++) {
+                journal.committed(journal.append(sale(id)));
+            }
+        }
+        // Corrupt the last byte of the third record, as a write cut short by a crash would
+        Path segment = segments().get(0);
+        int recordLength;
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            file.read(length, JournalSegment.HEADER_SIZE);
+            recordLength = JournalSegment.RECORD_OVERHEAD + length.getInt(0);
+            long lastByte = JournalSegment.HEADER_SIZE + 3L * recordLength - 1;
+            file.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), lastByte);
+        }
+
+        assertThat(replay()).extracting(Sale::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void compactsResolvedSegmentsWithoutLosingSales() throws IOException {
+        try (SaleJournal journal = SaleJournal.open(directory, SEGMENT_SIZE, FsyncPolicy.INTERVAL)) {
+            long unresolved = -1;
+            for (long id = 1; id <= 100; id++) {
+                long position = journal.append(sale(id));
+                if (id == 95) {
+                    unresolved = position;
+                } else if (id % 10 == 0) {
+                    journal.aborted(position, id);
+                } else {
+                    journal.committed(position);
+                }
+            }
+            int before = segments().size();
+            journal.compact(false, null);
+            int after = segments().size();
+            assertThat(after).isLessThan(before);
+
+            // Nothing more to do until the unresolved sale is committed and its segment rolls over
+            assertThat(journal.compact(false, null)).containsEntry("segments", 0);
+            journal.committed(unresolved);
+        }
+
+        List<Sale> replayed = replay();
+        assertThat(replayed).hasSize(90);
+        assertThat(replayed).extracting(Sale::getId).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void compactionLeavesOutSalesBeforeTheRetentionPoint() throws IOException {
+        try (SaleJournal journal = SaleJournal.open(directory, SEGMENT_SIZE, FsyncPolicy.INTERVAL)) {
+            for (long id = 1; id <= 60; id++) {
+                journal.committed(journal.append(sale(id)));
+            }
+            journal.compact(false, null);
+            for (long id = 61; id <= 100; id++) {
+                journal.committed(journal.append(sale(id)));
+            }
+            // Rewrites what the first compaction left as well
+            Map<String, Object> result = journal.compact(false, sale(51).getSaleDateTime());
+            assertThat(result).containsEntry("expiredSales", 50);
+        }
+
+        List<Sale> replayed = replay();
+        assertThat(replayed).hasSize(50);
+        assertThat(replayed).extracting(Sale::getId).startsWith(51L).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void skipsSalesOfADroppedMonthAppendedBeforeTheDrop() throws IOException {
+        try (SaleJournal journal = SaleJournal.open(directory, SEGMENT_SIZE, FsyncPolicy.PER_RECORD)) {
+            for (long id = 1; id <= 3; id++) {
+                journal.committed(journal.append(sale(id)));
+            }
+            journal.monthDropped(YearMonth.of(2024, 1));
+            journal.committed(journal.append(sale(4)));
+            Sale february = sale(5);
+            february.setSaleDateTime(LocalDateTime.of(2024, 2, 1, 9, 0));
+            journal.committed(journal.append(february));
+        }
+
+        assertThat(replay()).extracting(Sale::getId).containsExactly(4L, 5L);
+    }
+
+    @Test
+    void readsSaleRecordsWithDoubleAmounts() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(JournalRecordCodec.SALE_DOUBLES);
+            out.writeLong(7);
+            out.writeByte(0b0110); // no time or reference
+            out.writeLong(1);
+            out.writeDouble(0.1 + 0.2);
+            out.writeInt(1);
+            out.writeLong(14);
+            out.writeByte(0b10010); // no name or extended
+            out.writeInt(7);
+            out.write("POS1007".getBytes(StandardCharsets.UTF_8));
+            out.writeDouble(1.5);
+            out.writeDouble(0.2);
+        }
+
+        Sale sale = JournalRecordCodec.decodeSale(ByteBuffer.wrap(bytes.toByteArray()));
+        assertThat(sale.getTotalMinor()).isEqualTo(30);
+        SaleLine line = sale.getLines().get(0);
+        assertThat(line.getPosCode()).isEqualTo("POS1007");
+        assertThat(line.getQuantityMilli()).isEqualTo(1500);
+        assertThat(line.getUnitPriceMinor()).isEqualTo(20);
+        assertThat(line.getExtendedMinor()).isEqualTo(FixedPoint.UNSET);
+    }
+
+    private List<Sale> replay() throws IOException {
+        List<Sale> sales = new ArrayList<>();
+        try (SaleJournal journal = SaleJournal.open(directory, SEGMENT_SIZE, FsyncPolicy.INTERVAL)) {
+            journal.replay(sales::add);
+        }
+        return sales;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isSegment).sorted().toList();
+        }
+    }
+
+    private static Sale sale(long id) {
+        Sale sale = new Sale();
+        sale.setId(id);
+        sale.setLocationId(1L);
+        sale.setSaleDateTime(LocalDateTime.of(2024, 1, 1, 12, 0, 0, 500).plusSeconds(id));
+        sale.setPosReference("LOC001-" + String.format("%06d", id));
+        List<SaleLine> lines = new ArrayList<>();
+        SaleLine burger = new SaleLine();
+        burger.setId(id * 2);
+        burger.setPosCode("POS1003");
+        burger.setMenuItemName("Chicken Burger");
+        burger.setQuantityMilli(1000);
+        burger.setUnitPriceMinor(550);
+        burger.setExtendedMinor(550);
+        lines.add(burger);
+        SaleLine unnamed = new SaleLine();
+        unnamed.setId(id * 2 + 1);
+        unnamed.setPosCode("POS1007");
+        unnamed.setQuantityMilli(3000);
+        unnamed.setUnitPriceMinor(200);
+        lines.add(unnamed);
+        sale.setLines(lines);
+        sale.setTotalMinor(1150);
+        return sale;
+    }
+}
@@ -0,0 +1,53 @@
+package com.rayvision.POS.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTests {
+
+    @Test
+    void bucketsAreContiguousAndCoverTheirValues() {
+        long previousEdge = -1;
+        for (int bucket = 0; bucket < 64 * 32 && previousEdge < Long.MAX_VALUE; bucket++) {
+            long lower = previousEdge + 1;
+            long upper = LatencyHistogram.upperEdge(bucket);
+            assertThat(LatencyHistogram.bucketOf(lower)).isEqualTo(bucket);
+            assertThat(LatencyHistogram.bucketOf(upper)).isEqualTo(bucket);
+            // At most 1/32 of the value wide, so percentiles are within ~3%
+            assertThat((double) (upper - lower)).isLessThanOrEqualTo(Math.max(0, lower / 32.0));
+            previousEdge = upper;
+        }
+        assertThat(previousEdge).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1..10000 microseconds, once each
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1_000);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(10_000);
+        assertThat(histogram.getMax()).isEqualTo(10_000_000);
+        assertThat(histogram.getMean()).isCloseTo(5_000_500, within(1.0));
+        assertThat((double) histogram.getPercentile(50)).isCloseTo(5_000_000, within(5_000_000 * 0.035));
+        assertThat((double) histogram.getPercentile(99)).isCloseTo(9_900_000, within(9_900_000 * 0.035));
+        assertThat((double) histogram.getPercentile(99.9)).isCloseTo(9_990_000, within(9_990_000 * 0.035));
+        assertThat(histogram.getPercentile(100)).isEqualTo(10_000_000);
+    }
+
+    @Test
+    void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getMax()).isZero();
+        assertThat(histogram.getPercentile(99)).isZero();
+        assertThat(histogram.summary()).containsEntry("count", 0L);
+    }
+}
@@ -0,0 +1,72 @@
+package com.rayvision.POS.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MetricsRegistryTests {
+
+    @Test
+    void sameNameAndLabelsGiveTheSameTimer() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Timer timer = registry.timer("pos_test", "Test", "method", "a");
+
+        assertThat(registry.timer("pos_test", "Test", "method", "a")).isSameAs(timer);
+        assertThat(registry.timer("pos_test", "Test", "method", "b")).isNotSameAs(timer);
+        assertThatThrownBy(() -> registry.timer("pos_test", "Test", "method"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rendersJsonAndPrometheusText() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Timer find = registry.timer("pos_repository_call", "Repository calls", "repository", "SaleRepository", "method", "find\"By\"");
+        Timer plain = registry.timer("pos_sale_create", "Sale creation");
+        find.record(2_000_000);
+        find.recordFailure(4_000_000);
+        plain.record(1_000_000_000);
+
+        List<Map<String, Object>> snapshot = registry.snapshot();
+        assertThat(snapshot).extracting(entry -> entry.get("name")).containsExactly("pos_repository_call", "pos_sale_create");
+        assertThat(snapshot.get(0)).containsEntry("count", 2L).containsEntry("failures", 1L)
+                .containsEntry("labels", Map.of("repository", "SaleRepository", "method", "find\"By\""));
+
+        String text = registry.prometheus();
+        String labels = "{repository=\"SaleRepository\",method=\"find\\\"By\\\"\"";
+        assertThat(text).contains(
+                "# TYPE pos_repository_call_seconds summary\n",
+                "pos_repository_call_seconds" + labels + ",quantile=\"0.5\"} 0.0020",
+                "pos_repository_call_seconds_sum" + labels + "} 0.006\n",
+                "pos_repository_call_seconds_count" + labels + "} 2\n",
+                "# TYPE pos_repository_call_failures_total counter\n",
+                "pos_repository_call_failures_total" + labels + "} 1\n",
+                "pos_sale_create_seconds{quantile=\"0.999\"} 1",
+                "pos_sale_create_seconds_count 1\n");
+        // One HELP and TYPE per family
+        assertThat(text.split("# TYPE pos_repository_call_seconds ", -1)).hasSize(2);
+    }
+
+    @Test
+    void recordingAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Timer timer = new MetricsRegistry().timer("pos_test", "Test");
+        for (int i = 0; i < 100_000; i++) {
+            timer.recordSince(System.nanoTime() - i, (i & 7) == 0);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1_000_000; i++) {
+            timer.recordSince(System.nanoTime() - i, (i & 7) == 0);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertThat(timer.getHistogram().getCount()).isEqualTo(1_100_000);
+        // Only noise from the JIT and the measurement itself: far below one byte per recording
+        assertThat(allocated).isLessThan(16 * 1024);
+    }
+}
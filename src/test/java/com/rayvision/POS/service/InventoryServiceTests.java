@@ -0,0 +1,98 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.domain.FixedPoint;
+import com.rayvision.POS.domain.LocationStock;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.repository.LocationStockRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "pos.inventory.reject-negative=true",
+        "pos.inventory.flush-interval-millis=3600000"
+})
+class InventoryServiceTests {
+
+    private static final long LOCATION_ID = 31L;
+    private static final String POS_CODE = "POS1005";
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private LocationStockRepository stockRepository;
+
+    @Test
+    void concurrentSalesNeverOversellAndSurviveReconcile() throws Exception {
+        inventoryService.receive(LOCATION_ID, POS_CODE, 5);
+        long opening = onHand() / FixedPoint.QUANTITY_UNITS;
+        int attempts = (int) opening + 40;
+
+        List<Future<Boolean>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < attempts; i++) {
+                results.add(executor.submit(() -> {
+                    try {
+                        posService.createSale(sale(LOCATION_ID, line(POS_CODE, 1, 2.50)));
+                        return true;
+                    } catch (InsufficientStockException e) {
+                        return false;
+                    }
+                }));
+            }
+        }
+        long sold = 0;
+        for (Future<Boolean> result : results) {
+            sold += result.get() ? 1 : 0;
+        }
+
+        assertThat(sold).isEqualTo(opening);
+        assertThat(onHand()).isZero();
+
+        inventoryService.flush();
+        LocationStock row = stockRepository.findById(new LocationStock.Key(LOCATION_ID, POS_CODE)).orElseThrow();
+        assertThat(row.getOnHandMilli()).isZero();
+
+        // Recomputed from the sale tables, the delivery kept
+        inventoryService.reconcile();
+        assertThat(onHand()).isZero();
+        assertThat(stockRepository.findById(new LocationStock.Key(LOCATION_ID, POS_CODE)).orElseThrow().getSoldQuantityMilli())
+                .isEqualTo(opening * FixedPoint.QUANTITY_UNITS);
+    }
+
+    @Test
+    void rejectedSaleTakesNoStockFromItsOtherLines() {
+        long before = onHand("POS1006");
+        Sale sale = sale(LOCATION_ID, line("POS1006", 1, 2.50));
+        sale.getLines().add(line("POS9999", 1, 2.50));
+
+        assertThatThrownBy(() -> posService.createSale(sale)).isInstanceOf(InsufficientStockException.class);
+        assertThat(onHand("POS1006")).isEqualTo(before);
+    }
+
+    private long onHand() {
+        return onHand(POS_CODE);
+    }
+
+    private long onHand(String posCode) {
+        return inventoryService.getStock(LOCATION_ID).stream()
+                .filter(stock -> stock.getPosCode().equals(posCode))
+                .findFirst().orElseThrow()
+                .getOnHandMilli();
+    }
+}
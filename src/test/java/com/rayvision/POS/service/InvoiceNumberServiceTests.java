@@ -0,0 +1,111 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.config.InvoiceConfig;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.metrics.MetricsRegistry;
+import com.rayvision.POS.repository.InvoiceSequenceRepository;
+import com.rayvision.POS.repository.PartitionedSaleRepository;
+import com.rayvision.POS.repository.SaleRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "pos.invoice.block-size=7"
+})
+class InvoiceNumberServiceTests {
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private InvoiceNumberService invoiceNumberService;
+
+    @Autowired
+    private SaleRepository saleRepository;
+
+    @Autowired
+    private PartitionedSaleRepository partitionedSaleRepository;
+
+    @Autowired
+    private LocationRegistry locationRegistry;
+
+    @Autowired
+    private InvoiceSequenceRepository invoiceSequenceRepository;
+
+    @Autowired
+    private InvoiceConfig invoiceConfig;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    @Test
+    void concurrentSalesReceiveDistinctInvoiceNumbers() throws Exception {
+        int threads = 8;
+        int salesPerThread = 25;
+        Set<String> references = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long locationId = 2 + (t % 2);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < salesPerThread; i++) {
+                        Sale sale = new Sale();
+                        sale.setLocationId(locationId);
+                        references.add(posService.createSale(sale).getPosReference());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(references).hasSize(threads * salesPerThread);
+    }
+
+    @Test
+    void restartContinuesAfterReservedHighWaterMark() {
+        long locationId = 4L;
+        String before = invoiceNumberService.generateNextInvoiceNumber(locationId);
+
+        // A fresh instance has no in-memory blocks, just like the service after a restart
+        InvoiceNumberService restarted = new InvoiceNumberService(saleRepository, partitionedSaleRepository, locationRegistry,
+                invoiceSequenceRepository, invoiceConfig, transactionManager, metricsRegistry);
+        String after = restarted.generateNextInvoiceNumber(locationId);
+
+        long reserved = invoiceSequenceRepository.findById(locationId).orElseThrow().getReservedThrough();
+        assertThat(number(after)).isGreaterThan(number(before));
+        assertThat(number(after)).isEqualTo(reserved - invoiceConfig.getBlockSize() + 1);
+    }
+
+    @Test
+    void unknownLocationGetsNoInvoiceNumber() {
+        assertThatThrownBy(() -> invoiceNumberService.generateNextInvoiceNumber(9_999L))
+                .isInstanceOf(UnknownLocationException.class);
+        assertThat(invoiceSequenceRepository.findById(9_999L)).isEmpty();
+    }
+
+    private static long number(String invoice) {
+        return Long.parseLong(invoice.substring(invoice.lastIndexOf('-') + 1));
+    }
+}
@@ -0,0 +1,82 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.StatementCounter;
+import com.rayvision.POS.domain.Location;
+import com.rayvision.POS.event.LocationChangedEvent;
+import com.rayvision.POS.repository.LocationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Import(StatementCounter.class)
+class LocationRegistryTests {
+
+    @Autowired
+    private LocationRegistry locationRegistry;
+
+    @Autowired
+    private LocationService locationService;
+
+    @Autowired
+    private LocationRepository locationRepository;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    @Test
+    void looksUpLocationsWithoutQueries() {
+        locationRegistry.getAllLocations();
+        statementCounter.start();
+
+        assertThat(locationRegistry.getLocation(7L)).map(Location::getCode).contains("LOC007");
+        List<Location> all = locationRegistry.getAllLocations();
+
+        assertThat(statementCounter.count()).isZero();
+        assertThat(all).hasSizeGreaterThanOrEqualTo(50);
+        assertThat(all).extracting(Location::getId).isSorted();
+        assertThat(all.get(0).getCode()).isEqualTo("LOC001");
+    }
+
+    @Test
+    void unknownIdsAreAbsent() {
+        assertThat(locationRegistry.getLocation(9_999L)).isEmpty();
+        assertThat(locationRegistry.getLocation(-1L)).isEmpty();
+    }
+
+    @Test
+    void committedLocationWritesAreApplied() {
+        Location created = locationService.createLocation(Location.builder().name("Registry test").code("LOC-REG").build());
+        assertThat(locationRegistry.getLocation(created.getId())).map(Location::getName).contains("Registry test");
+        assertThat(locationRegistry.getAllLocations()).extracting(Location::getId).contains(created.getId());
+
+        locationService.updateLocation(created.getId(), Location.builder().name("Registry test, renamed").code("LOC-REG").build());
+        assertThat(locationRegistry.getLocation(created.getId())).map(Location::getName).contains("Registry test, renamed");
+
+        locationService.deleteLocation(created.getId());
+        assertThat(locationRegistry.getLocation(created.getId())).isEmpty();
+        assertThat(locationRegistry.getAllLocations()).extracting(Location::getId).doesNotContain(created.getId());
+    }
+
+    @Test
+    void refreshReloadsChangesMadeWithoutAnEvent() {
+        locationRegistry.getAllLocations();
+        Location added = locationRepository.save(Location.builder().name("Added behind the registry").code("LOC-RAW").build());
+        try {
+            assertThat(locationRegistry.getLocation(added.getId())).isEmpty();
+
+            locationRegistry.onLocationChanged(new LocationChangedEvent(null));
+            assertThat(locationRegistry.getLocation(added.getId())).map(Location::getCode).contains("LOC-RAW");
+        } finally {
+            locationRepository.delete(added);
+        }
+        locationRegistry.onLocationChanged(new LocationChangedEvent(null));
+        assertThat(locationRegistry.getLocation(added.getId())).isEmpty();
+        assertThat(locationRegistry.getLocation(7L)).isPresent();
+    }
+}
@@ -0,0 +1,104 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.config.CatalogConfig;
+import com.rayvision.POS.domain.Product;
+import com.rayvision.POS.event.ProductCatalogChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class ProductCatalogTests {
+
+    @Autowired
+    private ProductCatalog productCatalog;
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private CatalogConfig config;
+
+    @Test
+    void repeatedLookupsAreServedFromTheSnapshot() {
+        productCatalog.findByPosCode("POS1001");
+        long misses = stat("misses");
+        long hits = stat("hits");
+
+        assertThat(productCatalog.findByPosCode("POS1001")).isPresent();
+        assertThat(productCatalog.findByPosCode("NO-SUCH-CODE")).isEmpty();
+        assertThat(productCatalog.getAllProducts()).isNotEmpty();
+
+        assertThat(stat("hits")).isEqualTo(hits + 3);
+        assertThat(stat("misses")).isEqualTo(misses);
+        assertThat(productCatalog.getStats()).containsEntry("complete", true);
+    }
+
+    @Test
+    void changingAReturnedProductDoesNotChangeTheCatalog() {
+        Product product = productCatalog.findByPosCode("POS1002").orElseThrow();
+        double price = product.getPrice();
+        product.setPrice(price + 100);
+        product.setName("Changed");
+        List<Product> all = productCatalog.getAllProducts();
+        all.forEach(p -> p.setStock(-1));
+
+        Product again = productCatalog.findByPosCode("POS1002").orElseThrow();
+        assertThat(again).isNotSameAs(product);
+        assertThat(again.getPrice()).isEqualTo(price);
+        assertThat(again.getName()).isNotEqualTo("Changed");
+        assertThat(productCatalog.getAllProducts()).noneMatch(p -> Integer.valueOf(-1).equals(p.getStock()));
+    }
+
+    @Test
+    void committedProductWritesInvalidateTheSnapshot() {
+        assertThat(productCatalog.findByPosCode("CAT-TEST-1")).isEmpty();
+        long version = stat("version");
+
+        Product created = posService.createProduct(Product.builder().posCode("CAT-TEST-1").name("Catalog test").price(3.0).build());
+        assertThat(stat("version")).isEqualTo(version + 1);
+        assertThat(productCatalog.findByPosCode("CAT-TEST-1")).map(Product::getPrice).contains(3.0);
+        assertThat(stat("snapshotVersion")).isEqualTo(version + 1);
+
+        created.setPrice(4.0);
+        posService.createProduct(created);
+        assertThat(productCatalog.findByPosCode("CAT-TEST-1")).map(Product::getPrice).contains(4.0);
+        assertThat(productCatalog.getAllProducts()).filteredOn(p -> p.getPosCode().equals("CAT-TEST-1"))
+                .extracting(Product::getPrice).containsExactly(4.0);
+    }
+
+    @Test
+    void catalogsLargerThanTheLimitAreCachedPerLookup() {
+        int maxSize = config.getMaxSize();
+        try {
+            config.setMaxSize(2);
+            productCatalog.onCatalogChanged(new ProductCatalogChangedEvent(null));
+            assertThat(productCatalog.findByPosCode("POS1001")).isPresent();
+            assertThat(productCatalog.getStats()).containsEntry("complete", false);
+            long hits = stat("hits");
+
+            Optional<Product> cached = productCatalog.findByPosCode("POS1001");
+            assertThat(stat("hits")).isEqualTo(hits + 1);
+            cached.orElseThrow().setName("Changed");
+            assertThat(productCatalog.findByPosCode("POS1001").orElseThrow().getName()).isNotEqualTo("Changed");
+
+            long evictions = stat("evictions");
+            productCatalog.findByPosCode("POS1002");
+            productCatalog.findByPosCode("POS1003");
+            assertThat(stat("evictions")).isEqualTo(evictions + 1);
+            assertThat(productCatalog.getStats()).containsEntry("size", 2);
+        } finally {
+            config.setMaxSize(maxSize);
+            productCatalog.onCatalogChanged(new ProductCatalogChangedEvent(null));
+        }
+    }
+
+    private long stat(String name) {
+        return ((Number) productCatalog.getStats().get(name)).longValue();
+    }
+}
@@ -0,0 +1,88 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.dto.SaleBatchItemResult;
+import com.rayvision.POS.dto.SaleBatchResult;
+import com.rayvision.POS.repository.SaleRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "pos.ingest.chunk-size=2",
+        "pos.ingest.max-batch-size=4"
+})
+class SaleBatchServiceTests {
+
+    private static final long LOCATION_ID = 14L;
+
+    @Autowired
+    private SaleBatchService saleBatchService;
+
+    @Autowired
+    private SaleRepository saleRepository;
+
+    @Test
+    void batchOverTheLimitIsRefusedWholeAndEmptyBatchIsInvalid() {
+        int before = saleRepository.findByLocationId(LOCATION_ID).size();
+        List<Sale> sales = List.of(sale(LOCATION_ID, line("POS1001", 1, 2.50)), sale(LOCATION_ID, line("POS1001", 1, 2.50)), sale(LOCATION_ID, line("POS1001", 1, 2.50)), sale(LOCATION_ID, line("POS1001", 1, 2.50)), sale(LOCATION_ID, line("POS1001", 1, 2.50)));
+
+        assertThatThrownBy(() -> saleBatchService.createSales(sales))
+                .isInstanceOf(SaleBatchTooLargeException.class)
+                .hasMessageContaining("maximum of 4");
+        assertThatThrownBy(() -> saleBatchService.createSales(List.of()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .isNotInstanceOf(SaleBatchTooLargeException.class);
+        assertThat(saleRepository.findByLocationId(LOCATION_ID)).hasSize(before);
+    }
+
+    @Test
+    void invalidSalesFailAloneAndTheRestAreCreated() {
+        Sale unknownLocation = sale(LOCATION_ID, line("POS1001", 1, 2.50));
+        unknownLocation.setLocationId(9_999L);
+        Sale incompleteLine = sale(LOCATION_ID, line("POS1001", 1, 2.50));
+        incompleteLine.getLines().get(0).setPosCode(null);
+        // Passes validation but fails the insert, so its chunk is retried one sale at a time
+        Sale tooLong = sale(LOCATION_ID, line("POS1002", 1, 2.50));
+        tooLong.getLines().get(0).setMenuItemName("x".repeat(300));
+        Sale valid = sale(LOCATION_ID, line("POS1002", 1, 2.50));
+
+        SaleBatchResult result = saleBatchService.createSales(List.of(unknownLocation, incompleteLine, tooLong, valid));
+
+        assertThat(result.created()).isEqualTo(1);
+        assertThat(result.failed()).isEqualTo(3);
+        assertThat(result.results()).extracting(SaleBatchItemResult::index).containsExactly(0, 1, 2, 3);
+        assertThat(result.results()).extracting(SaleBatchItemResult::status).containsExactly(
+                SaleBatchItemResult.Status.FAILED, SaleBatchItemResult.Status.FAILED,
+                SaleBatchItemResult.Status.FAILED, SaleBatchItemResult.Status.CREATED);
+        assertThat(result.results().get(0).error()).contains("9999");
+        assertThat(result.results().get(1).error()).contains("posCode");
+        assertThat(result.results().get(3).id()).isNotNull();
+        assertThat(saleRepository.findById(result.results().get(3).id())).isPresent();
+    }
+
+    @Test
+    void validBatchIsCreatedInJdbcBatches() {
+        List<Sale> sales = List.of(sale(LOCATION_ID, line("POS1001", 1, 2.50)), sale(LOCATION_ID, line("POS1002", 1, 2.50)), sale(LOCATION_ID, line("POS1003", 1, 2.50)), sale(LOCATION_ID, line("POS1004", 1, 2.50)));
+
+        SaleBatchResult result = saleBatchService.createSales(sales);
+
+        assertThat(result.created()).isEqualTo(4);
+        assertThat(result.failed()).isZero();
+        assertThat(result.results()).allSatisfy(item -> {
+            assertThat(item.status()).isEqualTo(SaleBatchItemResult.Status.CREATED);
+            assertThat(item.posReference()).isNotBlank();
+        });
+        // Four sales and four lines
+        assertThat(result.rowsInserted()).isEqualTo(8);
+        assertThat(result.jdbcBatches()).isPositive();
+        assertThat(result.rowsPerRoundTrip()).isGreaterThan(1);
+    }
+}
@@ -0,0 +1,128 @@
+package com.rayvision.POS.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rayvision.POS.domain.Sale;
+import com.rayvision.POS.repository.SaleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class SaleExportServiceTests {
+
+    private static final long LOCATION_ID = 15L;
+    // One full chunk and a partial one
+    private static final int SALES = SaleRepository.EXPORT_FETCH_SIZE + 3;
+    // In the current month, so no partition is ever sealed around them
+    private static final LocalDateTime FIRST_SALE = LocalDateTime.now().minusHours(2).withNano(0);
+
+    @Autowired
+    private SaleExportService saleExportService;
+
+    @Autowired
+    private SaleBatchService saleBatchService;
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        if (posService.countSalesByLocation(LOCATION_ID) == 0) {
+            List<Sale> sales = new ArrayList<>();
+            for (int i = 0; i < SALES; i++) {
+                Sale sale = sale(LOCATION_ID, FIRST_SALE.plusSeconds(i), line("POS1001", 2, 2.50));
+                if (i == 0) {
+                    sale.getLines().add(line("POS1002", 1, 1.00));
+                }
+                sales.add(sale);
+            }
+            assertThat(saleBatchService.createSales(sales).created()).isEqualTo(SALES);
+        }
+    }
+
+    @Test
+    void writesEverySaleWithItsLinesAsOneJsonLineInIdOrder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = saleExportService.exportNdjson(LOCATION_ID, null, null, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(written).isEqualTo(SALES);
+        assertThat(lines).hasSize(SALES);
+        long previousId = Long.MIN_VALUE;
+        for (String line : lines) {
+            JsonNode sale = objectMapper.readTree(line);
+            assertThat(sale.get("id").asLong()).isGreaterThan(previousId);
+            assertThat(sale.get("locationId").asLong()).isEqualTo(LOCATION_ID);
+            assertThat(sale.get("posReference").asText()).startsWith("LOC015-");
+            assertThat(sale.get("lines")).isNotEmpty();
+            previousId = sale.get("id").asLong();
+        }
+
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertThat(saleDateTime(first)).isEqualTo(FIRST_SALE);
+        assertThat(first.get("total").decimalValue()).isEqualByComparingTo("6.00");
+        assertThat(first.get("lines")).hasSize(2);
+        for (JsonNode line : first.get("lines")) {
+            if (line.get("posCode").asText().equals("POS1001")) {
+                assertThat(line.get("quantity").decimalValue()).isEqualByComparingTo("2");
+                assertThat(line.get("unitPrice").decimalValue()).isEqualByComparingTo("2.50");
+                assertThat(line.get("extended").decimalValue()).isEqualByComparingTo("5.00");
+            } else {
+                assertThat(line.get("posCode").asText()).isEqualTo("POS1002");
+                assertThat(line.get("extended").decimalValue()).isEqualByComparingTo("1.00");
+            }
+        }
+    }
+
+    @Test
+    void flushesAfterEveryChunkOfFetchSizeSales() {
+        List<Integer> linesAtFlush = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                // Sealed partitions of other tests hold none of these sales but are still visited
+                int lines = (int) toString(StandardCharsets.UTF_8).chars().filter(c -> c == '\n').count();
+                if (lines > 0) {
+                    linesAtFlush.add(lines);
+                }
+            }
+        };
+
+        saleExportService.exportNdjson(LOCATION_ID, null, null, out);
+
+        assertThat(linesAtFlush).containsExactly(SaleRepository.EXPORT_FETCH_SIZE, SALES);
+    }
+
+    @Test
+    void exportsOnlySalesInsideTheInclusiveDateRange() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = saleExportService.exportNdjson(LOCATION_ID, FIRST_SALE.plusSeconds(10), FIRST_SALE.plusSeconds(19), out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(written).isEqualTo(10);
+        assertThat(lines).hasSize(10);
+        assertThat(saleDateTime(objectMapper.readTree(lines[0]))).isEqualTo(FIRST_SALE.plusSeconds(10));
+        assertThat(saleDateTime(objectMapper.readTree(lines[9]))).isEqualTo(FIRST_SALE.plusSeconds(19));
+    }
+
+    private static LocalDateTime saleDateTime(JsonNode sale) {
+        return LocalDateTime.parse(sale.get("saleDateTime").asText());
+    }
+}
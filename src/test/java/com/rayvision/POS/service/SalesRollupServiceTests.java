@@ -0,0 +1,59 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.domain.RollupGranularity;
+import com.rayvision.POS.dto.SalesSummaryBucket;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.rayvision.POS.TestSales.line;
+import static com.rayvision.POS.TestSales.sale;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "pos.rollup.flush-interval-millis=3600000"
+})
+class SalesRollupServiceTests {
+
+    private static final long LOCATION_ID = 9L;
+    private static final LocalDateTime DAY = LocalDateTime.of(2021, 3, 14, 0, 0);
+
+    @Autowired
+    private PosService posService;
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    @Test
+    void summaryMatchesSalesBeforeAndAfterFlushAndRebuild() {
+        // 3 sales at 10:05, 2 at 10:40 and 1 at 13:00; each has lines of 2 x 1.5 and 1 x 4.0
+        for (int minute : new int[]{605, 605, 605, 640, 640, 780}) {
+            posService.createSale(sale(LOCATION_ID, DAY.plusMinutes(minute), line("POS1001", 2, 1.50), line("POS1002", 1, 4.00)));
+        }
+
+        List<SalesSummaryBucket> pending = hourly();
+        salesRollupService.flush();
+        List<SalesSummaryBucket> flushed = hourly();
+        salesRollupService.rebuild();
+        List<SalesSummaryBucket> rebuilt = hourly();
+
+        for (List<SalesSummaryBucket> buckets : List.of(pending, flushed, rebuilt)) {
+            assertThat(buckets).extracting(SalesSummaryBucket::bucketStart)
+                    .containsExactly(DAY.plusHours(10), DAY.plusHours(13));
+            assertThat(buckets).extracting(SalesSummaryBucket::saleCount).containsExactly(5L, 1L);
+            assertThat(buckets.get(0).revenueMinor()).isEqualTo(5 * 700);
+            assertThat(buckets.get(0).itemQuantityMilli()).isEqualTo(5 * 3000);
+        }
+
+        List<SalesSummaryBucket> minutes = salesRollupService.summarize(LOCATION_ID, RollupGranularity.MINUTE,
+                DAY.plusHours(10), DAY.plusHours(11));
+        assertThat(minutes).extracting(SalesSummaryBucket::saleCount).containsExactly(3L, 2L);
+    }
+
+    private List<SalesSummaryBucket> hourly() {
+        return salesRollupService.summarize(LOCATION_ID, RollupGranularity.HOUR, DAY, DAY.plusDays(1).minusNanos(1));
+    }
+}
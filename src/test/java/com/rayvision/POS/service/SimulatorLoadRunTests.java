@@ -0,0 +1,104 @@
+package com.rayvision.POS.service;
+
+import com.rayvision.POS.domain.Sale;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SimulatorLoadRunTests {
+
+    @Test
+    void rejectsRunsWithoutRateWorkersOrLocations() {
+        assertThatThrownBy(() -> new SimulatorLoadRun(0, 4, false, List.of(1L), steps(0, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SimulatorLoadRun(100, 0, false, List.of(1L), steps(0, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SimulatorLoadRun(100, 4, true, List.of(), steps(0, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void closedLoopCreatesSalesForEveryLocationAndCountsFailures() throws Exception {
+        SimulatorLoadRun run = new SimulatorLoadRun(400, 4, false, List.of(1L, 2L, 3L, 4L, 5L), steps(0, 5L));
+        run.start();
+        awaitCompleted(run, 40);
+        run.stop();
+
+        Map<String, Object> status = run.status();
+        assertThat(status).containsEntry("running", false).containsEntry("openLoop", false);
+        assertThat((long) status.get("failed")).isPositive();
+        assertThat(run.completedByLocation()).containsOnlyKeys(1L, 2L, 3L, 4L, 5L).containsEntry(5L, 0L);
+        assertThat(run.completedByLocation().values().stream().mapToLong(Long::longValue).sum())
+                .isEqualTo((long) status.get("completed"));
+        assertThat(run.completedByLocation().get(1L)).isPositive();
+
+        run.reset();
+        assertThat(run.status()).containsEntry("completed", 0L).containsEntry("failed", 0L);
+        assertThat(latency(run)).containsEntry("count", 0L);
+    }
+
+    @Test
+    void openLoopCountsTimeSpentBehindAStallButClosedLoopHidesIt() throws Exception {
+        // One worker, a sale every 20 ms and a first sale that takes 300 ms: about 15 sales
+        // are due while it is stuck
+        SimulatorLoadRun open = new SimulatorLoadRun(50, 1, true, List.of(1L), steps(300, null));
+        open.start();
+        awaitCompleted(open, 12);
+        open.stop();
+        assertThat((double) latency(open).get("p50Millis")).isGreaterThan(50);
+
+        SimulatorLoadRun closed = new SimulatorLoadRun(50, 1, false, List.of(1L), steps(300, null));
+        closed.start();
+        awaitCompleted(closed, 12);
+        closed.stop();
+        assertThat((double) latency(closed).get("p50Millis")).isLessThan(50);
+        assertThat((double) latency(closed).get("maxMillis")).isGreaterThanOrEqualTo(300);
+    }
+
+    /**
+     * Sales whose first persist takes stallMillis and whose prepare fails for failingLocation
+     */
+    private static SimulatorLoadRun.SaleSteps steps(long stallMillis, Long failingLocation) {
+        AtomicBoolean stalled = new AtomicBoolean();
+        return new SimulatorLoadRun.SaleSteps() {
+            @Override
+            public Sale prepare(long locationId) {
+                if (failingLocation != null && failingLocation == locationId) {
+                    throw new IllegalStateException("No products");
+                }
+                Sale sale = new Sale();
+                sale.setLocationId(locationId);
+                return sale;
+            }
+
+            @Override
+            public void persist(Sale sale) {
+                if (stallMillis > 0 && stalled.compareAndSet(false, true)) {
+                    try {
+                        Thread.sleep(stallMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> latency(SimulatorLoadRun run) {
+        return (Map<String, Object>) ((Map<String, Object>) run.report().get("latency")).get("total");
+    }
+
+    private static void awaitCompleted(SimulatorLoadRun run, long sales) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((long) run.status().get("completed") < sales) {
+            assertThat(System.currentTimeMillis()).as("completed sales").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}